@@ -0,0 +1,54 @@
+package com.github.bredecorne.masp.benchmarks;
+
+import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.Country;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Testy wydajnościowe tworzenia adresu, w tym weryfikacji numeru domu i mieszkania.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddressBenchmark {
+
+    /**
+     * Usuwa utworzone adresy z ekstensji, aby nie zajmowały pamięci w kolejnych iteracjach.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        Address.setAddresses(new HashSet<>());
+    }
+
+    @Benchmark
+    public Address createValidAddress() {
+        return new Address(Country.PL, "Warszawa", "Prosta", "12/3AB");
+    }
+
+    @Benchmark
+    public boolean rejectInvalidAddress() {
+        try {
+            new Address(Country.PL, "Warszawa", "Prosta", "12//3");
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.bredecorne.masp.benchmarks;
+
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.Status;
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.persons.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Testy wydajnościowe zbioru wpisów księgowych – dopisywanie wpisów oraz sumy dla całego okresu i podokresów.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LedgerBenchmark {
+
+    private static final LocalDate DATE_FROM = LocalDate.of(2000, 1, 1);
+    private static final int DAYS = 365 * 20;
+
+    @Param({"1000", "100000", "10000000"})
+    private int entries;
+
+    private Person person;
+    private PeriodEntrySet periodEntrySet;
+    private PeriodEntrySet appendedPeriodEntrySet;
+    private LocalDate[] dates;
+    private BigDecimal[] values;
+    private SplittableRandom random;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new SplittableRandom(42);
+        person = new LegalPerson("Benchmark S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        dates = new LocalDate[entries];
+        values = new BigDecimal[entries];
+        for (var i = 0; i < entries; i++) {
+            dates[i] = DATE_FROM.plusDays(random.nextInt(DAYS));
+            values[i] = BigDecimal.valueOf(random.nextLong(-1_000_000, 1_000_000), 2);
+        }
+        periodEntrySet = new PeriodEntrySet(DATE_FROM, DATE_FROM.plusDays(DAYS), person);
+        periodEntrySet.addEntries(dates, values, new String[entries], entries);
+        periodEntrySet.getRevenue(DATE_FROM, DATE_FROM); // Buduje indeks dat przed pomiarem
+    }
+
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        var appendingPerson = new LegalPerson("Benchmark sp. z o.o.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        appendedPeriodEntrySet = new PeriodEntrySet(DATE_FROM, DATE_FROM.plusDays(DAYS), appendingPerson);
+    }
+
+
+    /**
+     * Usuwa z ekstensji obiekty utworzone na potrzeby iteracji, aby nie zajmowały pamięci w kolejnych iteracjach.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>(Set.of(periodEntrySet)));
+        Person.setPersons(new HashSet<>(Set.of(person)));
+    }
+
+    @Benchmark
+    public BigDecimal income() {
+        return periodEntrySet.getIncome();
+    }
+
+    @Benchmark
+    public BigDecimal revenueForSubPeriod() {
+        var from = DATE_FROM.plusDays(random.nextInt(DAYS));
+        return periodEntrySet.getRevenue(from, from.plusDays(90));
+    }
+
+    @Benchmark
+    public BigDecimal incomeBySnapshotWalk() {
+        var sum = new BigDecimal[]{BigDecimal.ZERO};
+        periodEntrySet.getSnapshot().forEachEntry((_, value, _) -> sum[0] = sum[0].add(value));
+        return sum[0];
+    }
+
+    @Benchmark
+    public int addEntry() {
+        var i = random.nextInt(entries);
+        appendedPeriodEntrySet.addEntry(dates[i], values[i]);
+        return appendedPeriodEntrySet.getEntryCount();
+    }
+}
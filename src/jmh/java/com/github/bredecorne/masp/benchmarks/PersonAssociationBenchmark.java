@@ -0,0 +1,89 @@
+package com.github.bredecorne.masp.benchmarks;
+
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.Status;
+import com.github.bredecorne.masp.model.persons.NaturalPerson;
+import com.github.bredecorne.masp.model.persons.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Testy wydajnościowe utrzymywania powiązań osoby ze zbiorami wpisów księgowych – przenoszenie zbioru do innej
+ * osoby oraz wyszukiwanie zbiorów w indeksie okresów.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonAssociationBenchmark {
+
+    private static final LocalDate DATE_FROM = LocalDate.of(2000, 1, 1);
+
+    @Param({"1000", "100000", "1000000"})
+    private int periodEntrySets;
+
+    private Person person;
+    private Person otherPerson;
+    private PeriodEntrySet[] sets;
+    private SplittableRandom random;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new SplittableRandom(42);
+        person = new NaturalPerson("Jan Kowalski", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        otherPerson = new NaturalPerson("Anna Nowak", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        sets = new PeriodEntrySet[periodEntrySets];
+        for (var i = 0; i < periodEntrySets; i++) {
+            var dateFrom = DATE_FROM.plusDays(i);
+            sets[i] = new PeriodEntrySet(dateFrom, dateFrom.plusDays(30), person);
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+        Person.setPersons(new HashSet<>());
+    }
+
+
+    /**
+     * Przenosi losowy zbiór do drugiej osoby i z powrotem.
+     */
+    @Benchmark
+    public Person moveBetweenPersons() {
+        var set = sets[random.nextInt(periodEntrySets)];
+        person.replacePeriodEntrySet(set, otherPerson);
+        otherPerson.replacePeriodEntrySet(set, person);
+        return set.getPerson();
+    }
+
+    @Benchmark
+    public List<PeriodEntrySet> findCoveringSets() {
+        return person.getPeriodEntrySetIndex().getCovering(DATE_FROM.plusDays(random.nextInt(periodEntrySets)));
+    }
+}
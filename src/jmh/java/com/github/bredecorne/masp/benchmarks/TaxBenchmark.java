@@ -0,0 +1,98 @@
+package com.github.bredecorne.masp.benchmarks;
+
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.taxes.ProgressiveTax;
+import com.github.bredecorne.masp.model.taxes.UniformTax;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Testy wydajnościowe obliczania podatku – pojedynczo na BigDecimal i na groszach oraz dla wielu kwot naraz.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaxBenchmark {
+
+    @Param({"2", "5", "10", "20"})
+    private int brackets;
+
+    @Param({"1000", "100000", "10000000"})
+    private int incomes;
+
+    private ProgressiveTax progressiveTax;
+    private UniformTax uniformTax;
+    private BigDecimal[] incomeValues;
+    private Money[] incomeMoney;
+    private long[] incomeUnits;
+    private long[] taxUnits;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new SplittableRandom(42);
+        var scale = new TreeMap<BigDecimal, BigDecimal>();
+        scale.put(BigDecimal.ZERO, new BigDecimal("0.05"));
+        for (var i = 1; i < brackets; i++) {
+            scale.put(BigDecimal.valueOf(10_000L * i), BigDecimal.valueOf(5 + 2L * i, 2));
+        }
+        progressiveTax = new ProgressiveTax(scale);
+        uniformTax = new UniformTax(new BigDecimal("0.19"));
+
+        incomeValues = new BigDecimal[incomes];
+        incomeMoney = new Money[incomes];
+        incomeUnits = new long[incomes];
+        taxUnits = new long[incomes];
+        for (var i = 0; i < incomes; i++) {
+            incomeUnits[i] = random.nextLong(-1_000_000, 50_000_000);
+            incomeValues[i] = BigDecimal.valueOf(incomeUnits[i], Money.SCALE);
+            incomeMoney[i] = Money.ofUnits(incomeUnits[i]);
+        }
+    }
+
+    @Benchmark
+    public void progressiveTaxBigDecimal(Blackhole blackhole) {
+        for (var income : incomeValues) {
+            blackhole.consume(progressiveTax.calculateTax(income));
+        }
+    }
+
+    @Benchmark
+    public void progressiveTaxMoney(Blackhole blackhole) {
+        for (var income : incomeMoney) {
+            blackhole.consume(progressiveTax.calculateTax(income));
+        }
+    }
+
+    @Benchmark
+    public long[] progressiveTaxBatch() {
+        progressiveTax.calculateTaxes(incomeUnits, taxUnits, incomes);
+        return taxUnits;
+    }
+
+    @Benchmark
+    public long[] uniformTaxBatch() {
+        uniformTax.calculateTaxes(incomeUnits, taxUnits, incomes);
+        return taxUnits;
+    }
+}
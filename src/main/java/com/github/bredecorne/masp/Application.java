@@ -1,8 +1,12 @@
 package com.github.bredecorne.masp;
 
+import com.github.bredecorne.masp.controller.TaxOfficeChangeAddressController;
 import com.github.bredecorne.masp.model.Address;
 import com.github.bredecorne.masp.model.Country;
 import com.github.bredecorne.masp.model.TaxOffice;
+import com.github.bredecorne.masp.utils.Repository;
+import com.github.bredecorne.masp.utils.StartupPipeline;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
@@ -12,7 +16,6 @@ import java.io.IOException;
 
 public class Application extends javafx.application.Application {
     public static void main(String[] args) {
-        populateWithRandomData();
         launch();
     }
 
@@ -79,5 +82,23 @@ public class Application extends javafx.application.Application {
         scene.getStylesheets().add(BootstrapFX.bootstrapFXStylesheet());
         stage.show();
 
+        // Okno wyświetlane jest z pustymi ekstensjami, a model odczytywany jest dopiero po jego wyświetleniu
+        TaxOfficeChangeAddressController controller = fxmlLoader.getController();
+        controller.hydrate(createStartupPipeline(controller));
+    }
+
+
+    /**
+     * Tworzy etapy uruchamiania aplikacji. Model odczytywany jest z repozytorium w tle, a obiekty modelu tworzone są
+     * w wątku interfejsu. W razie braku repozytorium model uzupełniany jest przykładowymi danymi.
+     */
+    private static StartupPipeline createStartupPipeline(TaxOfficeChangeAddressController controller) {
+        var pipeline = new StartupPipeline();
+        if (Repository.exists()) {
+            pipeline.stage("model", progress -> Repository.deserializeAsync(Platform::runLater, progress));
+        } else {
+            pipeline.stage("model", Platform::runLater, Application::populateWithRandomData);
+        }
+        return pipeline.stage("view", Platform::runLater, controller::refreshModelViews, "model");
     }
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package com.github.bredecorne.masp.controller;
 import com.github.bredecorne.masp.model.Address;
 import com.github.bredecorne.masp.model.TaxOffice;
 import com.github.bredecorne.masp.utils.Repository;
+import com.github.bredecorne.masp.utils.StartupPipeline;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -10,6 +12,8 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 public class TaxOfficeChangeAddressController {
@@ -45,6 +49,11 @@ public class TaxOfficeChangeAddressController {
     @FXML
     private MenuItem loadMenu;
 
+    @FXML
+    private ProgressBar repositoryProgressBar;
+    @FXML
+    private Label repositoryStatusLabel;
+
     @FXML
     public void initialize() {
         // Initial Data
@@ -341,33 +350,117 @@ public class TaxOfficeChangeAddressController {
 
 
     /**
-     * Wywołuje metodę służącą do serializacji klas do repozytorium.
-     * Wyświetla stosowny komunikat.
+     * Wywołuje metodę służącą do serializacji klas do repozytorium w tle.
+     * W trakcie zapisu wyświetla jego postęp, a po jego zakończeniu stosowny komunikat.
      */
     private void setupSaveMenuItemListener() {
         saveMenu.setOnAction(_ -> {
-            Repository.serialize();
-            showAlert(Alert.AlertType.INFORMATION, "Zapisano dane", null,
-                    "Zapisano dane do repozytorium.");
+            startRepositoryTask("Zapisywanie danych…");
+            var task = Repository.serializeAsync(this::updateRepositoryProgress);
+            finishRepositoryTask(task, () -> showAlert(Alert.AlertType.INFORMATION, "Zapisano dane", null,
+                    "Zapisano dane do repozytorium."));
         });
     }
 
 
     /**
-     * Wywołuje metodę służącą do deserializacji klas z repozytorium.
-     * Wywołuje metody, które uzupełniają tabelę państw i urzędów na podstawie wczytanych danych.
+     * Wywołuje metodę służącą do deserializacji klas z repozytorium w tle.
+     * Po jej zakończeniu wywołuje metody, które uzupełniają tabelę państw i urzędów na podstawie wczytanych danych.
      * Wyświetla stosowny komunikat.
      */
     private void setupLoadMenuItemListener() {
         loadMenu.setOnAction(_ -> {
-            Repository.deserialize();
-            showAlert(Alert.AlertType.INFORMATION, "Zaktualizowano dane", null,
-                    "Pobrano dane z repozytorium.");
-            populateTaxOfficesTable();
-            populateAddressCountryComboBox();
+            startRepositoryTask("Wczytywanie danych…");
+            var task = Repository.deserializeAsync(Platform::runLater, this::updateRepositoryProgress);
+            finishRepositoryTask(task, () -> {
+                refreshModelViews();
+                showAlert(Alert.AlertType.INFORMATION, "Zaktualizowano dane", null,
+                        "Pobrano dane z repozytorium.");
+            });
         });
     }
 
+
+    /**
+     * Wykonuje etapy uruchamiania aplikacji po wyświetleniu okna, przedstawiając ich postęp.
+     * Do czasu ich zakończenia blokuje menu zapisu i odczytu, a w razie błędu wyświetla stosowny komunikat.
+     *
+     * @param pipeline Etapy uruchamiania aplikacji.
+     */
+    public void hydrate(StartupPipeline pipeline) {
+        startRepositoryTask("Uruchamianie…");
+        var task = pipeline.start(new StartupPipeline.Listener() {
+            @Override
+            public void stageStarted(String name) {
+                Platform.runLater(() -> repositoryStatusLabel.setText("Uruchamianie: " + name + "…"));
+            }
+
+            @Override
+            public void progress(long done, long total) {
+                updateRepositoryProgress(done, total);
+            }
+        });
+        finishRepositoryTask(task, () -> {
+        });
+    }
+
+
+    /**
+     * Uzupełnia tabelę urzędów i listę państw na podstawie bieżących ekstensji oraz czyści tabelę adresów.
+     */
+    public void refreshModelViews() {
+        populateTaxOfficesTable();
+        populateAddressCountryComboBox();
+        addressesTable.setItems(null);
+    }
+
+
+    /**
+     * Metoda pomocnicza – blokuje menu zapisu i odczytu oraz wyświetla pasek postępu.
+     *
+     * @param status Opis wykonywanej operacji.
+     */
+    private void startRepositoryTask(String status) {
+        saveMenu.setDisable(true);
+        loadMenu.setDisable(true);
+        repositoryProgressBar.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        repositoryProgressBar.setVisible(true);
+        repositoryStatusLabel.setText(status);
+    }
+
+
+    /**
+     * Metoda pomocnicza – przekazuje postęp zapisu lub odczytu, zgłaszany w wątku tła, do paska postępu.
+     */
+    private void updateRepositoryProgress(long done, long total) {
+        Platform.runLater(() -> repositoryProgressBar.setProgress(total == 0 ? 1 : (double) done / total));
+    }
+
+
+    /**
+     * Metoda pomocnicza – po zakończeniu zapisu lub odczytu odblokowuje menu i ukrywa pasek postępu.
+     * Wyświetla komunikat o błędzie lub wywołuje zadaną akcję.
+     *
+     * @param task      Zadanie zapisu lub odczytu.
+     * @param onSuccess Akcja wywoływana w wątku interfejsu po pomyślnym zakończeniu zadania.
+     */
+    private void finishRepositoryTask(CompletableFuture<Void> task, Runnable onSuccess) {
+        task.whenComplete((_, exception) -> Platform.runLater(() -> {
+            saveMenu.setDisable(false);
+            loadMenu.setDisable(false);
+            repositoryProgressBar.setVisible(false);
+            repositoryStatusLabel.setText(null);
+            if (exception == null) {
+                onSuccess.run();
+            } else {
+                var cause = exception instanceof CompletionException && exception.getCause() != null
+                        ? exception.getCause() : exception;
+                showAlert(Alert.AlertType.ERROR, "Błąd", null,
+                        "Operacja na repozytorium nie powiodła się: " + cause.getMessage());
+            }
+        }));
+    }
+
     /**
      * Wywołuje metodę uzupełniającą tabelę z listą powiązań dla wybranego adresu w sytuacji, gdy użytkownik
      * wybierze adres lub zmieni swój wybór.
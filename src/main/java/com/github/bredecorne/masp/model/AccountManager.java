@@ -58,6 +58,7 @@ public class AccountManager implements Serializable {
             periodEntrySets.put(periodEntrySet.getAbbreviation(),
                     periodEntrySet);
             periodEntrySet.setAccountManager(this);
+            ModelChanges.changed();
         }
     }
 
@@ -71,6 +72,7 @@ public class AccountManager implements Serializable {
         if (periodEntrySets.containsKey(periodEntrySet.getAbbreviation())) {
             periodEntrySets.remove(periodEntrySet.getAbbreviation());
             periodEntrySet.setAccountManager(this);
+            ModelChanges.changed();
         }
     }
 
@@ -86,6 +88,16 @@ public class AccountManager implements Serializable {
         return periodEntrySets.get(abbreviation);
     }
 
+
+    /**
+     * Zwraca kopię powiązanych zbiorów wpisów księgowych.
+     *
+     * @return Kopia zbioru powiązanych zbiorów wpisów księgowych.
+     */
+    public HashSet<PeriodEntrySet> getPeriodEntrySets() {
+        return new HashSet<>(periodEntrySets.values());
+    }
+
     public String getName() {
         return name;
     }
@@ -122,10 +122,20 @@ public class Address implements Serializable {
      * @param taxOffice Urząd podatkowy lub wartość null.
      */
     public void setTaxOffice(TaxOffice taxOffice) {
-        this.taxOffice = taxOffice;
+        linkTaxOffice(taxOffice);
         if (taxOffice != null) {
             taxOffice.addAddress(this);
         }
+        ModelChanges.changed();
+    }
+
+
+    /**
+     * Metoda pomocnicza – ustawia powiązanie z urzędem podatkowym bez wywołania metody po stronie urzędu.
+     * Wywoływana przez urząd podatkowy, który zgłasza zmianę powiązania swoim obserwatorom.
+     */
+    void linkTaxOffice(TaxOffice taxOffice) {
+        this.taxOffice = taxOffice;
     }
 
     /**
@@ -143,6 +153,7 @@ public class Address implements Serializable {
         if (!persons.contains(person)) {
             persons.add(person);
             person.addAddress(this);
+            ModelChanges.changed();
         }
     }
 
@@ -158,6 +169,7 @@ public class Address implements Serializable {
         if (persons.contains(person)) {
             persons.remove(person);
             person.removeAddress(this);
+            ModelChanges.changed();
         }
     }
 
@@ -0,0 +1,139 @@
+package com.github.bredecorne.masp.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+/**
+ * Klasa reprezentująca kursor przeglądający wpisy księgowe obrazu zbioru (PeriodEntrySet.Snapshot) w kolejności
+ * ich dodania.
+ * <p>
+ * Kursor odczytuje kolumny rejestru wpisów bezpośrednio – przejście do kolejnego wpisu nie tworzy żadnych obiektów.
+ * Obiekty daty, kwoty lub wartości BigDecimal tworzone są dopiero przez metody, które je zwracają; przeglądanie
+ * wymagające wyłącznie numeru dnia i kwoty w groszach (getEpochDay, getUnits) odbywa się bez alokacji.
+ * Kursor nie jest bezpieczny wątkowo, lecz wiele kursorów może przeglądać ten sam obraz równolegle.
+ * </p>
+ */
+public final class EntryCursor {
+
+    // Atrybuty wymagane
+    private final SegmentedLedger.View entries;
+    private final int to;
+
+    // Atrybuty pochodne – bieżący wpis
+    private int index;
+    private SegmentedLedger.Segment segment;
+    private int offset;
+
+
+    /**
+     * Tworzy kursor obejmujący wpisy o numerach z zadanego zakresu.
+     *
+     * @param entries Widok rejestru wpisów.
+     * @param from    Numer pierwszego przeglądanego wpisu.
+     * @param to      Numer wpisu następującego po ostatnim przeglądanym.
+     */
+    EntryCursor(SegmentedLedger.View entries, int from, int to) {
+        if (from < 0 || from > to || to > entries.size()) {
+            throw new IllegalArgumentException();
+        }
+        this.entries = entries;
+        this.to = to;
+        this.index = from - 1;
+    }
+
+
+    /**
+     * Przechodzi do kolejnego wpisu.
+     *
+     * @return Wartość logiczna – true, jeżeli kursor wskazuje kolejny wpis; false, jeżeli wpisy zostały wyczerpane.
+     */
+    public boolean next() {
+        if (index + 1 >= to) {
+            segment = null;
+            return false;
+        }
+        index++;
+        segment = entries.segment(index);
+        offset = index & SegmentedLedger.SEGMENT_MASK;
+        return true;
+    }
+
+    /**
+     * Zwraca numer bieżącego wpisu w zbiorze (liczony od zera).
+     *
+     * @return Numer wpisu.
+     */
+    public int getIndex() {
+        current();
+        return index;
+    }
+
+    /**
+     * Zwraca datę bieżącego wpisu jako numer dnia epoki (LocalDate.toEpochDay).
+     *
+     * @return Numer dnia epoki.
+     */
+    public int getEpochDay() {
+        return current().epochDay(offset);
+    }
+
+    public LocalDate getDate() {
+        return LocalDate.ofEpochDay(current().epochDay(offset));
+    }
+
+    /**
+     * Określa, czy wartość bieżącego wpisu mieści się w groszach typu long.
+     *
+     * @return Wartość logiczna – true, jeżeli wartość można odczytać metodą getUnits.
+     */
+    public boolean isCompact() {
+        return current().isCompact(offset);
+    }
+
+    /**
+     * Zwraca wartość bieżącego wpisu w groszach.
+     * Zwraca wyjątek ArithmeticException w sytuacji, gdy wartość nie mieści się w groszach typu long.
+     *
+     * @return Liczba groszy.
+     */
+    public long getUnits() {
+        if (!current().isCompact(offset)) {
+            throw new ArithmeticException();
+        }
+        return segment.units(offset);
+    }
+
+    public Money getMoney() {
+        return current().money(offset);
+    }
+
+    /**
+     * Zwraca wartość bieżącego wpisu w postaci, w jakiej została podana przy jego dodaniu.
+     *
+     * @return Wartość wpisu.
+     */
+    public BigDecimal getValue() {
+        return current().value(offset);
+    }
+
+    /**
+     * Zwraca uzasadnienie biznesowe bieżącego wpisu.
+     *
+     * @return Uzasadnienie lub wartość null.
+     */
+    public String getJustification() {
+        return entries.justification(current().justification(offset));
+    }
+
+    /**
+     * Metoda pomocnicza – zwraca segment bieżącego wpisu.
+     * Zwraca wyjątek w sytuacji, gdy kursor nie wskazuje żadnego wpisu.
+     */
+    private SegmentedLedger.Segment current() {
+        if (segment == null) {
+            throw new IllegalStateException();
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.bredecorne.masp.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+
+/**
+ * Klasa reprezentująca indeks wpisów księgowych uporządkowanych według daty.
+ * <p>
+ * Przechowuje posortowane daty wpisów oraz sumy narastające przychodów i kosztów, dzięki czemu sumy dla dowolnego
+ * podokresu wyznaczane są przez dwa wyszukiwania binarne i dwa odejmowania. Sumy narastające przechowywane są
+ * w groszach; jeżeli którykolwiek wpis lub suma nie mieści się w groszach typu long, indeks przechodzi
+ * na sumy BigDecimal.
+ * </p>
+ */
+class EntryDateIndex {
+
+    // Atrybuty wymagane
+    private final int[] epochDays;
+    private final long[] revenuePrefix;
+    private final long[] expensesPrefix;
+
+    // Atrybuty opcjonalne – używane wyłącznie, gdy sumy nie mieszczą się w groszach
+    private final BigDecimal[] exactRevenuePrefix;
+    private final BigDecimal[] exactExpensesPrefix;
+
+
+    /**
+     * Tworzy indeks na podstawie dat i wartości wpisów księgowych w dowolnej kolejności.
+     *
+     * @param epochDays   Daty wpisów wyrażone jako numery dni epoki.
+     * @param units       Wartości wpisów w groszach, w kolejności odpowiadającej datom.
+     * @param exactValues Wartości wpisów, które nie mieszczą się w groszach (pozostałe pozycje równe null), lub
+     *                    wartość null, jeżeli wszystkie wartości mieszczą się w groszach.
+     * @param count       Liczba wpisów zapisanych w tablicach.
+     */
+    EntryDateIndex(int[] epochDays, long[] units, BigDecimal[] exactValues, int count) {
+        var keys = new long[count];
+        for (var i = 0; i < count; i++) {
+            keys[i] = ((long) epochDays[i] << 32) | i; // Sortuje po dacie, zachowując indeks wpisu
+        }
+        Arrays.sort(keys);
+
+        var sortedDays = new int[count];
+        var revenue = new long[count + 1];
+        var expenses = new long[count + 1];
+        var compact = exactValues == null;
+        for (var i = 0; i < count && compact; i++) {
+            var value = units[(int) keys[i]];
+            sortedDays[i] = (int) (keys[i] >> 32);
+            try {
+                var positive = value > 0;
+                revenue[i + 1] = positive ? Math.addExact(revenue[i], value) : revenue[i];
+                expenses[i + 1] = positive ? expenses[i] : Math.addExact(expenses[i], value);
+            } catch (ArithmeticException e) {
+                compact = false;
+            }
+        }
+
+        this.epochDays = sortedDays;
+        if (compact) {
+            this.revenuePrefix = revenue;
+            this.expensesPrefix = expenses;
+            this.exactRevenuePrefix = null;
+            this.exactExpensesPrefix = null;
+        } else {
+            this.revenuePrefix = null;
+            this.expensesPrefix = null;
+            this.exactRevenuePrefix = new BigDecimal[count + 1];
+            this.exactExpensesPrefix = new BigDecimal[count + 1];
+            exactRevenuePrefix[0] = BigDecimal.ZERO;
+            exactExpensesPrefix[0] = BigDecimal.ZERO;
+            for (var i = 0; i < count; i++) {
+                var entry = (int) keys[i];
+                var value = exactValues != null && exactValues[entry] != null ? exactValues[entry] :
+                        BigDecimal.valueOf(units[entry], Money.SCALE);
+                sortedDays[i] = (int) (keys[i] >> 32);
+                var positive = value.signum() > 0;
+                exactRevenuePrefix[i + 1] = positive ? exactRevenuePrefix[i].add(value) : exactRevenuePrefix[i];
+                exactExpensesPrefix[i + 1] = positive ? exactExpensesPrefix[i] : exactExpensesPrefix[i].add(value);
+            }
+        }
+    }
+
+
+    /**
+     * Zwraca liczbę wpisów objętych indeksem.
+     *
+     * @return Liczba wpisów.
+     */
+    int size() {
+        return epochDays.length;
+    }
+
+
+    /**
+     * Oblicza sumę wartości dodatnich wpisów z zadanego przedziału dat (włącznie z datami granicznymi).
+     *
+     * @param from Data początkowa przedziału.
+     * @param to   Data końcowa przedziału.
+     * @return Suma przychodów w przedziale.
+     */
+    BigDecimal getRevenue(LocalDate from, LocalDate to) {
+        return sum(from, to, revenuePrefix, exactRevenuePrefix);
+    }
+
+
+    /**
+     * Oblicza sumę wartości ujemnych wpisów z zadanego przedziału dat (włącznie z datami granicznymi).
+     *
+     * @param from Data początkowa przedziału.
+     * @param to   Data końcowa przedziału.
+     * @return Suma kosztów w przedziale.
+     */
+    BigDecimal getExpenses(LocalDate from, LocalDate to) {
+        return sum(from, to, expensesPrefix, exactExpensesPrefix);
+    }
+
+
+    /**
+     * Metoda pomocnicza – oblicza różnicę sum narastających na granicach zadanego przedziału dat.
+     */
+    private BigDecimal sum(LocalDate from, LocalDate to, long[] prefix, BigDecimal[] exactPrefix) {
+        var lo = lowerBound(from.toEpochDay());
+        var hi = lowerBound(to.toEpochDay() + 1);
+        if (lo >= hi) {
+            return BigDecimal.ZERO;
+        }
+        if (prefix != null) {
+            return BigDecimal.valueOf(prefix[hi] - prefix[lo], Money.SCALE);
+        }
+        return exactPrefix[hi].subtract(exactPrefix[lo]);
+    }
+
+
+    /**
+     * Metoda pomocnicza – wyszukuje binarnie pierwszą pozycję, na której data wpisu nie jest wcześniejsza
+     * od zadanej.
+     *
+     * @param epochDay Data wyrażona jako numer dnia epoki.
+     * @return Indeks pierwszego wpisu o dacie nie wcześniejszej niż zadana lub liczba wpisów, jeżeli taki nie istnieje.
+     */
+    private int lowerBound(long epochDay) {
+        var lo = 0;
+        var hi = epochDays.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (epochDays[mid] < epochDay) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
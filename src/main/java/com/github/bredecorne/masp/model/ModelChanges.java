@@ -0,0 +1,42 @@
+package com.github.bredecorne.masp.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Klasa narzędziowa zliczająca zmiany atrybutów i powiązań obiektów modelu.
+ * <p>
+ * Metody zmieniające atrybut lub powiązanie obiektu zwiększają licznik zmian – porównanie jego wartości pozwala
+ * stwierdzić, czy od danej chwili model został zmieniony (np. w celu ustalenia, czy zapis repozytorium wymaga
+ * zapisu całego modelu). Dodanie wpisu księgowego oraz zmiana powiązania urzędu podatkowego z adresem
+ * metodami TaxOffice.addAddress i TaxOffice.removeAddress zgłaszane są obserwatorom zbiorów i urzędów, a nie
+ * licznikowi zmian.
+ * </p>
+ */
+public final class ModelChanges {
+
+    // Atrybuty klasowe
+    private static final AtomicLong version = new AtomicLong();
+
+
+    private ModelChanges() {
+    }
+
+
+    /**
+     * Zwraca bieżącą wartość licznika zmian.
+     *
+     * @return Licznik zmian – rośnie przy każdej zmianie modelu nieobjętej obserwatorami.
+     */
+    public static long getVersion() {
+        return version.get();
+    }
+
+
+    /**
+     * Rejestruje zmianę atrybutu lub powiązania obiektu modelu.
+     */
+    public static void changed() {
+        version.incrementAndGet();
+    }
+}
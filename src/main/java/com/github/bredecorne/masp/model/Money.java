@@ -0,0 +1,367 @@
+package com.github.bredecorne.masp.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+
+/**
+ * Klasa reprezentująca kwotę pieniężną jako liczbę groszy przechowywaną w zmiennej typu long.
+ * <p>
+ * Dodawanie i odejmowanie są dokładne. Mnożenie przez współczynnik (np. stawkę podatku) zaokrągla wynik do pełnych
+ * groszy zgodnie z ROUNDING_MODE. W sytuacji, gdy wartość nie mieści się w zakresie typu long lub ma więcej niż dwa
+ * miejsca po przecinku, obiekt automatycznie przechowuje ją jako BigDecimal, nie tracąc dokładności.
+ * </p>
+ * <p>
+ * Tryb kontroli krzyżowej (właściwość systemowa masp.money.crossCheck) porównuje wyniki obliczeń na groszach
+ * z wynikami obliczeń na BigDecimal i zwraca wyjątek w razie jakiejkolwiek rozbieżności.
+ * </p>
+ */
+public final class Money implements Comparable<Money>, Serializable {
+
+    // Atrybuty klasowe
+    public static final int SCALE = 2;
+    public static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+    public static final Money ZERO = new Money(0, null);
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+    private static volatile boolean crossCheckEnabled = Boolean.getBoolean("masp.money.crossCheck");
+
+    // Atrybuty wymagane
+    private final long units; // Wartość w groszach, o ile exact jest null
+
+    // Atrybuty opcjonalne
+    private final BigDecimal exact; // Wartość, która nie mieści się w groszach typu long
+
+
+    private Money(long units, BigDecimal exact) {
+        this.units = units;
+        this.exact = exact;
+    }
+
+
+    /**
+     * Tworzy kwotę na podstawie wartości BigDecimal bez utraty dokładności.
+     *
+     * @param value Wartość niebędąca null.
+     * @return Kwota odpowiadająca podanej wartości.
+     */
+    public static Money of(BigDecimal value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        if (value.scale() <= SCALE && value.precision() - value.scale() <= 16) {
+            return ofUnits(value.movePointRight(SCALE).longValue());
+        }
+        try {
+            return ofUnits(value.movePointRight(SCALE).longValueExact());
+        } catch (ArithmeticException e) {
+            return new Money(0, value);
+        }
+    }
+
+
+    /**
+     * Tworzy kwotę na podstawie liczby groszy.
+     *
+     * @param units Liczba groszy.
+     * @return Kwota odpowiadająca podanej liczbie groszy.
+     */
+    public static Money ofUnits(long units) {
+        return units == 0 ? ZERO : new Money(units, null);
+    }
+
+    public static boolean isCrossCheckEnabled() {
+        return crossCheckEnabled;
+    }
+
+
+    /**
+     * Włącza lub wyłącza tryb kontroli krzyżowej obliczeń.
+     *
+     * @param crossCheckEnabled Wartość logiczna – true, jeżeli wyniki mają być porównywane z obliczeniami BigDecimal.
+     */
+    public static void setCrossCheckEnabled(boolean crossCheckEnabled) {
+        Money.crossCheckEnabled = crossCheckEnabled;
+    }
+
+
+    /**
+     * Porównuje wynik obliczeń na groszach z wynikiem referencyjnym obliczonym na BigDecimal.
+     * Zwraca wyjątek w sytuacji, gdy wartości się różnią.
+     *
+     * @param actual   Wynik obliczeń na groszach.
+     * @param expected Wynik referencyjny.
+     * @return Wynik obliczeń na groszach.
+     */
+    public static Money crossCheck(Money actual, Money expected) {
+        if (actual.compareTo(expected) != 0) {
+            throw new IllegalStateException(String.format("Rozbieżność obliczeń: %s, oczekiwano %s",
+                    actual, expected));
+        }
+        return actual;
+    }
+
+
+    /**
+     * Mnoży liczbę groszy przez współczynnik i zaokrągla wynik do pełnych groszy zgodnie z ROUNDING_MODE.
+     * Zwraca wyjątek ArithmeticException w sytuacji, gdy wynik nie mieści się w zakresie typu long.
+     *
+     * @param units  Liczba groszy.
+     * @param factor Współczynnik, przez który mnożona jest kwota.
+     * @return Zaokrąglony iloczyn wyrażony w groszach.
+     */
+    public static long multiplyUnits(long units, Factor factor) {
+        if (!factor.compact) {
+            throw new ArithmeticException();
+        }
+        return roundUnits(Math.multiplyExact(units, factor.unscaled), factor.scale);
+    }
+
+
+    /**
+     * Zaokrągla wartość wyrażoną z dodatkową liczbą miejsc po przecinku do pełnych groszy zgodnie z ROUNDING_MODE.
+     *
+     * @param scaledUnits Wartość w groszach pomnożona przez 10^extraScale.
+     * @param extraScale  Liczba dodatkowych miejsc po przecinku.
+     * @return Wartość zaokrąglona do pełnych groszy.
+     */
+    public static long roundUnits(long scaledUnits, int extraScale) {
+        if (extraScale == 0) {
+            return scaledUnits;
+        }
+        var divisor = POWERS_OF_TEN[extraScale];
+        var quotient = scaledUnits / divisor;
+        var remainder = Math.abs(scaledUnits % divisor);
+        if (remainder >= divisor - remainder) { // Połowa lub więcej – zaokrągla od zera
+            quotient += Long.signum(scaledUnits);
+        }
+        return quotient;
+    }
+
+
+    /**
+     * Mnoży wartość przez 10^scale.
+     * Zwraca wyjątek ArithmeticException w sytuacji, gdy wynik nie mieści się w zakresie typu long.
+     *
+     * @param value Wartość mnożona.
+     * @param scale Wykładnik potęgi liczby 10, z przedziału od 0 do 18.
+     * @return Iloczyn wartości i 10^scale.
+     */
+    public static long scaleUp(long value, int scale) {
+        return Math.multiplyExact(value, POWERS_OF_TEN[scale]);
+    }
+
+
+    /**
+     * Określa, czy kwota jest przechowywana jako liczba groszy typu long.
+     *
+     * @return Wartość logiczna – true, jeżeli kwota mieści się w groszach; false, jeżeli przechowywana jest
+     * jako BigDecimal.
+     */
+    public boolean isCompact() {
+        return exact == null;
+    }
+
+
+    /**
+     * Zwraca wartość kwoty w groszach.
+     * Zwraca wyjątek ArithmeticException w sytuacji, gdy kwota nie mieści się w groszach typu long.
+     *
+     * @return Liczba groszy.
+     */
+    public long getUnits() {
+        if (exact != null) {
+            throw new ArithmeticException();
+        }
+        return units;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return exact != null ? exact : BigDecimal.valueOf(units, SCALE);
+    }
+
+    public int signum() {
+        return exact != null ? exact.signum() : Long.signum(units);
+    }
+
+    public Money add(Money other) {
+        if (exact == null && other.exact == null) {
+            var sum = units + other.units;
+            if (((units ^ sum) & (other.units ^ sum)) >= 0) { // Brak przepełnienia
+                return ofUnits(sum);
+            }
+        }
+        return of(toBigDecimal().add(other.toBigDecimal()));
+    }
+
+    public Money subtract(Money other) {
+        return add(other.negate());
+    }
+
+    public Money negate() {
+        if (exact == null && units != Long.MIN_VALUE) {
+            return ofUnits(-units);
+        }
+        return of(toBigDecimal().negate());
+    }
+
+
+    /**
+     * Mnoży kwotę przez współczynnik i zaokrągla wynik do pełnych groszy zgodnie z ROUNDING_MODE.
+     *
+     * @param factor Współczynnik, przez który mnożona jest kwota.
+     * @return Zaokrąglony iloczyn.
+     */
+    public Money multiply(Factor factor) {
+        if (exact == null && factor.compact) {
+            try {
+                return ofUnits(multiplyUnits(units, factor));
+            } catch (ArithmeticException e) {
+                // Przepełnienie – obliczenie zostanie wykonane na BigDecimal
+            }
+        }
+        return of(toBigDecimal().multiply(factor.value).setScale(SCALE, ROUNDING_MODE));
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        if (exact == null && other.exact == null) {
+            return Long.compare(units, other.units);
+        }
+        return toBigDecimal().compareTo(other.toBigDecimal());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money other && compareTo(other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return exact == null ? Long.hashCode(units) : exact.stripTrailingZeros().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+
+    /**
+     * Klasa reprezentująca współczynnik (np. stawkę podatku), przez który mnożone są kwoty.
+     * <p>
+     * Przechowuje wartość BigDecimal w postaci liczby całkowitej typu long i liczby miejsc po przecinku,
+     * dzięki czemu mnożenie kwoty nie wymaga tworzenia nowych obiektów.
+     * </p>
+     */
+    public static final class Factor implements Serializable {
+
+        // Atrybuty wymagane
+        private final BigDecimal value;
+        private final long unscaled;
+        private final int scale;
+        private final boolean compact;
+
+
+        private Factor(BigDecimal value) {
+            this.value = value;
+
+            var normalized = value.scale() < 0 ? value.setScale(0) : value;
+            var fits = normalized.scale() < POWERS_OF_TEN.length && normalized.unscaledValue().bitLength() < 64;
+            this.unscaled = fits ? normalized.unscaledValue().longValue() : 0;
+            this.scale = fits ? normalized.scale() : 0;
+            this.compact = fits;
+        }
+
+
+        /**
+         * Tworzy współczynnik na podstawie wartości BigDecimal.
+         *
+         * @param value Wartość niebędąca null.
+         * @return Współczynnik odpowiadający podanej wartości.
+         */
+        public static Factor of(BigDecimal value) {
+            if (value == null) {
+                throw new IllegalArgumentException();
+            }
+            return new Factor(value);
+        }
+
+        public BigDecimal getValue() {
+            return value;
+        }
+
+        public long getUnscaled() {
+            return unscaled;
+        }
+
+        public int getScale() {
+            return scale;
+        }
+
+
+        /**
+         * Określa, czy współczynnik może być użyty w obliczeniach na typie long.
+         *
+         * @return Wartość logiczna – true, jeżeli współczynnik mieści się w typie long; false w przeciwnym razie.
+         */
+        public boolean isCompact() {
+            return compact;
+        }
+    }
+
+
+    /**
+     * Klasa reprezentująca sumator kwot – umożliwia sumowanie bez tworzenia nowego obiektu przy każdym dodaniu.
+     * W razie przepełnienia zakresu typu long przechodzi na sumowanie przy użyciu BigDecimal.
+     */
+    public static final class Accumulator implements Serializable {
+
+        private long units;
+        private BigDecimal exact;
+
+
+        /**
+         * Dodaje kwotę do sumy.
+         *
+         * @param value Kwota niebędąca null.
+         */
+        public void add(Money value) {
+            if (value.exact == null) {
+                addUnits(value.units);
+            } else {
+                exact = toBigDecimal().add(value.exact);
+            }
+        }
+
+
+        /**
+         * Dodaje liczbę groszy do sumy.
+         *
+         * @param value Liczba groszy.
+         */
+        public void addUnits(long value) {
+            if (exact == null) {
+                var sum = units + value;
+                if (((units ^ sum) & (value ^ sum)) >= 0) { // Brak przepełnienia
+                    units = sum;
+                    return;
+                }
+                exact = BigDecimal.valueOf(units, SCALE);
+            }
+            exact = exact.add(BigDecimal.valueOf(value, SCALE));
+        }
+
+        public Money toMoney() {
+            return exact == null ? ofUnits(units) : of(exact);
+        }
+
+        public BigDecimal toBigDecimal() {
+            return exact == null ? BigDecimal.valueOf(units, SCALE) : exact;
+        }
+    }
+}
@@ -3,18 +3,24 @@ package com.github.bredecorne.masp.model;
 import com.github.bredecorne.masp.model.persons.Person;
 import com.github.bredecorne.masp.model.taxes.Tax;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
  * Klasa reprezentująca zbiór wpisów księgowych dla danego okresu i osoby.
  * <p>
  * Zawiera informacje o datach początkowej i końcowej, osobie, której dotyczy zbiór,
- * oraz wpisach księgowych (Entry). Umożliwia zarządzanie powiązaniami z menedżerami kont i podatkami.
+ * oraz wpisach księgowych, przechowywanych kolumnowo w rejestrze wpisów (SegmentedLedger) – bez tworzenia obiektu
+ * dla każdego wpisu. Umożliwia zarządzanie powiązaniami z menedżerami kont i podatkami.
  * </p>
  */
 public class PeriodEntrySet implements Serializable {
@@ -22,11 +28,21 @@ public class PeriodEntrySet implements Serializable {
     // Ekstensja
     private static HashSet<PeriodEntrySet> periodEntrySets = new HashSet<>();
 
+    // Obserwatorzy zmian wszystkich zbiorów wpisów księgowych
+    private static final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
     // Atrybuty wymagane
-    private final HashSet<Entry> entries = new HashSet<>();
+    private final SegmentedLedger entries = new SegmentedLedger();
     private final LocalDate dateFrom;
     private final LocalDate dateTo;
 
+    // Atrybuty pochodne – spójny obraz wpisów i ich sum, publikowany po każdym dodaniu wpisu księgowego
+    private volatile Snapshot snapshot = new Snapshot(entries.view(), Money.ZERO, Money.ZERO, null, null);
+    private transient volatile EntryDateIndex dateIndex; // Budowany przy pierwszym zapytaniu o podokres
+    private volatile long version; // Zwiększana przy każdej zmianie wpływającej na wyniki obliczeń
+    private transient TaxResultCache taxResultCache;
+    private transient volatile EntrySource entrySource; // Wpisy jeszcze nieodczytane z repozytorium
+
     // Asocjacje wiele-do-wiele
     private final HashSet<Tax> taxes = new HashSet<>();
 
@@ -61,10 +77,40 @@ public class PeriodEntrySet implements Serializable {
         return new HashSet<>(periodEntrySets);
     }
 
+    /**
+     * Zwraca niemodyfikowalny widok ekstensji klasy – pozwala przeglądać ekstensję bez tworzenia jej kopii.
+     *
+     * @return Niemodyfikowalny widok ekstensji klasy.
+     */
+    public static Set<PeriodEntrySet> getPeriodEntrySetsView() {
+        return Collections.unmodifiableSet(periodEntrySets);
+    }
+
     public static void setPeriodEntrySets(HashSet<PeriodEntrySet> periodEntrySets) {
         PeriodEntrySet.periodEntrySets = periodEntrySets;
     }
 
+    /**
+     * Rejestruje obserwatora, powiadamianego o dodaniu wpisów i zmianie właściciela każdego zbioru.
+     *
+     * @param listener Obserwator, niebędący wartością null.
+     */
+    public static void addListener(Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException();
+        }
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Wyrejestrowuje obserwatora.
+     *
+     * @param listener Zarejestrowany wcześniej obserwator.
+     */
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
     public Person getPerson() {
         return person;
     }
@@ -82,8 +128,16 @@ public class PeriodEntrySet implements Serializable {
             throw new IllegalArgumentException();
         }
         if (person != this.person) {
-            this.person.replacePeriodEntrySet(this, person);
-            this.person = person;
+            var previousPerson = this.person;
+            previousPerson.replacePeriodEntrySet(this, person);
+            if (person != this.person) { // Powiązanie mogło zostać już zmienione przez wywołanie zwrotne
+                this.person = person;
+                incrementVersion();
+                ModelChanges.changed();
+                for (var listener : listeners) {
+                    listener.personChanged(this, previousPerson, person);
+                }
+            }
         }
     }
 
@@ -111,33 +165,13 @@ public class PeriodEntrySet implements Serializable {
         return new HashSet<>(taxes);
     }
 
-    /**
-     * Oblicza sumę wartości negatywnych lub pozytywnych wszystkich wpisów księgowych, które są zawarte w danym
-     * zbiorze.
-     *
-     * @param positive Wartość logiczna, przyjmująca wartość true, kiedy metoda ma obliczyć sumę wartości dodatnich;
-     *                 false – w przeciwnym razie, kiedy ma obliczyć sumę wartości ujemnych.
-     * @return Suma wartości negatywnych lub pozytywnych wszystkich wpisów księgowych, które są zawarte w danym
-     * zbiorze.
-     */
-    private BigDecimal sum(boolean positive) {
-        var sum = new BigDecimal(BigInteger.ZERO);
-        var valuesStream = entries.stream().map(Entry::getValue);
-        
-        if (positive) {
-            return valuesStream.filter(v -> v.compareTo(BigDecimal.ZERO) > 0).reduce(BigDecimal.ZERO, BigDecimal::add);
-        } else {
-            return valuesStream.filter(v -> v.compareTo(BigDecimal.ZERO) < 0).reduce(BigDecimal.ZERO, BigDecimal::add);
-        }
-    }
-
     /**
      * Oblicza przychód.
      *
      * @return Przychód uzyskany w danym okresie księgowym.
      */
     public BigDecimal getRevenue() {
-        return sum(true);
+        return getSnapshot().getRevenue();
     }
 
     /**
@@ -146,7 +180,7 @@ public class PeriodEntrySet implements Serializable {
      * @return Koszt uzyskania przychodu w danym okresie księgowym.
      */
     public BigDecimal getExpenses() {
-        return sum(false);
+        return getSnapshot().getExpenses();
     }
 
     /**
@@ -155,7 +189,189 @@ public class PeriodEntrySet implements Serializable {
      * @return Dochód uzyskany w danym okresie księgowym.
      */
     public BigDecimal getIncome() {
-        return getRevenue().add(getExpenses());
+        return getIncomeMoney().toBigDecimal();
+    }
+
+    /**
+     * Oblicza dochód jako kwotę wyrażoną w groszach.
+     *
+     * @return Dochód uzyskany w danym okresie księgowym.
+     */
+    public Money getIncomeMoney() {
+        return getSnapshot().getIncomeMoney();
+    }
+
+    /**
+     * Zwraca spójny obraz wpisów księgowych i ich sum. Nie zakłada blokady – obraz może być przeglądany
+     * równolegle z dodawaniem kolejnych wpisów, które nie będą w nim uwzględnione.
+     * Jeżeli wpisy zbioru nie zostały jeszcze odczytane ze źródła wpisów, odczytuje je.
+     *
+     * @return Obraz zbioru wpisów księgowych w chwili wywołania metody.
+     */
+    public Snapshot getSnapshot() {
+        if (entrySource != null) {
+            loadEntries();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Ustawia źródło wpisów księgowych, odczytywanych dopiero przy pierwszym użyciu wpisów lub ich sum – pozwala
+     * wczytać zbiór bez wpisów i nie przechowywać w pamięci wpisów zbiorów, które nie są używane.
+     * Wpisy odczytane ze źródła nie są zgłaszane obserwatorom jako nowe.
+     * Zwraca wyjątek w sytuacji, gdy zbiór zawiera już wpisy lub posiada źródło wpisów.
+     *
+     * @param entrySource Źródło wpisów księgowych, niebędące null.
+     */
+    public synchronized void setEntrySource(EntrySource entrySource) {
+        if (entrySource == null) {
+            throw new IllegalArgumentException();
+        }
+        if (this.entrySource != null || snapshot.getEntryCount() > 0) {
+            throw new IllegalStateException();
+        }
+        this.entrySource = entrySource;
+    }
+
+    /**
+     * Zwraca źródło wpisów księgowych oczekujących na odczyt.
+     *
+     * @return Źródło wpisów lub wartość null, jeżeli wpisy zostały już odczytane.
+     */
+    public EntrySource getEntrySource() {
+        return entrySource;
+    }
+
+    /**
+     * Określa, czy wpisy księgowe zbioru zostały odczytane.
+     *
+     * @return Wartość logiczna – false, jeżeli wpisy oczekują na odczyt ze źródła wpisów.
+     */
+    public boolean isLoaded() {
+        return entrySource == null;
+    }
+
+    /**
+     * Metoda pomocnicza – odczytuje wpisy ze źródła wpisów i publikuje obraz zbioru. Źródło jest zwalniane
+     * dopiero po opublikowaniu obrazu, dzięki czemu wątek, który nie widzi źródła, widzi już odczytane wpisy.
+     */
+    private synchronized void loadEntries() {
+        var source = entrySource;
+        if (source == null) {
+            return;
+        }
+        var dates = new ArrayList<LocalDate>();
+        var values = new ArrayList<BigDecimal>();
+        var justifications = new ArrayList<String>();
+        source.forEachEntry((date, value, justification) -> {
+            dates.add(date);
+            values.add(value);
+            justifications.add(justification);
+        });
+        var loadedDates = dates.toArray(new LocalDate[0]);
+        var loadedValues = values.toArray(new BigDecimal[0]);
+        var amounts = checkEntries(loadedDates, loadedValues, loadedDates.length);
+        appendEntries(loadedDates, loadedValues, amounts, justifications.toArray(new String[0]), loadedDates.length);
+        entrySource = null;
+    }
+
+    /**
+     * Oblicza przychód uzyskany w zadanym podokresie.
+     *
+     * @param from Data początkowa podokresu (włącznie), niebędąca wartością null.
+     * @param to   Data końcowa podokresu (włącznie), niebędąca wartością null i niepoprzedzająca daty początkowej.
+     * @return Suma dodatnich wpisów księgowych z danego podokresu.
+     */
+    public BigDecimal getRevenue(LocalDate from, LocalDate to) {
+        return getDateIndex(from, to).getRevenue(from, to);
+    }
+
+    /**
+     * Oblicza koszt uzyskania przychodu poniesiony w zadanym podokresie.
+     *
+     * @param from Data początkowa podokresu (włącznie), niebędąca wartością null.
+     * @param to   Data końcowa podokresu (włącznie), niebędąca wartością null i niepoprzedzająca daty początkowej.
+     * @return Suma ujemnych wpisów księgowych z danego podokresu.
+     */
+    public BigDecimal getExpenses(LocalDate from, LocalDate to) {
+        return getDateIndex(from, to).getExpenses(from, to);
+    }
+
+    /**
+     * Oblicza dochód uzyskany w zadanym podokresie.
+     *
+     * @param from Data początkowa podokresu (włącznie), niebędąca wartością null.
+     * @param to   Data końcowa podokresu (włącznie), niebędąca wartością null i niepoprzedzająca daty początkowej.
+     * @return Dochód uzyskany w danym podokresie.
+     */
+    public BigDecimal getIncome(LocalDate from, LocalDate to) {
+        var index = getDateIndex(from, to);
+        return index.getRevenue(from, to).add(index.getExpenses(from, to));
+    }
+
+    /**
+     * Metoda pomocnicza – weryfikuje zadany podokres i zwraca indeks dat wpisów księgowych, budując go,
+     * jeżeli od ostatniego zapytania dodano nowe wpisy. Indeks budowany jest na podstawie bieżącego obrazu zbioru.
+     *
+     * @param from Data początkowa podokresu.
+     * @param to   Data końcowa podokresu.
+     * @return Aktualny indeks dat wpisów księgowych.
+     */
+    private EntryDateIndex getDateIndex(LocalDate from, LocalDate to) {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new IllegalArgumentException();
+        }
+        var current = getSnapshot();
+        var index = dateIndex;
+        if (index == null || index.size() != current.getEntryCount()) {
+            var count = current.getEntryCount();
+            var epochDays = new int[count];
+            var units = new long[count];
+            BigDecimal[] exactValues = null; // Tworzona przy pierwszej wartości, która nie mieści się w groszach
+            var cursor = current.cursor();
+            while (cursor.next()) {
+                var i = cursor.getIndex();
+                epochDays[i] = cursor.getEpochDay();
+                if (cursor.isCompact()) {
+                    units[i] = cursor.getUnits();
+                } else {
+                    if (exactValues == null) {
+                        exactValues = new BigDecimal[count];
+                    }
+                    exactValues[i] = cursor.getValue();
+                }
+            }
+            index = new EntryDateIndex(epochDays, units, exactValues, count);
+            dateIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Zwraca liczbę wpisów księgowych zawartych w danym zbiorze.
+     *
+     * @return Liczba wpisów księgowych.
+     */
+    public int getEntryCount() {
+        return getSnapshot().getEntryCount();
+    }
+
+    /**
+     * Zwraca najwcześniejszą datę spośród wpisów księgowych zawartych w danym zbiorze.
+     *
+     * @return Data najwcześniejszego wpisu księgowego lub wartość null, jeżeli zbiór jest pusty.
+     */
+    public LocalDate getFirstEntryDate() {
+        return getSnapshot().getFirstEntryDate();
+    }
+
+    /**
+     * Zwraca najpóźniejszą datę spośród wpisów księgowych zawartych w danym zbiorze.
+     *
+     * @return Data najpóźniejszego wpisu księgowego lub wartość null, jeżeli zbiór jest pusty.
+     */
+    public LocalDate getLastEntryDate() {
+        return getSnapshot().getLastEntryDate();
     }
 
     /**
@@ -165,7 +381,8 @@ public class PeriodEntrySet implements Serializable {
      * @return Wartość podatku obliczonego od dochodu osiągniętego w danym okresie księgowym.
      */
     public BigDecimal getTax(Tax applicableTax) {
-        return applicableTax.calculateTax(getIncome());
+        var result = getTaxResult(applicableTax);
+        return result.policy().round(result.tax().toBigDecimal());
     }
 
     /**
@@ -175,7 +392,8 @@ public class PeriodEntrySet implements Serializable {
      * @return Wartość dochodu w danym okresie księgowym pomniejszona o wartość podatku.
      */
     public BigDecimal getAfterTaxIncome(Tax applicableTax) {
-        return getIncome().subtract(applicableTax.calculateTax(getIncome()));
+        var result = getTaxResult(applicableTax);
+        return result.policy().round(result.afterTaxIncome().toBigDecimal());
     }
 
     /**
@@ -185,7 +403,80 @@ public class PeriodEntrySet implements Serializable {
      * @return Wartość prowizji dla danego okresu księgowego.
      */
     public BigDecimal getFee(Tax applicableTax) {
-        return getAfterTaxIncome(applicableTax).multiply(BigDecimal.ONE.subtract(person.getFeeRate()));
+        var result = getTaxResult(applicableTax);
+        if (result.fee() == null) {
+            throw new IllegalStateException(); // Właściciel zbioru nie ma określonej prowizji
+        }
+        return result.policy().round(result.fee().toBigDecimal());
+    }
+
+    /**
+     * Metoda pomocnicza – zwraca wynik obliczeń podatkowych z pamięci podręcznej lub oblicza go i zapamiętuje,
+     * jeżeli od ostatniego obliczenia zmieniła się wersja zbioru, prowizja właściciela lub zasady zaokrąglania.
+     * Podatek, dochód po opodatkowaniu i prowizja obliczane są na groszach i zaokrąglane jednokrotnie zgodnie
+     * z zasadami zaokrąglania właściciela; w trybie kontroli krzyżowej wyniki porównywane są z obliczeniem na
+     * BigDecimal.
+     *
+     * @param applicableTax Podatek, który ma zastosowanie dla danego okresu księgowego.
+     * @return Aktualny wynik obliczeń podatkowych.
+     */
+    private TaxResultCache.Result getTaxResult(Tax applicableTax) {
+        if (applicableTax == null) {
+            throw new IllegalArgumentException();
+        }
+        if (taxResultCache == null) {
+            taxResultCache = new TaxResultCache();
+        }
+        var feeRate = person.getFeeRate();
+        var policy = person.getRoundingPolicy();
+        var result = taxResultCache.get(applicableTax, version, feeRate, policy);
+        if (result == null) {
+            var income = getIncomeMoney();
+            var tax = applicableTax.calculateTax(income, policy);
+            var afterTaxIncome = policy.round(income.subtract(tax));
+            var fee = feeRate == null ? null :
+                    policy.multiply(afterTaxIncome, Money.Factor.of(BigDecimal.ONE.subtract(feeRate)));
+            result = new TaxResultCache.Result(version, feeRate, policy, tax, afterTaxIncome, fee);
+            if (Money.isCrossCheckEnabled()) {
+                crossCheck(applicableTax, result);
+            }
+            taxResultCache.put(applicableTax, result);
+        }
+        return result;
+    }
+
+    /**
+     * Metoda pomocnicza – porównuje wynik obliczeń podatkowych na groszach z wynikiem obliczonym na BigDecimal.
+     * Zwraca wyjątek w sytuacji, gdy wartości się różnią.
+     */
+    private void crossCheck(Tax applicableTax, TaxResultCache.Result result) {
+        var policy = result.policy();
+        var income = getIncome();
+        var tax = applicableTax.calculateTax(income, policy);
+        var afterTaxIncome = policy.round(income.subtract(tax));
+        Money.crossCheck(result.tax(), Money.of(tax));
+        Money.crossCheck(result.afterTaxIncome(), Money.of(afterTaxIncome));
+        if (result.fee() != null) {
+            Money.crossCheck(result.fee(), Money.of(policy.multiply(afterTaxIncome,
+                    BigDecimal.ONE.subtract(result.feeRate()))));
+        }
+    }
+
+    /**
+     * Zwraca wersję zbioru wpisów księgowych – wartość zwiększaną przy dodaniu wpisu oraz zmianie właściciela
+     * zbioru.
+     *
+     * @return Wersja zbioru wpisów księgowych.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Metoda pomocnicza – zwiększa wersję zbioru wpisów księgowych.
+     */
+    private synchronized void incrementVersion() {
+        version++;
     }
 
     /**
@@ -201,6 +492,7 @@ public class PeriodEntrySet implements Serializable {
         if (!taxes.contains(tax)) {
             taxes.add(tax);
             tax.addPeriodEntrySet(this);
+            ModelChanges.changed();
         }
     }
 
@@ -214,6 +506,7 @@ public class PeriodEntrySet implements Serializable {
         if (taxes.contains(tax)) {
             taxes.remove(tax);
             tax.removePeriodEntrySet(this);
+            ModelChanges.changed();
         }
     }
 
@@ -242,96 +535,312 @@ public class PeriodEntrySet implements Serializable {
             this.accountManager = accountManager;
             accountManager.addPeriodEntrySet(this);
         }
+        ModelChanges.changed();
     }
 
     /**
-     * Tworzy i dodaje nowy obiekt wpisu księgowego.
+     * Tworzy i dodaje nowy wpis księgowy.
      *
      * @param date          Data, kiedy odbyła się transakcja będąca podstawą wpisu księgowego.
      * @param value         Wartość wpisu księgowego – ujemna lub dodatnia.
      * @param justification Opcjonalne uzasadnienie biznesowe dokonanej transakcji.
      */
     public void addEntry(LocalDate date, BigDecimal value, String justification) {
-        entries.add(
-                new Entry(date, value, justification)
-        );
+        addEntries(new LocalDate[]{date}, new BigDecimal[]{value}, new String[]{justification}, 1);
     }
 
     /**
-     * Tworzy i dodaje nowy obiekt wpisu księgowego z pominięciem zadania opcjonalnego atrybutu uzasadnienia
-     * biznesowego.
+     * Tworzy i dodaje nowy wpis księgowy z pominięciem zadania opcjonalnego atrybutu uzasadnienia biznesowego.
      *
      * @param date  Data, kiedy odbyła się transakcja będąca podstawą wpisu księgowego.
      * @param value Wartość wpisu księgowego – ujemna lub dodatnia.
      */
     public void addEntry(LocalDate date, BigDecimal value) {
-        entries.add(
-                new Entry(date, value)
-        );
+        addEntries(new LocalDate[]{date}, new BigDecimal[]{value}, null, 1);
+    }
+
+    /**
+     * Tworzy i dodaje wiele wpisów księgowych naraz.
+     * Weryfikuje wszystkie wpisy przed dodaniem któregokolwiek z nich – w razie błędu zbiór pozostaje niezmieniony.
+     * Obraz zbioru publikowany jest jednokrotnie, po dodaniu wszystkich wpisów.
+     *
+     * @param dates          Daty transakcji stanowiących podstawę wpisów księgowych.
+     * @param values         Wartości wpisów księgowych, w kolejności odpowiadającej datom.
+     * @param justifications Opcjonalne uzasadnienia biznesowe w kolejności odpowiadającej datom lub wartość null.
+     * @param count          Liczba wpisów do dodania, licząc od początku tablic.
+     */
+    public void addEntries(LocalDate[] dates, BigDecimal[] values, String[] justifications, int count) {
+        if (dates == null || values == null || count < 0 || count > dates.length || count > values.length ||
+                (justifications != null && count > justifications.length)) {
+            throw new IllegalArgumentException();
+        }
+        var amounts = checkEntries(dates, values, count);
+        var from = append(dates, values, amounts, justifications, count);
+        publish(dates, values, amounts, justifications, count, from);
+    }
+
+    /**
+     * Metoda pomocnicza – weryfikuje daty i wartości wpisów księgowych i wyznacza ich wartości w groszach.
+     * Zwraca wyjątek w sytuacji, gdy data lub wartość wpisu jest null albo wartość jest równa zero.
+     *
+     * @return Wartości wpisów wyrażone jako kwoty, w kolejności odpowiadającej datom.
+     */
+    private static Money[] checkEntries(LocalDate[] dates, BigDecimal[] values, int count) {
+        var amounts = new Money[count];
+        for (var i = 0; i < count; i++) {
+            if (dates[i] == null || values[i] == null || values[i].equals(BigDecimal.ZERO)) {
+                throw new IllegalArgumentException();
+            }
+            amounts[i] = Money.of(values[i]);
+        }
+        return amounts;
+    }
+
+    /**
+     * Metoda pomocnicza – dopisuje zweryfikowane wpisy księgowe do rejestru i publikuje nowy obraz zbioru
+     * z zaktualizowanymi sumami przychodów i kosztów, liczbą wpisów oraz skrajnymi datami wpisów. Dzięki temu metody
+     * zwracające te wartości nie muszą przeglądać całego zbioru, a odczyt nie wymaga blokady.
+     *
+     * @return Numer pierwszego dopisanego wpisu w zbiorze.
+     */
+    private synchronized int append(LocalDate[] dates, BigDecimal[] values, Money[] amounts, String[] justifications,
+                                    int count) {
+        loadEntries(); // Nowe wpisy dopisywane są po wpisach oczekujących na odczyt
+        var from = entries.size();
+        appendEntries(dates, values, amounts, justifications, count);
+        return from;
     }
 
-    private class Entry implements Serializable {
+    /**
+     * Metoda pomocnicza – dopisuje wpisy księgowe i publikuje nowy obraz zbioru. Wywoływana z blokadą zbioru.
+     */
+    private void appendEntries(LocalDate[] dates, BigDecimal[] values, Money[] amounts, String[] justifications,
+                               int count) {
+        if (count == 0) {
+            return;
+        }
+        var current = snapshot;
+        var revenue = current.revenue;
+        var expenses = current.expenses;
+        var firstEntryDate = current.firstEntryDate;
+        var lastEntryDate = current.lastEntryDate;
+        for (var i = 0; i < count; i++) {
+            var date = dates[i];
+            entries.append(date, values[i], amounts[i], justifications == null ? null : justifications[i]);
+            if (amounts[i].signum() > 0) {
+                revenue = revenue.add(amounts[i]);
+            } else {
+                expenses = expenses.add(amounts[i]);
+            }
+            if (firstEntryDate == null || date.isBefore(firstEntryDate)) {
+                firstEntryDate = date;
+            }
+            if (lastEntryDate == null || date.isAfter(lastEntryDate)) {
+                lastEntryDate = date;
+            }
+        }
+        snapshot = new Snapshot(entries.view(), revenue, expenses, firstEntryDate, lastEntryDate);
+        version++;
+    }
 
-        // Atrybuty wymagane
-        private final LocalDate date;
-        private final BigDecimal value;
+    /**
+     * Metoda pomocnicza – powiadamia obserwatorów o dopisanych wpisach. Wywoływana po zwolnieniu blokady
+     * dopisywania.
+     *
+     * @param from Numer pierwszego dopisanego wpisu w zbiorze.
+     */
+    private void publish(LocalDate[] dates, BigDecimal[] values, Money[] amounts, String[] justifications, int count,
+                         int from) {
+        for (var listener : listeners) {
+            for (var i = 0; i < count; i++) {
+                listener.entryAdded(this, from + i, dates[i], amounts[i]);
+                listener.entryAdded(this, dates[i], values[i], justifications == null ? null : justifications[i]);
+            }
+        }
+    }
 
-        // Atrybuty opcjonalne
-        private String justification;
+    /**
+     * Interfejs obserwatora zmian zbiorów wpisów księgowych – umożliwia przyrostową aktualizację struktur
+     * wyliczanych na podstawie wpisów.
+     */
+    public interface Listener {
 
+        /**
+         * Wywoływana po dodaniu wpisu księgowego do zbioru.
+         *
+         * @param periodEntrySet Zbiór, do którego dodano wpis.
+         * @param date           Data wpisu.
+         * @param value          Wartość wpisu.
+         */
+        void entryAdded(PeriodEntrySet periodEntrySet, LocalDate date, Money value);
 
         /**
-         * Tworzy obiekt reprezentujący wpis księgowy, uwzględniając atrybut opcjonalny justification.
+         * Wywoływana po dodaniu wpisu księgowego do zbioru – udostępnia dodatkowo numer wpisu w zbiorze, co pozwala
+         * rozpoznać wpisy uwzględnione już w odczytanym wcześniej obrazie zbioru. Domyślnie wywołuje metodę
+         * entryAdded(PeriodEntrySet, LocalDate, Money).
          *
-         * @param date          Data transakcji stanowiącej podstawę wpisu księgowego, niebędąca wartością null.
-         * @param value         Wartość transakcji stanowiącej podstawę wpisu księgowego, niebędąca wartością null.
-         * @param justification Uzasadnienie biznesowe dokonywanego wpisu księgowego.
+         * @param periodEntrySet Zbiór, do którego dodano wpis.
+         * @param index          Numer wpisu w zbiorze (liczony od zera), zgodny z kolejnością wpisów obrazu.
+         * @param date           Data wpisu.
+         * @param value          Wartość wpisu.
          */
-        public Entry(LocalDate date, BigDecimal value, String justification) {
-            if (date == null || value == null ||
-                    value.equals(BigDecimal.ZERO)) {
-                throw new IllegalArgumentException();
-            }
-            this.date = date;
-            this.value = value;
-            this.justification = justification;
+        default void entryAdded(PeriodEntrySet periodEntrySet, int index, LocalDate date, Money value) {
+            entryAdded(periodEntrySet, date, value);
         }
 
         /**
-         * Tworzy obiekt reprezentujący wpis księgowy z pominięciem atrybutu opcjonalnego justification.
+         * Wywoływana po dodaniu wpisu księgowego do zbioru, po metodzie entryAdded(PeriodEntrySet, LocalDate, Money) –
+         * udostępnia dokładną wartość wpisu i jego uzasadnienie.
          *
-         * @param date  Data transakcji stanowiącej podstawę wpisu księgowego, niebędąca wartością null.
-         * @param value Wartość transakcji stanowiącej podstawę wpisu księgowego, niebędąca wartością null.
+         * @param periodEntrySet Zbiór, do którego dodano wpis.
+         * @param date           Data wpisu.
+         * @param value          Dokładna wartość wpisu.
+         * @param justification  Uzasadnienie biznesowe lub wartość null.
          */
-        public Entry(LocalDate date, BigDecimal value) {
-            if (date == null || value == null ||
-                    value.equals(BigDecimal.ZERO)) {
-                throw new IllegalArgumentException();
-            }
-            this.date = date;
-            this.value = value;
+        default void entryAdded(PeriodEntrySet periodEntrySet, LocalDate date, BigDecimal value,
+                                String justification) {
+        }
+
+        /**
+         * Wywoływana po zmianie właściciela zbioru wpisów księgowych.
+         *
+         * @param periodEntrySet Zbiór, którego właściciel się zmienił.
+         * @param previousPerson Poprzedni właściciel.
+         * @param person         Nowy właściciel.
+         */
+        default void personChanged(PeriodEntrySet periodEntrySet, Person previousPerson, Person person) {
         }
+    }
+
+    /**
+     * Metoda pomocnicza – przed serializacją odczytuje wpisy oczekujące na odczyt, gdyż źródło wpisów nie jest
+     * serializowane.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getSnapshot();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Interfejs źródła wpisów księgowych odczytywanych przy pierwszym użyciu (np. z pliku repozytorium).
+     */
+    @FunctionalInterface
+    public interface EntrySource {
+
+        /**
+         * Przekazuje kolejne wpisy księgowe w kolejności ich dodania.
+         *
+         * @param visitor Obiekt wywoływany dla każdego wpisu.
+         */
+        void forEachEntry(EntryVisitor visitor);
+    }
+
+    /**
+     * Interfejs funkcyjny, służący do przeglądania wpisów księgowych bez udostępniania ich obiektów.
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
 
+        /**
+         * Wywoływana dla każdego przeglądanego wpisu księgowego.
+         *
+         * @param date          Data transakcji stanowiącej podstawę wpisu księgowego.
+         * @param value         Wartość wpisu księgowego.
+         * @param justification Uzasadnienie biznesowe lub wartość null.
+         */
+        void visit(LocalDate date, BigDecimal value, String justification);
+    }
 
-        public LocalDate getDate() {
-            return date;
+    /**
+     * Klasa reprezentująca niezmienny obraz zbioru wpisów księgowych – wpisy dodane do danej chwili
+     * wraz z ich sumami, liczbą oraz skrajnymi datami.
+     */
+    public static final class Snapshot implements Serializable {
+
+        private final SegmentedLedger.View entries;
+        private final Money revenue;
+        private final Money expenses;
+        private final LocalDate firstEntryDate;
+        private final LocalDate lastEntryDate;
+
+        private Snapshot(SegmentedLedger.View entries, Money revenue, Money expenses,
+                         LocalDate firstEntryDate, LocalDate lastEntryDate) {
+            this.entries = entries;
+            this.revenue = revenue;
+            this.expenses = expenses;
+            this.firstEntryDate = firstEntryDate;
+            this.lastEntryDate = lastEntryDate;
+        }
+
+        public int getEntryCount() {
+            return entries.size();
+        }
+
+        public BigDecimal getRevenue() {
+            return revenue.toBigDecimal();
+        }
+
+        public BigDecimal getExpenses() {
+            return expenses.toBigDecimal();
         }
 
-        public BigDecimal getValue() {
-            return value;
+        public BigDecimal getIncome() {
+            return getIncomeMoney().toBigDecimal();
         }
 
-        public String getJustification() {
-            return justification;
+        public Money getIncomeMoney() {
+            return revenue.add(expenses);
+        }
+
+        public LocalDate getFirstEntryDate() {
+            return firstEntryDate;
+        }
+
+        public LocalDate getLastEntryDate() {
+            return lastEntryDate;
+        }
+
+        /**
+         * Przegląda wpisy księgowe obrazu w kolejności ich dodania.
+         *
+         * @param visitor Obiekt wywoływany dla każdego wpisu.
+         */
+        public void forEachEntry(EntryVisitor visitor) {
+            forEachEntry(0, entries.size(), visitor);
+        }
+
+        /**
+         * Przegląda wpisy księgowe obrazu o numerach z zadanego zakresu, w kolejności ich dodania.
+         *
+         * @param from    Numer pierwszego przeglądanego wpisu (liczony od zera).
+         * @param to      Numer wpisu następującego po ostatnim przeglądanym, nieprzekraczający liczby wpisów obrazu.
+         * @param visitor Obiekt wywoływany dla każdego wpisu.
+         */
+        public void forEachEntry(int from, int to, EntryVisitor visitor) {
+            var cursor = cursor(from, to);
+            while (cursor.next()) {
+                visitor.visit(cursor.getDate(), cursor.getValue(), cursor.getJustification());
+            }
+        }
+
+        /**
+         * Zwraca kursor przeglądający wszystkie wpisy księgowe obrazu w kolejności ich dodania.
+         *
+         * @return Kursor ustawiony przed pierwszym wpisem.
+         */
+        public EntryCursor cursor() {
+            return new EntryCursor(entries, 0, entries.size());
         }
 
         /**
-         * Zmienia lub określa uzasadnienie biznesowe transakcji, stanowiącej podstawę wpisu księgowego.
+         * Zwraca kursor przeglądający wpisy księgowe obrazu o numerach z zadanego zakresu.
          *
-         * @param justification Uzasadnienie biznesowe dokonywanego wpisu księgowego.
+         * @param from Numer pierwszego przeglądanego wpisu (liczony od zera).
+         * @param to   Numer wpisu następującego po ostatnim przeglądanym, nieprzekraczający liczby wpisów obrazu.
+         * @return Kursor ustawiony przed pierwszym wpisem zakresu.
          */
-        public void setJustification(String justification) {
-            this.justification = justification;
+        public EntryCursor cursor(int from, int to) {
+            return new EntryCursor(entries, from, to);
         }
     }
 }
@@ -0,0 +1,195 @@
+package com.github.bredecorne.masp.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.EnumMap;
+
+
+/**
+ * Rekord reprezentujący zasady zaokrąglania kwot pieniężnych – liczbę miejsc po przecinku i tryb zaokrąglenia.
+ * Zasady stosowane są zarówno do kwot BigDecimal, jak i do wyników obliczeń na groszach (Money).
+ * <p>
+ * Każde państwo posiada własne zasady; domyślnie obowiązują zasady DEFAULT, zgodne z obliczeniami na groszach (Money).
+ * Zaokrąglanie wyników mnożenia przez stawki utrzymuje ograniczoną skalę wartości, dzięki czemu kolejne działania
+ * i porównania na dużych zbiorach pozostają tanie, a wyniki mają postać kanoniczną.
+ * </p>
+ *
+ * @param scale        Liczba miejsc po przecinku, z przedziału od 0 do 18.
+ * @param roundingMode Tryb zaokrąglenia, inny niż UNNECESSARY.
+ */
+public record RoundingPolicy(int scale, RoundingMode roundingMode) implements Serializable {
+
+    // Atrybuty klasowe
+    public static final RoundingPolicy DEFAULT = new RoundingPolicy(Money.SCALE, Money.ROUNDING_MODE);
+    public static final int MAX_RATE_SCALE = 10; // Największa dopuszczalna liczba miejsc po przecinku stawki
+    private static final EnumMap<Country, RoundingPolicy> policies = new EnumMap<>(Country.class);
+
+
+    public RoundingPolicy {
+        if (scale < 0 || scale > 18 || roundingMode == null || roundingMode == RoundingMode.UNNECESSARY) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+
+    /**
+     * Zwraca zasady zaokrąglania obowiązujące w danym państwie.
+     *
+     * @param country Państwo, niebędące null.
+     * @return Zasady ustawione dla państwa lub DEFAULT, jeżeli nie zostały ustawione.
+     */
+    public static synchronized RoundingPolicy of(Country country) {
+        if (country == null) {
+            throw new IllegalArgumentException();
+        }
+        return policies.getOrDefault(country, DEFAULT);
+    }
+
+
+    /**
+     * Ustawia zasady zaokrąglania obowiązujące w danym państwie.
+     *
+     * @param country Państwo, niebędące null.
+     * @param policy  Zasady zaokrąglania lub wartość null, jeżeli mają obowiązywać zasady DEFAULT.
+     */
+    public static synchronized void setPolicy(Country country, RoundingPolicy policy) {
+        if (country == null) {
+            throw new IllegalArgumentException();
+        }
+        if (policy == null) {
+            policies.remove(country);
+        } else {
+            policies.put(country, policy);
+        }
+    }
+
+
+    /**
+     * Sprowadza stawkę (np. prowizji) do postaci kanonicznej – bez zbędnych zer po przecinku.
+     * Zwraca wyjątek w sytuacji, gdy stawka ma więcej niż MAX_RATE_SCALE miejsc po przecinku.
+     *
+     * @param rate Stawka lub wartość null.
+     * @return Stawka w postaci kanonicznej lub wartość null, jeżeli stawka jest null.
+     */
+    public static BigDecimal normalizeRate(BigDecimal rate) {
+        if (rate == null) {
+            return null;
+        }
+        var normalized = rate.stripTrailingZeros();
+        if (normalized.scale() > MAX_RATE_SCALE) {
+            throw new IllegalArgumentException();
+        }
+        return normalized.scale() < 0 ? normalized.setScale(0) : normalized;
+    }
+
+
+    /**
+     * Zaokrągla kwotę do liczby miejsc po przecinku zgodnie z trybem zaokrąglenia.
+     *
+     * @param amount Kwota.
+     * @return Kwota zaokrąglona.
+     */
+    public BigDecimal round(BigDecimal amount) {
+        return amount.setScale(scale, roundingMode);
+    }
+
+
+    /**
+     * Mnoży kwotę przez współczynnik (np. stawkę) i zaokrągla wynik.
+     *
+     * @param amount Kwota.
+     * @param factor Współczynnik.
+     * @return Zaokrąglony iloczyn.
+     */
+    public BigDecimal multiply(BigDecimal amount, BigDecimal factor) {
+        return round(amount.multiply(factor));
+    }
+
+
+    /**
+     * Zaokrągla kwotę do liczby miejsc po przecinku zgodnie z trybem zaokrąglenia – odpowiednik round(BigDecimal)
+     * dla kwot wyrażonych w groszach.
+     *
+     * @param amount Kwota.
+     * @return Kwota zaokrąglona.
+     */
+    public Money round(Money amount) {
+        if (amount.isCompact()) {
+            if (scale >= Money.SCALE) {
+                return amount;
+            }
+            try {
+                return roundUnits(amount.getUnits(), 0);
+            } catch (ArithmeticException e) {
+                // Przepełnienie – zaokrąglenie zostanie wykonane na BigDecimal
+            }
+        }
+        return Money.of(round(amount.toBigDecimal()));
+    }
+
+
+    /**
+     * Mnoży kwotę przez współczynnik (np. stawkę) i zaokrągla wynik jednokrotnie – odpowiednik
+     * multiply(BigDecimal, BigDecimal) dla kwot wyrażonych w groszach.
+     *
+     * @param amount Kwota.
+     * @param factor Współczynnik.
+     * @return Zaokrąglony iloczyn.
+     */
+    public Money multiply(Money amount, Money.Factor factor) {
+        if (amount.isCompact() && factor.isCompact()) {
+            try {
+                return roundUnits(Math.multiplyExact(amount.getUnits(), factor.getUnscaled()), factor.getScale());
+            } catch (ArithmeticException e) {
+                // Przepełnienie – obliczenie zostanie wykonane na BigDecimal
+            }
+        }
+        return Money.of(multiply(amount.toBigDecimal(), factor.getValue()));
+    }
+
+
+    /**
+     * Zaokrągla wartość wyrażoną w groszach z dodatkową liczbą miejsc po przecinku zgodnie z zasadami – bez
+     * tworzenia obiektów BigDecimal, o ile liczba miejsc po przecinku zasad nie przekracza Money.SCALE.
+     * Zwraca wyjątek ArithmeticException w sytuacji, gdy wynik nie mieści się w groszach typu long.
+     *
+     * @param scaledUnits Wartość w groszach pomnożona przez 10^extraScale.
+     * @param extraScale  Liczba dodatkowych miejsc po przecinku.
+     * @return Wartość zaokrąglona.
+     */
+    public Money roundUnits(long scaledUnits, int extraScale) {
+        var valueScale = Money.SCALE + extraScale;
+        if (scale >= valueScale) {
+            return Money.of(BigDecimal.valueOf(scaledUnits, valueScale)); // Zaokrąglenie nie jest potrzebne
+        }
+        var rounded = divide(scaledUnits, Money.scaleUp(1, valueScale - scale));
+        return scale >= Money.SCALE ? Money.of(BigDecimal.valueOf(rounded, scale)) :
+                Money.ofUnits(Money.scaleUp(rounded, Money.SCALE - scale));
+    }
+
+
+    /**
+     * Metoda pomocnicza – dzieli wartość przez dzielnik, zaokrąglając iloraz zgodnie z trybem zaokrąglenia.
+     */
+    private long divide(long dividend, long divisor) {
+        var quotient = dividend / divisor;
+        var remainder = Math.abs(dividend % divisor);
+        if (remainder == 0) {
+            return quotient;
+        }
+        var sign = Long.signum(dividend);
+        var half = Long.compare(remainder, divisor - remainder); // Porównanie reszty z połową dzielnika
+        var awayFromZero = switch (roundingMode) {
+            case UP -> true;
+            case DOWN -> false;
+            case CEILING -> sign > 0;
+            case FLOOR -> sign < 0;
+            case HALF_UP -> half >= 0;
+            case HALF_DOWN -> half > 0;
+            case HALF_EVEN -> half > 0 || (half == 0 && (quotient & 1) != 0);
+            case UNNECESSARY -> throw new ArithmeticException();
+        };
+        return awayFromZero ? quotient + sign : quotient;
+    }
+}
@@ -0,0 +1,370 @@
+package com.github.bredecorne.masp.model;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * Klasa reprezentująca rejestr wpisów księgowych, do którego wpisy mogą być wyłącznie dopisywane.
+ * <p>
+ * Wpisy przechowywane są kolumnowo w segmentach o stałym rozmiarze – żaden wpis nie jest reprezentowany osobnym
+ * obiektem. Każdy segment zawiera tablice typów prostych: datę wpisu jako numer dnia epoki (int[]), wartość wpisu
+ * w groszach (long[]) wraz z liczbą miejsc po przecinku podanej wartości (byte[]) oraz numer uzasadnienia w słowniku
+ * uzasadnień rejestru (int[]). Wartości, które nie mieszczą się w groszach typu long, przechowywane są jako BigDecimal
+ * w dodatkowej tablicy segmentu, tworzonej dopiero przy pierwszej takiej wartości.
+ * </p>
+ * <p>
+ * Zapełniony segment nie jest już nigdy modyfikowany; nowe wpisy trafiają do ostatniego, otwartego segmentu. Pierwszy
+ * segment tworzony jest z niewielką pojemnością i powiększany przez kopiowanie, dzięki czemu małe zbiory nie
+ * zajmują pełnego segmentu. Wątki dopisujące synchronizują się wyłącznie między sobą. Wątki odczytujące nie
+ * zakładają żadnej blokady – pobierają widok obejmujący wpisy dopisane do chwili jego utworzenia, który pozostaje
+ * spójny niezależnie od późniejszych dopisań.
+ * </p>
+ * <p>
+ * Segmenty nie są serializowane bezpośrednio – zapisywany jest słownik uzasadnień, liczba wpisów i kolejne wpisy,
+ * a segmenty odtwarzane są przy odczycie.
+ * </p>
+ */
+class SegmentedLedger implements Serializable {
+
+    // Atrybuty klasowe
+    static final int SEGMENT_SHIFT = 10;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    static final int NO_JUSTIFICATION = -1; // Numer oznaczający brak uzasadnienia
+    private static final int INITIAL_CAPACITY = 8; // Początkowa pojemność pierwszego segmentu
+    private static final byte EXACT = Byte.MIN_VALUE; // Znacznik wartości przechowywanej jako BigDecimal
+
+    // Atrybuty wymagane
+    private transient volatile Segment[] segments = new Segment[1];
+    private transient volatile String[] dictionary = new String[INITIAL_CAPACITY];
+    private transient volatile int size;
+    private transient int dictionarySize;
+
+    // Atrybuty pochodne – numery uzasadnień, używane wyłącznie przy dopisywaniu
+    private transient HashMap<String, Integer> justificationIds = new HashMap<>();
+
+
+    /**
+     * Dopisuje wpis na koniec rejestru.
+     * Wpis zapisywany jest przed zwiększeniem liczby wpisów, dzięki czemu odczytujące wątki nigdy nie widzą
+     * niezapisanej pozycji. Segment widoczny w utworzonych wcześniej widokach nie jest zastępowany w ich tablicy
+     * segmentów – powiększenie segmentu tworzy nową tablicę segmentów.
+     *
+     * @param date          Data wpisu.
+     * @param value         Wartość wpisu.
+     * @param amount        Wartość wpisu wyrażona jako kwota (Money.of(value)).
+     * @param justification Uzasadnienie biznesowe lub wartość null.
+     */
+    synchronized void append(LocalDate date, BigDecimal value, Money amount, String justification) {
+        var epochDay = Math.toIntExact(date.toEpochDay());
+        var justificationId = justificationId(justification);
+        var index = size;
+        var segmentIndex = index >>> SEGMENT_SHIFT;
+        var offset = index & SEGMENT_MASK;
+        var current = segments;
+        if (segmentIndex == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        var segment = current[segmentIndex];
+        if (segment == null) {
+            // Otwiera nowy segment – poprzedni zostaje zamknięty
+            segment = new Segment(null, segmentIndex == 0 ? INITIAL_CAPACITY : SEGMENT_SIZE);
+            current[segmentIndex] = segment;
+        } else if (offset == segment.capacity()) {
+            segment = new Segment(segment, Math.min(SEGMENT_SIZE, segment.capacity() * 2));
+            current = current.clone();
+            current[segmentIndex] = segment;
+        }
+        segment.set(offset, epochDay, value, amount, justificationId);
+        segments = current;
+        size = index + 1; // Publikuje wpis
+    }
+
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Metoda pomocnicza – zwraca numer uzasadnienia w słowniku, dodając do słownika nowe uzasadnienie.
+     */
+    private int justificationId(String justification) {
+        if (justification == null) {
+            return NO_JUSTIFICATION;
+        }
+        var id = justificationIds.get(justification);
+        if (id != null) {
+            return id;
+        }
+        var current = dictionary;
+        if (dictionarySize == current.length) {
+            current = Arrays.copyOf(current, Math.max(INITIAL_CAPACITY, current.length * 2));
+        }
+        current[dictionarySize] = justification;
+        dictionary = current;
+        justificationIds.put(justification, dictionarySize);
+        return dictionarySize++;
+    }
+
+
+    /**
+     * Metoda pomocnicza – zapisuje słownik uzasadnień, liczbę wpisów i kolejne wpisy rejestru.
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        writeEntries(out, segments, dictionary, dictionarySize, size);
+    }
+
+    /**
+     * Metoda pomocnicza – odtwarza słownik uzasadnień i segmenty rejestru z zapisanych wpisów.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        dictionary = readDictionary(in);
+        dictionarySize = dictionary.length;
+        justificationIds = new HashMap<>();
+        for (var id = 0; id < dictionarySize; id++) {
+            justificationIds.put(dictionary[id], id);
+        }
+        var count = in.readInt();
+        segments = readSegments(in, count, dictionarySize);
+        size = count;
+    }
+
+    private static void writeEntries(ObjectOutputStream out, Segment[] segments, String[] dictionary,
+                                     int dictionarySize, int size) throws IOException {
+        out.writeInt(dictionarySize);
+        for (var id = 0; id < dictionarySize; id++) {
+            out.writeObject(dictionary[id]);
+        }
+        out.writeInt(size);
+        for (var i = 0; i < size; i++) {
+            var segment = segments[i >>> SEGMENT_SHIFT];
+            var offset = i & SEGMENT_MASK;
+            out.writeInt(segment.epochDays[offset]);
+            out.writeInt(segment.justifications[offset]);
+            out.writeByte(segment.scales[offset]);
+            if (segment.scales[offset] == EXACT) {
+                out.writeObject(segment.exact[offset]);
+            } else {
+                out.writeLong(segment.units[offset]);
+            }
+        }
+    }
+
+    private static String[] readDictionary(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        var dictionarySize = in.readInt();
+        if (dictionarySize < 0) {
+            throw new InvalidObjectException("Niepoprawna liczba uzasadnień rejestru");
+        }
+        var dictionary = new String[dictionarySize];
+        for (var id = 0; id < dictionarySize; id++) {
+            if (!(in.readObject() instanceof String justification)) {
+                throw new InvalidObjectException("Niepoprawne uzasadnienie rejestru");
+            }
+            dictionary[id] = justification;
+        }
+        return dictionary;
+    }
+
+    private static Segment[] readSegments(ObjectInputStream in, int size, int dictionarySize) throws IOException,
+            ClassNotFoundException {
+        if (size < 0) {
+            throw new InvalidObjectException("Niepoprawna liczba elementów rejestru");
+        }
+        var segments = new Segment[Math.max(1, (size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (var i = 0; i < size; i++) {
+            var segmentIndex = i >>> SEGMENT_SHIFT;
+            if (segments[segmentIndex] == null) {
+                var capacity = Math.min(SEGMENT_SIZE, size - (segmentIndex << SEGMENT_SHIFT));
+                segments[segmentIndex] = new Segment(null, capacity);
+            }
+            var segment = segments[segmentIndex];
+            var offset = i & SEGMENT_MASK;
+            segment.epochDays[offset] = in.readInt();
+            segment.justifications[offset] = in.readInt();
+            segment.scales[offset] = in.readByte();
+            if (segment.justifications[offset] < NO_JUSTIFICATION ||
+                    segment.justifications[offset] >= dictionarySize) {
+                throw new InvalidObjectException("Niepoprawny numer uzasadnienia wpisu");
+            }
+            if (segment.scales[offset] == EXACT) {
+                if (!(in.readObject() instanceof BigDecimal value)) {
+                    throw new InvalidObjectException("Niepoprawna wartość wpisu");
+                }
+                if (segment.exact == null) {
+                    segment.exact = new BigDecimal[segment.capacity()];
+                }
+                segment.exact[offset] = value;
+            } else {
+                segment.units[offset] = in.readLong();
+            }
+        }
+        return segments;
+    }
+
+
+    /**
+     * Zwraca spójny widok wpisów dopisanych do chwili wywołania metody.
+     *
+     * @return Niemodyfikowalny widok rejestru.
+     */
+    View view() {
+        var count = size; // Odczyt liczby wpisów przed odczytem segmentów gwarantuje widoczność wpisów
+        return new View(segments, dictionary, dictionarySize, count);
+    }
+
+
+    /**
+     * Klasa reprezentująca segment rejestru – kolumny kolejnych wpisów.
+     */
+    static final class Segment {
+
+        private final int[] epochDays;
+        private final long[] units; // Wartości w groszach, o ile scales nie zawiera znacznika EXACT
+        private final byte[] scales; // Liczba miejsc po przecinku podanej wartości
+        private final int[] justifications;
+        private BigDecimal[] exact; // Wartości, które nie mieszczą się w groszach typu long
+
+        /**
+         * Tworzy segment o zadanej pojemności, kopiując wpisy poprzedniej, mniejszej wersji segmentu.
+         *
+         * @param previous Poprzednia wersja segmentu lub wartość null.
+         * @param capacity Pojemność segmentu.
+         */
+        private Segment(Segment previous, int capacity) {
+            if (previous == null) {
+                epochDays = new int[capacity];
+                units = new long[capacity];
+                scales = new byte[capacity];
+                justifications = new int[capacity];
+            } else {
+                epochDays = Arrays.copyOf(previous.epochDays, capacity);
+                units = Arrays.copyOf(previous.units, capacity);
+                scales = Arrays.copyOf(previous.scales, capacity);
+                justifications = Arrays.copyOf(previous.justifications, capacity);
+                exact = previous.exact == null ? null : Arrays.copyOf(previous.exact, capacity);
+            }
+        }
+
+        private int capacity() {
+            return epochDays.length;
+        }
+
+        private void set(int offset, int epochDay, BigDecimal value, Money amount, int justification) {
+            epochDays[offset] = epochDay;
+            justifications[offset] = justification;
+            var scale = value.scale();
+            if (amount.isCompact() && scale > EXACT && scale <= Byte.MAX_VALUE) {
+                units[offset] = amount.getUnits();
+                scales[offset] = (byte) scale;
+            } else {
+                if (exact == null) {
+                    exact = new BigDecimal[capacity()];
+                }
+                exact[offset] = value;
+                scales[offset] = EXACT;
+            }
+        }
+
+        int epochDay(int offset) {
+            return epochDays[offset];
+        }
+
+        int justification(int offset) {
+            return justifications[offset];
+        }
+
+        /**
+         * Określa, czy wartość wpisu przechowywana jest w groszach.
+         */
+        boolean isCompact(int offset) {
+            return scales[offset] != EXACT;
+        }
+
+        long units(int offset) {
+            return units[offset];
+        }
+
+        Money money(int offset) {
+            return scales[offset] == EXACT ? Money.of(exact[offset]) : Money.ofUnits(units[offset]);
+        }
+
+        /**
+         * Odtwarza wartość wpisu z zachowaniem liczby miejsc po przecinku podanej wartości.
+         */
+        BigDecimal value(int offset) {
+            var scale = scales[offset];
+            if (scale == EXACT) {
+                return exact[offset];
+            }
+            var value = BigDecimal.valueOf(units[offset], Money.SCALE);
+            return scale == Money.SCALE ? value : value.setScale(scale);
+        }
+    }
+
+
+    /**
+     * Klasa reprezentująca niemodyfikowalny widok rejestru, obejmujący ustaloną liczbę początkowych wpisów.
+     * Widok współdzieli zamknięte segmenty z rejestrem – nie kopiuje wpisów.
+     */
+    static final class View implements Serializable {
+
+        private transient Segment[] segments;
+        private transient String[] dictionary;
+        private transient int dictionarySize;
+        private transient int size;
+
+        private View(Segment[] segments, String[] dictionary, int dictionarySize, int size) {
+            this.segments = segments;
+            this.dictionary = dictionary;
+            this.dictionarySize = dictionarySize;
+            this.size = size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Zwraca segment zawierający wpis o zadanym numerze.
+         *
+         * @param index Numer wpisu, mniejszy od liczby wpisów widoku.
+         * @return Segment wpisu; pozycja wpisu w segmencie to index &amp; SEGMENT_MASK.
+         */
+        Segment segment(int index) {
+            return segments[index >>> SEGMENT_SHIFT];
+        }
+
+        /**
+         * Zwraca uzasadnienie o zadanym numerze.
+         *
+         * @param id Numer uzasadnienia w słowniku lub NO_JUSTIFICATION.
+         * @return Uzasadnienie lub wartość null.
+         */
+        String justification(int id) {
+            return id == NO_JUSTIFICATION ? null : dictionary[id];
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            writeEntries(out, segments, dictionary, dictionarySize, size);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            dictionary = readDictionary(in);
+            dictionarySize = dictionary.length;
+            size = in.readInt();
+            segments = readSegments(in, size, dictionarySize);
+        }
+    }
+}
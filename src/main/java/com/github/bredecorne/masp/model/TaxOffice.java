@@ -2,6 +2,7 @@ package com.github.bredecorne.masp.model;
 
 import java.io.Serializable;
 import java.util.HashSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -16,6 +17,9 @@ public class TaxOffice implements Serializable {
     // Ekstensja
     private static HashSet<TaxOffice> taxOffices = new HashSet<>();
 
+    // Obserwatorzy zmian powiązań wszystkich urzędów podatkowych
+    private static final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
     // Atrybuty wymagane
     private final String name;
 
@@ -55,6 +59,27 @@ public class TaxOffice implements Serializable {
         TaxOffice.taxOffices = taxOffices;
     }
 
+    /**
+     * Rejestruje obserwatora, powiadamianego o utworzeniu i usunięciu powiązania urzędu z adresem.
+     *
+     * @param listener Obserwator, niebędący wartością null.
+     */
+    public static void addListener(Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException();
+        }
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Wyrejestrowuje obserwatora.
+     *
+     * @param listener Zarejestrowany wcześniej obserwator.
+     */
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
     public String getName() {
         return name;
     }
@@ -80,7 +105,10 @@ public class TaxOffice implements Serializable {
         }
         if (!addresses.contains(address)) {
             addresses.add(address);
-            address.setTaxOffice(this);
+            address.linkTaxOffice(this);
+            for (var listener : listeners) {
+                listener.addressAdded(this, address);
+            }
         }
     }
 
@@ -95,7 +123,33 @@ public class TaxOffice implements Serializable {
         }
         if (addresses.contains(address)) {
             addresses.remove(address);
-            address.setTaxOffice(null);
+            address.linkTaxOffice(null);
+            for (var listener : listeners) {
+                listener.addressRemoved(this, address);
+            }
         }
     }
+
+
+    /**
+     * Interfejs obserwatora zmian powiązań urzędów podatkowych z adresami.
+     */
+    public interface Listener {
+
+        /**
+         * Wywoływana po utworzeniu powiązania urzędu z adresem.
+         *
+         * @param taxOffice Urząd podatkowy.
+         * @param address   Powiązany adres.
+         */
+        void addressAdded(TaxOffice taxOffice, Address address);
+
+        /**
+         * Wywoływana po usunięciu powiązania urzędu z adresem.
+         *
+         * @param taxOffice Urząd podatkowy.
+         * @param address   Adres, z którym usunięto powiązanie.
+         */
+        void addressRemoved(TaxOffice taxOffice, Address address);
+    }
 }
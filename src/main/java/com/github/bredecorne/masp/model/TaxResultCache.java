@@ -0,0 +1,142 @@
+package com.github.bredecorne.masp.model;
+
+import com.github.bredecorne.masp.model.taxes.Tax;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Klasa reprezentująca pamięć podręczną wyników obliczeń podatkowych zbioru wpisów księgowych.
+ * <p>
+ * Przechowuje obliczone wartości podatku, dochodu po opodatkowaniu i prowizji dla każdego podatku. Wynik jest
+ * aktualny, dopóki nie zmieni się wersja zbioru wpisów księgowych, prowizja jego właściciela ani zasady zaokrąglania.
+ * Liczba przechowywanych wyników jest ograniczona – po jej przekroczeniu usuwany jest wynik najdawniej używany.
+ * </p>
+ */
+public class TaxResultCache {
+
+    // Atrybuty klasowe
+    public static final int DEFAULT_CAPACITY = 16;
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+    private static final AtomicLong evictionCount = new AtomicLong();
+
+    // Atrybuty wymagane
+    private final LinkedHashMap<Tax, Result> results;
+
+
+    public TaxResultCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Tworzy pamięć podręczną o zadanej pojemności.
+     *
+     * @param capacity Maksymalna liczba przechowywanych wyników, większa od 0.
+     */
+    public TaxResultCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.results = new LinkedHashMap<>(Math.min(capacity, DEFAULT_CAPACITY) * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Tax, Result> eldest) {
+                if (size() > capacity) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    public static long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+
+    /**
+     * Zeruje liczniki trafień, chybień i usunięć wszystkich pamięci podręcznych.
+     */
+    public static void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+    }
+
+
+    /**
+     * Zwraca aktualny wynik obliczeń dla danego podatku.
+     * Wynik obliczony dla innej wersji zbioru, innej prowizji lub innych zasad zaokrąglania jest usuwany
+     * i traktowany jako brak wyniku.
+     *
+     * @param tax     Podatek, dla którego obliczono wynik.
+     * @param version Bieżąca wersja zbioru wpisów księgowych.
+     * @param feeRate Bieżąca prowizja właściciela zbioru.
+     * @param policy  Bieżące zasady zaokrąglania.
+     * @return Aktualny wynik lub wartość null, jeżeli wynik nie istnieje lub jest nieaktualny.
+     */
+    public synchronized Result get(Tax tax, long version, BigDecimal feeRate, RoundingPolicy policy) {
+        var result = results.get(tax);
+        if (result != null && result.version() == version && sameFeeRate(result.feeRate(), feeRate) &&
+                result.policy().equals(policy)) {
+            hitCount.incrementAndGet();
+            return result;
+        }
+        if (result != null) {
+            results.remove(tax);
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+
+    /**
+     * Zapisuje wynik obliczeń dla danego podatku.
+     *
+     * @param tax    Podatek, dla którego obliczono wynik.
+     * @param result Wynik obliczeń.
+     */
+    public synchronized void put(Tax tax, Result result) {
+        results.put(tax, result);
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+
+    /**
+     * Metoda pomocnicza – porównuje prowizje, dopuszczając wartości null.
+     */
+    private static boolean sameFeeRate(BigDecimal a, BigDecimal b) {
+        return a == b || (a != null && b != null && a.compareTo(b) == 0);
+    }
+
+
+    /**
+     * Rekord reprezentujący wynik obliczeń podatkowych dla jednej wersji zbioru wpisów księgowych.
+     *
+     * @param version        Wersja zbioru wpisów księgowych, dla której obliczono wynik.
+     * @param feeRate        Prowizja właściciela zbioru w chwili obliczenia.
+     * @param policy         Zasady zaokrąglania zastosowane w obliczeniu.
+     * @param tax            Wartość podatku.
+     * @param afterTaxIncome Dochód po opodatkowaniu.
+     * @param fee            Wartość prowizji.
+     */
+    public record Result(long version, BigDecimal feeRate, RoundingPolicy policy, Money tax, Money afterTaxIncome,
+                         Money fee) {
+    }
+}
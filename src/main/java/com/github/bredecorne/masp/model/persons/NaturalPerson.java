@@ -1,5 +1,6 @@
 package com.github.bredecorne.masp.model.persons;
 
+import com.github.bredecorne.masp.model.ModelChanges;
 import com.github.bredecorne.masp.model.Status;
 
 import java.math.BigDecimal;
@@ -38,5 +39,6 @@ public class NaturalPerson extends Person {
 
     public void setUniformTax(boolean uniformTax) {
         this.uniformTax = uniformTax;
+        ModelChanges.changed();
     }
 }
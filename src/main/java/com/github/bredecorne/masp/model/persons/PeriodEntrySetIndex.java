@@ -0,0 +1,344 @@
+package com.github.bredecorne.masp.model.persons;
+
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+
+/**
+ * Klasa reprezentująca indeks przedziałowy zbiorów wpisów księgowych jednej osoby.
+ * <p>
+ * Zbiory przechowywane są w zrównoważonym drzewie (AVL) uporządkowanym według daty początkowej okresu. Każdy węzeł
+ * przechowuje dodatkowo najpóźniejszą datę końcową w swoim poddrzewie, dzięki czemu wyszukanie zbiorów
+ * nakładających się na zadany przedział (lub obejmujących zadaną datę) wymaga czasu O(log n + k), gdzie k
+ * oznacza liczbę znalezionych zbiorów. Indeks jest aktualizowany przez obiekt osoby przy każdej zmianie powiązań
+ * ze zbiorami wpisów księgowych.
+ * </p>
+ */
+public class PeriodEntrySetIndex {
+
+    // Atrybuty wymagane
+    private Node root;
+    private int size;
+    private long sequence; // Rozróżnia zbiory o tej samej dacie początkowej
+
+
+    PeriodEntrySetIndex() {
+    }
+
+
+    /**
+     * Dodaje zbiór wpisów księgowych do indeksu.
+     *
+     * @param periodEntrySet Zbiór wpisów księgowych, niebędący null.
+     */
+    void add(PeriodEntrySet periodEntrySet) {
+        root = insert(root, new Node(periodEntrySet, sequence++));
+        size++;
+    }
+
+
+    /**
+     * Usuwa zbiór wpisów księgowych z indeksu.
+     *
+     * @param periodEntrySet Zbiór wpisów księgowych.
+     * @return Wartość true, jeżeli zbiór znajdował się w indeksie.
+     */
+    boolean remove(PeriodEntrySet periodEntrySet) {
+        var node = find(periodEntrySet);
+        if (node == null) {
+            return false;
+        }
+        root = delete(root, node.from, node.sequence);
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Wyszukuje zbiory, których okres nakłada się na zadany przedział dat (włącznie z datami granicznymi).
+     *
+     * @param from Data początkowa przedziału.
+     * @param to   Data końcowa przedziału.
+     * @return Zbiory uporządkowane według daty początkowej okresu.
+     */
+    public List<PeriodEntrySet> getOverlapping(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException();
+        }
+        var result = new ArrayList<PeriodEntrySet>();
+        collectOverlapping(root, from.toEpochDay(), to.toEpochDay(), result);
+        return result;
+    }
+
+
+    /**
+     * Wyszukuje zbiory, których okres obejmuje zadaną datę.
+     *
+     * @param date Data.
+     * @return Zbiory uporządkowane według daty początkowej okresu.
+     */
+    public List<PeriodEntrySet> getCovering(LocalDate date) {
+        return getOverlapping(date, date);
+    }
+
+
+    /**
+     * Wyszukuje wszystkie pary zbiorów, których okresy nakładają się na siebie.
+     * Wymaga czasu O(n log n + k), gdzie k oznacza liczbę znalezionych par.
+     *
+     * @return Pary zbiorów; w każdej parze pierwszy zbiór rozpoczyna się nie później niż drugi.
+     */
+    public List<Overlap> getOverlaps() {
+        var result = new ArrayList<Overlap>();
+        var active = new PriorityQueue<Node>((a, b) -> Long.compare(a.to, b.to));
+        forEachInOrder(root, node -> {
+            while (!active.isEmpty() && active.peek().to < node.from) {
+                active.poll(); // Usuwa zbiory zakończone przed początkiem bieżącego
+            }
+            for (var other : active) {
+                result.add(new Overlap(other.periodEntrySet, node.periodEntrySet));
+            }
+            active.add(node);
+        });
+        return result;
+    }
+
+
+    /**
+     * Wyszukuje przedziały dat z zadanego zakresu, które nie są objęte okresem żadnego zbioru.
+     *
+     * @param from Data początkowa zakresu.
+     * @param to   Data końcowa zakresu.
+     * @return Przedziały niepokryte, uporządkowane chronologicznie.
+     */
+    public List<Gap> getGaps(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException();
+        }
+        var result = new ArrayList<Gap>();
+        var next = from.toEpochDay(); // Pierwszy dzień, który nie jest jeszcze pokryty
+        var end = to.toEpochDay();
+        for (var periodEntrySet : getOverlapping(from, to)) {
+            var setFrom = periodEntrySet.getDateFrom().toEpochDay();
+            if (setFrom > next) {
+                result.add(new Gap(LocalDate.ofEpochDay(next), LocalDate.ofEpochDay(setFrom - 1)));
+            }
+            next = Math.max(next, periodEntrySet.getDateTo().toEpochDay() + 1);
+        }
+        if (next <= end) {
+            result.add(new Gap(LocalDate.ofEpochDay(next), to));
+        }
+        return result;
+    }
+
+
+    /**
+     * Wyszukuje przedziały dat pomiędzy najwcześniejszym a najpóźniejszym okresem, które nie są objęte okresem
+     * żadnego zbioru.
+     *
+     * @return Przedziały niepokryte, uporządkowane chronologicznie.
+     */
+    public List<Gap> getGaps() {
+        if (root == null) {
+            return new ArrayList<>();
+        }
+        var first = root;
+        while (first.left != null) {
+            first = first.left;
+        }
+        return getGaps(LocalDate.ofEpochDay(first.from), LocalDate.ofEpochDay(root.maxTo));
+    }
+
+
+    /**
+     * Metoda pomocnicza – przegląda poddrzewo, pomijając gałęzie, które nie mogą zawierać szukanych zbiorów.
+     */
+    private static void collectOverlapping(Node node, long from, long to, List<PeriodEntrySet> result) {
+        if (node == null || node.maxTo < from) {
+            return;
+        }
+        collectOverlapping(node.left, from, to, result);
+        if (node.from > to) {
+            return; // Zbiory w prawym poddrzewie rozpoczynają się jeszcze później
+        }
+        if (node.to >= from) {
+            result.add(node.periodEntrySet);
+        }
+        collectOverlapping(node.right, from, to, result);
+    }
+
+    private static void forEachInOrder(Node node, Consumer<Node> action) {
+        if (node != null) {
+            forEachInOrder(node.left, action);
+            action.accept(node);
+            forEachInOrder(node.right, action);
+        }
+    }
+
+    private Node find(PeriodEntrySet periodEntrySet) {
+        var from = periodEntrySet.getDateFrom().toEpochDay();
+        return find(root, from, periodEntrySet);
+    }
+
+    private static Node find(Node node, long from, PeriodEntrySet periodEntrySet) {
+        if (node == null) {
+            return null;
+        }
+        if (node.from == from && node.periodEntrySet == periodEntrySet) {
+            return node;
+        }
+        // Zbiory o tej samej dacie początkowej mogą znajdować się w obu poddrzewach
+        if (from <= node.from) {
+            var found = find(node.left, from, periodEntrySet);
+            if (found != null) {
+                return found;
+            }
+        }
+        return from >= node.from ? find(node.right, from, periodEntrySet) : null;
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (compare(inserted.from, inserted.sequence, node) < 0) {
+            node.left = insert(node.left, inserted);
+        } else {
+            node.right = insert(node.right, inserted);
+        }
+        return balance(node);
+    }
+
+    private static Node delete(Node node, long from, long sequence) {
+        var comparison = compare(from, sequence, node);
+        if (comparison < 0) {
+            node.left = delete(node.left, from, sequence);
+        } else if (comparison > 0) {
+            node.right = delete(node.right, from, sequence);
+        } else {
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            var successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = delete(node.right, successor.from, successor.sequence);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private static int compare(long from, long sequence, Node node) {
+        var result = Long.compare(from, node.from);
+        return result != 0 ? result : Long.compare(sequence, node.sequence);
+    }
+
+    private static Node balance(Node node) {
+        update(node);
+        var factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateLeft(Node node) {
+        var pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node rotateRight(Node node) {
+        var pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static void update(Node node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.maxTo = node.to;
+        if (node.left != null) {
+            node.maxTo = Math.max(node.maxTo, node.left.maxTo);
+        }
+        if (node.right != null) {
+            node.maxTo = Math.max(node.maxTo, node.right.maxTo);
+        }
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+
+    /**
+     * Rekord reprezentujący parę zbiorów wpisów księgowych, których okresy nakładają się na siebie.
+     *
+     * @param first  Zbiór rozpoczynający się wcześniej (lub w tym samym dniu).
+     * @param second Zbiór rozpoczynający się później (lub w tym samym dniu).
+     */
+    public record Overlap(PeriodEntrySet first, PeriodEntrySet second) {
+    }
+
+
+    /**
+     * Rekord reprezentujący przedział dat nieobjęty okresem żadnego zbioru wpisów księgowych.
+     *
+     * @param from Pierwszy niepokryty dzień.
+     * @param to   Ostatni niepokryty dzień.
+     */
+    public record Gap(LocalDate from, LocalDate to) {
+    }
+
+
+    /**
+     * Klasa pomocnicza – węzeł drzewa.
+     */
+    private static class Node {
+
+        private final PeriodEntrySet periodEntrySet;
+        private final long from;
+        private final long to;
+        private final long sequence;
+        private long maxTo;
+        private int height = 1;
+        private Node left;
+        private Node right;
+
+        Node(PeriodEntrySet periodEntrySet, long sequence) {
+            this.periodEntrySet = periodEntrySet;
+            this.from = periodEntrySet.getDateFrom().toEpochDay();
+            this.to = periodEntrySet.getDateTo().toEpochDay();
+            this.sequence = sequence;
+            this.maxTo = to;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.github.bredecorne.masp.model.persons;
 
 import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.Country;
+import com.github.bredecorne.masp.model.ModelChanges;
 import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.RoundingPolicy;
 import com.github.bredecorne.masp.model.Status;
 
 import java.io.Serializable;
@@ -33,6 +36,10 @@ public abstract class Person implements Serializable {
     // Atrybuty opcjonalne
     private BigDecimal loyaltyPoints; // Może być użyty przez obiekt, dla którego preferential przyjmuje wartość true
     private BigDecimal discountRate; // Może być użyty przez obiekt, dla którego preferential przyjmuje wartość false
+    private boolean strictPeriods; // Odrzuca zbiory wpisów księgowych, których okresy nakładają się na istniejące
+
+    // Atrybuty pochodne – odtwarzane na podstawie powiązań ze zbiorami wpisów księgowych
+    private transient PeriodEntrySetIndex periodEntrySetIndex;
 
 
     /**
@@ -50,7 +57,7 @@ public abstract class Person implements Serializable {
                   BigDecimal preferentialAttribute) {
         this.name = name;
         this.status = status;
-        this.feeRate = feeRate;
+        this.feeRate = RoundingPolicy.normalizeRate(feeRate);
         this.preferential = preferential;
 
         if (preferential && preferentialAttribute.compareTo(BigDecimal.ZERO) > 0) {
@@ -115,6 +122,7 @@ public abstract class Person implements Serializable {
             throw new IllegalArgumentException();
         }
         this.status = status;
+        ModelChanges.changed();
     }
 
     public BigDecimal getFeeRate() {
@@ -123,8 +131,9 @@ public abstract class Person implements Serializable {
 
 
     /**
-     * Ustawia prowizję.
-     * Weryfikuje czy podawana prowizja jest wyższa od wartości 0; w przeciwnym razie zwraca wyjątek.
+     * Ustawia prowizję, sprowadzając ją do postaci kanonicznej (RoundingPolicy.normalizeRate).
+     * Weryfikuje czy podawana prowizja jest wyższa od wartości 0 i ma nie więcej niż RoundingPolicy.MAX_RATE_SCALE
+     * miejsc po przecinku; w przeciwnym razie zwraca wyjątek.
      *
      * @param feeRate Wartość prowizji.
      */
@@ -132,7 +141,26 @@ public abstract class Person implements Serializable {
         if (feeRate.compareTo(BigDecimal.ZERO) < 0) {
             throw new IllegalArgumentException();
         }
-        this.feeRate = feeRate;
+        this.feeRate = RoundingPolicy.normalizeRate(feeRate);
+        ModelChanges.changed();
+    }
+
+
+    /**
+     * Zwraca zasady zaokrąglania obowiązujące osobę – zasady państwa, w którym osoba posiada adres. Jeżeli osoba
+     * posiada adresy w kilku państwach, stosowane są zasady państwa występującego najwcześniej w wyliczeniu Country.
+     *
+     * @return Zasady zaokrąglania lub RoundingPolicy.DEFAULT, jeżeli osoba nie posiada adresu.
+     */
+    public RoundingPolicy getRoundingPolicy() {
+        Country country = null;
+        for (var address : addresses) {
+            var addressCountry = Country.valueOf(address.getCountry());
+            if (country == null || addressCountry.compareTo(country) < 0) {
+                country = addressCountry;
+            }
+        }
+        return country == null ? RoundingPolicy.DEFAULT : RoundingPolicy.of(country);
     }
 
     public boolean isPreferential() {
@@ -159,6 +187,7 @@ public abstract class Person implements Serializable {
         } else {
             this.loyaltyPoints = preferentialAttribute;
         }
+        ModelChanges.changed();
     }
 
 
@@ -185,6 +214,7 @@ public abstract class Person implements Serializable {
     public void setLoyaltyPoints(BigDecimal loyaltyPoints) {
         if (preferential) throw new RuntimeException();
         this.loyaltyPoints = loyaltyPoints;
+        ModelChanges.changed();
     }
 
 
@@ -211,6 +241,7 @@ public abstract class Person implements Serializable {
     public void setDiscountRate(BigDecimal discountRate) {
         if (!preferential) throw new RuntimeException();
         this.discountRate = discountRate;
+        ModelChanges.changed();
     }
 
 
@@ -229,6 +260,7 @@ public abstract class Person implements Serializable {
         if (!addresses.contains(address)) {
             addresses.add(address);
             address.addPerson(this);
+            ModelChanges.changed();
         }
     }
 
@@ -245,6 +277,7 @@ public abstract class Person implements Serializable {
         if (addresses.contains(address)) {
             addresses.remove(address);
             address.removePerson(this);
+            ModelChanges.changed();
         }
     }
 
@@ -261,7 +294,8 @@ public abstract class Person implements Serializable {
 
     /**
      * Dodaje nowe powiązanie ze zbiorem wartości księgowych.
-     * Zwraca wyjątek w sytuacji, w której zbiór wartości księgowych jest null.
+     * Zwraca wyjątek w sytuacji, w której zbiór wartości księgowych jest null lub – w trybie ścisłym – jego okres
+     * nakłada się na okres innego zbioru danej osoby.
      * Wywołuje analogiczną metodę w obiekcie zbioru wartości księgowych (po stronie jeden).
      *
      * @param periodEntrySet Zbiór wartości księgowych, niebędący null.
@@ -271,8 +305,11 @@ public abstract class Person implements Serializable {
             throw new IllegalArgumentException();
         }
         if (!periodEntrySets.contains(periodEntrySet)) {
+            checkPeriod(periodEntrySet);
+            getPeriodEntrySetIndex().add(periodEntrySet);
             periodEntrySets.add(periodEntrySet);
             periodEntrySet.setPerson(this);
+            ModelChanges.changed();
         }
     }
 
@@ -290,9 +327,12 @@ public abstract class Person implements Serializable {
             throw new IllegalArgumentException();
         }
         if (periodEntrySets.contains(periodEntrySet)) {
+            newPerson.checkPeriod(periodEntrySet); // Weryfikuje przed zmianą powiązań, aby nie pozostawić ich niespójnych
+            getPeriodEntrySetIndex().remove(periodEntrySet);
             periodEntrySets.remove(periodEntrySet);
             periodEntrySet.setPerson(newPerson);
             newPerson.addPeriodEntrySet(periodEntrySet);
+            ModelChanges.changed();
         }
     }
 
@@ -305,4 +345,51 @@ public abstract class Person implements Serializable {
     public HashSet<PeriodEntrySet> getPeriodEntrySets() {
         return new HashSet<>(periodEntrySets);
     }
+
+
+    /**
+     * Zwraca indeks przedziałowy zbiorów wpisów księgowych danej osoby, pozwalający wyszukać zbiory nakładające się,
+     * luki pomiędzy okresami oraz zbiory obejmujące zadaną datę.
+     * Indeks jest odtwarzany przy pierwszym użyciu po deserializacji.
+     *
+     * @return Indeks zbiorów wpisów księgowych.
+     */
+    public PeriodEntrySetIndex getPeriodEntrySetIndex() {
+        if (periodEntrySetIndex == null) {
+            var index = new PeriodEntrySetIndex();
+            for (var periodEntrySet : periodEntrySets) {
+                index.add(periodEntrySet);
+            }
+            periodEntrySetIndex = index;
+        }
+        return periodEntrySetIndex;
+    }
+
+    public boolean isStrictPeriods() {
+        return strictPeriods;
+    }
+
+
+    /**
+     * Ustawia tryb ścisły, w którym powiązanie ze zbiorem wpisów księgowych, którego okres nakłada się na okres
+     * innego zbioru danej osoby, jest odrzucane. Nie weryfikuje istniejących powiązań.
+     *
+     * @param strictPeriods Wartość true, aby włączyć tryb ścisły.
+     */
+    public void setStrictPeriods(boolean strictPeriods) {
+        this.strictPeriods = strictPeriods;
+        ModelChanges.changed();
+    }
+
+
+    /**
+     * Metoda pomocnicza – w trybie ścisłym zwraca wyjątek, jeżeli okres zbioru nakłada się na okres innego zbioru
+     * danej osoby.
+     */
+    private void checkPeriod(PeriodEntrySet periodEntrySet) {
+        if (strictPeriods && !getPeriodEntrySetIndex()
+                .getOverlapping(periodEntrySet.getDateFrom(), periodEntrySet.getDateTo()).isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+    }
 }
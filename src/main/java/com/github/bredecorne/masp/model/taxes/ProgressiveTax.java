@@ -1,30 +1,279 @@
 package com.github.bredecorne.masp.model.taxes;
 
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.RoundingPolicy;
+
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.NavigableMap;
+import java.util.TreeMap;
 
 public class ProgressiveTax extends Tax {
-    
+
+    // Atrybuty klasowe
+    private static final int MAX_PIECES = 1 << 12; // Powyżej tej liczby przedziałów podatek liczony jest progami
+    private static final int MAX_RATE_SCALE = 16;
+    private static final int NO_SCALE = Integer.MIN_VALUE / 2; // Brak składnika – mniejsza od każdej liczby miejsc
+
     // Atrybuty wymagane
     private final NavigableMap<BigDecimal, BigDecimal> value;
 
-    
+    // Atrybuty pochodne – skompilowana tabela progów.
+    // Podatek jest funkcją liniową dochodu w każdym z przedziałów [starts[k], starts[k + 1]), równą
+    // slopes[k] * dochód + intercepts[k]. Pierwszy przedział nie ma ograniczenia dolnego.
+    private final BigDecimal[] starts;
+    private final BigDecimal[] slopes;
+    private final BigDecimal[] intercepts;
+    private final int[] fixedScales; // Liczba miejsc po przecinku wyniku niezależna od dochodu
+    private final int[] rateScales; // Liczba miejsc po przecinku stawek, dodawana do liczby miejsc dochodu
+
+    // Atrybuty pochodne – ta sama tabela w groszach, używana przy obliczeniach na groszach
+    private final long[] startUnits;
+    private final long[] slopeUnits; // Stawki sprowadzone do wspólnej liczby miejsc po przecinku rateScale
+    private final long[] interceptUnits; // Grosze pomnożone przez 10^rateScale
+    private final int rateScale;
+    private final boolean compact;
+
+    // Atrybuty pochodne – dochód po opodatkowaniu na początku każdego przedziału (grosze pomnożone przez
+    // 10^rateScale), używany do wyznaczania dochodu przed opodatkowaniem; null, jeżeli nie mieści się w typie long
+    private final long[] afterTaxStartUnits;
+    private final boolean decreasing; // Określa, czy dochód po opodatkowaniu maleje w którymkolwiek przedziale
+
+
     public ProgressiveTax(NavigableMap<BigDecimal, BigDecimal> value) {
         super();
         if (value == null) {
             throw new IllegalArgumentException();
         }
         this.value = value;
+
+        var pieces = compile(value);
+        if (pieces == null) {
+            this.starts = null;
+            this.slopes = null;
+            this.intercepts = null;
+            this.fixedScales = null;
+            this.rateScales = null;
+        } else {
+            var size = pieces.size();
+            this.starts = new BigDecimal[size];
+            this.slopes = new BigDecimal[size];
+            this.intercepts = new BigDecimal[size];
+            this.fixedScales = new int[size];
+            this.rateScales = new int[size];
+            for (var k = 0; k < size; k++) {
+                var piece = pieces.get(k);
+                starts[k] = piece.start;
+                slopes[k] = piece.slope;
+                intercepts[k] = piece.intercept;
+                fixedScales[k] = piece.applied ? Math.max(0, piece.fixedScale) : 0;
+                rateScales[k] = piece.applied ? piece.rateScale : NO_SCALE;
+            }
+        }
+
+        var size = starts == null ? 0 : starts.length;
+        var startUnits = new long[size];
+        var slopeUnits = new long[size];
+        var interceptUnits = new long[size];
+        var scale = 0;
+        var fits = starts != null;
+        try {
+            for (var k = 0; fits && k < size; k++) {
+                scale = Math.max(scale, slopes[k].scale());
+            }
+            fits &= scale <= MAX_RATE_SCALE;
+            for (var k = 0; fits && k < size; k++) {
+                startUnits[k] = k == 0 ? Long.MIN_VALUE : toUnits(starts[k], Money.SCALE);
+                slopeUnits[k] = toUnits(slopes[k], scale);
+                interceptUnits[k] = toUnits(intercepts[k], scale + Money.SCALE);
+            }
+        } catch (ArithmeticException e) {
+            fits = false;
+        }
+        this.startUnits = startUnits;
+        this.slopeUnits = slopeUnits;
+        this.interceptUnits = interceptUnits;
+        this.rateScale = scale;
+        this.compact = fits;
+
+        var decreasing = false;
+        for (var k = 0; slopes != null && k < slopes.length; k++) {
+            decreasing |= slopes[k].compareTo(BigDecimal.ONE) > 0;
+        }
+        this.decreasing = slopes == null || decreasing;
+        this.afterTaxStartUnits = fits ? afterTaxStarts(startUnits, slopeUnits, interceptUnits, scale) : null;
+    }
+
+
+    /**
+     * Zwraca kopię progów podatkowych wraz ze stawkami.
+     *
+     * @return Kopia progów podatkowych.
+     */
+    public TreeMap<BigDecimal, BigDecimal> getValue() {
+        return new TreeMap<>(value);
     }
 
     /**
-     * Oblicza wartość podatku zgodnie ze skalą progresywną – korzysta z progów podatkowych.
+     * Oblicza wartość podatku zgodnie ze skalą progresywną – korzysta ze skompilowanej tabeli progów.
+     * Przedział dochodu wyszukiwany jest binarnie, a podatek obliczany jednym mnożeniem i dodawaniem. Wynik,
+     * łącznie z liczbą miejsc po przecinku, jest identyczny z wynikiem przejścia przez kolejne progi.
      *
      * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
      * @return Wartość podatku.
      */
     @Override
     public BigDecimal calculateTax(BigDecimal untaxedIncome) {
+        if (starts == null) {
+            return calculateTaxByBrackets(untaxedIncome);
+        }
+        var k = findPiece(untaxedIncome);
+        if (rateScales[k] == NO_SCALE) {
+            return BigDecimal.ZERO; // Dochód poniżej wszystkich progów
+        }
+        var scale = Math.max(fixedScales[k], untaxedIncome.scale() + rateScales[k]);
+        return untaxedIncome.multiply(slopes[k]).add(intercepts[k]).setScale(scale, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Oblicza wartość podatku zgodnie ze skalą progresywną na kwotach wyrażonych w groszach.
+     * Podatek obliczany jest bez zaokrągleń, a wynik jest zaokrąglany do pełnych groszy jednokrotnie.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @return Wartość podatku zaokrąglona do pełnych groszy.
+     */
+    @Override
+    public Money calculateTax(Money untaxedIncome) {
+        if (!compact || !untaxedIncome.isCompact()) {
+            return calculateReferenceTax(untaxedIncome);
+        }
+        try {
+            var income = untaxedIncome.getUnits();
+            var k = findPiece(income);
+            var tax = Math.addExact(Math.multiplyExact(income, slopeUnits[k]), interceptUnits[k]);
+            return crossChecked(untaxedIncome, Money.ofUnits(Money.roundUnits(tax, rateScale)));
+        } catch (ArithmeticException e) {
+            return calculateReferenceTax(untaxedIncome); // Przepełnienie – obliczenie na BigDecimal
+        }
+    }
+
+
+    /**
+     * Oblicza wartość podatku zgodnie ze skalą progresywną na kwotach wyrażonych w groszach.
+     * Podatek obliczany jest bez zaokrągleń, a wynik jest zaokrąglany jednokrotnie zgodnie z zasadami zaokrąglania.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @param policy        Zasady zaokrąglania, niebędące null.
+     * @return Wartość podatku zaokrąglona zgodnie z zasadami.
+     */
+    @Override
+    public Money calculateTax(Money untaxedIncome, RoundingPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException();
+        }
+        if (!compact || !untaxedIncome.isCompact()) {
+            return calculateReferenceTax(untaxedIncome, policy);
+        }
+        try {
+            var income = untaxedIncome.getUnits();
+            var k = findPiece(income);
+            var tax = Math.addExact(Math.multiplyExact(income, slopeUnits[k]), interceptUnits[k]);
+            return crossChecked(untaxedIncome, policy, policy.roundUnits(tax, rateScale));
+        } catch (ArithmeticException e) {
+            return calculateReferenceTax(untaxedIncome, policy); // Przepełnienie – obliczenie na BigDecimal
+        }
+    }
+
+
+    /**
+     * Oblicza wartości podatku zgodnie ze skalą progresywną dla wielu kwot wyrażonych w groszach naraz.
+     * Przedział dochodu wyszukiwany jest binarnie w stałej liczbie kroków. Jeżeli żaden wynik nie może przekroczyć
+     * zakresu typu long, pętla nie zawiera sprawdzeń przepełnienia; w przeciwnym razie każda kwota obliczana jest
+     * osobno.
+     *
+     * @param untaxedIncomes Kwoty w groszach, od których zostaną obliczone wartości podatku.
+     * @param taxes          Tablica, do której zostaną zapisane wartości podatku w groszach.
+     * @param count          Liczba kwot, liczona od początku tablicy.
+     */
+    @Override
+    public void calculateTaxes(long[] untaxedIncomes, long[] taxes, int count) {
+        checkBatch(untaxedIncomes, taxes, count);
+        if (!compact || maxAbs(untaxedIncomes, count) > (Long.MAX_VALUE - maxAbs(interceptUnits,
+                interceptUnits.length)) / Math.max(1, maxAbs(slopeUnits, slopeUnits.length))) {
+            super.calculateTaxes(untaxedIncomes, taxes, count);
+            return;
+        }
+        var size = startUnits.length;
+        var topStep = Integer.highestOneBit(size);
+        for (var i = 0; i < count; i++) {
+            var income = untaxedIncomes[i];
+            var k = 0;
+            for (var step = topStep; step > 0; step >>= 1) {
+                var next = k + step;
+                k = next < size && startUnits[next] <= income ? next : k;
+            }
+            taxes[i] = Money.roundUnits(income * slopeUnits[k] + interceptUnits[k], rateScale);
+        }
+        crossChecked(untaxedIncomes, taxes, count);
+    }
+
+
+    /**
+     * Wyznacza dochód przed opodatkowaniem, po którego opodatkowaniu pozostaje zadana kwota – zgodnie z metodą
+     * Tax.calculateGrossIncome(Money). Przedział dochodu wyszukiwany jest binarnie według dochodu po opodatkowaniu
+     * na jego początku, a przybliżenie wyniku obliczane jest w postaci zamkniętej i korygowane o błąd zaokrąglenia
+     * podatku.
+     * Zwraca wyjątek w sytuacji, gdy w którymkolwiek przedziale łączna stawka przekracza 1 – dochód po
+     * opodatkowaniu maleje wtedy wraz z dochodem.
+     *
+     * @param afterTaxIncome Dochód po opodatkowaniu, mieszczący się w groszach typu long.
+     * @return Dochód przed opodatkowaniem.
+     */
+    @Override
+    public Money calculateGrossIncome(Money afterTaxIncome) {
+        if (decreasing) {
+            throw new IllegalStateException();
+        }
+        var target = afterTaxIncome.getUnits();
+        if (afterTaxStartUnits == null) {
+            return super.calculateGrossIncome(afterTaxIncome);
+        }
+        var estimate = target;
+        try {
+            var one = Money.scaleUp(1, rateScale);
+            var scaledTarget = Math.multiplyExact(target, one);
+            var lo = 1;
+            var hi = afterTaxStartUnits.length;
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (afterTaxStartUnits[mid] <= scaledTarget) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            var k = lo - 1;
+            // W przedziale k: dochód po opodatkowaniu = ((one - slope) * dochód - intercept) / one
+            var denominator = one - slopeUnits[k];
+            estimate = denominator == 0 ? (k == 0 ? target : startUnits[k]) :
+                    Math.floorDiv(Math.addExact(scaledTarget, interceptUnits[k]), denominator);
+        } catch (ArithmeticException e) {
+            estimate = target; // Przybliżenie nie mieści się w typie long – wyszukiwanie od zadanej kwoty
+        }
+        return Money.ofUnits(findGrossIncome(target, estimate));
+    }
+
+
+    /**
+     * Oblicza wartość podatku, przechodząc kolejno przez progi od najwyższego – każdy osiągnięty próg pomniejsza
+     * kwotę braną pod uwagę przy niższych progach. Stanowi definicję skali, na podstawie której kompilowana
+     * jest tabela progów.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @return Wartość podatku.
+     */
+    BigDecimal calculateTaxByBrackets(BigDecimal untaxedIncome) {
         var tax = BigDecimal.ZERO;
         var remaining = untaxedIncome;
 
@@ -44,4 +293,129 @@ public class ProgressiveTax extends Tax {
 
         return tax;
     }
+
+
+    /**
+     * Metoda pomocnicza – kompiluje skalę do przedziałów dochodu, w których podatek jest funkcją liniową.
+     * Próg o wartości t, osiągnięty przy sumie wcześniej odjętych progów S, dzieli przedział w punkcie S + t;
+     * w części nie mniejszej od tego punktu do podatku dodawany jest składnik stawka * (dochód - S - t).
+     *
+     * @return Przedziały uporządkowane rosnąco lub wartość null, jeżeli ich liczba przekracza MAX_PIECES.
+     */
+    private static ArrayList<Piece> compile(NavigableMap<BigDecimal, BigDecimal> value) {
+        var pieces = new ArrayList<Piece>();
+        pieces.add(new Piece(null));
+        for (var entry : value.descendingMap().entrySet()) {
+            var threshold = entry.getKey();
+            var rate = entry.getValue();
+            var compiled = new ArrayList<Piece>(pieces.size() * 2);
+            for (var k = 0; k < pieces.size(); k++) {
+                var piece = pieces.get(k);
+                var end = k + 1 < pieces.size() ? pieces.get(k + 1).start : null;
+                var split = piece.subtracted.add(threshold);
+                if (piece.start != null && split.compareTo(piece.start) <= 0) {
+                    compiled.add(piece.apply(piece.start, threshold, rate, split));
+                } else if (end != null && split.compareTo(end) >= 0) {
+                    compiled.add(piece);
+                } else {
+                    compiled.add(piece);
+                    compiled.add(piece.apply(split, threshold, rate, split));
+                }
+            }
+            if (compiled.size() > MAX_PIECES) {
+                return null;
+            }
+            pieces = compiled;
+        }
+        return pieces;
+    }
+
+    private int findPiece(BigDecimal untaxedIncome) {
+        var lo = 1;
+        var hi = starts.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (starts[mid].compareTo(untaxedIncome) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    private int findPiece(long untaxedIncome) {
+        var lo = 1;
+        var hi = startUnits.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (startUnits[mid] <= untaxedIncome) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    /**
+     * Metoda pomocnicza – oblicza dochód po opodatkowaniu (bez zaokrąglenia podatku) na początku każdego przedziału.
+     *
+     * @return Wartości w groszach pomnożone przez 10^scale lub wartość null, jeżeli nie mieszczą się w typie long.
+     */
+    private static long[] afterTaxStarts(long[] startUnits, long[] slopeUnits, long[] interceptUnits, int scale) {
+        var afterTaxStarts = new long[startUnits.length];
+        try {
+            var one = Money.scaleUp(1, scale);
+            for (var k = 0; k < startUnits.length; k++) {
+                afterTaxStarts[k] = k == 0 ? Long.MIN_VALUE : Math.subtractExact(
+                        Math.multiplyExact(startUnits[k], Math.subtractExact(one, slopeUnits[k])), interceptUnits[k]);
+            }
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        return afterTaxStarts;
+    }
+
+    private static long toUnits(BigDecimal value, int scale) {
+        return value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+
+    /**
+     * Klasa pomocnicza – przedział dochodu wraz z parametrami funkcji liniowej podatku, używana podczas kompilacji.
+     */
+    private static class Piece {
+
+        private final BigDecimal start;
+        private BigDecimal subtracted = BigDecimal.ZERO; // Suma progów odjętych od dochodu
+        private BigDecimal slope = BigDecimal.ZERO;
+        private BigDecimal intercept = BigDecimal.ZERO;
+        private int subtractedScale = NO_SCALE; // Największa liczba miejsc po przecinku odjętych progów
+        private int fixedScale = NO_SCALE;
+        private int rateScale = NO_SCALE;
+        private boolean applied;
+
+        Piece(BigDecimal start) {
+            this.start = start;
+        }
+
+        /**
+         * Tworzy przedział, w którym dochód osiąga dany próg.
+         */
+        Piece apply(BigDecimal start, BigDecimal threshold, BigDecimal rate, BigDecimal split) {
+            var piece = new Piece(start);
+            piece.subtracted = subtracted.add(threshold);
+            piece.slope = slope.add(rate);
+            piece.intercept = intercept.subtract(rate.multiply(split));
+            // Próg równy zeru (BigDecimal.ZERO) nie jest odejmowany od reszty dochodu
+            piece.subtractedScale = threshold.equals(BigDecimal.ZERO) ?
+                    subtractedScale : Math.max(subtractedScale, threshold.scale());
+            // Składnik podatku ma co najmniej tyle miejsc po przecinku co próg i odjęte progi, powiększone o stawkę
+            piece.fixedScale = Math.max(fixedScale, piece.subtractedScale + rate.scale());
+            piece.rateScale = Math.max(rateScale, rate.scale());
+            piece.applied = true;
+            return piece;
+        }
+    }
 }
@@ -1,13 +1,21 @@
 package com.github.bredecorne.masp.model.taxes;
 
+import com.github.bredecorne.masp.model.ModelChanges;
+import com.github.bredecorne.masp.model.Money;
 import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.RoundingPolicy;
 
 import java.io.Serializable;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.math.BigDecimal;
 import java.util.HashSet;
 
 public abstract class Tax implements Serializable {
 
+    // Atrybuty klasowe
+    private static final int SEGMENT_BATCH_SIZE = 4096; // Liczba kwot kopiowanych naraz z segmentu pamięci
+
     // Ekstensja
     private static HashSet<Tax> taxes = new HashSet<>();
 
@@ -39,6 +47,287 @@ public abstract class Tax implements Serializable {
     public abstract BigDecimal calculateTax(BigDecimal untaxedIncome);
 
 
+    /**
+     * Oblicza wartość podatku na BigDecimal i zaokrągla ją zgodnie z zasadami zaokrąglania – w przeciwieństwie do
+     * calculateTax(BigDecimal) skala wyniku nie zależy od skali stawek i dochodu.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @param policy        Zasady zaokrąglania, niebędące null.
+     * @return Wartość podatku zaokrąglona zgodnie z zasadami.
+     */
+    public BigDecimal calculateTax(BigDecimal untaxedIncome, RoundingPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException();
+        }
+        return policy.round(calculateTax(untaxedIncome));
+    }
+
+
+    /**
+     * Oblicza wartości podatku dla wielu kwot wyrażonych w groszach naraz i zaokrągla je do pełnych groszy.
+     * Wyniki są identyczne z wynikami metody calculateTax(Money). Implementacja domyślna oblicza podatek dla każdej
+     * kwoty osobno; klasy pochodne nadpisują ją pętlą na typie long.
+     * Zwraca wyjątek ArithmeticException w sytuacji, gdy wartość podatku nie mieści się w groszach typu long.
+     *
+     * @param untaxedIncomes Kwoty w groszach, od których zostaną obliczone wartości podatku.
+     * @param taxes          Tablica, do której zostaną zapisane wartości podatku w groszach.
+     * @param count          Liczba kwot, liczona od początku tablicy.
+     */
+    public void calculateTaxes(long[] untaxedIncomes, long[] taxes, int count) {
+        checkBatch(untaxedIncomes, taxes, count);
+        for (var i = 0; i < count; i++) {
+            taxes[i] = calculateTax(Money.ofUnits(untaxedIncomes[i])).getUnits();
+        }
+    }
+
+
+    /**
+     * Oblicza wartości podatku dla kwot zapisanych w segmencie pamięci (np. pliku odwzorowanym w pamięci lub
+     * pamięci spoza sterty) jako kolejne liczby groszy typu long w natywnej kolejności bajtów.
+     * Kwoty przetwarzane są porcjami metodą calculateTaxes(long[], long[], int).
+     *
+     * @param untaxedIncomes Segment kwot w groszach; jego rozmiar musi być wielokrotnością 8 bajtów.
+     * @param taxes          Segment, do którego zostaną zapisane wartości podatku; nie mniejszy od segmentu kwot.
+     */
+    public void calculateTaxes(MemorySegment untaxedIncomes, MemorySegment taxes) {
+        if (untaxedIncomes == null || taxes == null || untaxedIncomes.byteSize() % Long.BYTES != 0 ||
+                taxes.byteSize() < untaxedIncomes.byteSize()) {
+            throw new IllegalArgumentException();
+        }
+        var count = untaxedIncomes.byteSize() / Long.BYTES;
+        var incomeBuffer = new long[(int) Math.min(count, SEGMENT_BATCH_SIZE)];
+        var taxBuffer = new long[incomeBuffer.length];
+        for (var index = 0L; index < count; index += SEGMENT_BATCH_SIZE) {
+            var length = (int) Math.min(SEGMENT_BATCH_SIZE, count - index);
+            MemorySegment.copy(untaxedIncomes, ValueLayout.JAVA_LONG_UNALIGNED, index * Long.BYTES,
+                    incomeBuffer, 0, length);
+            calculateTaxes(incomeBuffer, taxBuffer, length);
+            MemorySegment.copy(taxBuffer, 0, taxes, ValueLayout.JAVA_LONG_UNALIGNED, index * Long.BYTES, length);
+        }
+    }
+
+
+    /**
+     * Oblicza wartość podatku na kwotach wyrażonych w groszach i zaokrągla ją do pełnych groszy.
+     * Implementacja domyślna korzysta z obliczenia na BigDecimal; klasy pochodne nadpisują ją obliczeniem na
+     * typie long.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @return Wartość podatku zaokrąglona do pełnych groszy.
+     */
+    public Money calculateTax(Money untaxedIncome) {
+        return calculateReferenceTax(untaxedIncome);
+    }
+
+
+    /**
+     * Oblicza wartość podatku na kwotach wyrażonych w groszach i zaokrągla ją jednokrotnie zgodnie z zasadami
+     * zaokrąglania – wynik jest równy wynikowi calculateTax(BigDecimal, RoundingPolicy).
+     * Implementacja domyślna dla zasad DEFAULT korzysta z calculateTax(Money), a dla pozostałych z obliczenia na
+     * BigDecimal; klasy pochodne nadpisują ją obliczeniem na typie long.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @param policy        Zasady zaokrąglania, niebędące null.
+     * @return Wartość podatku zaokrąglona zgodnie z zasadami.
+     */
+    public Money calculateTax(Money untaxedIncome, RoundingPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException();
+        }
+        return policy.equals(RoundingPolicy.DEFAULT) ? calculateTax(untaxedIncome) :
+                calculateReferenceTax(untaxedIncome, policy);
+    }
+
+
+    /**
+     * Oblicza wartość podatku na BigDecimal i zaokrągla ją do pełnych groszy – stanowi punkt odniesienia dla
+     * obliczeń wykonywanych na groszach.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @return Wartość podatku zaokrąglona do pełnych groszy.
+     */
+    protected final Money calculateReferenceTax(Money untaxedIncome) {
+        return Money.of(calculateTax(untaxedIncome.toBigDecimal()).setScale(Money.SCALE, Money.ROUNDING_MODE));
+    }
+
+
+    /**
+     * Oblicza wartość podatku na BigDecimal i zaokrągla ją zgodnie z zasadami zaokrąglania – stanowi punkt
+     * odniesienia dla obliczeń wykonywanych na groszach.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @param policy        Zasady zaokrąglania.
+     * @return Wartość podatku zaokrąglona zgodnie z zasadami.
+     */
+    protected final Money calculateReferenceTax(Money untaxedIncome, RoundingPolicy policy) {
+        return Money.of(calculateTax(untaxedIncome.toBigDecimal(), policy));
+    }
+
+
+    /**
+     * Wyznacza dochód przed opodatkowaniem, po którego opodatkowaniu pozostaje zadana kwota.
+     * Zwraca najmniejszy dochód w groszach, dla którego dochód pomniejszony o podatek zaokrąglony do pełnych groszy
+     * (calculateTax(Money)) jest nie mniejszy od zadanej kwoty – jeżeli kwota jest osiągalna dokładnie, dochód po
+     * opodatkowaniu jest jej równy.
+     * <p>
+     * Implementacja domyślna zakłada, że dochód po opodatkowaniu nie maleje wraz z dochodem, i wyszukuje wynik
+     * wykładniczo, a następnie binarnie, począwszy od zadanej kwoty. Klasy pochodne nadpisują ją, wyznaczając
+     * przybliżenie wyniku w postaci zamkniętej.
+     * </p>
+     *
+     * @param afterTaxIncome Dochód po opodatkowaniu, mieszczący się w groszach typu long.
+     * @return Dochód przed opodatkowaniem.
+     */
+    public Money calculateGrossIncome(Money afterTaxIncome) {
+        return Money.ofUnits(findGrossIncome(afterTaxIncome.getUnits(), afterTaxIncome.getUnits()));
+    }
+
+
+    /**
+     * Wyznacza dochody przed opodatkowaniem dla wielu kwot dochodu po opodatkowaniu naraz, zgodnie z metodą
+     * calculateGrossIncome(Money).
+     *
+     * @param afterTaxIncomes Dochody po opodatkowaniu w groszach.
+     * @param grossIncomes    Tablica, do której zostaną zapisane dochody przed opodatkowaniem w groszach.
+     * @param count           Liczba kwot, liczona od początku tablicy.
+     */
+    public void calculateGrossIncomes(long[] afterTaxIncomes, long[] grossIncomes, int count) {
+        checkBatch(afterTaxIncomes, grossIncomes, count);
+        for (var i = 0; i < count; i++) {
+            grossIncomes[i] = calculateGrossIncome(Money.ofUnits(afterTaxIncomes[i])).getUnits();
+        }
+    }
+
+
+    /**
+     * Metoda pomocnicza – wyszukuje najmniejszy dochód, dla którego dochód po opodatkowaniu jest nie mniejszy od
+     * zadanej kwoty, rozpoczynając od przybliżenia wyniku. Liczba obliczeń podatku jest logarytmiczna względem
+     * błędu przybliżenia.
+     * Zwraca wyjątek w sytuacji, gdy kwota nie jest osiągalna w zakresie groszy typu long.
+     *
+     * @param afterTaxIncome Dochód po opodatkowaniu w groszach.
+     * @param estimate       Przybliżenie dochodu przed opodatkowaniem w groszach.
+     * @return Dochód przed opodatkowaniem w groszach.
+     */
+    protected final long findGrossIncome(long afterTaxIncome, long estimate) {
+        try {
+            long lo;
+            long hi;
+            var step = 1L;
+            if (afterTaxIncomeUnits(estimate) >= afterTaxIncome) {
+                hi = estimate;
+                lo = Math.subtractExact(estimate, step);
+                while (afterTaxIncomeUnits(lo) >= afterTaxIncome) {
+                    hi = lo;
+                    step = Math.multiplyExact(step, 2);
+                    lo = Math.subtractExact(estimate, step);
+                }
+            } else {
+                lo = estimate;
+                hi = Math.addExact(estimate, step);
+                while (afterTaxIncomeUnits(hi) < afterTaxIncome) {
+                    lo = hi;
+                    step = Math.multiplyExact(step, 2);
+                    hi = Math.addExact(estimate, step);
+                }
+            }
+            while (hi - lo > 1) { // Niezmiennik: dochód po opodatkowaniu dla lo < kwota <= dla hi
+                var mid = lo + (hi - lo) / 2;
+                if (afterTaxIncomeUnits(mid) >= afterTaxIncome) {
+                    hi = mid;
+                } else {
+                    lo = mid;
+                }
+            }
+            return hi;
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private long afterTaxIncomeUnits(long untaxedIncome) {
+        return Math.subtractExact(untaxedIncome, calculateTax(Money.ofUnits(untaxedIncome)).getUnits());
+    }
+
+
+    /**
+     * Metoda pomocnicza – w trybie kontroli krzyżowej porównuje wartość podatku obliczoną na groszach
+     * z wartością obliczoną na BigDecimal.
+     *
+     * @param untaxedIncome Kwota, od której została obliczona wartość podatku.
+     * @param tax           Wartość podatku obliczona na groszach.
+     * @return Wartość podatku obliczona na groszach.
+     */
+    protected final Money crossChecked(Money untaxedIncome, Money tax) {
+        if (Money.isCrossCheckEnabled()) {
+            Money.crossCheck(tax, calculateReferenceTax(untaxedIncome));
+        }
+        return tax;
+    }
+
+
+    /**
+     * Metoda pomocnicza – w trybie kontroli krzyżowej porównuje wartość podatku obliczoną na groszach i zaokrągloną
+     * zgodnie z zasadami z wartością obliczoną na BigDecimal.
+     *
+     * @param untaxedIncome Kwota, od której została obliczona wartość podatku.
+     * @param policy        Zasady zaokrąglania.
+     * @param tax           Wartość podatku obliczona na groszach.
+     * @return Wartość podatku obliczona na groszach.
+     */
+    protected final Money crossChecked(Money untaxedIncome, RoundingPolicy policy, Money tax) {
+        if (Money.isCrossCheckEnabled()) {
+            Money.crossCheck(tax, calculateReferenceTax(untaxedIncome, policy));
+        }
+        return tax;
+    }
+
+
+    /**
+     * Metoda pomocnicza – w trybie kontroli krzyżowej porównuje wartości podatku obliczone dla wielu kwot
+     * z wartościami obliczonymi na BigDecimal.
+     *
+     * @param untaxedIncomes Kwoty w groszach, od których zostały obliczone wartości podatku.
+     * @param taxes          Wartości podatku w groszach.
+     * @param count          Liczba kwot.
+     */
+    protected final void crossChecked(long[] untaxedIncomes, long[] taxes, int count) {
+        if (Money.isCrossCheckEnabled()) {
+            for (var i = 0; i < count; i++) {
+                Money.crossCheck(Money.ofUnits(taxes[i]), calculateReferenceTax(Money.ofUnits(untaxedIncomes[i])));
+            }
+        }
+    }
+
+
+    /**
+     * Metoda pomocnicza – weryfikuje argumenty obliczeń dla wielu kwot naraz.
+     */
+    protected static void checkBatch(long[] untaxedIncomes, long[] taxes, int count) {
+        if (untaxedIncomes == null || taxes == null || count < 0 || count > untaxedIncomes.length ||
+                count > taxes.length) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+
+    /**
+     * Metoda pomocnicza – wyznacza największą wartość bezwzględną spośród kwot, pozwalającą z góry wykluczyć
+     * przepełnienie w pętli obliczeń.
+     *
+     * @return Największa wartość bezwzględna lub Long.MAX_VALUE, jeżeli którakolwiek kwota jest równa Long.MIN_VALUE.
+     */
+    protected static long maxAbs(long[] values, int count) {
+        var min = 0L;
+        var max = 0L;
+        for (var i = 0; i < count; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        return min == Long.MIN_VALUE ? Long.MAX_VALUE : Math.max(max, -min);
+    }
+
+
     /**
      * Dodaje powiązanie ze zbiorem wpisów księgowych.
      * Zwraca wyjątek w sytuacji, gdy podawany argument przyjmuje wartość null.
@@ -52,6 +341,7 @@ public abstract class Tax implements Serializable {
         if (!periodEntrySets.contains(periodEntrySet)) {
             periodEntrySets.add(periodEntrySet);
             periodEntrySet.addTax(this);
+            ModelChanges.changed();
         }
     }
 
@@ -65,6 +355,7 @@ public abstract class Tax implements Serializable {
         if (!periodEntrySets.contains(periodEntrySet)) {
             periodEntrySets.remove(periodEntrySet);
             periodEntrySet.removeTax(this);
+            ModelChanges.changed();
         }
     }
 }
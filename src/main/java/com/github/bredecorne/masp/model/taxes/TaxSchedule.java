@@ -0,0 +1,180 @@
+package com.github.bredecorne.masp.model.taxes;
+
+import com.github.bredecorne.masp.model.Country;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+
+/**
+ * Klasa reprezentująca rejestr podatków obowiązujących w określonych okresach.
+ * <p>
+ * Dla każdego państwa i kategorii podatnika przechowuje kolejne wersje podatku wraz z okresem ich obowiązywania,
+ * uporządkowane według daty początkowej. Podatek obowiązujący w danym dniu wyszukiwany jest w czasie O(log n).
+ * Okresy obowiązywania wersji dla tego samego państwa i kategorii nie mogą się nakładać.
+ * </p>
+ */
+public class TaxSchedule implements Serializable {
+
+    // Atrybuty wymagane
+    private final EnumMap<Country, EnumMap<TaxpayerCategory, TreeMap<LocalDate, Version>>> versions =
+            new EnumMap<>(Country.class);
+
+
+    /**
+     * Dodaje wersję podatku obowiązującą w zadanym okresie.
+     * Zwraca wyjątek w sytuacji, gdy okres nakłada się na okres innej wersji dla tego samego państwa i kategorii.
+     *
+     * @param country   Państwo.
+     * @param category  Kategoria podatnika.
+     * @param tax       Podatek.
+     * @param validFrom Pierwszy dzień obowiązywania.
+     * @param validTo   Ostatni dzień obowiązywania lub wartość null, jeżeli podatek obowiązuje bezterminowo.
+     */
+    public void addTax(Country country, TaxpayerCategory category, Tax tax, LocalDate validFrom, LocalDate validTo) {
+        if (country == null || category == null || tax == null || validFrom == null ||
+                (validTo != null && validTo.isBefore(validFrom))) {
+            throw new IllegalArgumentException();
+        }
+        var timeline = versions.computeIfAbsent(country, _ -> new EnumMap<>(TaxpayerCategory.class))
+                .computeIfAbsent(category, _ -> new TreeMap<>());
+        var previous = timeline.floorEntry(validFrom);
+        var next = timeline.ceilingEntry(validFrom);
+        if ((previous != null && previous.getValue().covers(validFrom)) ||
+                (next != null && (validTo == null || !next.getKey().isAfter(validTo)))) {
+            throw new IllegalArgumentException();
+        }
+        timeline.put(validFrom, new Version(tax, validFrom, validTo));
+    }
+
+
+    /**
+     * Usuwa wersję podatku rozpoczynającą się w danym dniu.
+     *
+     * @param country   Państwo.
+     * @param category  Kategoria podatnika.
+     * @param validFrom Pierwszy dzień obowiązywania wersji.
+     * @return Usunięta wersja lub wartość null, jeżeli taka wersja nie istnieje.
+     */
+    public Version removeTax(Country country, TaxpayerCategory category, LocalDate validFrom) {
+        var timeline = getTimeline(country, category);
+        return timeline == null ? null : timeline.remove(validFrom);
+    }
+
+
+    /**
+     * Wyszukuje podatek obowiązujący w danym dniu.
+     *
+     * @param country  Państwo.
+     * @param category Kategoria podatnika.
+     * @param date     Dzień.
+     * @return Podatek lub wartość null, jeżeli w danym dniu nie obowiązuje żaden podatek.
+     */
+    public Tax getTax(Country country, TaxpayerCategory category, LocalDate date) {
+        if (date == null) {
+            throw new IllegalArgumentException();
+        }
+        var timeline = getTimeline(country, category);
+        var version = timeline == null ? null : timeline.floorEntry(date);
+        return version != null && version.getValue().covers(date) ? version.getValue().tax() : null;
+    }
+
+
+    /**
+     * Wyszukuje podatki obowiązujące zbiór wpisów księgowych – dla kategorii jego właściciela, każdego państwa,
+     * w którym właściciel posiada adres, i daty początkowej okresu zbioru.
+     *
+     * @param periodEntrySet Zbiór wpisów księgowych.
+     * @return Zbiór obowiązujących podatków; pusty, jeżeli żaden podatek nie obowiązuje.
+     */
+    public HashSet<Tax> getTaxes(PeriodEntrySet periodEntrySet) {
+        var person = periodEntrySet.getPerson();
+        var category = TaxpayerCategory.of(person);
+        var taxes = new HashSet<Tax>();
+        for (var address : person.getAddresses()) {
+            var tax = getTax(Country.valueOf(address.getCountry()), category, periodEntrySet.getDateFrom());
+            if (tax != null) {
+                taxes.add(tax);
+            }
+        }
+        return taxes;
+    }
+
+
+    /**
+     * Przypisuje obowiązujące podatki wszystkim zbiorom wpisów księgowych z ekstensji.
+     *
+     * @return Liczba utworzonych powiązań.
+     */
+    public int assignTaxes() {
+        return assignTaxes(PeriodEntrySet.getPeriodEntrySetsView());
+    }
+
+
+    /**
+     * Przypisuje obowiązujące podatki wskazanym zbiorom wpisów księgowych. Istniejące powiązania z podatkami
+     * pozostają niezmienione.
+     *
+     * @param periodEntrySets Zbiory wpisów księgowych.
+     * @return Liczba utworzonych powiązań.
+     */
+    public int assignTaxes(Collection<PeriodEntrySet> periodEntrySets) {
+        if (periodEntrySets == null) {
+            throw new IllegalArgumentException();
+        }
+        var assigned = 0;
+        for (var periodEntrySet : periodEntrySets) {
+            var linked = periodEntrySet.getTaxes();
+            for (var tax : getTaxes(periodEntrySet)) {
+                if (!linked.contains(tax)) {
+                    periodEntrySet.addTax(tax);
+                    assigned++;
+                }
+            }
+        }
+        return assigned;
+    }
+
+
+    /**
+     * Zwraca wersje podatku dla danego państwa i kategorii podatnika.
+     *
+     * @param country  Państwo.
+     * @param category Kategoria podatnika.
+     * @return Wersje uporządkowane według daty początkowej.
+     */
+    public List<Version> getVersions(Country country, TaxpayerCategory category) {
+        var timeline = getTimeline(country, category);
+        return timeline == null ? new ArrayList<>() : new ArrayList<>(timeline.values());
+    }
+
+    private TreeMap<LocalDate, Version> getTimeline(Country country, TaxpayerCategory category) {
+        if (country == null || category == null) {
+            throw new IllegalArgumentException();
+        }
+        var byCategory = versions.get(country);
+        return byCategory == null ? null : byCategory.get(category);
+    }
+
+
+    /**
+     * Rekord reprezentujący wersję podatku wraz z okresem obowiązywania.
+     *
+     * @param tax       Podatek.
+     * @param validFrom Pierwszy dzień obowiązywania.
+     * @param validTo   Ostatni dzień obowiązywania lub wartość null, jeżeli podatek obowiązuje bezterminowo.
+     */
+    public record Version(Tax tax, LocalDate validFrom, LocalDate validTo) implements Serializable {
+
+        public boolean covers(LocalDate date) {
+            return !date.isBefore(validFrom) && (validTo == null || !date.isAfter(validTo));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.bredecorne.masp.model.taxes;
+
+import com.github.bredecorne.masp.model.persons.ImperfectLegalPerson;
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.persons.NaturalPerson;
+import com.github.bredecorne.masp.model.persons.Person;
+
+/**
+ * Określa kategorię podatnika, od której zależy stosowany podatek.
+ */
+public enum TaxpayerCategory {
+    NATURAL_PERSON, NATURAL_PERSON_UNIFORM_TAX, LEGAL_PERSON, LEGAL_PERSON_REDUCED_TAX, IMPERFECT_LEGAL_PERSON;
+
+
+    /**
+     * Wyznacza kategorię podatnika na podstawie rodzaju osoby i wybranej przez nią formy opodatkowania.
+     *
+     * @param person Osoba, niebędąca null.
+     * @return Kategoria podatnika.
+     */
+    public static TaxpayerCategory of(Person person) {
+        return switch (person) {
+            case NaturalPerson naturalPerson ->
+                    naturalPerson.isUniformTax() ? NATURAL_PERSON_UNIFORM_TAX : NATURAL_PERSON;
+            case LegalPerson legalPerson -> legalPerson.isReducedTax() ? LEGAL_PERSON_REDUCED_TAX : LEGAL_PERSON;
+            case ImperfectLegalPerson _ -> IMPERFECT_LEGAL_PERSON;
+            case null, default -> throw new IllegalArgumentException();
+        };
+    }
+}
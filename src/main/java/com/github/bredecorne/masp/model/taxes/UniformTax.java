@@ -1,5 +1,8 @@
 package com.github.bredecorne.masp.model.taxes;
 
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.RoundingPolicy;
+
 import java.math.BigDecimal;
 
 public class UniformTax extends Tax {
@@ -7,9 +10,17 @@ public class UniformTax extends Tax {
     // Atrybuty wymagane
     private final BigDecimal value;
 
+    // Atrybuty pochodne
+    private final Money.Factor rate;
+
     public UniformTax(BigDecimal value) {
         super();
         this.value = value;
+        this.rate = Money.Factor.of(value);
+    }
+
+    public BigDecimal getValue() {
+        return value;
     }
 
     /**
@@ -22,4 +33,83 @@ public class UniformTax extends Tax {
     public BigDecimal calculateTax(BigDecimal untaxedIncome) {
         return untaxedIncome.multiply(this.value);
     }
+
+    /**
+     * Oblicza wartość podatku zgodnie ze skalą liniową na kwotach wyrażonych w groszach.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @return Wartość podatku zaokrąglona do pełnych groszy.
+     */
+    @Override
+    public Money calculateTax(Money untaxedIncome) {
+        return crossChecked(untaxedIncome, untaxedIncome.multiply(rate));
+    }
+
+    /**
+     * Oblicza wartość podatku zgodnie ze skalą liniową na kwotach wyrażonych w groszach i zaokrągla ją jednokrotnie
+     * zgodnie z zasadami zaokrąglania.
+     *
+     * @param untaxedIncome Kwota, od której zostanie obliczona wartość podatku.
+     * @param policy        Zasady zaokrąglania, niebędące null.
+     * @return Wartość podatku zaokrąglona zgodnie z zasadami.
+     */
+    @Override
+    public Money calculateTax(Money untaxedIncome, RoundingPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException();
+        }
+        return crossChecked(untaxedIncome, policy, policy.multiply(untaxedIncome, rate));
+    }
+
+    /**
+     * Oblicza wartości podatku zgodnie ze skalą liniową dla wielu kwot wyrażonych w groszach naraz.
+     * Jeżeli żaden iloczyn kwoty i stawki nie może przekroczyć zakresu typu long, pętla nie zawiera sprawdzeń
+     * przepełnienia ani rozgałęzień zależnych od danych; w przeciwnym razie każda kwota obliczana jest osobno.
+     *
+     * @param untaxedIncomes Kwoty w groszach, od których zostaną obliczone wartości podatku.
+     * @param taxes          Tablica, do której zostaną zapisane wartości podatku w groszach.
+     * @param count          Liczba kwot, liczona od początku tablicy.
+     */
+    @Override
+    public void calculateTaxes(long[] untaxedIncomes, long[] taxes, int count) {
+        checkBatch(untaxedIncomes, taxes, count);
+        var factor = rate.isCompact() ? rate.getUnscaled() : 0;
+        if (!rate.isCompact() || (factor != 0 && maxAbs(untaxedIncomes, count) > Long.MAX_VALUE / Math.abs(factor))) {
+            super.calculateTaxes(untaxedIncomes, taxes, count);
+            return;
+        }
+        var scale = rate.getScale();
+        for (var i = 0; i < count; i++) {
+            taxes[i] = Money.roundUnits(untaxedIncomes[i] * factor, scale);
+        }
+        crossChecked(untaxedIncomes, taxes, count);
+    }
+
+    /**
+     * Wyznacza dochód przed opodatkowaniem, po którego opodatkowaniu pozostaje zadana kwota – zgodnie z metodą
+     * Tax.calculateGrossIncome(Money). Przybliżenie wyniku (kwota / (1 - stawka)) obliczane jest w postaci zamkniętej
+     * i korygowane o błąd zaokrąglenia podatku.
+     * Zwraca wyjątek w sytuacji, gdy stawka nie jest mniejsza od 1 – dochód po opodatkowaniu nie rośnie wtedy wraz
+     * z dochodem.
+     *
+     * @param afterTaxIncome Dochód po opodatkowaniu, mieszczący się w groszach typu long.
+     * @return Dochód przed opodatkowaniem.
+     */
+    @Override
+    public Money calculateGrossIncome(Money afterTaxIncome) {
+        if (value.compareTo(BigDecimal.ONE) >= 0) {
+            throw new IllegalStateException();
+        }
+        var target = afterTaxIncome.getUnits();
+        var estimate = target; // Jeżeli przybliżenie nie mieści się w typie long – wyszukiwanie od zadanej kwoty
+        if (rate.isCompact()) {
+            try {
+                var denominator = Money.scaleUp(1, rate.getScale());
+                estimate = Math.floorDiv(Math.multiplyExact(target, denominator), denominator - rate.getUnscaled());
+            } catch (ArithmeticException e) {
+                estimate = target;
+            }
+        }
+        return Money.ofUnits(findGrossIncome(target, estimate));
+    }
 }
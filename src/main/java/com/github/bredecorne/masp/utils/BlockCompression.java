@@ -0,0 +1,418 @@
+package com.github.bredecorne.masp.utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.ref.SoftReference;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * Klasa narzędziowa implementująca blokową kompresję strumienia danych algorytmem Deflate.
+ * <p>
+ * Strumień dzielony jest na bloki o stałym rozmiarze, kompresowane niezależnie od siebie – dzięki temu bloki
+ * kompresowane i dekompresowane są równolegle. Za blokami zapisywany jest spis bloków (rozmiar po kompresji
+ * i przed kompresją każdego bloku), a jako ostatnie 12 bajtów – liczba bloków i łączny rozmiar danych przed
+ * kompresją.
+ * </p>
+ */
+final class BlockCompression {
+
+    // Atrybuty klasowe
+    static final int BLOCK_SIZE = 1 << 20;
+    private static final int TRAILER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+
+    private BlockCompression() {
+    }
+
+
+    /**
+     * Odczytuje spis bloków zapisanych od zadanego położenia do końca segmentu, bez ich dekompresji. Początek
+     * segmentu (np. nagłówek pliku) odczytywany jest bez zmian, dzięki czemu położenia w pliku zwróconym przez metodę
+     * odpowiadają położeniom w strumieniu przed kompresją.
+     *
+     * @param file   Segment zawierający skompresowane bloki.
+     * @param offset Położenie pierwszego bloku.
+     * @return Plik, którego bloki dekompresowane są przy pierwszym odczycie.
+     */
+    static BlockFile open(MemorySegment file, long offset) throws IOException {
+        var size = file.byteSize();
+        if (size - offset < TRAILER_SIZE) {
+            throw new IOException("Niepełny plik skompresowany");
+        }
+        var blockCount = file.get(INT, size - TRAILER_SIZE);
+        var length = file.get(LONG, size - Long.BYTES);
+        var table = size - TRAILER_SIZE - (long) blockCount * 2 * Integer.BYTES;
+        if (blockCount < 0 || length < 0 || table < offset) {
+            throw new IOException("Niepoprawny spis bloków pliku skompresowanego");
+        }
+        var sources = new long[blockCount + 1];
+        var targets = new long[blockCount + 1];
+        sources[0] = offset;
+        targets[0] = offset;
+        for (var i = 0; i < blockCount; i++) {
+            var compressedLength = file.get(INT, table + (long) i * 2 * Integer.BYTES);
+            var rawLength = file.get(INT, table + (long) i * 2 * Integer.BYTES + Integer.BYTES);
+            if (compressedLength < 0 || rawLength < 0 || rawLength > BLOCK_SIZE) {
+                throw new IOException("Niepoprawny spis bloków pliku skompresowanego");
+            }
+            sources[i + 1] = sources[i] + compressedLength;
+            targets[i + 1] = targets[i] + rawLength;
+        }
+        if (sources[blockCount] != table || targets[blockCount] != offset + length) {
+            throw new IOException("Niepoprawny spis bloków pliku skompresowanego");
+        }
+        return new BlockFile(file, offset, sources, targets);
+    }
+
+
+    /**
+     * Klasa reprezentująca plik odczytywany blokami. Bloki pliku skompresowanego dekompresowane są przy pierwszym
+     * odczycie ich zawartości i przechowywane w pamięci podręcznej (SoftReference) – pamięć zdekompresowanych bloków
+     * może zostać zwolniona, a blok zdekompresowany ponownie przy kolejnym odczycie. Plik nieskompresowany nie
+     * posiada bloków – jego fragmenty zwracane są bezpośrednio z segmentu pliku.
+     * Klasa jest bezpieczna wątkowo.
+     */
+    static final class BlockFile {
+
+        // Atrybuty wymagane
+        private final MemorySegment file;
+        private final long offset;
+        private final long[] sources;
+        private final long[] targets;
+        private final AtomicReferenceArray<SoftReference<MemorySegment>> blocks;
+        private final AtomicInteger inflatedBlocks = new AtomicInteger();
+
+
+        private BlockFile(MemorySegment file, long offset, long[] sources, long[] targets) {
+            this.file = file;
+            this.offset = offset;
+            this.sources = sources;
+            this.targets = targets;
+            this.blocks = new AtomicReferenceArray<>(sources.length - 1);
+        }
+
+        /**
+         * Tworzy plik nieskompresowany.
+         *
+         * @param file Segment zawierający cały plik.
+         */
+        static BlockFile of(MemorySegment file) {
+            var size = new long[]{file.byteSize()};
+            return new BlockFile(file, file.byteSize(), size, size);
+        }
+
+
+        /**
+         * Zwraca rozmiar pliku przed kompresją.
+         *
+         * @return Rozmiar w bajtach.
+         */
+        long byteSize() {
+            return targets[targets.length - 1];
+        }
+
+        /**
+         * Zwraca liczbę dekompresji bloków od utworzenia pliku, wliczając ponowne dekompresje bloków zwolnionych
+         * z pamięci podręcznej.
+         *
+         * @return Liczba dekompresji.
+         */
+        int getInflatedBlocks() {
+            return inflatedBlocks.get();
+        }
+
+
+        /**
+         * Zwraca fragment pliku przed kompresją, dekompresując wyłącznie bloki, na które przypada. Fragment obejmujący
+         * więcej niż jeden blok kopiowany jest do nowego segmentu.
+         *
+         * @param position Położenie fragmentu w pliku przed kompresją.
+         * @param length   Długość fragmentu w bajtach.
+         * @return Segment zawierający fragment pliku.
+         */
+        MemorySegment asSlice(long position, long length) throws IOException {
+            Objects.checkFromIndexSize(position, length, byteSize());
+            var window = rest(position);
+            if (window.byteSize() >= length) {
+                return window.asSlice(0, length);
+            }
+            var result = MemorySegment.ofArray(new byte[Math.toIntExact(length)]);
+            for (var copied = 0L; copied < length; ) {
+                if (copied > 0) {
+                    window = rest(position + copied);
+                }
+                var chunk = Math.min(window.byteSize(), length - copied);
+                MemorySegment.copy(window, 0, result, copied, chunk);
+                copied += chunk;
+            }
+            return result;
+        }
+
+        /**
+         * Zwraca fragment pliku przed kompresją od zadanego położenia do końca bloku (lub początku pliku
+         * zapisanego bez kompresji), w którym się ono znajduje, albo – jeżeli fragment jest krótszy niż
+         * zadana długość – fragment o zadanej długości skopiowany z kolejnych bloków.
+         *
+         * @param position  Położenie fragmentu w pliku przed kompresją.
+         * @param minLength Najmniejsza długość fragmentu w bajtach.
+         * @return Segment zawierający fragment pliku.
+         */
+        MemorySegment window(long position, long minLength) throws IOException {
+            Objects.checkFromIndexSize(position, minLength, byteSize());
+            var window = rest(position);
+            return window.byteSize() >= minLength ? window : asSlice(position, minLength);
+        }
+
+        /**
+         * Dekompresuje wszystkie bloki równolegle do segmentu zaalokowanego w zadanej arenie. Plik nieskompresowany
+         * zwracany jest bez kopiowania.
+         *
+         * @param arena Arena, w której alokowany jest zdekompresowany segment.
+         * @return Segment zawierający cały plik przed kompresją.
+         */
+        MemorySegment inflate(Arena arena) throws IOException {
+            if (sources.length == 1 && offset == file.byteSize()) {
+                return file;
+            }
+            var result = arena.allocate(byteSize());
+            MemorySegment.copy(file, 0, result, 0, offset);
+            try {
+                IntStream.range(0, sources.length - 1).parallel().forEach(i -> {
+                    try {
+                        inflate(i, result.asSlice(targets[i], targets[i + 1] - targets[i]));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return result;
+        }
+
+        /**
+         * Metoda pomocnicza – zwraca fragment pliku od zadanego położenia do końca bloku, w którym się ono znajduje.
+         */
+        private MemorySegment rest(long position) throws IOException {
+            if (position == byteSize()) {
+                return file.asSlice(0, 0);
+            }
+            if (position < offset) {
+                return file.asSlice(position, offset - position);
+            }
+            var i = Arrays.binarySearch(targets, position);
+            i = i < 0 ? -i - 2 : i;
+            while (targets[i + 1] <= position) {
+                i++; // Puste bloki są pomijane
+            }
+            return block(i).asSlice(position - targets[i]);
+        }
+
+        /**
+         * Metoda pomocnicza – zwraca zdekompresowany blok z pamięci podręcznej lub dekompresuje go.
+         */
+        private MemorySegment block(int i) throws IOException {
+            var cached = blocks.get(i);
+            var block = cached == null ? null : cached.get();
+            if (block == null) {
+                block = MemorySegment.ofArray(new byte[(int) (targets[i + 1] - targets[i])]);
+                inflate(i, block);
+                blocks.set(i, new SoftReference<>(block));
+            }
+            return block;
+        }
+
+        /**
+         * Metoda pomocnicza – dekompresuje blok do zadanego segmentu o rozmiarze bloku przed kompresją.
+         */
+        private void inflate(int i, MemorySegment block) throws IOException {
+            var inflater = new Inflater();
+            try {
+                inflater.setInput(file.asSlice(sources[i], sources[i + 1] - sources[i]).asByteBuffer());
+                var target = block.asByteBuffer();
+                while (target.hasRemaining() && !inflater.finished()) {
+                    if (inflater.inflate(target) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                }
+                if (target.hasRemaining() || !inflater.finished()) {
+                    throw new IOException("Uszkodzony blok pliku skompresowanego: " + i);
+                }
+                inflatedBlocks.incrementAndGet();
+            } catch (DataFormatException e) {
+                throw new IOException("Uszkodzony blok pliku skompresowanego: " + i, e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+
+    /**
+     * Klasa reprezentująca strumień wyjściowy kompresujący zapisywane dane blokami. Pełne bloki kompresowane są
+     * w tle (ForkJoinPool.commonPool()) i zapisywane w kolejności ich utworzenia. Liczba bloków oczekujących
+     * na zapis jest ograniczona, aby nie przechowywać w pamięci całego strumienia.
+     * Metoda finish() kończy strumień bez zamykania strumienia docelowego.
+     */
+    static final class DeflatingOutputStream extends OutputStream {
+
+        // Atrybuty wymagane
+        private final OutputStream out;
+        private final int level;
+        private final int maxPending;
+        private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        private final List<int[]> blocks = new ArrayList<>();
+        private byte[] block = new byte[BLOCK_SIZE];
+        private int position;
+        private long length;
+        private boolean finished;
+
+
+        /**
+         * @param out   Strumień docelowy.
+         * @param level Poziom kompresji od 1 (Deflater.BEST_SPEED) do 9 (Deflater.BEST_COMPRESSION).
+         */
+        DeflatingOutputStream(OutputStream out, int level) {
+            if (out == null || level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException();
+            }
+            this.out = out;
+            this.level = level;
+            this.maxPending = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (position == block.length) {
+                submit();
+            }
+            block[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (position == block.length) {
+                    submit();
+                }
+                var count = Math.min(length, block.length - position);
+                System.arraycopy(bytes, offset, block, position, count);
+                position += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+
+        /**
+         * Kompresuje pozostałe dane i zapisuje spis bloków. Nie zamyka strumienia docelowego.
+         */
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (position > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeBlock();
+            }
+            var trailer = new DataOutputStream(out);
+            for (var sizes : blocks) {
+                trailer.writeInt(sizes[0]);
+                trailer.writeInt(sizes[1]);
+            }
+            trailer.writeInt(blocks.size());
+            trailer.writeLong(length);
+            trailer.flush();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush(); // Niepełny blok zapisywany jest dopiero przy zakończeniu strumienia
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            out.close();
+        }
+
+
+        /**
+         * Metoda pomocnicza – przekazuje bieżący blok do kompresji w tle.
+         */
+        private void submit() throws IOException {
+            while (pending.size() >= maxPending) {
+                writeBlock();
+            }
+            var data = block;
+            var size = position;
+            pending.add(ForkJoinPool.commonPool().submit(() -> deflate(data, size, level)));
+            blocks.add(new int[]{0, size});
+            length += size;
+            block = new byte[BLOCK_SIZE];
+            position = 0;
+        }
+
+        /**
+         * Metoda pomocnicza – zapisuje najstarszy blok, czekając na zakończenie jego kompresji.
+         */
+        private void writeBlock() throws IOException {
+            byte[] compressed;
+            try {
+                compressed = pending.removeFirst().get();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            blocks.get(blocks.size() - pending.size() - 1)[0] = compressed.length;
+            out.write(compressed);
+        }
+
+        private static byte[] deflate(byte[] data, int size, int level) {
+            var deflater = new Deflater(level);
+            try {
+                deflater.setInput(data, 0, size);
+                deflater.finish();
+                var output = new byte[Math.max(64, size / 2)];
+                var length = 0;
+                while (!deflater.finished()) {
+                    if (length == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    length += deflater.deflate(output, length, output.length - length);
+                }
+                return Arrays.copyOf(output, length);
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.Country;
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.TaxOffice;
+import com.github.bredecorne.masp.model.persons.Person;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+
+/**
+ * Klasa narzędziowa, reprezentująca kostkę zagregowanych przychodów i kosztów.
+ * <p>
+ * Sumy przechowywane są dla każdej osoby w podziale na miesiące i aktualizowane przyrostowo po dodaniu każdego wpisu
+ * księgowego oraz po zmianie właściciela zbioru. Dodatkowo utrzymywane są sumy miesięczne dla wszystkich osób.
+ * Zestawienia kwartalne i roczne powstają przez zwinięcie sum miesięcznych. Zestawienia dla urzędów podatkowych
+ * i państw wyznaczane są w chwili zapytania na podstawie adresów osób, dzięki czemu zmiana przypisania adresu
+ * do urzędu jest uwzględniana natychmiast. Osoba posiadająca adresy przypisane do kilku urzędów (lub położone
+ * w kilku państwach) jest uwzględniana w zestawieniu każdego z nich.
+ * </p>
+ */
+public class IncomeCube implements PeriodEntrySet.Listener, AutoCloseable {
+
+    // Atrybuty wymagane
+    private final HashMap<Person, TreeMap<Integer, MutableCell>> monthsByPerson = new HashMap<>();
+    private final TreeMap<Integer, MutableCell> months = new TreeMap<>();
+    // Zakres numerów wpisów zbioru ujętych w sumach – od pierwszego ujętego do następującego po ostatnim ujętym
+    private final IdentityHashMap<PeriodEntrySet, Integer> baselines = new IdentityHashMap<>();
+    private final IdentityHashMap<PeriodEntrySet, Integer> counts = new IdentityHashMap<>();
+
+
+    private IncomeCube() {
+    }
+
+
+    /**
+     * Tworzy kostkę na podstawie bieżącej ekstensji zbiorów wpisów księgowych i rejestruje ją jako obserwatora,
+     * dzięki czemu jest aktualizowana przy każdym kolejnym wpisie.
+     *
+     * @return Kostka zagregowanych przychodów i kosztów.
+     */
+    public static IncomeCube create() {
+        return create(PeriodEntrySet.getPeriodEntrySetsView());
+    }
+
+
+    /**
+     * Tworzy kostkę na podstawie wskazanych zbiorów wpisów księgowych i rejestruje ją jako obserwatora.
+     *
+     * @param periodEntrySets Zbiory wpisów księgowych, których wpisy zostaną zagregowane.
+     * @return Kostka zagregowanych przychodów i kosztów.
+     */
+    public static IncomeCube create(Collection<PeriodEntrySet> periodEntrySets) {
+        if (periodEntrySets == null) {
+            throw new IllegalArgumentException();
+        }
+        var cube = new IncomeCube();
+        PeriodEntrySet.addListener(cube); // Rejestruje przed odczytem, aby nie pominąć wpisów dodanych w międzyczasie
+        synchronized (cube) {
+            for (var periodEntrySet : periodEntrySets) {
+                cube.baselines.put(periodEntrySet, 0);
+                cube.counts.put(periodEntrySet, 0);
+                cube.catchUp(periodEntrySet);
+            }
+        }
+        return cube;
+    }
+
+
+    /**
+     * Wyrejestrowuje kostkę – po wywołaniu kostka przestaje być aktualizowana.
+     */
+    @Override
+    public void close() {
+        PeriodEntrySet.removeListener(this);
+    }
+
+    @Override
+    public void entryAdded(PeriodEntrySet periodEntrySet, LocalDate date, Money value) {
+        // Kostka korzysta z wariantu udostępniającego numer wpisu
+    }
+
+    /**
+     * Uwzględnia dodany wpis. Wpis nie jest dodawany bezpośrednio – kostka dolicza wpisy obrazu zbioru następujące
+     * po ostatnim ujętym, dzięki czemu powiadomienie o wpisie zawartym już w odczytanym obrazie nie zostaje
+     * policzone ponownie. Wpisy zbioru nieujętego przy tworzeniu kostki uwzględniane są począwszy od pierwszego
+     * wpisu, o którym kostka została powiadomiona.
+     */
+    @Override
+    public synchronized void entryAdded(PeriodEntrySet periodEntrySet, int index, LocalDate date, Money value) {
+        if (!counts.containsKey(periodEntrySet)) {
+            baselines.put(periodEntrySet, index);
+            counts.put(periodEntrySet, index);
+        }
+        catchUp(periodEntrySet);
+    }
+
+    /**
+     * Przenosi sumy zbioru do nowego właściciela – przenoszone są wyłącznie wpisy ujęte w kostce.
+     */
+    @Override
+    public synchronized void personChanged(PeriodEntrySet periodEntrySet, Person previousPerson, Person person) {
+        var count = counts.get(periodEntrySet);
+        if (count != null) {
+            var baseline = baselines.get(periodEntrySet);
+            addRange(periodEntrySet, previousPerson, baseline, count, true);
+            addRange(periodEntrySet, person, baseline, count, false);
+        }
+    }
+
+
+    /**
+     * Zwraca sumy wszystkich osób w podziale na okresy.
+     *
+     * @param granularity Długość okresu.
+     * @return Sumy uporządkowane według okresów.
+     */
+    public synchronized SortedMap<Bucket, Cell> getTotals(Granularity granularity) {
+        var result = new TreeMap<Bucket, MutableCell>();
+        rollUp(months, granularity, result);
+        return freeze(result);
+    }
+
+
+    /**
+     * Zwraca sumy danej osoby w podziale na okresy.
+     *
+     * @param person      Osoba.
+     * @param granularity Długość okresu.
+     * @return Sumy uporządkowane według okresów.
+     */
+    public synchronized SortedMap<Bucket, Cell> getTotals(Person person, Granularity granularity) {
+        var result = new TreeMap<Bucket, MutableCell>();
+        var personMonths = monthsByPerson.get(person);
+        if (personMonths != null) {
+            rollUp(personMonths, granularity, result);
+        }
+        return freeze(result);
+    }
+
+
+    /**
+     * Zwraca sumy osób posiadających adres przypisany do danego urzędu podatkowego w podziale na okresy.
+     *
+     * @param taxOffice   Urząd podatkowy.
+     * @param granularity Długość okresu.
+     * @return Sumy uporządkowane według okresów.
+     */
+    public synchronized SortedMap<Bucket, Cell> getTotals(TaxOffice taxOffice, Granularity granularity) {
+        var persons = new HashSet<Person>();
+        for (var address : taxOffice.getAddresses()) {
+            persons.addAll(address.getPersons());
+        }
+        return rollUp(persons, granularity);
+    }
+
+
+    /**
+     * Zwraca sumy osób posiadających adres w danym państwie w podziale na okresy.
+     *
+     * @param country     Państwo.
+     * @param granularity Długość okresu.
+     * @return Sumy uporządkowane według okresów.
+     */
+    public synchronized SortedMap<Bucket, Cell> getTotals(Country country, Granularity granularity) {
+        var persons = new HashSet<Person>();
+        for (var person : monthsByPerson.keySet()) {
+            for (var address : person.getAddresses()) {
+                if (address.getCountry().equals(country.toString())) {
+                    persons.add(person);
+                    break;
+                }
+            }
+        }
+        return rollUp(persons, granularity);
+    }
+
+
+    /**
+     * Rozwija sumy danego okresu na poszczególne osoby.
+     *
+     * @param bucket Okres.
+     * @return Sumy osób, które miały wpisy w danym okresie.
+     */
+    public synchronized Map<Person, Cell> drillDownByPerson(Bucket bucket) {
+        var result = new HashMap<Person, Cell>();
+        monthsByPerson.forEach((person, personMonths) -> {
+            var cell = sum(personMonths, bucket);
+            if (cell != null) {
+                result.put(person, cell.toCell());
+            }
+        });
+        return result;
+    }
+
+
+    /**
+     * Rozwija sumy danego okresu na poszczególne urzędy podatkowe, na podstawie adresów osób.
+     *
+     * @param bucket Okres.
+     * @return Sumy urzędów podatkowych, do których przypisano adresy osób mających wpisy w danym okresie.
+     */
+    public synchronized Map<TaxOffice, Cell> drillDownByTaxOffice(Bucket bucket) {
+        var cells = new HashMap<TaxOffice, MutableCell>();
+        monthsByPerson.forEach((person, personMonths) -> {
+            var cell = sum(personMonths, bucket);
+            if (cell == null) {
+                return;
+            }
+            var taxOffices = new HashSet<TaxOffice>();
+            for (var address : person.getAddresses()) {
+                if (address.getTaxOffice() != null) {
+                    taxOffices.add(address.getTaxOffice());
+                }
+            }
+            for (var taxOffice : taxOffices) {
+                cells.computeIfAbsent(taxOffice, _ -> new MutableCell()).add(cell);
+            }
+        });
+        var result = new HashMap<TaxOffice, Cell>();
+        cells.forEach((taxOffice, cell) -> result.put(taxOffice, cell.toCell()));
+        return result;
+    }
+
+
+    /**
+     * Metoda pomocnicza – dolicza do sum właściciela wpisy zbioru, które nie zostały jeszcze ujęte w kostce.
+     */
+    private void catchUp(PeriodEntrySet periodEntrySet) {
+        var count = counts.get(periodEntrySet);
+        var entryCount = periodEntrySet.getSnapshot().getEntryCount();
+        if (entryCount > count) {
+            addRange(periodEntrySet, periodEntrySet.getPerson(), count, entryCount, false);
+            counts.put(periodEntrySet, entryCount);
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – dodaje (lub odejmuje) wpisy zbioru o numerach z zadanego zakresu do sum danej osoby.
+     */
+    private void addRange(PeriodEntrySet periodEntrySet, Person person, int from, int to, boolean subtract) {
+        var cursor = periodEntrySet.getSnapshot().cursor(from, to);
+        while (cursor.next()) {
+            add(person, monthIndex(cursor.getDate()), cursor.getMoney(), subtract);
+        }
+    }
+
+    private void add(Person person, int monthIndex, Money value, boolean subtract) {
+        monthsByPerson.computeIfAbsent(person, _ -> new TreeMap<>())
+                .computeIfAbsent(monthIndex, _ -> new MutableCell()).add(value, subtract);
+        months.computeIfAbsent(monthIndex, _ -> new MutableCell()).add(value, subtract);
+    }
+
+    private SortedMap<Bucket, Cell> rollUp(Collection<Person> persons, Granularity granularity) {
+        var result = new TreeMap<Bucket, MutableCell>();
+        for (var person : persons) {
+            var personMonths = monthsByPerson.get(person);
+            if (personMonths != null) {
+                rollUp(personMonths, granularity, result);
+            }
+        }
+        return freeze(result);
+    }
+
+    private static void rollUp(TreeMap<Integer, MutableCell> source, Granularity granularity,
+                               TreeMap<Bucket, MutableCell> target) {
+        source.forEach((monthIndex, cell) ->
+                target.computeIfAbsent(Bucket.of(monthIndex, granularity), _ -> new MutableCell()).add(cell));
+    }
+
+    /**
+     * Metoda pomocnicza – sumuje miesiące należące do danego okresu.
+     *
+     * @return Suma lub wartość null, jeżeli w okresie nie ma wpisów.
+     */
+    private static MutableCell sum(TreeMap<Integer, MutableCell> source, Bucket bucket) {
+        var range = source.subMap(bucket.firstMonthIndex(), true, bucket.lastMonthIndex(), true);
+        if (range.isEmpty()) {
+            return null;
+        }
+        var cell = new MutableCell();
+        range.values().forEach(cell::add);
+        return cell;
+    }
+
+    private static SortedMap<Bucket, Cell> freeze(TreeMap<Bucket, MutableCell> cells) {
+        var result = new TreeMap<Bucket, Cell>();
+        cells.forEach((bucket, cell) -> result.put(bucket, cell.toCell()));
+        return result;
+    }
+
+    private static int monthIndex(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+
+    /**
+     * Określa długość okresu, według którego grupowane są sumy.
+     */
+    public enum Granularity {
+        MONTH, QUARTER, YEAR
+    }
+
+
+    /**
+     * Rekord reprezentujący okres kalendarzowy.
+     *
+     * @param granularity Długość okresu.
+     * @param year        Rok.
+     * @param period      Numer miesiąca (1–12) lub kwartału (1–4) w roku; dla okresu rocznego 1.
+     */
+    public record Bucket(Granularity granularity, int year, int period) implements Comparable<Bucket> {
+
+        public static Bucket of(int year, int month, Granularity granularity) {
+            return of(year * 12 + month - 1, granularity);
+        }
+
+        private static Bucket of(int monthIndex, Granularity granularity) {
+            var year = Math.floorDiv(monthIndex, 12);
+            var month = Math.floorMod(monthIndex, 12) + 1;
+            return switch (granularity) {
+                case MONTH -> new Bucket(granularity, year, month);
+                case QUARTER -> new Bucket(granularity, year, (month - 1) / 3 + 1);
+                case YEAR -> new Bucket(granularity, year, 1);
+            };
+        }
+
+        private int firstMonthIndex() {
+            return switch (granularity) {
+                case MONTH -> year * 12 + period - 1;
+                case QUARTER -> year * 12 + (period - 1) * 3;
+                case YEAR -> year * 12;
+            };
+        }
+
+        private int lastMonthIndex() {
+            return switch (granularity) {
+                case MONTH -> firstMonthIndex();
+                case QUARTER -> firstMonthIndex() + 2;
+                case YEAR -> firstMonthIndex() + 11;
+            };
+        }
+
+        @Override
+        public int compareTo(Bucket other) {
+            var result = Integer.compare(firstMonthIndex(), other.firstMonthIndex());
+            return result != 0 ? result : granularity.compareTo(other.granularity);
+        }
+    }
+
+
+    /**
+     * Rekord reprezentujący sumy przychodów i kosztów w danym przekroju kostki.
+     *
+     * @param revenue  Suma przychodów.
+     * @param expenses Suma kosztów.
+     */
+    public record Cell(Money revenue, Money expenses) {
+
+        public Money income() {
+            return revenue.add(expenses);
+        }
+    }
+
+
+    /**
+     * Klasa pomocnicza – modyfikowalna komórka kostki.
+     */
+    private static class MutableCell {
+
+        private final Money.Accumulator revenue = new Money.Accumulator();
+        private final Money.Accumulator expenses = new Money.Accumulator();
+
+        /**
+         * Dodaje lub odejmuje (przy zmianie właściciela zbioru) wartość wpisu – dodatnią od sumy przychodów,
+         * pozostałe od sumy kosztów.
+         */
+        void add(Money value, boolean subtract) {
+            var target = value.signum() > 0 ? revenue : expenses;
+            target.add(subtract ? value.negate() : value);
+        }
+
+        void add(MutableCell other) {
+            revenue.add(other.revenue.toMoney());
+            expenses.add(other.expenses.toMoney());
+        }
+
+        Cell toCell() {
+            return new Cell(revenue.toMoney(), expenses.toMoney());
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.persons.Person;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Klasa narzędziowa, służąca do masowego importu wpisów księgowych z plików CSV (np. wyciągów bankowych).
+ * <p>
+ * Plik odczytywany jest strumieniowo w porcjach po chunkSize wierszy. Porcje są parsowane i weryfikowane równolegle
+ * w puli wątków, a następnie dodawane do zbiorów wpisów księgowych w kolejności występowania w pliku. Liczba porcji
+ * przetwarzanych jednocześnie jest ograniczona, dzięki czemu zużycie pamięci nie zależy od rozmiaru pliku.
+ * Błędne wiersze są pomijane i raportowane, nie przerywając importu.
+ * </p>
+ * <p>
+ * Obsługiwane są dwa układy kolumn: "data;kwota;uzasadnienie" przy imporcie do wskazanego zbioru oraz
+ * "osoba;data;kwota;uzasadnienie" przy imporcie kierującym wiersze do zbiorów osób na podstawie nazwy osoby i daty.
+ * Data zapisywana jest w formacie RRRR-MM-DD, a kwota może używać kropki lub przecinka jako separatora dziesiętnego.
+ * </p>
+ */
+public class LedgerCsvImporter {
+
+    // Atrybuty klasowe
+    private static final int DEFAULT_CHUNK_SIZE = 16_384;
+    private static final int DEFAULT_MAX_REPORTED_ERRORS = 1_000;
+
+    // Atrybuty wymagane
+    private final char separator;
+    private final boolean header;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int maxReportedErrors;
+
+
+    /**
+     * Tworzy importer z domyślnym rozmiarem porcji i liczbą wątków równą liczbie dostępnych procesorów.
+     *
+     * @param separator Znak oddzielający kolumny.
+     * @param header    Wartość logiczna – true, jeżeli pierwszy wiersz pliku jest nagłówkiem i ma zostać pominięty.
+     */
+    public LedgerCsvImporter(char separator, boolean header) {
+        this(separator, header, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors(),
+                DEFAULT_MAX_REPORTED_ERRORS);
+    }
+
+
+    /**
+     * Tworzy importer.
+     *
+     * @param separator         Znak oddzielający kolumny.
+     * @param header            Wartość logiczna – true, jeżeli pierwszy wiersz pliku jest nagłówkiem.
+     * @param chunkSize         Liczba wierszy w jednej porcji, większa od 0.
+     * @param parallelism       Liczba wątków parsujących, większa od 0.
+     * @param maxReportedErrors Maksymalna liczba błędnych wierszy opisanych w wyniku importu; pozostałe są jedynie
+     *                          zliczane.
+     */
+    public LedgerCsvImporter(char separator, boolean header, int chunkSize, int parallelism, int maxReportedErrors) {
+        if (chunkSize <= 0 || parallelism <= 0 || maxReportedErrors < 0 || separator == '"') {
+            throw new IllegalArgumentException();
+        }
+        this.separator = separator;
+        this.header = header;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+
+    /**
+     * Importuje wiersze w układzie "data;kwota;uzasadnienie" do wskazanego zbioru wpisów księgowych.
+     * Wiersze z datą spoza okresu zbioru są raportowane jako błędne.
+     *
+     * @param file   Ścieżka do pliku CSV.
+     * @param target Zbiór wpisów księgowych, do którego zostaną dodane wpisy.
+     * @return Wynik importu.
+     */
+    public ImportResult importInto(Path file, PeriodEntrySet target) {
+        if (file == null || target == null) {
+            throw new IllegalArgumentException();
+        }
+        return importFile(file, new Routes(target));
+    }
+
+
+    /**
+     * Importuje wiersze w układzie "osoba;data;kwota;uzasadnienie", kierując każdy z nich do zbioru wpisów
+     * księgowych osoby o danej nazwie, którego okres obejmuje datę wiersza.
+     *
+     * @param file Ścieżka do pliku CSV.
+     * @return Wynik importu.
+     */
+    public ImportResult importRouted(Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException();
+        }
+        var routes = new HashMap<String, PeriodEntrySet[]>();
+        for (var person : Person.getPersons()) {
+            var periodEntrySets = person.getPeriodEntrySets().toArray(new PeriodEntrySet[0]);
+            Arrays.sort(periodEntrySets, Comparator.comparing(PeriodEntrySet::getDateFrom));
+            routes.merge(person.getName(), periodEntrySets, (a, b) -> {
+                var merged = Arrays.copyOf(a, a.length + b.length);
+                System.arraycopy(b, 0, merged, a.length, b.length);
+                Arrays.sort(merged, Comparator.comparing(PeriodEntrySet::getDateFrom));
+                return merged;
+            });
+        }
+        return importFile(file, new Routes(routes));
+    }
+
+
+    /**
+     * Metoda pomocnicza – odczytuje plik porcjami, zleca ich parsowanie puli wątków i dodaje wyniki do zbiorów
+     * w kolejności występowania w pliku.
+     */
+    private ImportResult importFile(Path file, Routes routes) {
+        var maxInFlight = parallelism * 2;
+        var pending = new ArrayDeque<Future<ParsedChunk>>(maxInFlight);
+        var result = new ResultBuilder(maxReportedErrors);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long lineNumber = 0;
+            if (header && reader.readLine() != null) {
+                lineNumber++;
+            }
+            while (true) {
+                var lines = new ArrayList<String>(chunkSize);
+                var firstLineNumber = lineNumber + 1;
+                String line;
+                while (lines.size() < chunkSize && (line = reader.readLine()) != null) {
+                    lines.add(line);
+                    lineNumber++;
+                }
+                if (lines.isEmpty()) {
+                    break;
+                }
+                pending.add(executor.submit(() -> parse(lines, firstLineNumber, routes)));
+                if (pending.size() >= maxInFlight) {
+                    result.append(pending.poll().get());
+                }
+            }
+            while (!pending.isEmpty()) {
+                result.append(pending.poll().get());
+            }
+        } catch (IOException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return result.build();
+    }
+
+
+    /**
+     * Metoda pomocnicza – parsuje i weryfikuje porcję wierszy, grupując poprawne wiersze według docelowego zbioru.
+     * Wywoływana w wątkach puli – nie modyfikuje modelu.
+     */
+    private ParsedChunk parse(List<String> lines, long firstLineNumber, Routes routes) {
+        var batches = new IdentityHashMap<PeriodEntrySet, Batch>();
+        var errors = new ArrayList<RowError>();
+        var dateColumn = routes.routed ? 1 : 0;
+        var columns = new ArrayList<String>(dateColumn + 3);
+
+        for (var i = 0; i < lines.size(); i++) {
+            var line = lines.get(i);
+            var lineNumber = firstLineNumber + i;
+            if (line.isBlank()) {
+                continue;
+            }
+            columns.clear();
+            if (!split(line, columns) || columns.size() < dateColumn + 2 || columns.size() > dateColumn + 3) {
+                errors.add(new RowError(lineNumber, line, "Nieprawidłowa liczba kolumn"));
+                continue;
+            }
+
+            LocalDate date;
+            BigDecimal value;
+            try {
+                date = LocalDate.parse(columns.get(dateColumn).strip());
+            } catch (DateTimeParseException e) {
+                errors.add(new RowError(lineNumber, line, "Nieprawidłowa data"));
+                continue;
+            }
+            try {
+                value = new BigDecimal(columns.get(dateColumn + 1).strip().replace(',', '.'));
+            } catch (NumberFormatException e) {
+                errors.add(new RowError(lineNumber, line, "Nieprawidłowa kwota"));
+                continue;
+            }
+            if (value.signum() == 0) {
+                errors.add(new RowError(lineNumber, line, "Kwota równa zero"));
+                continue;
+            }
+
+            var target = routes.resolve(routes.routed ? columns.get(0).strip() : null, date);
+            if (target == null) {
+                errors.add(new RowError(lineNumber, line, "Brak zbioru wpisów obejmującego datę wiersza"));
+                continue;
+            }
+
+            var justification = columns.size() > dateColumn + 2 ? columns.get(dateColumn + 2) : null;
+            batches.computeIfAbsent(target, _ -> new Batch())
+                    .add(date, value, justification == null || justification.isEmpty() ? null : justification);
+        }
+        return new ParsedChunk(batches, errors);
+    }
+
+
+    /**
+     * Metoda pomocnicza – dzieli wiersz na kolumny, uwzględniając pola ujęte w cudzysłów.
+     *
+     * @param line    Wiersz pliku CSV.
+     * @param columns Lista, do której zostaną dodane kolumny.
+     * @return Wartość logiczna – false, jeżeli wiersz zawiera niezamknięty cudzysłów; true w przeciwnym razie.
+     */
+    private boolean split(String line, List<String> columns) {
+        var field = new StringBuilder();
+        var quoted = false;
+        for (var i = 0; i < line.length(); i++) {
+            var c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                columns.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        columns.add(field.toString());
+        return !quoted;
+    }
+
+
+    /**
+     * Rekord reprezentujący błędny wiersz pliku.
+     *
+     * @param lineNumber Numer wiersza w pliku, liczony od 1.
+     * @param line       Treść wiersza.
+     * @param message    Opis błędu.
+     */
+    public record RowError(long lineNumber, String line, String message) {
+    }
+
+
+    /**
+     * Rekord reprezentujący wynik importu.
+     *
+     * @param importedRows Liczba wierszy dodanych do zbiorów wpisów księgowych.
+     * @param rejectedRows Liczba błędnych wierszy.
+     * @param errors       Opisy błędnych wierszy w kolejności występowania w pliku (co najwyżej maxReportedErrors).
+     */
+    public record ImportResult(long importedRows, long rejectedRows, List<RowError> errors) {
+    }
+
+
+    /**
+     * Rekord reprezentujący sparsowaną porcję wierszy.
+     */
+    private record ParsedChunk(IdentityHashMap<PeriodEntrySet, Batch> batches, List<RowError> errors) {
+    }
+
+
+    /**
+     * Klasa pomocnicza – określa zbiór wpisów księgowych, do którego trafia wiersz.
+     * Po utworzeniu nie jest modyfikowana, dzięki czemu może być współdzielona przez wątki parsujące.
+     */
+    private static class Routes {
+
+        private final boolean routed;
+        private final PeriodEntrySet target;
+        private final HashMap<String, PeriodEntrySet[]> periodEntrySetsByPerson;
+
+        Routes(PeriodEntrySet target) {
+            this.routed = false;
+            this.target = target;
+            this.periodEntrySetsByPerson = null;
+        }
+
+        Routes(HashMap<String, PeriodEntrySet[]> periodEntrySetsByPerson) {
+            this.routed = true;
+            this.target = null;
+            this.periodEntrySetsByPerson = periodEntrySetsByPerson;
+        }
+
+        PeriodEntrySet resolve(String personName, LocalDate date) {
+            if (!routed) {
+                return covers(target, date) ? target : null;
+            }
+            var periodEntrySets = periodEntrySetsByPerson.get(personName);
+            if (periodEntrySets != null) {
+                for (var periodEntrySet : periodEntrySets) {
+                    if (covers(periodEntrySet, date)) {
+                        return periodEntrySet;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private static boolean covers(PeriodEntrySet periodEntrySet, LocalDate date) {
+            return !date.isBefore(periodEntrySet.getDateFrom()) && !date.isAfter(periodEntrySet.getDateTo());
+        }
+    }
+
+
+    /**
+     * Klasa pomocnicza – przechowuje poprawne wiersze porcji przeznaczone dla jednego zbioru wpisów księgowych.
+     * Tablice rosną dwukrotnie w miarę potrzeby, dzięki czemu porcja rozłożona na wiele zbiorów nie rezerwuje
+     * dla każdego z nich tablic o rozmiarze całej porcji.
+     */
+    private static class Batch {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private LocalDate[] dates = new LocalDate[INITIAL_CAPACITY];
+        private BigDecimal[] values = new BigDecimal[INITIAL_CAPACITY];
+        private String[] justifications = new String[INITIAL_CAPACITY];
+        private int size;
+
+        void add(LocalDate date, BigDecimal value, String justification) {
+            if (size == dates.length) {
+                dates = Arrays.copyOf(dates, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                justifications = Arrays.copyOf(justifications, size * 2);
+            }
+            dates[size] = date;
+            values[size] = value;
+            justifications[size] = justification;
+            size++;
+        }
+    }
+
+
+    /**
+     * Klasa pomocnicza – dodaje sparsowane porcje do zbiorów wpisów księgowych i zbiera wynik importu.
+     * Wywoływana wyłącznie w wątku importu.
+     */
+    private static class ResultBuilder {
+
+        private final int maxReportedErrors;
+        private final ArrayList<RowError> errors = new ArrayList<>();
+        private long importedRows;
+        private long rejectedRows;
+
+        ResultBuilder(int maxReportedErrors) {
+            this.maxReportedErrors = maxReportedErrors;
+        }
+
+        void append(ParsedChunk chunk) {
+            for (var entry : chunk.batches().entrySet()) {
+                var batch = entry.getValue();
+                entry.getKey().addEntries(batch.dates, batch.values, batch.justifications, batch.size);
+                importedRows += batch.size;
+            }
+            rejectedRows += chunk.errors().size();
+            for (var error : chunk.errors()) {
+                if (errors.size() >= maxReportedErrors) {
+                    break;
+                }
+                errors.add(error);
+            }
+        }
+
+        ImportResult build() {
+            return new ImportResult(importedRows, rejectedRows, List.copyOf(errors));
+        }
+    }
+}
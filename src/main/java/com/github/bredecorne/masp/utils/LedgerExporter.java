@@ -0,0 +1,375 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.TaxOffice;
+import com.github.bredecorne.masp.model.persons.Person;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Klasa narzędziowa, służąca do eksportu wszystkich wpisów księgowych do pliku CSV lub JSON Lines.
+ * <p>
+ * Każdy wiersz pliku odpowiada jednemu wpisowi księgowemu i zawiera, poza datą, kwotą i uzasadnieniem wpisu,
+ * kolumny pochodne: nazwę klienta, nazwy urzędów podatkowych jego adresów, skrót zbioru (getAbbreviation())
+ * oraz okres zbioru. Klienci zapisywani są w kolejności nazw, a ich zbiory w kolejności dat początkowych.
+ * </p>
+ * <p>
+ * Wpisy klientów kodowane są równolegle w puli wątków do porcji o rozmiarze ok. chunkSize bajtów, które zapisywane
+ * są do pliku w kolejności klientów. Liczba klientów przetwarzanych jednocześnie oraz liczba porcji oczekujących
+ * na zapis są ograniczone, dzięki czemu zużycie pamięci nie zależy od liczby wpisów. Wpisy zbiorów nieodczytanych
+ * z repozytorium przeglądane są bezpośrednio w źródle wpisów, bez ich wczytywania do zbioru.
+ * </p>
+ */
+public class LedgerExporter {
+
+    // Atrybuty klasowe
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    private static final int PENDING_CHUNKS = 4;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final String[] COLUMNS = {"person", "taxOffices", "abbreviation", "dateFrom", "dateTo", "date",
+            "value", "justification"};
+
+    // Atrybuty wymagane
+    private final Format format;
+    private final char separator;
+    private final int chunkSize;
+    private final int parallelism;
+
+
+    /**
+     * Tworzy eksporter z domyślnym rozmiarem porcji i liczbą wątków równą liczbie dostępnych procesorów.
+     *
+     * @param format    Format pliku.
+     * @param separator Znak oddzielający kolumny pliku CSV (pomijany w formacie JSON Lines).
+     */
+    public LedgerExporter(Format format, char separator) {
+        this(format, separator, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Tworzy eksporter.
+     *
+     * @param format      Format pliku.
+     * @param separator   Znak oddzielający kolumny pliku CSV (pomijany w formacie JSON Lines).
+     * @param chunkSize   Przybliżony rozmiar porcji w bajtach, większy od 0.
+     * @param parallelism Liczba wątków kodujących, większa od 0.
+     */
+    public LedgerExporter(Format format, char separator, int chunkSize, int parallelism) {
+        if (format == null || chunkSize <= 0 || parallelism <= 0 || separator == '"' || separator == '\n'
+                || separator == '\r') {
+            throw new IllegalArgumentException();
+        }
+        this.format = format;
+        this.separator = separator;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+
+    /**
+     * Eksportuje wpisy księgowe wszystkich klientów do zadanego pliku, zastępując jego zawartość.
+     * Wpisy dodane w trakcie eksportu mogą nie zostać uwzględnione.
+     *
+     * @param file Ścieżka pliku wynikowego.
+     * @return Wynik eksportu.
+     */
+    public ExportResult export(Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException();
+        }
+        // Powiązania modelu odczytywane są w wątku eksportu – wątki puli przeglądają wyłącznie wpisy zbiorów
+        var persons = new ArrayList<PersonRows>();
+        var periodEntrySetCount = 0L;
+        for (var person : Person.getPersons()) {
+            var periodEntrySets = new ArrayList<>(person.getPeriodEntrySets());
+            periodEntrySets.sort(Comparator.comparing(PeriodEntrySet::getDateFrom));
+            var taxOffices = person.getAddresses().stream()
+                    .map(Address::getTaxOffice)
+                    .filter(Objects::nonNull)
+                    .map(TaxOffice::getName)
+                    .distinct()
+                    .sorted()
+                    .toList();
+            var ledgers = new ArrayList<LedgerRows>(periodEntrySets.size());
+            for (var periodEntrySet : periodEntrySets) {
+                ledgers.add(new LedgerRows(periodEntrySet, prefix(person.getName(), taxOffices, periodEntrySet)));
+            }
+            persons.add(new PersonRows(person.getName(), ledgers));
+            periodEntrySetCount += ledgers.size();
+        }
+        persons.sort(Comparator.comparing(PersonRows::name));
+
+        var maxInFlight = parallelism * 2;
+        var pending = new ArrayDeque<PersonTask>(maxInFlight);
+        var rows = 0L;
+        long bytes;
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (format == Format.CSV) {
+                writeFully(channel, ByteBuffer.wrap(header().getBytes(StandardCharsets.UTF_8)));
+            }
+            for (var person : persons) {
+                var chunks = new ArrayBlockingQueue<ByteBuffer>(PENDING_CHUNKS);
+                pending.add(new PersonTask(chunks, executor.submit(() -> encode(person, chunks))));
+                if (pending.size() >= maxInFlight) {
+                    rows += drain(pending.poll(), channel);
+                }
+            }
+            while (!pending.isEmpty()) {
+                rows += drain(pending.poll(), channel);
+            }
+            channel.force(false);
+            bytes = channel.size();
+        } catch (IOException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return new ExportResult(persons.size(), periodEntrySetCount, rows, bytes);
+    }
+
+
+    /**
+     * Metoda pomocnicza – zapisuje kolejne porcje klienta do pliku, aż do zakończenia ich kodowania.
+     *
+     * @return Liczba wierszy klienta.
+     */
+    private static long drain(PersonTask task, FileChannel channel)
+            throws IOException, InterruptedException, ExecutionException {
+        for (var chunk = task.chunks().take(); chunk != END; chunk = task.chunks().take()) {
+            writeFully(channel, chunk);
+        }
+        return task.rows().get();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+
+    /**
+     * Metoda pomocnicza – koduje wiersze wszystkich zbiorów klienta i przekazuje je porcjami do zapisu.
+     * Wywoływana w wątkach puli – nie modyfikuje modelu.
+     *
+     * @return Liczba wierszy klienta.
+     */
+    private long encode(PersonRows person, BlockingQueue<ByteBuffer> chunks) throws InterruptedException {
+        var rows = new long[1];
+        try {
+            var line = new StringBuilder(chunkSize + 256);
+            for (var ledger : person.ledgers()) {
+                var periodEntrySet = ledger.periodEntrySet();
+                PeriodEntrySet.EntryVisitor visitor = (date, value, justification) -> {
+                    line.append(ledger.prefix());
+                    appendEntry(line, date, value, justification);
+                    rows[0]++;
+                    if (line.length() >= chunkSize) {
+                        offer(chunks, line);
+                    }
+                };
+                var source = periodEntrySet.getEntrySource();
+                if (source != null) {
+                    source.forEachEntry(visitor); // Wpisy nieodczytane – przeglądane bez wczytywania do zbioru
+                } else {
+                    periodEntrySet.getSnapshot().forEachEntry(visitor);
+                }
+            }
+            if (!line.isEmpty()) {
+                offer(chunks, line);
+            }
+        } catch (ChunkInterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (InterruptedException) e.getCause();
+        } finally {
+            // Znacznik końca przekazywany jest również po błędzie, aby wątek zapisujący nie oczekiwał bez końca
+            chunks.put(END);
+        }
+        return rows[0];
+    }
+
+    /**
+     * Metoda pomocnicza – przekazuje zakodowane wiersze do zapisu, czekając na zwolnienie miejsca w kolejce porcji.
+     */
+    private static void offer(BlockingQueue<ByteBuffer> chunks, StringBuilder line) {
+        try {
+            chunks.put(ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (InterruptedException e) {
+            throw new ChunkInterruptedException(e);
+        }
+        line.setLength(0);
+    }
+
+
+    /**
+     * Metoda pomocnicza – koduje kolumny wspólne dla wszystkich wpisów zbioru.
+     */
+    private String prefix(String name, List<String> taxOffices, PeriodEntrySet periodEntrySet) {
+        var prefix = new StringBuilder();
+        if (format == Format.CSV) {
+            appendCsv(prefix, name).append(separator);
+            appendCsv(prefix, String.join("|", taxOffices)).append(separator);
+            appendCsv(prefix, periodEntrySet.getAbbreviation()).append(separator);
+            prefix.append(periodEntrySet.getDateFrom()).append(separator);
+            prefix.append(periodEntrySet.getDateTo()).append(separator);
+        } else {
+            prefix.append("{\"person\":");
+            appendJson(prefix, name);
+            prefix.append(",\"taxOffices\":[");
+            for (var i = 0; i < taxOffices.size(); i++) {
+                if (i > 0) {
+                    prefix.append(',');
+                }
+                appendJson(prefix, taxOffices.get(i));
+            }
+            prefix.append("],\"abbreviation\":");
+            appendJson(prefix, periodEntrySet.getAbbreviation());
+            prefix.append(",\"dateFrom\":\"").append(periodEntrySet.getDateFrom());
+            prefix.append("\",\"dateTo\":\"").append(periodEntrySet.getDateTo()).append('"');
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Metoda pomocnicza – koduje kolumny wpisu i kończy wiersz.
+     */
+    private void appendEntry(StringBuilder line, LocalDate date, BigDecimal value, String justification) {
+        if (format == Format.CSV) {
+            line.append(date).append(separator).append(value.toPlainString()).append(separator);
+            if (justification != null) {
+                appendCsv(line, justification);
+            }
+        } else {
+            line.append(",\"date\":\"").append(date).append("\",\"value\":").append(value.toPlainString());
+            line.append(",\"justification\":");
+            if (justification == null) {
+                line.append("null");
+            } else {
+                appendJson(line, justification);
+            }
+            line.append('}');
+        }
+        line.append('\n');
+    }
+
+    private String header() {
+        return format == Format.CSV ? String.join(String.valueOf(separator), COLUMNS) + "\n" : "";
+    }
+
+    /**
+     * Metoda pomocnicza – dopisuje pole CSV, ujmując je w cudzysłów, jeżeli zawiera separator, cudzysłów lub
+     * znak końca wiersza.
+     */
+    private StringBuilder appendCsv(StringBuilder line, String field) {
+        var quoted = false;
+        for (var i = 0; i < field.length() && !quoted; i++) {
+            var c = field.charAt(i);
+            quoted = c == separator || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            return line.append(field);
+        }
+        return line.append('"').append(field.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Metoda pomocnicza – dopisuje ciąg znaków JSON wraz z cudzysłowem.
+     */
+    private static void appendJson(StringBuilder line, String value) {
+        line.append('"');
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+
+    /**
+     * Typ wyliczeniowy reprezentujący format pliku eksportu.
+     */
+    public enum Format {
+        CSV,
+        JSON_LINES
+    }
+
+
+    /**
+     * Rekord reprezentujący wynik eksportu.
+     *
+     * @param persons         Liczba wyeksportowanych klientów.
+     * @param periodEntrySets Liczba wyeksportowanych zbiorów wpisów księgowych.
+     * @param rows            Liczba wierszy z wpisami (bez nagłówka).
+     * @param bytes           Rozmiar pliku w bajtach.
+     */
+    public record ExportResult(long persons, long periodEntrySets, long rows, long bytes) {
+    }
+
+
+    /**
+     * Rekord reprezentujący zbiory klienta wraz z zakodowanymi kolumnami wspólnymi wpisów każdego zbioru.
+     */
+    private record PersonRows(String name, List<LedgerRows> ledgers) {
+    }
+
+    private record LedgerRows(PeriodEntrySet periodEntrySet, String prefix) {
+    }
+
+
+    /**
+     * Rekord reprezentujący klienta kodowanego w tle – kolejkę jego porcji i liczbę jego wierszy.
+     */
+    private record PersonTask(BlockingQueue<ByteBuffer> chunks, Future<Long> rows) {
+    }
+
+
+    /**
+     * Wyjątek przenoszący przerwanie wątku przez obiekt przeglądający wpisy, który nie może zgłaszać wyjątków
+     * kontrolowanych.
+     */
+    private static class ChunkInterruptedException extends RuntimeException {
+
+        ChunkInterruptedException(InterruptedException cause) {
+            super(cause);
+        }
+    }
+}
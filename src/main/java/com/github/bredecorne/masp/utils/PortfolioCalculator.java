@@ -0,0 +1,356 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.AccountManager;
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.persons.Person;
+import com.github.bredecorne.masp.model.taxes.Tax;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Klasa narzędziowa, służąca do równoległego obliczania podatku, dochodu po opodatkowaniu i prowizji dla wszystkich
+ * zbiorów wpisów księgowych naraz.
+ * <p>
+ * Zbiory dzielone są na fragmenty przetwarzane w puli ForkJoin. Dla każdego zbioru dochód obliczany jest raz,
+ * a następnie wykorzystywany dla każdego powiązanego z nim podatku. Wyniki trafiają do kolumnowej tabeli
+ * (jeden wiersz na parę zbiór–podatek) oraz są sumowane dla osób i menedżerów kont.
+ * </p>
+ */
+public class PortfolioCalculator {
+
+    // Atrybuty klasowe
+    private static final int SEQUENTIAL_THRESHOLD = 256;
+
+    // Atrybuty wymagane
+    private final ForkJoinPool pool;
+
+
+    /**
+     * Tworzy kalkulator korzystający ze wspólnej puli ForkJoin.
+     */
+    public PortfolioCalculator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Tworzy kalkulator korzystający ze wskazanej puli ForkJoin.
+     *
+     * @param pool Pula wątków, niebędąca wartością null.
+     */
+    public PortfolioCalculator(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException();
+        }
+        this.pool = pool;
+    }
+
+
+    /**
+     * Oblicza wyniki dla całej ekstensji zbiorów wpisów księgowych.
+     *
+     * @return Tabela wyników wraz z sumami dla osób i menedżerów kont.
+     */
+    public Result calculate() {
+        return calculate(PeriodEntrySet.getPeriodEntrySetsView());
+    }
+
+
+    /**
+     * Oblicza wyniki dla wskazanych zbiorów wpisów księgowych.
+     *
+     * @param periodEntrySets Zbiory wpisów księgowych, dla których zostaną obliczone wyniki.
+     * @return Tabela wyników wraz z sumami dla osób i menedżerów kont.
+     */
+    public Result calculate(Collection<PeriodEntrySet> periodEntrySets) {
+        if (periodEntrySets == null) {
+            throw new IllegalArgumentException();
+        }
+        var sets = periodEntrySets.toArray(new PeriodEntrySet[0]);
+
+        // Etap 1 – odczytuje podatki powiązane ze zbiorami i wyznacza pozycje wierszy w tabeli
+        var taxes = new Tax[sets.length][];
+        pool.invoke(new CollectTaxesTask(sets, taxes, 0, sets.length));
+        var offsets = new int[sets.length + 1];
+        for (var i = 0; i < sets.length; i++) {
+            offsets[i + 1] = offsets[i] + taxes[i].length;
+        }
+
+        // Etap 2 – oblicza wyniki i sumy cząstkowe
+        var table = new ResultTable(offsets[sets.length]);
+        var totals = pool.invoke(new CalculateTask(sets, taxes, offsets, table, 0, sets.length));
+
+        return new Result(table, totals.total.toTotals(), freeze(totals.byPerson), freeze(totals.byAccountManager));
+    }
+
+
+    /**
+     * Metoda pomocnicza – zamienia sumy cząstkowe na niemodyfikowalną mapę sum.
+     */
+    private static <K> Map<K, Totals> freeze(HashMap<K, TotalsBuilder> builders) {
+        var totals = new HashMap<K, Totals>(builders.size() * 2);
+        builders.forEach((key, builder) -> totals.put(key, builder.toTotals()));
+        return Collections.unmodifiableMap(totals);
+    }
+
+
+    /**
+     * Rekord reprezentujący wynik obliczeń.
+     *
+     * @param table            Tabela wyników – jeden wiersz na parę zbiór–podatek.
+     * @param total            Suma wyników wszystkich zbiorów.
+     * @param byPerson         Sumy wyników dla każdej osoby.
+     * @param byAccountManager Sumy wyników dla każdego menedżera konta (z pominięciem zbiorów bez menedżera).
+     */
+    public record Result(ResultTable table, Totals total, Map<Person, Totals> byPerson,
+                         Map<AccountManager, Totals> byAccountManager) {
+    }
+
+
+    /**
+     * Rekord reprezentujący sumę wyników grupy zbiorów wpisów księgowych.
+     * Dochód każdego zbioru liczony jest raz; podatek, dochód po opodatkowaniu i prowizja – dla każdego
+     * powiązanego podatku.
+     *
+     * @param periodEntrySets Liczba zbiorów wpisów księgowych.
+     * @param rows            Liczba wierszy (par zbiór–podatek).
+     * @param income          Suma dochodów.
+     * @param tax             Suma podatków.
+     * @param afterTaxIncome  Suma dochodów po opodatkowaniu.
+     * @param fee             Suma prowizji (z pominięciem zbiorów osób bez określonej prowizji).
+     */
+    public record Totals(long periodEntrySets, long rows, Money income, Money tax, Money afterTaxIncome,
+                         Money fee) {
+    }
+
+
+    /**
+     * Klasa reprezentująca kolumnową tabelę wyników – każda kolumna przechowywana jest w osobnej tablicy.
+     */
+    public static class ResultTable {
+
+        private final PeriodEntrySet[] periodEntrySets;
+        private final Tax[] taxes;
+        private final Money[] incomes;
+        private final Money[] taxValues;
+        private final Money[] afterTaxIncomes;
+        private final Money[] fees;
+
+        private ResultTable(int size) {
+            this.periodEntrySets = new PeriodEntrySet[size];
+            this.taxes = new Tax[size];
+            this.incomes = new Money[size];
+            this.taxValues = new Money[size];
+            this.afterTaxIncomes = new Money[size];
+            this.fees = new Money[size];
+        }
+
+        public int size() {
+            return periodEntrySets.length;
+        }
+
+        public PeriodEntrySet getPeriodEntrySet(int row) {
+            return periodEntrySets[row];
+        }
+
+        public Tax getTax(int row) {
+            return taxes[row];
+        }
+
+        public Money getIncome(int row) {
+            return incomes[row];
+        }
+
+        public Money getTaxValue(int row) {
+            return taxValues[row];
+        }
+
+        public Money getAfterTaxIncome(int row) {
+            return afterTaxIncomes[row];
+        }
+
+        /**
+         * @param row Numer wiersza.
+         * @return Prowizja lub wartość null, jeżeli właściciel zbioru nie ma określonej prowizji.
+         */
+        public Money getFee(int row) {
+            return fees[row];
+        }
+    }
+
+
+    /**
+     * Zadanie odczytujące podatki powiązane z fragmentem zbiorów.
+     */
+    private static class CollectTaxesTask extends RecursiveAction {
+
+        private final PeriodEntrySet[] sets;
+        private final Tax[][] taxes;
+        private final int from;
+        private final int to;
+
+        CollectTaxesTask(PeriodEntrySet[] sets, Tax[][] taxes, int from, int to) {
+            this.sets = sets;
+            this.taxes = taxes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                for (var i = from; i < to; i++) {
+                    taxes[i] = sets[i].getTaxes().toArray(new Tax[0]);
+                }
+                return;
+            }
+            var mid = (from + to) >>> 1;
+            invokeAll(new CollectTaxesTask(sets, taxes, from, mid), new CollectTaxesTask(sets, taxes, mid, to));
+        }
+    }
+
+
+    /**
+     * Zadanie obliczające wyniki dla fragmentu zbiorów i zwracające ich sumy cząstkowe.
+     */
+    private static class CalculateTask extends RecursiveTask<Aggregates> {
+
+        private final PeriodEntrySet[] sets;
+        private final Tax[][] taxes;
+        private final int[] offsets;
+        private final ResultTable table;
+        private final int from;
+        private final int to;
+
+        CalculateTask(PeriodEntrySet[] sets, Tax[][] taxes, int[] offsets, ResultTable table, int from, int to) {
+            this.sets = sets;
+            this.taxes = taxes;
+            this.offsets = offsets;
+            this.table = table;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Aggregates compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                return computeSequentially();
+            }
+            var mid = (from + to) >>> 1;
+            var left = new CalculateTask(sets, taxes, offsets, table, from, mid);
+            left.fork();
+            var right = new CalculateTask(sets, taxes, offsets, table, mid, to).compute();
+            return left.join().merge(right);
+        }
+
+        private Aggregates computeSequentially() {
+            var aggregates = new Aggregates();
+            for (var i = from; i < to; i++) {
+                var set = sets[i];
+                var income = set.getIncomeMoney();
+                var personTotals = aggregates.byPerson.computeIfAbsent(set.getPerson(), _ -> new TotalsBuilder());
+                var managerTotals = set.getAccountManager() == null ? null :
+                        aggregates.byAccountManager.computeIfAbsent(set.getAccountManager(),
+                                _ -> new TotalsBuilder());
+                aggregates.total.addSet(income);
+                personTotals.addSet(income);
+                if (managerTotals != null) {
+                    managerTotals.addSet(income);
+                }
+
+                // Wyniki odczytywane są ze zbioru – obliczone na groszach i zaokrąglone zgodnie z zasadami właściciela
+                var withFee = set.getPerson().getFeeRate() != null;
+                var row = offsets[i];
+                for (var tax : taxes[i]) {
+                    var taxValue = Money.of(set.getTax(tax));
+                    var afterTaxIncome = Money.of(set.getAfterTaxIncome(tax));
+                    var fee = withFee ? Money.of(set.getFee(tax)) : null;
+
+                    table.periodEntrySets[row] = set;
+                    table.taxes[row] = tax;
+                    table.incomes[row] = income;
+                    table.taxValues[row] = taxValue;
+                    table.afterTaxIncomes[row] = afterTaxIncome;
+                    table.fees[row] = fee;
+                    row++;
+
+                    aggregates.total.addRow(taxValue, afterTaxIncome, fee);
+                    personTotals.addRow(taxValue, afterTaxIncome, fee);
+                    if (managerTotals != null) {
+                        managerTotals.addRow(taxValue, afterTaxIncome, fee);
+                    }
+                }
+            }
+            return aggregates;
+        }
+    }
+
+
+    /**
+     * Klasa pomocnicza – sumy cząstkowe fragmentu zbiorów.
+     */
+    private static class Aggregates {
+
+        private final TotalsBuilder total = new TotalsBuilder();
+        private final HashMap<Person, TotalsBuilder> byPerson = new HashMap<>();
+        private final HashMap<AccountManager, TotalsBuilder> byAccountManager = new HashMap<>();
+
+        Aggregates merge(Aggregates other) {
+            total.merge(other.total);
+            other.byPerson.forEach((key, value) -> byPerson.merge(key, value, TotalsBuilder::merge));
+            other.byAccountManager.forEach((key, value) -> byAccountManager.merge(key, value, TotalsBuilder::merge));
+            return this;
+        }
+    }
+
+
+    /**
+     * Klasa pomocnicza – sumator wyników grupy zbiorów.
+     */
+    private static class TotalsBuilder {
+
+        private long periodEntrySets;
+        private long rows;
+        private final Money.Accumulator income = new Money.Accumulator();
+        private final Money.Accumulator tax = new Money.Accumulator();
+        private final Money.Accumulator afterTaxIncome = new Money.Accumulator();
+        private final Money.Accumulator fee = new Money.Accumulator();
+
+        void addSet(Money income) {
+            periodEntrySets++;
+            this.income.add(income);
+        }
+
+        void addRow(Money tax, Money afterTaxIncome, Money fee) {
+            rows++;
+            this.tax.add(tax);
+            this.afterTaxIncome.add(afterTaxIncome);
+            if (fee != null) { // Osoba bez określonej prowizji
+                this.fee.add(fee);
+            }
+        }
+
+        TotalsBuilder merge(TotalsBuilder other) {
+            periodEntrySets += other.periodEntrySets;
+            rows += other.rows;
+            income.add(other.income.toMoney());
+            tax.add(other.tax.toMoney());
+            afterTaxIncome.add(other.afterTaxIncome.toMoney());
+            fee.add(other.fee.toMoney());
+            return this;
+        }
+
+        Totals toTotals() {
+            return new Totals(periodEntrySets, rows, income.toMoney(), tax.toMoney(), afterTaxIncome.toMoney(),
+                    fee.toMoney());
+        }
+    }
+}
@@ -8,57 +8,429 @@ import com.github.bredecorne.masp.model.persons.Person;
 import com.github.bredecorne.masp.model.taxes.Tax;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
 
 /**
  * Klasa narzędziowa, służąca do odczytu i zapisu wszystkich ekstensji użytych w aplikacji.
+ * <p>
+ * Ekstensje zapisywane są w zwartym formacie binarnym (RepositoryFormat), w którym obiekty identyfikowane są
+ * numerami, a powiązania zapisywane są jako tablice numerów. Odczyt obsługuje również pliki zapisane wcześniej
+ * mechanizmem serializacji Javy.
+ * </p>
+ * <p>
+ * Plik repozytorium odczytywany jest z odwzorowania w pamięci, a wpisy księgowe zbiorów odczytywane są dopiero przy
+ * pierwszym ich użyciu. Z tego powodu zapis nie nadpisuje pliku w miejscu – dane zapisywane są do pliku tymczasowego,
+ * który następnie zastępuje plik repozytorium.
+ * </p>
+ * <p>
+ * Zapis i odczyt domyślnego pliku repozytorium korzystają z dziennika zmian (RepositoryJournal) – po pierwszym
+ * pełnym zapisie kolejne zapisy dopisują do dziennika wyłącznie zmiany, a dziennik scalany jest z plikiem
+ * repozytorium w tle.
+ * </p>
+ * <p>
+ * Metody serializeAsync i deserializeAsync wykonują zapis i odczyt w wątku tła, nie blokując wątku interfejsu
+ * użytkownika. Zapis utrwala w wątku wywołującym obraz modelu (copy-on-write), który zapisywany jest w tle,
+ * a odczyt tworzy obiekty modelu w zadanym wątku dopiero po odczytaniu całego pliku.
+ * </p>
+ * <p>
+ * Metody serializeSharded i deserializeSharded zapisują ekstensje do katalogu, w którym każda ekstensja zajmuje
+ * osobny plik, a wpisy księgowe podzielone są na kilka plików według klienta. Pliki zapisywane i odczytywane są
+ * równolegle, w wątkach wirtualnych.
+ * </p>
  */
 public class Repository {
 
     private static final String REPOSITORY_FILEPATH = "repository.data";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static RepositoryJournal journal; // Dziennik zmian domyślnego pliku repozytorium
+    private static int syncInterval = RepositoryJournal.DEFAULT_SYNC_INTERVAL;
+    private static long compactionThreshold = RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD;
+    private static volatile int compressionLevel = 0; // Domyślnie bez kompresji
+    // W systemie Windows pliku odwzorowanego w pamięci nie można zastąpić ani usunąć
+    private static volatile boolean memoryMapping = !System.getProperty("os.name", "").startsWith("Windows");
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "repository-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+
+
+    /**
+     * Ustawia parametry dziennika zmian – obowiązują od najbliższego otwarcia dziennika.
+     *
+     * @param syncInterval        Liczba zapisów, po których dziennik synchronizowany jest z dyskiem, większa od 0.
+     * @param compactionThreshold Rozmiar dziennika w bajtach, po którego przekroczeniu dziennik scalany jest z plikiem
+     *                            repozytorium, większy od 0.
+     */
+    public static synchronized void setJournalPolicy(int syncInterval, long compactionThreshold) {
+        if (syncInterval <= 0 || compactionThreshold <= 0) {
+            throw new IllegalArgumentException();
+        }
+        Repository.syncInterval = syncInterval;
+        Repository.compactionThreshold = compactionThreshold;
+    }
 
     /**
-     * Tworzy nowy obiekt, przechowujący ogół ekstensji klas składających się na aplikację oraz dokonuje ich
-     * serializacji do pliku określonego zmienną REPOSITORY_FILENAME
-     */
-    public static void serialize() {
-        try (FileOutputStream fileOutputStream = new FileOutputStream(REPOSITORY_FILEPATH)) {
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream);
-            objectOutputStream.writeObject(
-                    new DataTransferObject(
-                            Person.getPersons(),
-                            Tax.getTaxes(),
-                            AccountManager.getAccountManagers(),
-                            Address.getAddresses(),
-                            PeriodEntrySet.getPeriodEntrySets(),
-                            TaxOffice.getTaxOffices()
-                    )
-            );
+     * Ustawia poziom kompresji plików repozytorium – obowiązuje od najbliższego zapisu pełnego pliku (w tym scalania
+     * dziennika). Plik skompresowany zajmuje mniej miejsca, lecz przy odczycie dekompresowany jest do pamięci
+     * zamiast odwzorowania pliku. Odczyt rozpoznaje sposób kompresji na podstawie nagłówka pliku.
+     *
+     * @param compressionLevel Poziom od 1 (Deflater.BEST_SPEED) do 9 (Deflater.BEST_COMPRESSION) lub 0 – bez kompresji.
+     */
+    public static synchronized void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException();
+        }
+        Repository.compressionLevel = compressionLevel;
+    }
+
+    static int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Określa, czy odczytywane pliki repozytorium są odwzorowywane w pamięci, czy wczytywane do pamięci w całości.
+     * Odwzorowanie trwa, dopóki używane są nieodczytane jeszcze wpisy księgowe, a w systemie Windows uniemożliwia
+     * zastąpienie pliku przy kolejnym zapisie – dlatego w tym systemie pliki są domyślnie wczytywane.
+     * Ustawienie obowiązuje od najbliższego odczytu.
+     *
+     * @param memoryMapping Wartość true, jeżeli pliki mają być odwzorowywane w pamięci.
+     */
+    public static synchronized void setMemoryMapping(boolean memoryMapping) {
+        Repository.memoryMapping = memoryMapping;
+    }
+
+    static boolean isMemoryMapping() {
+        return memoryMapping;
+    }
+
+    /**
+     * Zapisuje ogół ekstensji klas składających się na aplikację do pliku określonego zmienną REPOSITORY_FILEPATH.
+     * Jeżeli dziennik zmian jest otwarty, zapisywane są wyłącznie zmiany od poprzedniego zapisu.
+     */
+    public static synchronized void serialize() {
+        ensureIdle();
+        try {
+            if (journal == null) {
+                journal = RepositoryJournal.create(Path.of(REPOSITORY_FILEPATH), syncInterval, compactionThreshold);
+            } else {
+                journal.save();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * Zapisuje ogół ekstensji klas składających się na aplikację do zadanego pliku.
+     *
+     * @param path Ścieżka pliku repozytorium.
+     */
+    public static synchronized void serialize(Path path) {
+        ensureIdle();
+        try {
+            if (journal != null && journal.getPath().equals(path)) {
+                journal.checkpoint();
+            } else {
+                replace(path, output -> RepositoryFormat.write(output, 0));
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+
+    /**
+     * Zapisuje ogół ekstensji klas do pliku określonego zmienną REPOSITORY_FILEPATH w wątku tła.
+     * Stan modelu utrwalany jest w wątku wywołującym – zmiany dokonane po wywołaniu metody zostaną zapisane
+     * przy kolejnym zapisie, a plik repozytorium zastępowany jest dopiero po zapisaniu całej jego zawartości.
+     * Zwraca wyjątek IllegalStateException, jeżeli poprzedni zapis lub odczyt nie został ukończony.
+     *
+     * @param progress Obserwator postępu zapisu, wywoływany w wątku tła, lub wartość null.
+     * @return Zadanie ukończone po zapisaniu pliku.
+     */
+    public static synchronized CompletableFuture<Void> serializeAsync(ProgressListener progress) {
+        ensureIdle();
+        RepositoryJournal.Task task;
+        try {
+            if (journal == null) {
+                journal = RepositoryJournal.attach(Path.of(REPOSITORY_FILEPATH), syncInterval, compactionThreshold);
+            }
+            task = journal.prepareSave(progress);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        pending = CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, worker);
+        return pending;
+    }
+
+
+    /**
+     * Odczytuje plik określony zmienną REPOSITORY_FILEPATH w wątku tła, a następnie w wątku modelu nadpisuje
+     * ekstensje wszystkich klas odczytanymi obiektami i nakłada zmiany zapisane w dzienniku. Do chwili nadpisania
+     * ekstensji model pozostaje w dotychczasowym stanie, lecz jego zmiany nie są już rejestrowane.
+     * Zwraca wyjątek IllegalStateException, jeżeli poprzedni zapis lub odczyt nie został ukończony.
+     *
+     * @param modelExecutor Wykonawca zadań w wątku modyfikującym model (np. Platform::runLater).
+     * @param progress      Obserwator postępu odczytu, wywoływany w wątku tła, lub wartość null.
+     * @return Zadanie ukończone po nadpisaniu ekstensji.
+     */
+    public static synchronized CompletableFuture<Void> deserializeAsync(Executor modelExecutor,
+                                                                       ProgressListener progress) {
+        if (modelExecutor == null) {
+            throw new IllegalArgumentException();
+        }
+        ensureIdle();
+        var path = Path.of(REPOSITORY_FILEPATH);
+        var previous = journal;
+        journal = null;
+        pending = CompletableFuture.supplyAsync(() -> {
+            try {
+                if (previous != null) {
+                    previous.close();
+                }
+                if (readMagic(path) == RepositoryFormat.MAGIC) {
+                    var prepared = RepositoryJournal.prepare(path, progress);
+                    return (ModelUpdate) () -> {
+                        var opened = RepositoryJournal.open(prepared, syncInterval, compactionThreshold);
+                        synchronized (Repository.class) {
+                            journal = opened;
+                        }
+                    };
+                }
+                try (var inputStream = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+                    var dto = readLegacy(inputStream);
+                    return (ModelUpdate) () -> setExtents(dto);
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                throw new CompletionException(e);
+            }
+        }, worker).thenAcceptAsync(update -> {
+            try {
+                update.apply();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, modelExecutor);
+        return pending;
+    }
+
+    /**
+     * Sprawdza, czy istnieje plik określony zmienną REPOSITORY_FILEPATH.
+     *
+     * @return Prawda, jeżeli repozytorium zostało wcześniej zapisane.
+     */
+    public static boolean exists() {
+        return Files.exists(Path.of(REPOSITORY_FILEPATH));
+    }
+
+    private static void ensureIdle() {
+        if (!pending.isDone()) {
+            throw new IllegalStateException("Poprzedni zapis lub odczyt repozytorium nie został ukończony");
+        }
+    }
+
+
+    /**
+     * Metoda pomocnicza – zapisuje plik do pliku tymczasowego, który następnie zastępuje zadany plik.
+     *
+     * @param path   Ścieżka zastępowanego pliku.
+     * @param writer Funkcja zapisująca zawartość pliku.
+     * @return Wynik funkcji zapisującej.
+     */
+    static <T> T replace(Path path, ContentWriter<T> writer) throws IOException {
+        var temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        T result;
+        try (var outputStream = Files.newOutputStream(temporaryPath)) {
+            result = writer.write(outputStream);
+        }
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return result;
+    }
+
     /**
      * Odczytuje dane z pliku zawierającego obiekty zapisane przy użyciu metody serialize() oraz nadpisuje
      * ekstensje wszystkich klas, które ją posiadają i są obsługiwane przez serializację.
+     * Nakłada na odczytane dane zmiany zapisane w dzienniku i otwiera dziennik dla kolejnych zapisów.
+     * Niezapisane zmiany są porzucane.
      */
-    public static void deserialize() {
-        try (FileInputStream fileInputStream = new FileInputStream(REPOSITORY_FILEPATH)) {
-            ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
-            DataTransferObject dto = (DataTransferObject) objectInputStream.readObject();
-
-            Person.setPersons(dto.persons);
-            Tax.setTaxes(dto.taxes);
-            AccountManager.setAccountManagers(dto.accountManagers);
-            Address.setAddresses(dto.addresses);
-            PeriodEntrySet.setPeriodEntrySets(dto.periodEntrySets);
-            TaxOffice.setTaxOffices(dto.taxOffices);
+    public static synchronized void deserialize() {
+        ensureIdle();
+        var path = Path.of(REPOSITORY_FILEPATH);
+        try {
+            closeJournal();
+            if (readMagic(path) == RepositoryFormat.MAGIC) {
+                journal = RepositoryJournal.open(path, syncInterval, compactionThreshold);
+            } else {
+                deserialize(path); // Plik zapisany serializacją Javy – dziennik otwierany jest przy zapisie
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * Zamyka dziennik zmian domyślnego pliku repozytorium, czekając na zakończenie scalania.
+     * Zmiany niezapisane metodą serialize() nie są zapisywane.
+     */
+    public static synchronized void closeJournal() throws IOException {
+        if (journal != null) {
+            try {
+                journal.close();
+            } finally {
+                journal = null;
+            }
+        }
+    }
+
+
+    /**
+     * Odczytuje dane z zadanego pliku repozytorium oraz nadpisuje ekstensje wszystkich klas, które ją posiadają.
+     * Format pliku rozpoznawany jest na podstawie jego sygnatury.
+     *
+     * @param path Ścieżka pliku repozytorium.
+     */
+    public static synchronized void deserialize(Path path) {
+        ensureIdle();
+        try {
+            if (journal != null && journal.getPath().equals(path)) {
+                closeJournal(); // Odczytane obiekty nie odpowiadają numerom obiektów w dzienniku
+            }
+            if (readMagic(path) == RepositoryFormat.MAGIC) {
+                RepositoryFormat.read(path);
+                return;
+            }
+            try (var inputStream = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+                setExtents(readLegacy(inputStream));
+            }
         } catch (IOException | ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Zapisuje ogół ekstensji klas do zadanego katalogu – każdą ekstensję do osobnego pliku, a wpisy księgowe
+     * zbiorów do zadanej liczby plików, do których zbiory przydzielane są według klienta. Pliki zapisywane są
+     * równolegle do podkatalogu nowego pokolenia, które staje się bieżącym dopiero po zapisaniu wszystkich plików –
+     * przerwany zapis pozostawia poprzednie pokolenie nienaruszone.
+     *
+     * @param directory    Katalog repozytorium.
+     * @param ledgerShards Liczba plików wpisów księgowych, większa od 0.
+     */
+    public static synchronized void serializeSharded(Path directory, int ledgerShards) {
+        if (directory == null || ledgerShards <= 0) {
+            throw new IllegalArgumentException();
+        }
+        ensureIdle();
+        try {
+            RepositoryFormat.writeShards(directory, ledgerShards);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * Odczytuje ekstensje zapisane metodą serializeSharded(Path, int) oraz nadpisuje ekstensje wszystkich klas.
+     * Pliki ekstensji odczytywane są równolegle, a plik wpisów księgowych odczytywany jest dopiero przy pierwszym
+     * użyciu wpisów któregokolwiek z przydzielonych mu zbiorów.
+     *
+     * @param directory Katalog repozytorium.
+     */
+    public static synchronized void deserializeSharded(Path directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException();
+        }
+        ensureIdle();
+        try {
+            RepositoryFormat.readShards(directory);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int readMagic(Path path) throws IOException {
+        try (var inputStream = new DataInputStream(Files.newInputStream(path))) {
+            return inputStream.readInt();
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – odczytuje ekstensje zapisane mechanizmem serializacji Javy.
+     */
+    private static DataTransferObject readLegacy(InputStream inputStream) throws IOException, ClassNotFoundException {
+        ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
+        return (DataTransferObject) objectInputStream.readObject();
+    }
+
+    private static void setExtents(DataTransferObject dto) {
+        Person.setPersons(dto.persons);
+        Tax.setTaxes(dto.taxes);
+        AccountManager.setAccountManagers(dto.accountManagers);
+        Address.setAddresses(dto.addresses);
+        PeriodEntrySet.setPeriodEntrySets(dto.periodEntrySets);
+        TaxOffice.setTaxOffices(dto.taxOffices);
+    }
+
+
+    /**
+     * Interfejs obserwatora postępu zapisu lub odczytu repozytorium.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * Wywoływana po zapisaniu lub odczytaniu kolejnej części repozytorium.
+         *
+         * @param done  Liczba ukończonych jednostek pracy.
+         * @param total Liczba wszystkich jednostek pracy.
+         */
+        void progress(long done, long total);
+    }
+
+
+    /**
+     * Interfejs funkcyjny zmiany modelu wykonywanej w wątku modelu po odczycie w tle.
+     */
+    @FunctionalInterface
+    private interface ModelUpdate {
+
+        void apply() throws IOException;
+    }
+
+
+    /**
+     * Interfejs funkcyjny funkcji zapisującej zawartość pliku.
+     */
+    @FunctionalInterface
+    interface ContentWriter<T> {
+
+        T write(OutputStream output) throws IOException;
+    }
+
 
     private record DataTransferObject(HashSet<Person> persons, HashSet<Tax> taxes,
                                       HashSet<AccountManager> accountManagers,
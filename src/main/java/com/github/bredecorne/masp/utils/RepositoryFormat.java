@@ -0,0 +1,1903 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.AccountManager;
+import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.Country;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.Status;
+import com.github.bredecorne.masp.model.TaxOffice;
+import com.github.bredecorne.masp.model.persons.ImperfectLegalPerson;
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.persons.NaturalPerson;
+import com.github.bredecorne.masp.model.persons.Person;
+import com.github.bredecorne.masp.model.taxes.ProgressiveTax;
+import com.github.bredecorne.masp.model.taxes.Tax;
+import com.github.bredecorne.masp.model.taxes.UniformTax;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Klasa narzędziowa implementująca binarny format zapisu wszystkich ekstensji.
+ * <p>
+ * Każda ekstensja zapisywana jest jako płaska tabela rekordów, w której obiekt identyfikowany jest gęstym numerem –
+ * pozycją w tabeli. Powiązania zapisywane są jako tablice numerów obiektów powiązanych, dzięki czemu zapis i odczyt
+ * nie wymagają rekurencji wzdłuż dwukierunkowych asocjacji ani opisów klas. Liczby całkowite zapisywane są
+ * w kodowaniu o zmiennej długości.
+ * </p>
+ * <p>
+ * Obiekty powiązane z obiektami ekstensji, lecz do niej nienależące, dopisywane są na końcu tabeli – nagłówek tabeli
+ * określa liczbę obiektów należących do ekstensji. Plik rozpoczyna się od sygnatury MAGIC i numeru wersji formatu.
+ * </p>
+ * <p>
+ * Od wersji 2 tabele zapisywane są jako sekcje, których położenie określa spis sekcji zapisany na końcu pliku
+ * (ostatnie 8 bajtów wskazuje początek spisu). Wpisy księgowe wszystkich zbiorów zapisywane są w osobnej sekcji.
+ * Plik odczytywany jest z odwzorowania w pamięci – tabele obiektów odczytywane są od razu, a wpisy zbioru dopiero
+ * przy pierwszym ich użyciu, bezpośrednio z odwzorowanego fragmentu pliku.
+ * </p>
+ * <p>
+ * Od wersji 3 nagłówek zawiera numer pokolenia pliku, który wiąże plik z dziennikiem zmian (RepositoryJournal)
+ * zapisanym od chwili jego utworzenia. Plik zapisany poza dziennikiem ma pokolenie 0.
+ * </p>
+ * <p>
+ * Od wersji 4 nagłówek określa sposób kompresji pozostałej części pliku. Położenia sekcji i wpisów odnoszą się
+ * do danych przed kompresją. Bloki pliku skompresowanego (BlockCompression) dekompresowane są przy odczycie danych,
+ * które zawierają – tabele obiektów od razu, a bloki sekcji wpisów dopiero przy pierwszym użyciu wpisów zbioru.
+ * </p>
+ */
+final class RepositoryFormat {
+
+    // Atrybuty klasowe
+    static final int MAGIC = 0x4D415350; // "MASP"
+    static final int VERSION = 4;
+    private static final int PREAMBLE_SIZE = Integer.BYTES + Short.BYTES + Long.BYTES + Byte.BYTES;
+    private static final int UNCOMPRESSED = 0;
+    private static final int DEFLATE = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int PROGRESS_STEPS = 100;
+    private static final int END = 0;
+    private static final int TAX_OFFICES = 1;
+    private static final int ADDRESSES = 2;
+    private static final int ACCOUNT_MANAGERS = 3;
+    private static final int TAXES = 4;
+    private static final int PERSONS = 5;
+    private static final int PERIOD_ENTRY_SETS = 6;
+    private static final int LINKS = 7;
+    private static final int ENTRIES = 8;
+    private static final int UNIFORM_TAX = 0;
+    private static final int PROGRESSIVE_TAX = 1;
+    private static final int NATURAL_PERSON = 0;
+    private static final int LEGAL_PERSON = 1;
+    private static final int IMPERFECT_LEGAL_PERSON = 2;
+    private static final Country[] COUNTRIES = Country.values();
+    private static final Status[] STATUSES = Status.values();
+    private static final String SHARD_EXTENSION = ".shard";
+    private static final String SHARD_MANIFEST = "repository" + SHARD_EXTENSION;
+    private static final String SHARD_GENERATION_PREFIX = "generation-";
+    private static final String[] SHARD_NAMES = {null, "tax-offices", "addresses", "account-managers", "taxes",
+            "persons", "period-entry-sets", "links"};
+
+
+    private RepositoryFormat() {
+    }
+
+
+    /**
+     * Zapisuje wszystkie ekstensje wraz z obiektami z nimi powiązanymi jako plik pokolenia 0.
+     *
+     * @param output Strumień wyjściowy.
+     */
+    static void write(OutputStream output) throws IOException {
+        write(output, 0);
+    }
+
+
+    /**
+     * Zapisuje wszystkie ekstensje wraz z obiektami z nimi powiązanymi.
+     * Wpisy zbiorów, które nie zostały jeszcze odczytane z pliku repozytorium, kopiowane są bez odczytywania.
+     * Zwraca wyjątek NotSerializableException w sytuacji, gdy format nie obsługuje klasy pochodnej osoby lub podatku.
+     *
+     * @param output     Strumień wyjściowy.
+     * @param generation Numer pokolenia pliku.
+     * @return Tabele zapisanych obiektów – pozycja obiektu w tabeli jest jego numerem w pliku.
+     */
+    static Tables write(OutputStream output, long generation) throws IOException {
+        return capture().write(output, generation, null);
+    }
+
+
+    /**
+     * Utrwala spójny obraz wszystkich ekstensji, który można zapisać w innym wątku, podczas gdy model jest
+     * dalej modyfikowany. Tabele obiektów kodowane są od razu, a dla wpisów zbiorów zapamiętywany jest ich
+     * niezmienny obraz (Snapshot) lub fragment pliku, z którego nie zostały jeszcze odczytane – wpisy, stanowiące
+     * zasadniczą część pliku, kodowane są dopiero przy zapisie.
+     * Wywoływana w wątku modyfikującym model.
+     * Zwraca wyjątek NotSerializableException w sytuacji, gdy format nie obsługuje klasy pochodnej osoby lub podatku.
+     *
+     * @return Obraz ekstensji.
+     */
+    static Image capture() throws IOException {
+        var graph = new Graph();
+        var buffer = new ByteArrayOutputStream();
+        var out = new DataOutputStream(buffer);
+        var sections = new long[PERSONS + 1];
+
+        sections[TAX_OFFICES] = buffer.size();
+        writeHeader(out, TAX_OFFICES, graph.taxOffices);
+        for (var taxOffice : graph.taxOffices.objects) {
+            writeString(out, taxOffice.getName());
+        }
+
+        sections[ADDRESSES] = buffer.size();
+        writeHeader(out, ADDRESSES, graph.addresses);
+        for (var address : graph.addresses.objects) {
+            writeVarLong(out, Country.valueOf(address.getCountry()).ordinal());
+            writeString(out, address.getCity());
+            writeString(out, address.getStreet());
+            writeString(out, address.getHouseNumber());
+            writeString(out, address.getApartmentNumber());
+        }
+
+        sections[ACCOUNT_MANAGERS] = buffer.size();
+        writeHeader(out, ACCOUNT_MANAGERS, graph.accountManagers);
+        for (var accountManager : graph.accountManagers.objects) {
+            writeString(out, accountManager.getName());
+            writeStatus(out, accountManager.getStatus());
+        }
+
+        sections[TAXES] = buffer.size();
+        writeHeader(out, TAXES, graph.taxes);
+        for (var tax : graph.taxes.objects) {
+            switch (tax) {
+                case UniformTax uniformTax -> {
+                    out.writeByte(UNIFORM_TAX);
+                    writeDecimal(out, uniformTax.getValue());
+                }
+                case ProgressiveTax progressiveTax -> {
+                    var thresholds = progressiveTax.getValue();
+                    out.writeByte(PROGRESSIVE_TAX);
+                    writeVarLong(out, thresholds.size());
+                    for (var threshold : thresholds.entrySet()) {
+                        writeDecimal(out, threshold.getKey());
+                        writeDecimal(out, threshold.getValue());
+                    }
+                }
+                default -> throw new NotSerializableException(tax.getClass().getName());
+            }
+        }
+
+        sections[PERSONS] = buffer.size();
+        writeHeader(out, PERSONS, graph.persons);
+        for (var person : graph.persons.objects) {
+            switch (person) {
+                case NaturalPerson naturalPerson -> {
+                    out.writeByte(NATURAL_PERSON);
+                    out.writeBoolean(naturalPerson.isUniformTax());
+                }
+                case LegalPerson legalPerson -> {
+                    out.writeByte(LEGAL_PERSON);
+                    out.writeBoolean(legalPerson.isReducedTax());
+                }
+                case ImperfectLegalPerson _ -> {
+                    out.writeByte(IMPERFECT_LEGAL_PERSON);
+                    out.writeBoolean(false);
+                }
+                default -> throw new NotSerializableException(person.getClass().getName());
+            }
+            writeString(out, person.getName());
+            writeStatus(out, person.getStatus());
+            writeDecimal(out, person.getFeeRate());
+            out.writeBoolean(person.isPreferential());
+            // Zapisywany jest wyłącznie atrybut właściwy dla bieżącego typu klienta – drugi nie jest osiągalny
+            writeDecimal(out, person.isPreferential() ? person.getDiscountRate() : person.getLoyaltyPoints());
+            out.writeBoolean(person.isStrictPeriods());
+            writeIds(out, graph.addresses, person.getAddresses());
+        }
+        var tableBytes = buffer.toByteArray();
+
+        // Rekordy zbiorów bez położenia wpisów, które znane jest dopiero przy zapisie
+        buffer.reset();
+        var periodEntrySetCount = graph.periodEntrySets.objects.size();
+        var recordEnds = new int[periodEntrySetCount + 1];
+        var dateFroms = new LocalDate[periodEntrySetCount];
+        var sources = new PeriodEntrySet.EntrySource[periodEntrySetCount];
+        var entryCounts = new int[periodEntrySetCount];
+        var personIds = new int[periodEntrySetCount];
+        writeHeader(out, PERIOD_ENTRY_SETS, graph.periodEntrySets);
+        recordEnds[0] = buffer.size();
+        for (var i = 0; i < periodEntrySetCount; i++) {
+            var periodEntrySet = graph.periodEntrySets.objects.get(i);
+            var dateFrom = periodEntrySet.getDateFrom();
+            writeDate(out, dateFrom);
+            writeVarLong(out, zigZag(periodEntrySet.getDateTo().toEpochDay() - dateFrom.toEpochDay()));
+            writeId(out, graph.persons, periodEntrySet.getPerson());
+            writeId(out, graph.accountManagers, periodEntrySet.getAccountManager());
+            writeIds(out, graph.taxes, periodEntrySet.getTaxes());
+            recordEnds[i + 1] = buffer.size();
+            dateFroms[i] = dateFrom;
+            personIds[i] = graph.persons.ids.get(periodEntrySet.getPerson());
+            if (periodEntrySet.getEntrySource() instanceof StoredEntries storedEntries) {
+                sources[i] = storedEntries; // Wpisy nieodczytane – kopiowane bez dekodowania
+                entryCounts[i] = storedEntries.count();
+            } else {
+                var snapshot = periodEntrySet.getSnapshot();
+                sources[i] = snapshot::forEachEntry;
+                entryCounts[i] = snapshot.getEntryCount();
+            }
+        }
+        var recordBytes = buffer.toByteArray();
+
+        buffer.reset();
+        writeVarLong(out, LINKS);
+        for (var taxOffice : graph.taxOffices.objects) {
+            writeIds(out, graph.addresses, taxOffice.getAddresses());
+        }
+        for (var address : graph.addresses.objects) {
+            writeId(out, graph.taxOffices, address.getTaxOffice());
+        }
+        for (var accountManager : graph.accountManagers.objects) {
+            writeIds(out, graph.periodEntrySets, accountManager.getPeriodEntrySets());
+        }
+        writeVarLong(out, END);
+
+        var tables = new Tables(0, graph.taxOffices.objects, graph.addresses.objects, graph.periodEntrySets.objects,
+                new int[]{graph.persons.extentSize, graph.taxes.extentSize, graph.accountManagers.extentSize,
+                        graph.addresses.extentSize, graph.periodEntrySets.extentSize, graph.taxOffices.extentSize});
+        return new Image(tables, tableBytes, sections, recordBytes, recordEnds, dateFroms, sources, entryCounts,
+                personIds, buffer.toByteArray());
+    }
+
+    /**
+     * Metoda pomocnicza – zapisuje spis sekcji oraz, jako ostatnie 8 bajtów pliku, jego położenie.
+     */
+    private static void writeSectionIndex(DataOutput out, long[] sections, long index) throws IOException {
+        writeVarLong(out, ENTRIES);
+        for (var section = TAX_OFFICES; section <= ENTRIES; section++) {
+            writeVarLong(out, section);
+            out.writeLong(sections[section]);
+        }
+        out.writeLong(index);
+    }
+
+    /**
+     * Metoda pomocnicza – zapisuje wpisy zbioru: datę jako przesunięcie względem początku okresu, wartość
+     * i uzasadnienie.
+     */
+    private static void writeEntries(DataOutput out, PeriodEntrySet.EntrySource source, LocalDate dateFrom)
+            throws IOException {
+        try {
+            source.forEachEntry((date, value, justification) -> {
+                try {
+                    writeVarLong(out, zigZag(date.toEpochDay() - dateFrom.toEpochDay()));
+                    writeDecimal(out, value);
+                    writeString(out, justification);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    /**
+     * Odczytuje ekstensje zapisane metodą write(OutputStream) i nadpisuje nimi ekstensje wszystkich klas.
+     * Plik odwzorowywany jest w pamięci; odwzorowanie zwalniane jest, gdy wszystkie wpisy zostaną odczytane,
+     * a zbiory wpisów księgowych przestaną być używane.
+     * W razie błędu odczytu przywraca dotychczasowe ekstensje.
+     *
+     * @param path Ścieżka pliku repozytorium.
+     * @return Tabele odczytanych obiektów – pozycja obiektu w tabeli jest jego numerem w pliku.
+     */
+    static Tables read(Path path) throws IOException {
+        return materialize(decode(path, null));
+    }
+
+
+    /**
+     * Odczytuje tabele pliku repozytorium bez tworzenia obiektów modelu – może działać w innym wątku, podczas gdy
+     * model jest dalej używany. Wpisy zbiorów nie są odczytywane – zapamiętywane jest jedynie ich położenie
+     * w odwzorowanym pliku. Pliki w wersji 1 nie posiadają spisu sekcji – ich tabele odczytywane są kolejno,
+     * a wpisy od razu.
+     *
+     * @param path     Ścieżka pliku repozytorium.
+     * @param progress Obserwator postępu (liczba odczytanych tabel) lub wartość null.
+     * @return Odczytane tabele, na podstawie których metoda materialize(Decoded) tworzy obiekty modelu.
+     */
+    static Decoded decode(Path path, Repository.ProgressListener progress) throws IOException {
+        var file = open(path, Arena.ofAuto());
+        var in = new SegmentDataInput(file);
+        var preamble = readPreamble(in);
+        var sections = preamble.sections();
+        var steps = LINKS - TAX_OFFICES + 1;
+
+        seek(in, sections, TAX_OFFICES);
+        var taxOfficeCount = readHeader(in, TAX_OFFICES);
+        var taxOfficeNames = decodeTaxOffices(in, taxOfficeCount[0]);
+        report(progress, 1, steps);
+
+        seek(in, sections, ADDRESSES);
+        var addressCount = readHeader(in, ADDRESSES);
+        var addresses = decodeAddresses(in, addressCount[0]);
+        report(progress, 2, steps);
+
+        seek(in, sections, ACCOUNT_MANAGERS);
+        var accountManagerCount = readHeader(in, ACCOUNT_MANAGERS);
+        var accountManagers = decodeAccountManagers(in, accountManagerCount[0]);
+        report(progress, 3, steps);
+
+        seek(in, sections, TAXES);
+        var taxCount = readHeader(in, TAXES);
+        var taxes = decodeTaxes(in, taxCount[0]);
+        report(progress, 4, steps);
+
+        seek(in, sections, PERSONS);
+        var personCount = readHeader(in, PERSONS);
+        var persons = decodePersons(in, personCount[0], addressCount[0]);
+        report(progress, 5, steps);
+
+        seek(in, sections, PERIOD_ENTRY_SETS);
+        var periodEntrySetCount = readHeader(in, PERIOD_ENTRY_SETS);
+        var periodEntrySets = decodePeriodEntrySets(in, periodEntrySetCount[0], persons.length,
+                accountManagers.length, taxes.length, 1, sections == null ? null :
+                        (_, offset, length, count, dateFrom) ->
+                                mappedEntries(file, sections[ENTRIES], offset, length, count, dateFrom));
+        report(progress, 6, steps);
+
+        seek(in, sections, LINKS);
+        var links = decodeLinks(in, taxOfficeNames.length, addresses.length, accountManagers.length,
+                periodEntrySets.length);
+        report(progress, steps, steps);
+
+        return new Decoded(preamble.generation(), new int[]{personCount[1], taxCount[1], accountManagerCount[1],
+                addressCount[1], periodEntrySetCount[1], taxOfficeCount[1]}, taxOfficeNames, addresses,
+                accountManagers, taxes, persons, periodEntrySets, links.taxOfficeAddresses(),
+                links.addressTaxOffices(), links.accountManagerPeriodEntrySets());
+    }
+
+    private static String[] decodeTaxOffices(DataInput in, int count) throws IOException {
+        var taxOfficeNames = new String[count];
+        for (var i = 0; i < taxOfficeNames.length; i++) {
+            taxOfficeNames[i] = readString(in);
+        }
+        return taxOfficeNames;
+    }
+
+    private static AddressRecord[] decodeAddresses(DataInput in, int count) throws IOException {
+        var addresses = new AddressRecord[count];
+        for (var i = 0; i < addresses.length; i++) {
+            var country = COUNTRIES[readIndex(in, COUNTRIES.length)];
+            addresses[i] = new AddressRecord(country, readString(in), readString(in), readString(in),
+                    readString(in));
+        }
+        return addresses;
+    }
+
+    private static AccountManagerRecord[] decodeAccountManagers(DataInput in, int count) throws IOException {
+        var accountManagers = new AccountManagerRecord[count];
+        for (var i = 0; i < accountManagers.length; i++) {
+            accountManagers[i] = new AccountManagerRecord(readString(in), readStatus(in));
+        }
+        return accountManagers;
+    }
+
+    private static TaxRecord[] decodeTaxes(DataInput in, int count) throws IOException {
+        var taxes = new TaxRecord[count];
+        for (var i = 0; i < taxes.length; i++) {
+            switch (in.readByte()) {
+                case UNIFORM_TAX -> taxes[i] = new TaxRecord(readDecimal(in), null);
+                case PROGRESSIVE_TAX -> {
+                    var thresholds = new TreeMap<BigDecimal, BigDecimal>();
+                    var thresholdCount = readCount(in);
+                    for (var k = 0; k < thresholdCount; k++) {
+                        thresholds.put(readDecimal(in), readDecimal(in));
+                    }
+                    taxes[i] = new TaxRecord(null, thresholds);
+                }
+                default -> throw new IOException("Nieznany rodzaj podatku");
+            }
+        }
+        return taxes;
+    }
+
+    private static PersonRecord[] decodePersons(DataInput in, int count, int addressCount) throws IOException {
+        var persons = new PersonRecord[count];
+        for (var i = 0; i < persons.length; i++) {
+            var kind = in.readByte();
+            if (kind != NATURAL_PERSON && kind != LEGAL_PERSON && kind != IMPERFECT_LEGAL_PERSON) {
+                throw new IOException("Nieznany rodzaj osoby");
+            }
+            persons[i] = new PersonRecord(kind, in.readBoolean(), readString(in), readStatus(in), readDecimal(in),
+                    in.readBoolean(), readDecimal(in), in.readBoolean(), readIds(in, addressCount));
+        }
+        return persons;
+    }
+
+    /**
+     * Metoda pomocnicza – odczytuje rekordy zbiorów wpisów księgowych. Jeżeli wpisy zapisano w więcej niż jednym
+     * pliku, rekord zbioru określa numer pliku, w którym zapisano jego wpisy.
+     *
+     * @param entryShards Liczba plików zawierających wpisy.
+     * @param regions     Funkcja tworząca źródło wpisów na podstawie ich położenia lub wartość null (wersja 1 –
+     *                    wpisy zapisane w rekordzie).
+     */
+    private static PeriodEntrySetRecord[] decodePeriodEntrySets(DataInput in, int count, int personCount,
+                                                                int accountManagerCount, int taxCount,
+                                                                int entryShards, EntryRegions regions)
+            throws IOException {
+        var periodEntrySets = new PeriodEntrySetRecord[count];
+        for (var i = 0; i < periodEntrySets.length; i++) {
+            var dateFrom = readDate(in);
+            var dateTo = dateFrom.plusDays(unZigZag(readVarLong(in)));
+            var person = readRequiredId(in, personCount);
+            var accountManager = readId(in, accountManagerCount);
+            var taxIds = readIds(in, taxCount);
+            if (regions != null) {
+                var shard = entryShards > 1 ? readIndex(in, entryShards) : 0;
+                var entryCount = readCount(in);
+                var entries = regions.entries(shard, readVarLong(in), readVarLong(in), entryCount, dateFrom);
+                periodEntrySets[i] = new PeriodEntrySetRecord(dateFrom, dateTo, person, accountManager, taxIds,
+                        entryCount > 0 ? entries : null, null, null, null);
+            } else { // Wersja 1 – wpisy zapisane w rekordzie zbioru
+                var entryCount = readCount(in);
+                var dates = new LocalDate[entryCount];
+                var values = new BigDecimal[entryCount];
+                var justifications = new String[entryCount];
+                for (var k = 0; k < entryCount; k++) {
+                    dates[k] = dateFrom.plusDays(unZigZag(readVarLong(in)));
+                    values[k] = readDecimal(in);
+                    justifications[k] = readString(in);
+                }
+                periodEntrySets[i] = new PeriodEntrySetRecord(dateFrom, dateTo, person, accountManager, taxIds,
+                        null, dates, values, justifications);
+            }
+        }
+        return periodEntrySets;
+    }
+
+    private static Links decodeLinks(DataInput in, int taxOfficeCount, int addressCount, int accountManagerCount,
+                                     int periodEntrySetCount) throws IOException {
+        if (readVarLong(in) != LINKS) {
+            throw new IOException("Niepoprawna struktura pliku repozytorium");
+        }
+        var taxOfficeAddresses = new int[taxOfficeCount][];
+        for (var i = 0; i < taxOfficeAddresses.length; i++) {
+            taxOfficeAddresses[i] = readIds(in, addressCount);
+        }
+        var addressTaxOffices = new int[addressCount];
+        for (var i = 0; i < addressTaxOffices.length; i++) {
+            addressTaxOffices[i] = readId(in, taxOfficeCount);
+        }
+        var accountManagerPeriodEntrySets = new int[accountManagerCount][];
+        for (var i = 0; i < accountManagerPeriodEntrySets.length; i++) {
+            accountManagerPeriodEntrySets[i] = readIds(in, periodEntrySetCount);
+        }
+        if (readVarLong(in) != END) {
+            throw new IOException("Niepoprawna struktura pliku repozytorium");
+        }
+        return new Links(taxOfficeAddresses, addressTaxOffices, accountManagerPeriodEntrySets);
+    }
+
+
+    /**
+     * Tworzy obiekty modelu na podstawie odczytanych tabel, odtwarza powiązania między nimi i nadpisuje nimi
+     * ekstensje wszystkich klas. Wywoływana w wątku modyfikującym model.
+     * W razie błędu przywraca dotychczasowe ekstensje.
+     *
+     * @param decoded Tabele odczytane metodą decode(Path, ProgressListener).
+     * @return Tabele utworzonych obiektów – pozycja obiektu w tabeli jest jego numerem w pliku.
+     */
+    static Tables materialize(Decoded decoded) throws IOException {
+        var persons = Person.getPersons();
+        var taxes = Tax.getTaxes();
+        var accountManagers = AccountManager.getAccountManagers();
+        var addresses = Address.getAddresses();
+        var periodEntrySets = PeriodEntrySet.getPeriodEntrySets();
+        var taxOffices = TaxOffice.getTaxOffices();
+        // Konstruktory dodają tworzone obiekty do ekstensji – obiekty tworzone są na pustych ekstensjach
+        setExtents(new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>(),
+                new HashSet<>());
+        try {
+            return materializeGraph(decoded);
+        } catch (RuntimeException e) {
+            setExtents(persons, taxes, accountManagers, addresses, periodEntrySets, taxOffices);
+            throw new IOException("Niepoprawna zawartość pliku repozytorium", e);
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – tworzy obiekty kolejnych tabel i odtwarza powiązania między nimi.
+     */
+    private static Tables materializeGraph(Decoded decoded) {
+        var taxOffices = new ArrayList<TaxOffice>(decoded.taxOfficeNames().length);
+        for (var name : decoded.taxOfficeNames()) {
+            taxOffices.add(new TaxOffice(name));
+        }
+
+        var addresses = new ArrayList<Address>(decoded.addresses().length);
+        for (var address : decoded.addresses()) {
+            addresses.add(new Address(address.country(), address.city(), address.street(), address.houseNumber(),
+                    address.apartmentNumber()));
+        }
+
+        var accountManagers = new ArrayList<AccountManager>(decoded.accountManagers().length);
+        for (var accountManager : decoded.accountManagers()) {
+            accountManagers.add(new AccountManager(accountManager.name(), accountManager.status()));
+        }
+
+        var taxes = new ArrayList<Tax>(decoded.taxes().length);
+        for (var tax : decoded.taxes()) {
+            taxes.add(tax.thresholds() == null ? new UniformTax(tax.rate()) : new ProgressiveTax(tax.thresholds()));
+        }
+
+        var persons = new ArrayList<Person>(decoded.persons().length);
+        var strictPersons = new ArrayList<Person>();
+        for (var record : decoded.persons()) {
+            // Osoba tworzona jest jako klient niepreferencyjny, a typ klienta ustawiany jest po utworzeniu,
+            // aby odtworzyć atrybut niezależnie od jego wartości
+            var loyaltyPoints = record.preferential() ? null : record.preferentialAttribute();
+            Person person = switch (record.kind()) {
+                case NATURAL_PERSON -> new NaturalPerson(record.name(), record.status(), record.feeRate(), false,
+                        loyaltyPoints, record.flag());
+                case LEGAL_PERSON -> new LegalPerson(record.name(), record.status(), record.feeRate(), false,
+                        loyaltyPoints, record.flag());
+                default -> new ImperfectLegalPerson(record.name(), record.status(), record.feeRate(), false,
+                        loyaltyPoints);
+            };
+            if (record.preferential()) {
+                person.setPreferential(true, BigDecimal.ZERO);
+                person.setDiscountRate(record.preferentialAttribute());
+            }
+            if (record.strictPeriods()) {
+                strictPersons.add(person); // Tryb ścisły włączany jest po odtworzeniu wszystkich powiązań
+            }
+            for (var id : record.addresses()) {
+                person.addAddress(addresses.get(id));
+            }
+            persons.add(person);
+        }
+
+        var periodEntrySets = new ArrayList<PeriodEntrySet>(decoded.periodEntrySets().length);
+        for (var record : decoded.periodEntrySets()) {
+            var periodEntrySet = new PeriodEntrySet(record.dateFrom(), record.dateTo(), persons.get(record.person()));
+            for (var id : record.taxes()) {
+                periodEntrySet.addTax(taxes.get(id));
+            }
+            if (record.entries() != null) {
+                periodEntrySet.setEntrySource(record.entries());
+            } else if (record.dates() != null) {
+                periodEntrySet.addEntries(record.dates(), record.values(), record.justifications(),
+                        record.dates().length);
+            }
+            periodEntrySets.add(periodEntrySet);
+        }
+
+        for (var i = 0; i < taxOffices.size(); i++) {
+            for (var id : decoded.taxOfficeAddresses()[i]) {
+                taxOffices.get(i).addAddress(addresses.get(id));
+            }
+        }
+        for (var i = 0; i < addresses.size(); i++) {
+            var id = decoded.addressTaxOffices()[i];
+            addresses.get(i).setTaxOffice(id < 0 ? null : taxOffices.get(id));
+        }
+        for (var i = 0; i < accountManagers.size(); i++) {
+            for (var id : decoded.accountManagerPeriodEntrySets()[i]) {
+                accountManagers.get(i).addPeriodEntrySet(periodEntrySets.get(id));
+            }
+        }
+        for (var i = 0; i < periodEntrySets.size(); i++) {
+            var id = decoded.periodEntrySets()[i].accountManager();
+            if (id >= 0) {
+                periodEntrySets.get(i).setAccountManager(accountManagers.get(id));
+            }
+        }
+        for (var person : strictPersons) {
+            person.setStrictPeriods(true);
+        }
+
+        var extentSizes = decoded.extentSizes();
+        setExtents(new HashSet<>(persons.subList(0, extentSizes[0])), new HashSet<>(taxes.subList(0, extentSizes[1])),
+                new HashSet<>(accountManagers.subList(0, extentSizes[2])),
+                new HashSet<>(addresses.subList(0, extentSizes[3])),
+                new HashSet<>(periodEntrySets.subList(0, extentSizes[4])),
+                new HashSet<>(taxOffices.subList(0, extentSizes[5])));
+        return new Tables(decoded.generation(), taxOffices, addresses, periodEntrySets, extentSizes);
+    }
+
+    private static void report(Repository.ProgressListener progress, long done, long total) {
+        if (progress != null) {
+            progress.progress(done, total);
+        }
+    }
+
+
+    /**
+     * Zapisuje wszystkie ekstensje do katalogu – każdą tabelę do osobnego pliku, a wpisy zbiorów do zadanej liczby
+     * plików wpisów, do których zbiory przydzielane są według numeru osoby. Pliki zapisywane są równolegle,
+     * w wątkach wirtualnych. Wszystkie pliki posiadają to samo pokolenie, o jeden większe od pokolenia
+     * dotychczasowej zawartości katalogu.
+     * <p>
+     * Pliki pokolenia zapisywane są do osobnego podkatalogu, a po zapisaniu ich wszystkich plik wskazujący bieżące
+     * pokolenie zastępowany jest jednym przeniesieniem. Przerwanie zapisu pozostawia więc katalog wskazujący
+     * kompletne poprzednie pokolenie. Podkatalogi wcześniejszych pokoleń usuwane są po zapisie – podkatalog,
+     * którego nie można usunąć (np. z plikiem odwzorowanym w pamięci), usuwany jest przy kolejnym zapisie.
+     * </p>
+     *
+     * @param directory    Katalog repozytorium.
+     * @param ledgerShards Liczba plików wpisów, większa od 0.
+     * @return Tabele zapisanych obiektów – pozycja obiektu w tabeli jest jego numerem w plikach.
+     */
+    static Tables writeShards(Path directory, int ledgerShards) throws IOException {
+        if (ledgerShards <= 0) {
+            throw new IllegalArgumentException();
+        }
+        var image = capture();
+        Files.createDirectories(directory);
+        var manifest = directory.resolve(SHARD_MANIFEST);
+        var generation = RepositoryJournal.readGeneration(manifest, MAGIC) + 1;
+        var staging = generationPath(directory, generation);
+        deleteDirectory(staging); // Pozostałość przerwanego zapisu
+        Files.createDirectories(staging);
+        var tables = image.writeShards(staging, ledgerShards, generation);
+        writeShard(manifest, generation, (_, _) -> {
+        });
+
+        try (var paths = Files.list(directory)) {
+            for (var path : paths.toList()) {
+                if (!path.equals(staging) && path.getFileName().toString().startsWith(SHARD_GENERATION_PREFIX)) {
+                    try {
+                        deleteDirectory(path);
+                    } catch (IOException _) {
+                        // Podkatalog zostanie usunięty przy kolejnym zapisie
+                    }
+                }
+            }
+        }
+        return tables;
+    }
+
+
+    /**
+     * Odczytuje ekstensje zapisane metodą writeShards(Path, int) i nadpisuje nimi ekstensje wszystkich klas.
+     * Pliki tabel odczytywane są równolegle, w wątkach wirtualnych, a powiązania między obiektami różnych plików
+     * odtwarzane są po odczytaniu wszystkich tabel. Plik wpisów odczytywany jest dopiero przy pierwszym użyciu
+     * wpisów któregokolwiek z jego zbiorów – niezależnie od pozostałych plików.
+     * W razie błędu odczytu przywraca dotychczasowe ekstensje.
+     *
+     * @param directory Katalog repozytorium.
+     * @return Tabele odczytanych obiektów – pozycja obiektu w tabeli jest jego numerem w plikach.
+     */
+    static Tables readShards(Path directory) throws IOException {
+        return materialize(decodeShards(directory));
+    }
+
+
+    /**
+     * Metoda pomocnicza – odczytuje pliki tabel bieżącego pokolenia katalogu repozytorium bez tworzenia obiektów
+     * modelu.
+     */
+    private static Decoded decodeShards(Path repository) throws IOException {
+        var manifest = repository.resolve(SHARD_MANIFEST);
+        if (!Files.exists(manifest)) {
+            throw new NoSuchFileException(manifest.toString());
+        }
+        var directory = generationPath(repository, RepositoryJournal.readGeneration(manifest, MAGIC));
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var mapped = new ArrayList<Future<MemorySegment>>();
+            for (var section = TAX_OFFICES; section <= LINKS; section++) {
+                var path = shardPath(directory, section);
+                mapped.add(executor.submit(() -> map(path, Arena.ofAuto())));
+            }
+
+            // Nagłówki tabel określają liczbę obiektów, niezbędną do weryfikacji numerów w pozostałych tabelach
+            var inputs = new SegmentDataInput[LINKS + 1];
+            var counts = new int[LINKS + 1][];
+            var generation = -1L;
+            var ledgerShards = 0;
+            for (var section = TAX_OFFICES; section <= LINKS; section++) {
+                var in = new SegmentDataInput(await(mapped.get(section - TAX_OFFICES)));
+                var shardGeneration = readShardPreamble(in);
+                if (generation >= 0 && shardGeneration != generation) {
+                    throw new IOException("Pliki katalogu repozytorium pochodzą z różnych zapisów");
+                }
+                generation = shardGeneration;
+                if (section == PERIOD_ENTRY_SETS) {
+                    ledgerShards = readCount(in);
+                }
+                if (section != LINKS) {
+                    counts[section] = readHeader(in, section);
+                }
+                inputs[section] = in;
+            }
+            var shards = new LedgerShard[ledgerShards];
+            for (var k = 0; k < ledgerShards; k++) {
+                shards[k] = new LedgerShard(ledgerShardPath(directory, k), generation);
+            }
+
+            var taxOffices = executor.submit(() -> decodeTaxOffices(inputs[TAX_OFFICES], counts[TAX_OFFICES][0]));
+            var addresses = executor.submit(() -> decodeAddresses(inputs[ADDRESSES], counts[ADDRESSES][0]));
+            var accountManagers = executor.submit(() ->
+                    decodeAccountManagers(inputs[ACCOUNT_MANAGERS], counts[ACCOUNT_MANAGERS][0]));
+            var taxes = executor.submit(() -> decodeTaxes(inputs[TAXES], counts[TAXES][0]));
+            var persons = executor.submit(() ->
+                    decodePersons(inputs[PERSONS], counts[PERSONS][0], counts[ADDRESSES][0]));
+            var entryShards = ledgerShards;
+            var periodEntrySets = executor.submit(() -> decodePeriodEntrySets(inputs[PERIOD_ENTRY_SETS],
+                    counts[PERIOD_ENTRY_SETS][0], counts[PERSONS][0], counts[ACCOUNT_MANAGERS][0], counts[TAXES][0],
+                    entryShards, (shard, offset, length, count, dateFrom) -> {
+                        if (offset < 0 || length < 0) {
+                            throw new IOException("Niepoprawne położenie wpisów księgowych");
+                        }
+                        return new ShardEntries(shards[shard], offset, length, count, dateFrom);
+                    }));
+            var links = executor.submit(() -> decodeLinks(inputs[LINKS], counts[TAX_OFFICES][0],
+                    counts[ADDRESSES][0], counts[ACCOUNT_MANAGERS][0], counts[PERIOD_ENTRY_SETS][0]));
+            var decodedLinks = await(links);
+
+            return new Decoded(generation, new int[]{counts[PERSONS][1], counts[TAXES][1],
+                    counts[ACCOUNT_MANAGERS][1], counts[ADDRESSES][1], counts[PERIOD_ENTRY_SETS][1],
+                    counts[TAX_OFFICES][1]}, await(taxOffices), await(addresses), await(accountManagers),
+                    await(taxes), await(persons), await(periodEntrySets), decodedLinks.taxOfficeAddresses(),
+                    decodedLinks.addressTaxOffices(), decodedLinks.accountManagerPeriodEntrySets());
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – czeka na wynik zadania wykonywanego w tle i przekazuje jego wyjątek.
+     */
+    private static <T> T await(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static Path generationPath(Path directory, long generation) {
+        return directory.resolve(SHARD_GENERATION_PREFIX + generation);
+    }
+
+    private static Path shardPath(Path directory, int section) {
+        return directory.resolve(SHARD_NAMES[section] + SHARD_EXTENSION);
+    }
+
+    private static Path ledgerShardPath(Path directory, int shard) {
+        return directory.resolve("entries-" + shard + SHARD_EXTENSION);
+    }
+
+    /**
+     * Metoda pomocnicza – usuwa podkatalog pokolenia wraz z plikami, o ile istnieje.
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (var paths = Files.list(directory)) {
+            for (var path : paths.toList()) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Metoda pomocnicza – zapisuje plik katalogu repozytorium: nagłówek oraz zawartość zapisaną przez zadaną
+     * funkcję.
+     */
+    private static void writeShard(Path path, long generation, ShardWriter writer) throws IOException {
+        Repository.replace(path, output -> {
+            var counter = writePreamble(output, generation);
+            writer.write(counter, new DataOutputStream(counter));
+            counter.finish();
+            return null;
+        });
+    }
+
+    /**
+     * Metoda pomocnicza – odczytuje nagłówek pliku katalogu repozytorium.
+     *
+     * @return Pokolenie pliku.
+     */
+    private static long readShardPreamble(SegmentDataInput in) throws IOException {
+        if (in.length() < PREAMBLE_SIZE || in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+            throw new IOException("Niepoprawna sygnatura pliku katalogu repozytorium");
+        }
+        var generation = in.readLong();
+        in.readByte(); // Sposób kompresji – odczyt pliku skompresowanego dekompresuje jego bloki
+        return generation;
+    }
+
+    /**
+     * Metoda pomocnicza – zapisuje sygnaturę, wersję, pokolenie i sposób kompresji pliku. Pozostała część pliku
+     * kompresowana jest z poziomem określonym metodą Repository.setCompressionLevel(int).
+     *
+     * @return Strumień pozostałej części pliku, liczący bajty od początku pliku przed kompresją.
+     */
+    private static CountingOutputStream writePreamble(OutputStream output, long generation) throws IOException {
+        var level = Repository.getCompressionLevel();
+        var preamble = new DataOutputStream(new BufferedOutputStream(output, PREAMBLE_SIZE));
+        preamble.writeInt(MAGIC);
+        preamble.writeShort(VERSION);
+        preamble.writeLong(generation);
+        preamble.writeByte(level == 0 ? UNCOMPRESSED : DEFLATE);
+        preamble.flush();
+        var body = level == 0 ? null : new BlockCompression.DeflatingOutputStream(output, level);
+        var counter = new CountingOutputStream(new BufferedOutputStream(body == null ? output : body, BUFFER_SIZE),
+                body);
+        counter.count = PREAMBLE_SIZE;
+        return counter;
+    }
+
+    /**
+     * Metoda pomocnicza – odwzorowuje plik repozytorium w pamięci i dekompresuje plik skompresowany do segmentu
+     * zaalokowanego w zadanej arenie – zob. open(Path, Arena).
+     */
+    private static MemorySegment map(Path path, Arena arena) throws IOException {
+        return open(path, arena).inflate(arena);
+    }
+
+    /**
+     * Metoda pomocnicza – odwzorowuje plik repozytorium w pamięci lub, jeżeli odwzorowanie zostało wyłączone metodą
+     * Repository.setMemoryMapping(boolean), wczytuje go do segmentu zaalokowanego w zadanej arenie. Bloki pliku
+     * skompresowanego dekompresowane są dopiero przy odczycie ich zawartości.
+     */
+    private static BlockCompression.BlockFile open(Path path, Arena arena) throws IOException {
+        MemorySegment file;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (Repository.isMemoryMapping()) {
+                file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            } else {
+                file = arena.allocate(channel.size());
+                readFully(channel, file);
+            }
+        }
+        var in = new SegmentDataInput(file);
+        if (file.byteSize() < PREAMBLE_SIZE || in.readInt() != MAGIC || in.readUnsignedShort() < 4) {
+            return BlockCompression.BlockFile.of(file);
+        }
+        in.seek(PREAMBLE_SIZE - Byte.BYTES);
+        return switch (in.readByte()) {
+            case UNCOMPRESSED -> BlockCompression.BlockFile.of(file);
+            case DEFLATE -> BlockCompression.open(file, PREAMBLE_SIZE);
+            default -> throw new IOException("Nieznany sposób kompresji pliku repozytorium");
+        };
+    }
+
+    /**
+     * Metoda pomocnicza – wczytuje całą zawartość pliku do segmentu, fragmentami nieprzekraczającymi rozmiaru bufora.
+     */
+    private static void readFully(FileChannel channel, MemorySegment target) throws IOException {
+        for (var position = 0L; position < target.byteSize(); ) {
+            var buffer = target.asSlice(position, Math.min(Integer.MAX_VALUE, target.byteSize() - position))
+                    .asByteBuffer();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            position += buffer.capacity();
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – odczytuje sygnaturę, wersję i pokolenie pliku oraz, od wersji 2, spis sekcji.
+     * Pliki w wersji 1 nie posiadają spisu sekcji, a pliki w wersjach 1 i 2 – pokolenia.
+     */
+    private static Preamble readPreamble(SegmentDataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Niepoprawna sygnatura pliku repozytorium");
+        }
+        var version = in.readUnsignedShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Nieobsługiwana wersja formatu repozytorium: " + version);
+        }
+        var generation = version >= 3 ? in.readLong() : 0;
+        if (version >= 4) {
+            in.readByte(); // Sposób kompresji – odczyt pliku skompresowanego dekompresuje jego bloki
+        }
+        if (version < 2) {
+            return new Preamble(version, generation, null);
+        }
+        var start = in.getPosition();
+        in.seek(in.length() - Long.BYTES);
+        in.seek(in.readLong());
+        var sections = new long[ENTRIES + 1];
+        var count = readCount(in);
+        for (var i = 0; i < count; i++) {
+            var section = readVarLong(in);
+            var offset = in.readLong();
+            if (section < sections.length) { // Sekcje nieznane tej wersji są pomijane
+                sections[(int) section] = offset;
+            }
+        }
+        in.seek(start);
+        return new Preamble(version, generation, sections);
+    }
+
+    /**
+     * Metoda pomocnicza – ustawia pozycję odczytu na początek sekcji, jeżeli plik posiada spis sekcji.
+     */
+    private static void seek(SegmentDataInput in, long[] sections, int section) throws IOException {
+        if (sections != null) {
+            if (sections[section] == 0) {
+                throw new IOException("Brak sekcji pliku repozytorium: " + section);
+            }
+            in.seek(sections[section]);
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – weryfikuje, czy położenie wpisów zbioru w sekcji wpisów mieści się w pliku.
+     *
+     * @return Źródło wpisów odczytywanych z odwzorowanego fragmentu pliku.
+     */
+    private static MappedEntries mappedEntries(BlockCompression.BlockFile file, long entriesSection, long offset,
+                                               long length, int count, LocalDate dateFrom) throws IOException {
+        if (offset < 0 || length < 0 || offset > file.byteSize() - entriesSection ||
+                length > file.byteSize() - entriesSection - offset) {
+            throw new IOException("Niepoprawne położenie wpisów księgowych");
+        }
+        return new MappedEntries(file, entriesSection + offset, length, count, dateFrom);
+    }
+
+    private static void setExtents(HashSet<Person> persons, HashSet<Tax> taxes,
+                                   HashSet<AccountManager> accountManagers, HashSet<Address> addresses,
+                                   HashSet<PeriodEntrySet> periodEntrySets, HashSet<TaxOffice> taxOffices) {
+        Person.setPersons(persons);
+        Tax.setTaxes(taxes);
+        AccountManager.setAccountManagers(accountManagers);
+        Address.setAddresses(addresses);
+        PeriodEntrySet.setPeriodEntrySets(periodEntrySets);
+        TaxOffice.setTaxOffices(taxOffices);
+    }
+
+
+    /**
+     * Metoda pomocnicza – zapisuje nagłówek tabeli: rodzaj tabeli, liczbę obiektów i liczbę obiektów ekstensji.
+     */
+    private static void writeHeader(DataOutput out, int section, Table<?> table) throws IOException {
+        writeVarLong(out, section);
+        writeVarLong(out, table.objects.size());
+        writeVarLong(out, table.extentSize);
+    }
+
+    /**
+     * Metoda pomocnicza – odczytuje nagłówek tabeli.
+     *
+     * @return Liczba obiektów tabeli i liczba obiektów należących do ekstensji.
+     */
+    private static int[] readHeader(DataInput in, int section) throws IOException {
+        if (readVarLong(in) != section) {
+            throw new IOException("Niepoprawna struktura pliku repozytorium");
+        }
+        var size = readCount(in);
+        var extentSize = readCount(in);
+        if (extentSize > size) {
+            throw new IOException("Niepoprawna struktura pliku repozytorium");
+        }
+        return new int[]{size, extentSize};
+    }
+
+    private static <T> void writeId(DataOutput out, Table<T> table, T object) throws IOException {
+        writeVarLong(out, object == null ? 0 : table.ids.get(object) + 1L);
+    }
+
+    private static <T> void writeIds(DataOutput out, Table<T> table, Collection<T> objects) throws IOException {
+        writeVarLong(out, objects.size());
+        for (var object : objects) {
+            writeId(out, table, object);
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – odczytuje numer obiektu.
+     *
+     * @return Numer obiektu lub -1, jeżeli zapisano brak obiektu.
+     */
+    private static int readId(DataInput in, int size) throws IOException {
+        var id = readVarLong(in) - 1;
+        if (id >= size) {
+            throw new IOException("Niepoprawny numer obiektu: " + id);
+        }
+        return (int) id;
+    }
+
+    private static int readRequiredId(DataInput in, int size) throws IOException {
+        var id = readId(in, size);
+        if (id < 0) {
+            throw new IOException("Brak wymaganego obiektu");
+        }
+        return id;
+    }
+
+    private static int[] readIds(DataInput in, int size) throws IOException {
+        var ids = new int[readCount(in)];
+        for (var i = 0; i < ids.length; i++) {
+            ids[i] = readRequiredId(in, size);
+        }
+        return ids;
+    }
+
+    static int readCount(DataInput in) throws IOException {
+        var count = readVarLong(in);
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IOException("Niepoprawna liczba elementów: " + count);
+        }
+        return (int) count;
+    }
+
+    private static int readIndex(DataInput in, int size) throws IOException {
+        var index = readVarLong(in);
+        if (index >= size) {
+            throw new IOException("Niepoprawna wartość wyliczenia: " + index);
+        }
+        return (int) index;
+    }
+
+    private static void writeStatus(DataOutput out, Status status) throws IOException {
+        writeVarLong(out, status == null ? 0 : status.ordinal() + 1L);
+    }
+
+    private static Status readStatus(DataInput in) throws IOException {
+        var index = readIndex(in, STATUSES.length + 1);
+        return index == 0 ? null : STATUSES[index - 1];
+    }
+
+    static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        writeVarLong(out, zigZag(date.toEpochDay()));
+    }
+
+    static LocalDate readDate(DataInput in) throws IOException {
+        return LocalDate.ofEpochDay(unZigZag(readVarLong(in)));
+    }
+
+    /**
+     * Metoda pomocnicza – zapisuje ciąg znaków w kodowaniu UTF-8, poprzedzony długością powiększoną o 1
+     * (0 oznacza wartość null).
+     */
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        var length = readCount(in);
+        if (length == 0) {
+            return null;
+        }
+        var bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Metoda pomocnicza – zapisuje wartość BigDecimal jako liczbę miejsc po przecinku i wartość bez przecinka.
+     * Wartość bez przecinka mieszcząca się w typie long zapisywana jest w kodowaniu o zmiennej długości.
+     */
+    static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+        var unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < Long.SIZE) {
+            out.writeByte(1);
+            writeVarLong(out, zigZag(value.scale()));
+            writeVarLong(out, zigZag(unscaled.longValue()));
+        } else {
+            var bytes = unscaled.toByteArray();
+            out.writeByte(2);
+            writeVarLong(out, zigZag(value.scale()));
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static BigDecimal readDecimal(DataInput in) throws IOException {
+        var kind = in.readByte();
+        if (kind == 0) {
+            return null;
+        }
+        var scale = Math.toIntExact(unZigZag(readVarLong(in)));
+        if (kind == 1) {
+            return BigDecimal.valueOf(unZigZag(readVarLong(in)), scale);
+        }
+        if (kind != 2) {
+            throw new IOException("Niepoprawna wartość liczbowa");
+        }
+        var bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+
+    /**
+     * Metoda pomocnicza – zapisuje nieujemną liczbę w kodowaniu o zmiennej długości (po 7 bitów na bajt).
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        var value = 0L;
+        for (var shift = 0; shift < Long.SIZE; shift += 7) {
+            var b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Niepoprawna liczba w kodowaniu o zmiennej długości");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+
+    /**
+     * Metoda pomocnicza – kopiuje fragment odwzorowanego pliku do strumienia wyjściowego.
+     */
+    private static void copy(MemorySegment file, long offset, long length, DataOutput out) throws IOException {
+        var buffer = new byte[(int) Math.min(length, BUFFER_SIZE)];
+        for (var position = 0L; position < length; position += buffer.length) {
+            var chunk = (int) Math.min(buffer.length, length - position);
+            MemorySegment.copy(file, ValueLayout.JAVA_BYTE, offset + position, buffer, 0, chunk);
+            out.write(buffer, 0, chunk);
+        }
+    }
+
+
+    /**
+     * Scala plik repozytorium z rekordami dziennika zmian i zapisuje wynik jako plik kolejnego pokolenia.
+     * Scalanie odbywa się bezpośrednio na poziomie pliku: tabele obiektów kopiowane są bez odczytywania, do wpisów
+     * zbiorów dopisywane są wpisy z dziennika, a powiązania urzędów podatkowych z adresami zapisywane są na nowo.
+     * Numery obiektów nie ulegają zmianie. Nie korzysta z obiektów modelu – może działać w tle.
+     *
+     * @param path       Ścieżka pliku repozytorium.
+     * @param generation Pokolenie pliku repozytorium, do którego odnoszą się rekordy dziennika.
+     * @param records    Rekordy dziennika w kolejności zapisu.
+     * @param output     Strumień wyjściowy pliku pokolenia generation + 1.
+     */
+    static void fold(Path path, long generation, List<RepositoryJournal.Record> records, OutputStream output)
+            throws IOException {
+        try (var arena = Arena.ofShared()) {
+            var file = map(path, arena);
+            var in = new SegmentDataInput(file);
+            var preamble = readPreamble(in);
+            var sections = preamble.sections();
+            if (sections == null || preamble.generation() != generation) {
+                throw new IOException("Plik repozytorium nie odpowiada scalanemu dziennikowi");
+            }
+            for (var section = TAX_OFFICES; section <= ENTRIES; section++) {
+                if (sections[section] == 0) {
+                    throw new IOException("Brak sekcji pliku repozytorium: " + section);
+                }
+            }
+            in.seek(sections[TAX_OFFICES]);
+            var taxOfficeCount = readHeader(in, TAX_OFFICES)[0];
+            in.seek(sections[ADDRESSES]);
+            var addressCount = readHeader(in, ADDRESSES)[0];
+
+            // Rekordy zbiorów – część poprzedzająca położenie wpisów kopiowana jest bez zmian
+            in.seek(sections[PERIOD_ENTRY_SETS]);
+            var periodEntrySetCount = readHeader(in, PERIOD_ENTRY_SETS);
+            var count = periodEntrySetCount[0];
+            var recordStarts = new long[count];
+            var recordEnds = new long[count];
+            var dateFroms = new LocalDate[count];
+            var entryCounts = new int[count];
+            var entryOffsets = new long[count];
+            var entryLengths = new long[count];
+            for (var i = 0; i < count; i++) {
+                recordStarts[i] = in.getPosition();
+                dateFroms[i] = readDate(in);
+                readVarLong(in); // Długość okresu
+                readVarLong(in); // Osoba
+                readVarLong(in); // Menedżer konta
+                var taxIds = readCount(in);
+                for (var k = 0; k < taxIds; k++) {
+                    readVarLong(in);
+                }
+                recordEnds[i] = in.getPosition();
+                entryCounts[i] = readCount(in);
+                entryOffsets[i] = readVarLong(in);
+                entryLengths[i] = readVarLong(in);
+                if (entryOffsets[i] < 0 || entryLengths[i] < 0 ||
+                        entryOffsets[i] > file.byteSize() - sections[ENTRIES] ||
+                        entryLengths[i] > file.byteSize() - sections[ENTRIES] - entryOffsets[i]) {
+                    throw new IOException("Niepoprawne położenie wpisów księgowych");
+                }
+            }
+
+            // Powiązania – urzędy i adresy odczytywane są jako numery, powiązania menedżerów kopiowane bez zmian
+            in.seek(sections[LINKS]);
+            if (readVarLong(in) != LINKS) {
+                throw new IOException("Niepoprawna struktura pliku repozytorium");
+            }
+            var taxOfficeAddresses = new ArrayList<LinkedHashSet<Integer>>(taxOfficeCount);
+            for (var i = 0; i < taxOfficeCount; i++) {
+                var addressIds = new LinkedHashSet<Integer>();
+                var size = readCount(in);
+                for (var k = 0; k < size; k++) {
+                    addressIds.add(readId(in, addressCount));
+                }
+                taxOfficeAddresses.add(addressIds);
+            }
+            var addressTaxOffices = new int[addressCount];
+            for (var i = 0; i < addressCount; i++) {
+                addressTaxOffices[i] = readId(in, taxOfficeCount);
+            }
+            var accountManagerLinks = in.getPosition();
+            in.seek(sections[ACCOUNT_MANAGERS]);
+            var accountManagerCount = readHeader(in, ACCOUNT_MANAGERS)[0];
+            in.seek(accountManagerLinks);
+            for (var i = 0; i < accountManagerCount; i++) {
+                var size = readCount(in);
+                for (var k = 0; k < size; k++) {
+                    readVarLong(in);
+                }
+            }
+            var accountManagerLinksEnd = in.getPosition();
+
+            // Rekordy dziennika
+            var newEntries = new ByteArrayOutputStream[count];
+            var newEntryCounts = new int[count];
+            for (var record : records) {
+                switch (record) {
+                    case RepositoryJournal.EntryAdded(var id, var date, var value, var justification) -> {
+                        checkId(id, count);
+                        if (newEntries[id] == null) {
+                            newEntries[id] = new ByteArrayOutputStream();
+                        }
+                        var entryOut = new DataOutputStream(newEntries[id]);
+                        writeVarLong(entryOut, zigZag(date.toEpochDay() - dateFroms[id].toEpochDay()));
+                        writeDecimal(entryOut, value);
+                        writeString(entryOut, justification);
+                        newEntryCounts[id] = Math.addExact(newEntryCounts[id], 1);
+                    }
+                    case RepositoryJournal.AddressAdded(var taxOfficeId, var addressId) -> {
+                        checkId(taxOfficeId, taxOfficeCount);
+                        checkId(addressId, addressCount);
+                        taxOfficeAddresses.get(taxOfficeId).add(addressId);
+                        addressTaxOffices[addressId] = taxOfficeId;
+                    }
+                    case RepositoryJournal.AddressRemoved(var taxOfficeId, var addressId) -> {
+                        checkId(taxOfficeId, taxOfficeCount);
+                        checkId(addressId, addressCount);
+                        if (taxOfficeAddresses.get(taxOfficeId).remove(addressId)) {
+                            addressTaxOffices[addressId] = -1;
+                        }
+                    }
+                }
+            }
+
+            var counter = writePreamble(output, generation + 1);
+            var out = new DataOutputStream(counter);
+            var newSections = new long[ENTRIES + 1];
+
+            // Tabele urzędów, adresów, menedżerów, podatków i osób zapisane są jedna za drugą
+            var tablesStart = sections[TAX_OFFICES];
+            for (var section = TAX_OFFICES; section <= PERSONS; section++) {
+                newSections[section] = sections[section] - tablesStart + counter.count;
+            }
+            copy(file, tablesStart, sections[ENTRIES] - tablesStart, out);
+
+            newSections[ENTRIES] = counter.count;
+            writeVarLong(out, ENTRIES);
+            var newEntryOffsets = new long[count];
+            for (var i = 0; i < count; i++) {
+                newEntryOffsets[i] = counter.count - newSections[ENTRIES];
+                copy(file, sections[ENTRIES] + entryOffsets[i], entryLengths[i], out);
+                if (newEntries[i] != null) {
+                    newEntries[i].writeTo(out);
+                }
+            }
+
+            newSections[PERIOD_ENTRY_SETS] = counter.count;
+            writeVarLong(out, PERIOD_ENTRY_SETS);
+            writeVarLong(out, count);
+            writeVarLong(out, periodEntrySetCount[1]);
+            for (var i = 0; i < count; i++) {
+                copy(file, recordStarts[i], recordEnds[i] - recordStarts[i], out);
+                writeVarLong(out, Math.addExact(entryCounts[i], newEntryCounts[i]));
+                writeVarLong(out, newEntryOffsets[i]);
+                writeVarLong(out, entryLengths[i] + (newEntries[i] == null ? 0 : newEntries[i].size()));
+            }
+
+            newSections[LINKS] = counter.count;
+            writeVarLong(out, LINKS);
+            for (var addressIds : taxOfficeAddresses) {
+                writeVarLong(out, addressIds.size());
+                for (var addressId : addressIds) {
+                    writeVarLong(out, addressId + 1L);
+                }
+            }
+            for (var taxOfficeId : addressTaxOffices) {
+                writeVarLong(out, taxOfficeId + 1L);
+            }
+            copy(file, accountManagerLinks, accountManagerLinksEnd - accountManagerLinks, out);
+            writeVarLong(out, END);
+            writeSectionIndex(out, newSections, counter.count);
+            counter.finish();
+        }
+    }
+
+    private static void checkId(int id, int size) throws IOException {
+        if (id < 0 || id >= size) {
+            throw new IOException("Niepoprawny numer obiektu w dzienniku: " + id);
+        }
+    }
+
+
+    /**
+     * Rekord reprezentujący tabele obiektów zapisanych w pliku repozytorium lub z niego odczytanych – pozycja
+     * obiektu w tabeli jest jego numerem w pliku.
+     *
+     * @param generation      Pokolenie pliku.
+     * @param taxOffices      Tabela urzędów podatkowych.
+     * @param addresses       Tabela adresów.
+     * @param periodEntrySets Tabela zbiorów wpisów księgowych.
+     * @param extentSizes     Rozmiary ekstensji osób, podatków, menedżerów, adresów, zbiorów i urzędów.
+     */
+    record Tables(long generation, List<TaxOffice> taxOffices, List<Address> addresses,
+                  List<PeriodEntrySet> periodEntrySets, int[] extentSizes) {
+    }
+
+    /**
+     * Klasa reprezentująca obraz ekstensji utrwalony metodą capture() – zakodowane tabele obiektów oraz niezmienne
+     * źródła wpisów zbiorów. Obraz nie odwołuje się do modyfikowalnego stanu modelu, dlatego może zostać zapisany
+     * w dowolnym wątku.
+     */
+    static final class Image {
+
+        // Atrybuty wymagane
+        private final Tables tables;
+        private final byte[] tableBytes;
+        private final long[] tableSections;
+        private final byte[] recordBytes;
+        private final int[] recordEnds;
+        private final LocalDate[] dateFroms;
+        private final PeriodEntrySet.EntrySource[] sources;
+        private final int[] entryCounts;
+        private final int[] personIds;
+        private final byte[] linkBytes;
+
+
+        private Image(Tables tables, byte[] tableBytes, long[] tableSections, byte[] recordBytes, int[] recordEnds,
+                      LocalDate[] dateFroms, PeriodEntrySet.EntrySource[] sources, int[] entryCounts,
+                      int[] personIds, byte[] linkBytes) {
+            this.tables = tables;
+            this.tableBytes = tableBytes;
+            this.tableSections = tableSections;
+            this.recordBytes = recordBytes;
+            this.recordEnds = recordEnds;
+            this.dateFroms = dateFroms;
+            this.sources = sources;
+            this.entryCounts = entryCounts;
+            this.personIds = personIds;
+            this.linkBytes = linkBytes;
+        }
+
+        /**
+         * @return Tabele obiektów obrazu – pozycja obiektu w tabeli jest jego numerem w zapisanym pliku.
+         */
+        Tables getTables() {
+            return tables;
+        }
+
+
+        /**
+         * Zapisuje obraz jako plik repozytorium. Wpisy kodowane są dopiero w tej metodzie, a wpisy nieodczytane
+         * z poprzedniego pliku kopiowane są bez dekodowania.
+         *
+         * @param output     Strumień wyjściowy.
+         * @param generation Numer pokolenia pliku.
+         * @param progress   Obserwator postępu (liczba zapisanych wpisów) lub wartość null.
+         * @return Tabele zapisanych obiektów – pozycja obiektu w tabeli jest jego numerem w pliku.
+         */
+        Tables write(OutputStream output, long generation, Repository.ProgressListener progress)
+                throws IOException {
+            var counter = writePreamble(output, generation);
+            var out = new DataOutputStream(counter);
+            var sections = new long[ENTRIES + 1];
+
+            var tablesStart = counter.count;
+            for (var section = TAX_OFFICES; section <= PERSONS; section++) {
+                sections[section] = tablesStart + tableSections[section];
+            }
+            out.write(tableBytes);
+
+            var total = 0L;
+            for (var entryCount : entryCounts) {
+                total += entryCount;
+            }
+            var step = Math.max(1, total / PROGRESS_STEPS);
+            var done = 0L;
+            var entryOffsets = new long[sources.length];
+            var entryLengths = new long[sources.length];
+            sections[ENTRIES] = counter.count;
+            writeVarLong(out, ENTRIES);
+            for (var i = 0; i < sources.length; i++) {
+                entryOffsets[i] = counter.count - sections[ENTRIES];
+                if (sources[i] instanceof StoredEntries storedEntries) {
+                    storedEntries.copyTo(out); // Wpisy nieodczytane – kopiowane bez dekodowania
+                } else {
+                    writeEntries(out, sources[i], dateFroms[i]);
+                }
+                entryLengths[i] = counter.count - sections[ENTRIES] - entryOffsets[i];
+                // Postęp zgłaszany jest co ok. 1% wpisów, aby nie obciążać obserwatora
+                if ((done + entryCounts[i]) / step != done / step) {
+                    report(progress, done + entryCounts[i], total);
+                }
+                done += entryCounts[i];
+            }
+
+            sections[PERIOD_ENTRY_SETS] = counter.count;
+            out.write(recordBytes, 0, recordEnds[0]);
+            for (var i = 0; i < sources.length; i++) {
+                out.write(recordBytes, recordEnds[i], recordEnds[i + 1] - recordEnds[i]);
+                writeVarLong(out, entryCounts[i]);
+                writeVarLong(out, entryOffsets[i]);
+                writeVarLong(out, entryLengths[i]);
+            }
+
+            sections[LINKS] = counter.count;
+            out.write(linkBytes);
+            writeSectionIndex(out, sections, counter.count);
+            counter.finish();
+            report(progress, total, total);
+
+            return new Tables(generation, tables.taxOffices(), tables.addresses(), tables.periodEntrySets(),
+                    tables.extentSizes());
+        }
+
+
+        /**
+         * Zapisuje obraz do podkatalogu pokolenia – zob. RepositoryFormat.writeShards(Path, int). Pliki wpisów
+         * zapisywane są jako pierwsze, a plik rekordów zbiorów, zawierający położenie wpisów, po ich zapisaniu.
+         *
+         * @param directory    Pusty podkatalog pokolenia.
+         * @param ledgerShards Liczba plików wpisów, większa od 0.
+         * @param generation   Pokolenie zapisywanych plików.
+         * @return Tabele zapisanych obiektów – pozycja obiektu w tabeli jest jego numerem w plikach.
+         */
+        Tables writeShards(Path directory, int ledgerShards, long generation) throws IOException {
+            // Pliki wpisów nieodczytanych zbiorów odwzorowywane są przed usunięciem poprzedniego pokolenia
+            for (var source : sources) {
+                if (source instanceof ShardEntries shardEntries) {
+                    shardEntries.shard().file();
+                }
+            }
+            var shardOf = new int[sources.length];
+            for (var i = 0; i < sources.length; i++) {
+                shardOf[i] = personIds[i] % ledgerShards;
+            }
+            var entryOffsets = new long[sources.length];
+            var entryLengths = new long[sources.length];
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                var tasks = new ArrayList<Future<Void>>();
+                for (var section = TAX_OFFICES; section <= PERSONS; section++) {
+                    var start = (int) tableSections[section];
+                    var end = section < PERSONS ? (int) tableSections[section + 1] : tableBytes.length;
+                    var path = shardPath(directory, section);
+                    tasks.add(executor.submit(() -> {
+                        writeShard(path, generation, (_, out) -> out.write(tableBytes, start, end - start));
+                        return null;
+                    }));
+                }
+                tasks.add(executor.submit(() -> {
+                    writeShard(shardPath(directory, LINKS), generation, (_, out) -> out.write(linkBytes));
+                    return null;
+                }));
+                for (var k = 0; k < ledgerShards; k++) {
+                    var shard = k;
+                    tasks.add(executor.submit(() -> {
+                        writeShard(ledgerShardPath(directory, shard), generation, (counter, out) -> {
+                            var section = counter.count;
+                            writeVarLong(out, ENTRIES);
+                            for (var i = 0; i < sources.length; i++) {
+                                if (shardOf[i] != shard) {
+                                    continue;
+                                }
+                                entryOffsets[i] = counter.count - section;
+                                if (sources[i] instanceof StoredEntries storedEntries) {
+                                    storedEntries.copyTo(out);
+                                } else {
+                                    writeEntries(out, sources[i], dateFroms[i]);
+                                }
+                                entryLengths[i] = counter.count - section - entryOffsets[i];
+                            }
+                        });
+                        return null;
+                    }));
+                }
+                for (var task : tasks) {
+                    await(task);
+                }
+            }
+
+            writeShard(shardPath(directory, PERIOD_ENTRY_SETS), generation, (_, out) -> {
+                writeVarLong(out, ledgerShards);
+                out.write(recordBytes, 0, recordEnds[0]);
+                for (var i = 0; i < sources.length; i++) {
+                    out.write(recordBytes, recordEnds[i], recordEnds[i + 1] - recordEnds[i]);
+                    if (ledgerShards > 1) {
+                        writeVarLong(out, shardOf[i]);
+                    }
+                    writeVarLong(out, entryCounts[i]);
+                    writeVarLong(out, entryOffsets[i]);
+                    writeVarLong(out, entryLengths[i]);
+                }
+            });
+            return new Tables(generation, tables.taxOffices(), tables.addresses(), tables.periodEntrySets(),
+                    tables.extentSizes());
+        }
+    }
+
+
+    /**
+     * Rekord reprezentujący tabele pliku repozytorium odczytane bez tworzenia obiektów modelu.
+     * Powiązania zapisane są jako numery obiektów w tabelach (-1 oznacza brak obiektu).
+     */
+    record Decoded(long generation, int[] extentSizes, String[] taxOfficeNames, AddressRecord[] addresses,
+                   AccountManagerRecord[] accountManagers, TaxRecord[] taxes, PersonRecord[] persons,
+                   PeriodEntrySetRecord[] periodEntrySets, int[][] taxOfficeAddresses, int[] addressTaxOffices,
+                   int[][] accountManagerPeriodEntrySets) {
+    }
+
+    private record Links(int[][] taxOfficeAddresses, int[] addressTaxOffices,
+                         int[][] accountManagerPeriodEntrySets) {
+    }
+
+    record AddressRecord(Country country, String city, String street, String houseNumber, String apartmentNumber) {
+    }
+
+    record AccountManagerRecord(String name, Status status) {
+    }
+
+    /**
+     * @param rate       Stawka podatku liniowego lub wartość null.
+     * @param thresholds Progi podatku progresywnego lub wartość null.
+     */
+    record TaxRecord(BigDecimal rate, TreeMap<BigDecimal, BigDecimal> thresholds) {
+    }
+
+    /**
+     * @param flag                  Atrybut właściwy dla rodzaju osoby (podatek liniowy lub obniżony).
+     * @param preferentialAttribute Rabat klienta preferencyjnego lub punkty lojalnościowe pozostałych klientów.
+     */
+    record PersonRecord(int kind, boolean flag, String name, Status status, BigDecimal feeRate, boolean preferential,
+                        BigDecimal preferentialAttribute, boolean strictPeriods, int[] addresses) {
+    }
+
+    /**
+     * @param entries Wpisy w odwzorowanym pliku lub wartość null (brak wpisów lub plik w wersji 1).
+     * @param dates   Daty wpisów odczytanych z pliku w wersji 1 lub wartość null.
+     */
+    record PeriodEntrySetRecord(LocalDate dateFrom, LocalDate dateTo, int person, int accountManager, int[] taxes,
+                                PeriodEntrySet.EntrySource entries, LocalDate[] dates, BigDecimal[] values,
+                                String[] justifications) {
+    }
+
+    /**
+     * Rekord reprezentujący początek pliku repozytorium.
+     *
+     * @param version    Wersja formatu.
+     * @param generation Pokolenie pliku (0 dla wersji wcześniejszych niż 3).
+     * @param sections   Położenie sekcji lub wartość null dla wersji 1.
+     */
+    private record Preamble(int version, long generation, long[] sections) {
+    }
+
+
+    /**
+     * Rekord reprezentujący wpisy zbioru zapisane w odwzorowanym w pamięci fragmencie pliku repozytorium. Bloki
+     * pliku skompresowanego, na które przypadają wpisy, dekompresowane są przy pierwszym odczycie wpisów.
+     *
+     * @param file     Odwzorowanie całego pliku.
+     * @param offset   Położenie pierwszego wpisu w pliku.
+     * @param length   Długość fragmentu w bajtach.
+     * @param count    Liczba wpisów.
+     * @param dateFrom Data początkowa okresu zbioru, względem której zapisano daty wpisów.
+     */
+    private record MappedEntries(BlockCompression.BlockFile file, long offset, long length, int count,
+                                 LocalDate dateFrom) implements StoredEntries {
+
+        @Override
+        public void forEachEntry(PeriodEntrySet.EntryVisitor visitor) {
+            try {
+                var in = new SegmentDataInput(file.asSlice(offset, length));
+                for (var i = 0; i < count; i++) {
+                    var date = dateFrom.plusDays(unZigZag(readVarLong(in)));
+                    visitor.visit(date, readDecimal(in), readString(in));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void copyTo(DataOutput out) throws IOException {
+            for (var position = offset; position < offset + length; ) {
+                var window = file.window(position, 0);
+                var chunk = Math.min(window.byteSize(), offset + length - position);
+                copy(window, 0, chunk, out);
+                position += chunk;
+            }
+        }
+    }
+
+
+    /**
+     * Interfejs źródła wpisów zapisanych w pliku repozytorium, które można skopiować bez ich dekodowania.
+     */
+    private interface StoredEntries extends PeriodEntrySet.EntrySource {
+
+        int count();
+
+        /**
+         * Kopiuje zapisane wpisy bez ich dekodowania.
+         *
+         * @param out Strumień wyjściowy.
+         */
+        void copyTo(DataOutput out) throws IOException;
+    }
+
+    /**
+     * Interfejs funkcyjny zapisujący zawartość pliku katalogu repozytorium.
+     */
+    @FunctionalInterface
+    private interface ShardWriter {
+
+        void write(CountingOutputStream counter, DataOutput out) throws IOException;
+    }
+
+    /**
+     * Interfejs funkcyjny tworzący źródło wpisów zbioru na podstawie ich położenia w sekcji wpisów.
+     */
+    @FunctionalInterface
+    private interface EntryRegions {
+
+        PeriodEntrySet.EntrySource entries(int shard, long offset, long length, int count, LocalDate dateFrom)
+                throws IOException;
+    }
+
+
+    /**
+     * Rekord reprezentujący wpisy zbioru zapisane w pliku wpisów repozytorium podzielonego na pliki, który
+     * odczytywany jest dopiero przy pierwszym użyciu wpisów któregokolwiek z jego zbiorów.
+     */
+    private record ShardEntries(LedgerShard shard, long offset, long length, int count, LocalDate dateFrom)
+            implements StoredEntries {
+
+        @Override
+        public void forEachEntry(PeriodEntrySet.EntryVisitor visitor) {
+            try {
+                resolve().forEachEntry(visitor);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void copyTo(DataOutput out) throws IOException {
+            resolve().copyTo(out);
+        }
+
+        private MappedEntries resolve() throws IOException {
+            return mappedEntries(shard.file(), shard.section, offset, length, count, dateFrom);
+        }
+    }
+
+    /**
+     * Klasa reprezentująca plik wpisów repozytorium podzielonego na pliki, odwzorowywany w pamięci przy pierwszym
+     * użyciu. Pokolenie pliku musi odpowiadać pokoleniu pozostałych plików repozytorium.
+     */
+    private static final class LedgerShard {
+
+        private final Path path;
+        private final long generation;
+        private volatile BlockCompression.BlockFile file;
+        private long section;
+
+        private LedgerShard(Path path, long generation) {
+            this.path = path;
+            this.generation = generation;
+        }
+
+        private BlockCompression.BlockFile file() throws IOException {
+            var mapped = file;
+            if (mapped == null) {
+                synchronized (this) {
+                    mapped = file;
+                    if (mapped == null) {
+                        mapped = open(path, Arena.ofAuto());
+                        var in = new SegmentDataInput(mapped);
+                        if (readShardPreamble(in) != generation) {
+                            throw new IOException("Plik " + path + " nie odpowiada pozostałym plikom repozytorium");
+                        }
+                        section = in.getPosition();
+                        if (readVarLong(in) != ENTRIES) {
+                            throw new IOException("Niepoprawna struktura pliku repozytorium");
+                        }
+                        file = mapped;
+                    }
+                }
+            }
+            return mapped;
+        }
+    }
+
+
+    /**
+     * Klasa reprezentująca strumień wyjściowy zliczający zapisane bajty – pozwala wyznaczyć położenie sekcji.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private final BlockCompression.DeflatingOutputStream compression;
+        private long count;
+
+        private CountingOutputStream(OutputStream out, BlockCompression.DeflatingOutputStream compression) {
+            super(out);
+            this.compression = compression;
+        }
+
+        /**
+         * Przekazuje zapisane dane do strumienia docelowego i kończy kompresję, bez zamykania strumienia.
+         */
+        private void finish() throws IOException {
+            flush();
+            if (compression != null) {
+                compression.finish();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+
+
+    /**
+     * Klasa reprezentująca tabelę obiektów jednej klasy wraz z ich numerami.
+     */
+    private static final class Table<T> {
+
+        private final ArrayList<T> objects = new ArrayList<>();
+        private final IdentityHashMap<T, Integer> ids = new IdentityHashMap<>();
+        private final int extentSize;
+        private int visited; // Liczba obiektów, których powiązania zostały już przejrzane
+
+        private Table(Collection<T> extent) {
+            for (var object : extent) {
+                add(object);
+            }
+            this.extentSize = objects.size();
+        }
+
+        private void add(T object) {
+            if (object != null && !ids.containsKey(object)) {
+                ids.put(object, objects.size());
+                objects.add(object);
+            }
+        }
+
+        private void addAll(Collection<T> objects) {
+            for (var object : objects) {
+                add(object);
+            }
+        }
+
+        private boolean hasUnvisited() {
+            return visited < objects.size();
+        }
+    }
+
+
+    /**
+     * Klasa reprezentująca graf obiektów do zapisania – ekstensje uzupełnione o obiekty z nimi powiązane.
+     * Obiekty powiązane wyszukiwane są iteracyjnie, bez rekurencji.
+     */
+    private static final class Graph {
+
+        private final Table<TaxOffice> taxOffices = new Table<>(TaxOffice.getTaxOffices());
+        private final Table<Address> addresses = new Table<>(Address.getAddresses());
+        private final Table<AccountManager> accountManagers = new Table<>(AccountManager.getAccountManagers());
+        private final Table<Tax> taxes = new Table<>(Tax.getTaxes());
+        private final Table<Person> persons = new Table<>(Person.getPersons());
+        private final Table<PeriodEntrySet> periodEntrySets = new Table<>(PeriodEntrySet.getPeriodEntrySets());
+
+        private Graph() {
+            while (taxOffices.hasUnvisited() || addresses.hasUnvisited() || accountManagers.hasUnvisited() ||
+                    persons.hasUnvisited() || periodEntrySets.hasUnvisited()) {
+                for (; taxOffices.visited < taxOffices.objects.size(); taxOffices.visited++) {
+                    addresses.addAll(taxOffices.objects.get(taxOffices.visited).getAddresses());
+                }
+                for (; addresses.visited < addresses.objects.size(); addresses.visited++) {
+                    var address = addresses.objects.get(addresses.visited);
+                    taxOffices.add(address.getTaxOffice());
+                    persons.addAll(address.getPersons());
+                }
+                for (; accountManagers.visited < accountManagers.objects.size(); accountManagers.visited++) {
+                    periodEntrySets.addAll(accountManagers.objects.get(accountManagers.visited).getPeriodEntrySets());
+                }
+                for (; persons.visited < persons.objects.size(); persons.visited++) {
+                    var person = persons.objects.get(persons.visited);
+                    addresses.addAll(person.getAddresses());
+                    periodEntrySets.addAll(person.getPeriodEntrySets());
+                }
+                for (; periodEntrySets.visited < periodEntrySets.objects.size(); periodEntrySets.visited++) {
+                    var periodEntrySet = periodEntrySets.objects.get(periodEntrySets.visited);
+                    persons.add(periodEntrySet.getPerson());
+                    accountManagers.add(periodEntrySet.getAccountManager());
+                    taxes.addAll(periodEntrySet.getTaxes());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,759 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.AccountManager;
+import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.ModelChanges;
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.TaxOffice;
+import com.github.bredecorne.masp.model.persons.Person;
+import com.github.bredecorne.masp.model.taxes.Tax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.foreign.Arena;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+
+/**
+ * Klasa reprezentująca dziennik zmian pliku repozytorium.
+ * <p>
+ * Dziennik dopisuje do pliku obok pliku repozytorium zwięzłe rekordy zmian modelu – dodanie wpisu księgowego oraz
+ * utworzenie i usunięcie powiązania urzędu podatkowego z adresem – dzięki czemu zapis zmian nie wymaga zapisu całego
+ * repozytorium. Obiekty identyfikowane są numerami nadanymi im w pliku repozytorium. Rekordy gromadzone są w buforze
+ * i zapisywane przy zatwierdzeniu (save), a co zadaną liczbę zatwierdzeń plik dziennika synchronizowany jest
+ * z dyskiem. Każdy rekord opatrzony jest sumą kontrolną – niepełny rekord na końcu pliku jest pomijany.
+ * </p>
+ * <p>
+ * Gdy dziennik przekroczy zadany rozmiar, zastępowany jest nowym, a poprzedni scalany jest w tle z plikiem
+ * repozytorium – bezpośrednio na poziomie pliku, bez udziału obiektów modelu. Pokolenie zapisane w nagłówkach
+ * wiąże dziennik z plikiem repozytorium, na który należy go nałożyć, dzięki czemu przerwanie zapisu w dowolnej
+ * chwili nie powoduje utraty ani podwójnego odtworzenia zmian.
+ * </p>
+ * <p>
+ * Zmiany, których dziennik nie obejmuje (np. utworzenie obiektu, zmiana statusu osoby lub powiązania osoby
+ * z adresem), wymagają zapisu całego repozytorium – następuje on przy najbliższym zatwierdzeniu, jeżeli zmienił się
+ * rozmiar którejkolwiek ekstensji, licznik zmian modelu (ModelChanges) lub zmiana dotyczy obiektu spoza pliku
+ * repozytorium.
+ * </p>
+ */
+final class RepositoryJournal implements PeriodEntrySet.Listener, TaxOffice.Listener, Closeable {
+
+    // Atrybuty klasowe
+    static final int MAGIC = 0x4D41534A; // "MASJ"
+    static final int VERSION = 1;
+    static final int DEFAULT_SYNC_INTERVAL = 1;
+    static final long DEFAULT_COMPACTION_THRESHOLD = 16L << 20;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Long.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int ENTRY_ADDED = 1;
+    private static final int ADDRESS_ADDED = 2;
+    private static final int ADDRESS_REMOVED = 3;
+
+    // Atrybuty wymagane
+    private final Path path;
+    private final Path journalPath;
+    private final Path foldPath;
+    private final int syncInterval;
+    private final long compactionThreshold;
+    private final ExecutorService compactor;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private final DataOutputStream payloadOutput = new DataOutputStream(payload);
+    private final CRC32 checksum = new CRC32();
+    private RepositoryFormat.Tables tables;
+    private IdentityHashMap<TaxOffice, Integer> taxOfficeIds;
+    private IdentityHashMap<Address, Integer> addressIds;
+    private IdentityHashMap<PeriodEntrySet, Integer> periodEntrySetIds;
+    private long generation; // Pokolenie bieżącego pliku dziennika
+    private FileChannel channel;
+    private int unsyncedCommits;
+    private boolean checkpointRequired;
+    private long modelVersion; // Licznik zmian modelu w chwili utrwalenia obrazu modelu lub odczytu
+    private Future<?> compaction;
+    private boolean closed;
+
+
+    private RepositoryJournal(Path path, int syncInterval, long compactionThreshold) {
+        if (path == null || syncInterval <= 0 || compactionThreshold <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.path = path;
+        this.journalPath = path.resolveSibling(path.getFileName() + ".journal");
+        this.foldPath = path.resolveSibling(path.getFileName() + ".journal.fold");
+        this.syncInterval = syncInterval;
+        this.compactionThreshold = compactionThreshold;
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "repository-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Odczytuje plik repozytorium, nakłada na niego zmiany zapisane w dzienniku i rozpoczyna rejestrowanie
+     * kolejnych zmian. Niedokończone scalanie dziennika wznawiane jest w tle.
+     *
+     * @param path                Ścieżka pliku repozytorium.
+     * @param syncInterval        Liczba zatwierdzeń, po których dziennik synchronizowany jest z dyskiem.
+     * @param compactionThreshold Rozmiar dziennika w bajtach, po którego przekroczeniu dziennik jest scalany.
+     * @return Otwarty dziennik.
+     */
+    static RepositoryJournal open(Path path, int syncInterval, long compactionThreshold) throws IOException {
+        return open(prepare(path, null), syncInterval, compactionThreshold);
+    }
+
+
+    /**
+     * Odczytuje plik repozytorium i pliki dziennika bez tworzenia obiektów modelu – może działać w innym wątku,
+     * podczas gdy model jest dalej używany.
+     *
+     * @param path     Ścieżka pliku repozytorium.
+     * @param progress Obserwator postępu odczytu lub wartość null.
+     * @return Odczytane pliki, na podstawie których metoda open(Prepared, int, long) odtwarza model.
+     */
+    static Prepared prepare(Path path, Repository.ProgressListener progress) throws IOException {
+        var decoded = RepositoryFormat.decode(path, progress);
+        var foldPath = path.resolveSibling(path.getFileName() + ".journal.fold");
+        var journalPath = path.resolveSibling(path.getFileName() + ".journal");
+        return new Prepared(path, decoded, Files.exists(foldPath) ? readJournal(foldPath) : null,
+                Files.exists(journalPath) ? readJournal(journalPath) : null);
+    }
+
+
+    /**
+     * Tworzy obiekty modelu na podstawie odczytanych plików, nakłada na nie zmiany zapisane w dzienniku
+     * i rozpoczyna rejestrowanie kolejnych zmian. Niedokończone scalanie dziennika wznawiane jest w tle.
+     * Wywoływana w wątku modyfikującym model.
+     *
+     * @param prepared            Pliki odczytane metodą prepare(Path, ProgressListener).
+     * @param syncInterval        Liczba zatwierdzeń, po których dziennik synchronizowany jest z dyskiem.
+     * @param compactionThreshold Rozmiar dziennika w bajtach, po którego przekroczeniu dziennik jest scalany.
+     * @return Otwarty dziennik.
+     */
+    static RepositoryJournal open(Prepared prepared, int syncInterval, long compactionThreshold) throws IOException {
+        var journal = new RepositoryJournal(prepared.path(), syncInterval, compactionThreshold);
+        try {
+            journal.load(prepared);
+        } catch (IOException | RuntimeException e) {
+            journal.compactor.shutdown();
+            journal.closeChannel();
+            throw e;
+        }
+        journal.register();
+        return journal;
+    }
+
+
+    /**
+     * Zapisuje cały model do pliku repozytorium i rozpoczyna rejestrowanie kolejnych zmian.
+     *
+     * @param path                Ścieżka pliku repozytorium.
+     * @param syncInterval        Liczba zatwierdzeń, po których dziennik synchronizowany jest z dyskiem.
+     * @param compactionThreshold Rozmiar dziennika w bajtach, po którego przekroczeniu dziennik jest scalany.
+     * @return Otwarty dziennik.
+     */
+    static RepositoryJournal create(Path path, int syncInterval, long compactionThreshold) throws IOException {
+        var journal = attach(path, syncInterval, compactionThreshold);
+        try {
+            journal.save();
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+
+    /**
+     * Rozpoczyna rejestrowanie zmian bez zapisu – pierwsze zatwierdzenie zapisze cały model do pliku repozytorium.
+     *
+     * @param path                Ścieżka pliku repozytorium.
+     * @param syncInterval        Liczba zatwierdzeń, po których dziennik synchronizowany jest z dyskiem.
+     * @param compactionThreshold Rozmiar dziennika w bajtach, po którego przekroczeniu dziennik jest scalany.
+     * @return Otwarty dziennik.
+     */
+    static RepositoryJournal attach(Path path, int syncInterval, long compactionThreshold) {
+        var journal = new RepositoryJournal(path, syncInterval, compactionThreshold);
+        journal.checkpointRequired = true;
+        journal.taxOfficeIds = new IdentityHashMap<>();
+        journal.addressIds = new IdentityHashMap<>();
+        journal.periodEntrySetIds = new IdentityHashMap<>();
+        journal.register();
+        return journal;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+
+    /**
+     * Zatwierdza zarejestrowane zmiany – dopisuje je do pliku dziennika lub, jeżeli dziennik ich nie obejmuje,
+     * zapisuje cały model. Po przekroczeniu progu rozmiaru rozpoczyna scalanie dziennika w tle.
+     */
+    void save() throws IOException {
+        prepareSave(null).run();
+    }
+
+
+    /**
+     * Przygotowuje zatwierdzenie zarejestrowanych zmian. Wywoływana w wątku modyfikującym model – utrwala stan
+     * modelu, a zwrócone zadanie, wykonywane w dowolnym wątku, zapisuje go na dysku. Zmiany modelu dokonane po
+     * wywołaniu metody nie są objęte zadaniem – zostaną zapisane przy kolejnym zatwierdzeniu.
+     *
+     * @param progress Obserwator postępu zapisu całego modelu lub wartość null.
+     * @return Zadanie zapisujące zmiany.
+     */
+    synchronized Task prepareSave(Repository.ProgressListener progress) throws IOException {
+        ensureOpen();
+        if (compaction != null && compaction.isDone()) {
+            awaitCompaction();
+        }
+        if (checkpointRequired || extentsChanged() || ModelChanges.getVersion() != modelVersion) {
+            return prepareCheckpoint(progress);
+        }
+        return this::commit;
+    }
+
+
+    /**
+     * Zapisuje cały model do pliku repozytorium jako nowe pokolenie i rozpoczyna nowy, pusty dziennik.
+     */
+    void checkpoint() throws IOException {
+        prepareCheckpoint(null).run();
+    }
+
+
+    /**
+     * Przygotowuje zapis całego modelu jako nowego pokolenia. Wywoływana w wątku modyfikującym model – utrwala obraz
+     * modelu (RepositoryFormat.capture()), od którego numerowane są obiekty kolejnych rekordów dziennika.
+     * Rekordy zarejestrowane do chwili zapisu gromadzone są w buforze i trafiają do nowego dziennika.
+     *
+     * @param progress Obserwator postępu zapisu lub wartość null.
+     * @return Zadanie zapisujące obraz modelu.
+     */
+    synchronized Task prepareCheckpoint(Repository.ProgressListener progress) throws IOException {
+        ensureOpen();
+        var image = RepositoryFormat.capture();
+        buffer.reset(); // Zmiany zarejestrowane w buforze zawiera obraz modelu
+        if (channel != null) {
+            channel.close(); // Dziennik poprzedniego pokolenia nie jest już potrzebny
+            channel = null;
+        }
+        tables = image.getTables();
+        indexTables();
+        checkpointRequired = false;
+        modelVersion = ModelChanges.getVersion();
+        var pendingCompaction = compaction;
+        compaction = null;
+        var current = generation;
+        return () -> {
+            try {
+                if (pendingCompaction != null) {
+                    await(pendingCompaction); // Wynik scalania zastępuje zapisywany obraz
+                }
+                var next = Math.max(Math.max(current, readGeneration(path, RepositoryFormat.MAGIC)),
+                        Math.max(readGeneration(journalPath, MAGIC), readGeneration(foldPath, MAGIC))) + 1;
+                Repository.replace(path, output -> image.write(output, next, progress));
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    Files.deleteIfExists(foldPath); // Dzienniki poprzednich pokoleń są już zawarte w pliku repozytorium
+                    generation = next;
+                    openChannel();
+                    unsyncedCommits = 0;
+                }
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    checkpointRequired = true;
+                }
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Metoda pomocnicza – dopisuje zarejestrowane zmiany do pliku dziennika.
+     */
+    private synchronized void commit() throws IOException {
+        ensureOpen();
+        if (channel == null) {
+            throw new IOException("Zapis pliku repozytorium nie został ukończony");
+        }
+        drain();
+        if (++unsyncedCommits >= syncInterval) {
+            channel.force(false);
+            unsyncedCommits = 0;
+        }
+        if (compaction == null && channel.size() >= compactionThreshold) {
+            rotate();
+        }
+    }
+
+
+    /**
+     * Kończy rejestrowanie zmian i czeka na zakończenie scalania dziennika.
+     * Zmiany niezatwierdzone metodą save() nie są zapisywane.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        PeriodEntrySet.removeListener(this);
+        TaxOffice.removeListener(this);
+        try {
+            awaitCompaction();
+            buffer.reset();
+            closeChannel();
+        } finally {
+            compactor.shutdown();
+        }
+    }
+
+    @Override
+    public void entryAdded(PeriodEntrySet periodEntrySet, LocalDate date, Money value) {
+        // Rejestrowana jest dokładna wartość wpisu – zob. entryAdded(PeriodEntrySet, LocalDate, BigDecimal, String)
+    }
+
+    @Override
+    public synchronized void entryAdded(PeriodEntrySet periodEntrySet, LocalDate date, BigDecimal value,
+                                        String justification) {
+        var id = periodEntrySetIds.get(periodEntrySet);
+        if (startRecord(ENTRY_ADDED, id != null)) {
+            try {
+                RepositoryFormat.writeVarLong(payloadOutput, id);
+                RepositoryFormat.writeDate(payloadOutput, date);
+                RepositoryFormat.writeDecimal(payloadOutput, value);
+                RepositoryFormat.writeString(payloadOutput, justification);
+                endRecord();
+            } catch (IOException e) {
+                checkpointRequired = true;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void addressAdded(TaxOffice taxOffice, Address address) {
+        recordLink(ADDRESS_ADDED, taxOffice, address);
+    }
+
+    @Override
+    public synchronized void addressRemoved(TaxOffice taxOffice, Address address) {
+        recordLink(ADDRESS_REMOVED, taxOffice, address);
+    }
+
+
+    /**
+     * Metoda pomocnicza – rejestruje zmianę powiązania urzędu podatkowego z adresem.
+     */
+    private void recordLink(int kind, TaxOffice taxOffice, Address address) {
+        var taxOfficeId = taxOfficeIds.get(taxOffice);
+        var addressId = addressIds.get(address);
+        if (startRecord(kind, taxOfficeId != null && addressId != null)) {
+            try {
+                RepositoryFormat.writeVarLong(payloadOutput, taxOfficeId);
+                RepositoryFormat.writeVarLong(payloadOutput, addressId);
+                endRecord();
+            } catch (IOException e) {
+                checkpointRequired = true;
+            }
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – rozpoczyna rekord, jeżeli zmiana może zostać zapisana w dzienniku. Zmiana obiektu spoza
+     * pliku repozytorium wymaga zapisu całego modelu przy najbliższym zatwierdzeniu.
+     *
+     * @return Wartość true, jeżeli rekord należy uzupełnić i zakończyć metodą endRecord().
+     */
+    private boolean startRecord(int kind, boolean known) {
+        if (closed || checkpointRequired) {
+            return false;
+        }
+        if (!known) {
+            checkpointRequired = true;
+            return false;
+        }
+        payload.reset();
+        try {
+            RepositoryFormat.writeVarLong(payloadOutput, kind);
+        } catch (IOException e) {
+            checkpointRequired = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Metoda pomocnicza – dopisuje rekord do bufora jako długość, treść i sumę kontrolną.
+     * Po zapełnieniu bufora jego zawartość przekazywana jest do pliku dziennika, bez synchronizacji z dyskiem.
+     */
+    private void endRecord() throws IOException {
+        var bufferOutput = new DataOutputStream(buffer);
+        checksum.reset();
+        checksum.update(payload.toByteArray());
+        RepositoryFormat.writeVarLong(bufferOutput, payload.size());
+        payload.writeTo(buffer);
+        bufferOutput.writeInt((int) checksum.getValue());
+        if (buffer.size() >= BUFFER_SIZE && channel != null) {
+            drain();
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – przekazuje zawartość bufora do pliku dziennika.
+     */
+    private void drain() throws IOException {
+        if (buffer.size() > 0) {
+            var bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            buffer.reset();
+        }
+    }
+
+
+    /**
+     * Metoda pomocnicza – rozpoczyna nowy plik dziennika, a dotychczasowy przekazuje do scalania w tle.
+     */
+    private void rotate() throws IOException {
+        closeChannel();
+        Files.move(journalPath, foldPath, StandardCopyOption.REPLACE_EXISTING);
+        var snapshotGeneration = generation;
+        generation++;
+        openChannel();
+        compaction = compactor.submit(() -> {
+            fold(snapshotGeneration);
+            return null;
+        });
+    }
+
+    /**
+     * Metoda pomocnicza – scala dziennik pokolenia generation z plikiem repozytorium tego samego pokolenia.
+     * Wywoływana w tle – nie korzysta z obiektów modelu.
+     */
+    private void fold(long snapshotGeneration) throws IOException {
+        var journal = readJournal(foldPath);
+        if (journal.generation() != snapshotGeneration) {
+            throw new IOException("Dziennik nie odpowiada plikowi repozytorium");
+        }
+        Repository.replace(path, output -> {
+            RepositoryFormat.fold(path, snapshotGeneration, journal.records(), output);
+            return null;
+        });
+        Files.delete(foldPath);
+    }
+
+    /**
+     * Metoda pomocnicza – czeka na zakończenie scalania w tle. Nieudane scalanie powoduje zapis całego modelu
+     * przy najbliższym zatwierdzeniu.
+     */
+    private void awaitCompaction() throws IOException {
+        if (compaction == null) {
+            return;
+        }
+        if (!await(compaction)) {
+            checkpointRequired = true;
+        }
+        compaction = null;
+    }
+
+    /**
+     * Metoda pomocnicza – czeka na zakończenie scalania.
+     *
+     * @return Wartość true, jeżeli scalanie zakończyło się powodzeniem.
+     */
+    private static boolean await(Future<?> compaction) throws IOException {
+        try {
+            compaction.get();
+            return true;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+
+    /**
+     * Metoda pomocnicza – odczytuje plik repozytorium i nakłada dzienniki jego pokolenia.
+     * Dziennik przekazany do scalania nakładany jest przed bieżącym, a jego scalanie wznawiane jest w tle.
+     */
+    private void load(Prepared prepared) throws IOException {
+        tables = RepositoryFormat.materialize(prepared.decoded());
+        indexTables();
+        var snapshotGeneration = tables.generation();
+        if (snapshotGeneration == 0) { // Plik zapisany poza dziennikiem – dziennik rozpocznie pełny zapis
+            checkpointRequired = true;
+            return;
+        }
+        var foldJournal = prepared.foldJournal();
+        var folding = foldJournal != null && foldJournal.generation() == snapshotGeneration;
+        if (folding) {
+            apply(foldJournal.records());
+        } else {
+            Files.deleteIfExists(foldPath);
+        }
+        generation = folding ? snapshotGeneration + 1 : snapshotGeneration;
+        var journal = prepared.journal();
+        if (journal != null && journal.generation() == generation) {
+            apply(journal.records());
+            channel = FileChannel.open(journalPath, StandardOpenOption.WRITE);
+            channel.truncate(journal.length()); // Usuwa niepełny rekord
+            channel.position(journal.length());
+        } else {
+            openChannel();
+        }
+        modelVersion = ModelChanges.getVersion(); // Odczyt i nałożenie dziennika nie są zmianami modelu
+        if (folding) {
+            compaction = compactor.submit(() -> {
+                fold(snapshotGeneration);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – nakłada rekordy dziennika na obiekty modelu.
+     */
+    private void apply(List<Record> records) throws IOException {
+        var taxOffices = tables.taxOffices();
+        var addresses = tables.addresses();
+        var periodEntrySets = tables.periodEntrySets();
+        for (var record : records) {
+            switch (record) {
+                case EntryAdded(var id, var date, var value, var justification) ->
+                        get(periodEntrySets, id).addEntry(date, value, justification);
+                case AddressAdded(var taxOfficeId, var addressId) ->
+                        get(taxOffices, taxOfficeId).addAddress(get(addresses, addressId));
+                case AddressRemoved(var taxOfficeId, var addressId) ->
+                        get(taxOffices, taxOfficeId).removeAddress(get(addresses, addressId));
+            }
+        }
+    }
+
+    private static <T> T get(List<T> objects, int id) throws IOException {
+        if (id >= objects.size()) {
+            throw new IOException("Niepoprawny numer obiektu w dzienniku: " + id);
+        }
+        return objects.get(id);
+    }
+
+    private void register() {
+        PeriodEntrySet.addListener(this);
+        TaxOffice.addListener(this);
+    }
+
+    private void indexTables() {
+        taxOfficeIds = index(tables.taxOffices());
+        addressIds = index(tables.addresses());
+        periodEntrySetIds = index(tables.periodEntrySets());
+    }
+
+    private static <T> IdentityHashMap<T, Integer> index(List<T> objects) {
+        var ids = new IdentityHashMap<T, Integer>(objects.size() * 2);
+        for (var i = 0; i < objects.size(); i++) {
+            ids.put(objects.get(i), i);
+        }
+        return ids;
+    }
+
+    /**
+     * Metoda pomocnicza – sprawdza, czy od zapisu pliku repozytorium zmienił się rozmiar którejkolwiek ekstensji.
+     */
+    private boolean extentsChanged() {
+        var sizes = tables.extentSizes();
+        return Person.getPersons().size() != sizes[0] || Tax.getTaxes().size() != sizes[1] ||
+                AccountManager.getAccountManagers().size() != sizes[2] || Address.getAddresses().size() != sizes[3] ||
+                PeriodEntrySet.getPeriodEntrySetsView().size() != sizes[4] ||
+                TaxOffice.getTaxOffices().size() != sizes[5];
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Dziennik repozytorium został zamknięty");
+        }
+    }
+
+    /**
+     * Metoda pomocnicza – tworzy pusty plik dziennika bieżącego pokolenia i synchronizuje go z dyskiem.
+     */
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        var header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort((short) VERSION).putLong(generation);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            try {
+                drain();
+                channel.force(false);
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+
+    /**
+     * Metoda pomocnicza – odczytuje pokolenie zapisane w nagłówku pliku repozytorium lub dziennika.
+     *
+     * @return Pokolenie lub 0, jeżeli plik nie istnieje bądź go nie określa.
+     */
+    static long readGeneration(Path file, int magic) throws IOException {
+        try (var input = new DataInputStream(Files.newInputStream(file))) {
+            if (input.readInt() != magic || input.readUnsignedShort() < (magic == MAGIC ? 1 : 3)) {
+                return 0;
+            }
+            return input.readLong();
+        } catch (NoSuchFileException | EOFException e) {
+            return 0;
+        }
+    }
+
+
+    /**
+     * Odczytuje rekordy pliku dziennika. Odczyt kończy się na pierwszym niepełnym lub uszkodzonym rekordzie.
+     *
+     * @param file Ścieżka pliku dziennika.
+     * @return Pokolenie, rekordy oraz długość poprawnej części pliku.
+     */
+    static Journal readJournal(Path file) throws IOException {
+        try (var arena = Arena.ofConfined(); var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            var in = new SegmentDataInput(segment);
+            if (segment.byteSize() < HEADER_SIZE || in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                return new Journal(-1, List.of(), 0);
+            }
+            var generation = in.readLong();
+            var records = new ArrayList<Record>();
+            var length = in.getPosition();
+            var checksum = new CRC32();
+            try {
+                while (in.getPosition() < segment.byteSize()) {
+                    var size = RepositoryFormat.readVarLong(in);
+                    if (size <= 0 || size > segment.byteSize() - in.getPosition() - Integer.BYTES) {
+                        break;
+                    }
+                    var body = segment.asSlice(in.getPosition(), size);
+                    in.seek(in.getPosition() + size);
+                    checksum.reset();
+                    checksum.update(body.asByteBuffer());
+                    if (in.readInt() != (int) checksum.getValue()) {
+                        break;
+                    }
+                    records.add(readRecord(new SegmentDataInput(body)));
+                    length = in.getPosition();
+                }
+            } catch (EOFException e) {
+                // Niepełny rekord na końcu pliku – przerwany zapis
+            }
+            return new Journal(generation, records, length);
+        }
+    }
+
+    private static Record readRecord(SegmentDataInput in) throws IOException {
+        var kind = RepositoryFormat.readVarLong(in);
+        return switch ((int) kind) {
+            case ENTRY_ADDED -> new EntryAdded(RepositoryFormat.readCount(in), RepositoryFormat.readDate(in),
+                    RepositoryFormat.readDecimal(in), RepositoryFormat.readString(in));
+            case ADDRESS_ADDED -> new AddressAdded(RepositoryFormat.readCount(in), RepositoryFormat.readCount(in));
+            case ADDRESS_REMOVED -> new AddressRemoved(RepositoryFormat.readCount(in), RepositoryFormat.readCount(in));
+            default -> throw new IOException("Nieznany rodzaj rekordu dziennika: " + kind);
+        };
+    }
+
+
+    /**
+     * Interfejs funkcyjny zadania zapisu przygotowanego w wątku modyfikującym model.
+     */
+    @FunctionalInterface
+    interface Task {
+
+        void run() throws IOException;
+    }
+
+    /**
+     * Rekord reprezentujący pliki repozytorium odczytane bez tworzenia obiektów modelu.
+     *
+     * @param path        Ścieżka pliku repozytorium.
+     * @param decoded     Odczytane tabele pliku repozytorium.
+     * @param foldJournal Dziennik przekazany do scalania lub wartość null.
+     * @param journal     Bieżący dziennik lub wartość null.
+     */
+    record Prepared(Path path, RepositoryFormat.Decoded decoded, Journal foldJournal, Journal journal) {
+    }
+
+    /**
+     * Rekord reprezentujący odczytany plik dziennika.
+     *
+     * @param generation Pokolenie pliku repozytorium, na który należy nałożyć dziennik.
+     * @param records    Rekordy dziennika w kolejności zapisu.
+     * @param length     Długość poprawnej części pliku w bajtach.
+     */
+    record Journal(long generation, List<Record> records, long length) {
+    }
+
+    /**
+     * Interfejs rekordu dziennika – zmiany obiektu identyfikowanego numerem w pliku repozytorium.
+     */
+    sealed interface Record {
+    }
+
+    /**
+     * Rekord reprezentujący dodanie wpisu księgowego do zbioru.
+     */
+    record EntryAdded(int periodEntrySet, LocalDate date, BigDecimal value, String justification) implements Record {
+    }
+
+    /**
+     * Rekord reprezentujący utworzenie powiązania urzędu podatkowego z adresem.
+     */
+    record AddressAdded(int taxOffice, int address) implements Record {
+    }
+
+    /**
+     * Rekord reprezentujący usunięcie powiązania urzędu podatkowego z adresem.
+     */
+    record AddressRemoved(int taxOffice, int address) implements Record {
+    }
+}
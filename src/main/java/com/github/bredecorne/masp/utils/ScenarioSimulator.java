@@ -0,0 +1,399 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.RoundingPolicy;
+import com.github.bredecorne.masp.model.persons.Person;
+import com.github.bredecorne.masp.model.taxes.Tax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Klasa narzędziowa, służąca do symulacji wpływu proponowanych podatków (scenariuszy) na wszystkie zbiory wpisów
+ * księgowych naraz.
+ * <p>
+ * Zbiory dzielone są na fragmenty przetwarzane w puli ForkJoin. Dla każdego fragmentu dochody zbiorów odczytywane są
+ * raz, a następnie każdy scenariusz obliczany jest dla całego fragmentu metodą Tax.calculateTaxes. Podatek bazowy
+ * zbioru to suma podatków, z którymi zbiór jest obecnie powiązany. Dla każdego scenariusza wyznaczane są sumy,
+ * rozkład wartości podatku oraz osoby, których podatek zmienia się najbardziej względem podatku bazowego.
+ * </p>
+ * <p>
+ * Podatki zaokrąglane są zgodnie z zasadami zaokrąglania właściciela zbioru (Person.getRoundingPolicy), tak samo
+ * jak w PeriodEntrySet.getTax. Zbiory właścicieli o zasadach DEFAULT obliczane są wsadowo; dla pozostałych podatek
+ * każdego scenariusza obliczany jest osobno metodą Tax.calculateTax(Money, RoundingPolicy).
+ * </p>
+ * <p>
+ * Obliczenia wykonywane są na groszach typu long – dochód lub podatek zbioru przekraczający ten zakres lub
+ * niemieszczący się w pełnych groszach (zasady zaokrąglania o więcej niż dwóch miejscach po przecinku) powoduje
+ * wyjątek ArithmeticException. Sumy są dokładne.
+ * </p>
+ */
+public class ScenarioSimulator {
+
+    // Atrybuty klasowe
+    public static final int DEFAULT_TOP_CLIENTS = 10;
+    private static final int SEQUENTIAL_THRESHOLD = 1024;
+    private static final int[] PERCENTILES = {100, 500, 900, 990}; // W promilach
+
+    // Atrybuty wymagane
+    private final ForkJoinPool pool;
+
+
+    /**
+     * Tworzy symulator korzystający ze wspólnej puli ForkJoin.
+     */
+    public ScenarioSimulator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Tworzy symulator korzystający ze wskazanej puli ForkJoin.
+     *
+     * @param pool Pula wątków, niebędąca wartością null.
+     */
+    public ScenarioSimulator(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException();
+        }
+        this.pool = pool;
+    }
+
+
+    /**
+     * Symuluje scenariusze dla całej ekstensji zbiorów wpisów księgowych.
+     *
+     * @param scenarios Proponowane podatki.
+     * @return Wyniki symulacji.
+     */
+    public Result simulate(List<? extends Tax> scenarios) {
+        return simulate(scenarios, PeriodEntrySet.getPeriodEntrySetsView(), DEFAULT_TOP_CLIENTS);
+    }
+
+
+    /**
+     * Symuluje scenariusze dla wskazanych zbiorów wpisów księgowych.
+     *
+     * @param scenarios       Proponowane podatki, niebędące null.
+     * @param periodEntrySets Zbiory wpisów księgowych.
+     * @param topClients      Liczba osób o największej zmianie podatku, zwracanych dla każdego scenariusza.
+     * @return Wyniki symulacji.
+     */
+    public Result simulate(List<? extends Tax> scenarios, Collection<PeriodEntrySet> periodEntrySets,
+                           int topClients) {
+        if (scenarios == null || periodEntrySets == null || topClients < 0) {
+            throw new IllegalArgumentException();
+        }
+        var taxes = scenarios.toArray(new Tax[0]);
+        for (var tax : taxes) {
+            if (tax == null) {
+                throw new IllegalArgumentException();
+            }
+        }
+        var sets = periodEntrySets.toArray(new PeriodEntrySet[0]);
+        var table = new ResultTable(sets, taxes);
+
+        var aggregates = pool.invoke(new SimulateTask(table, 0, sets.length));
+
+        var results = new ArrayList<ScenarioResult>(taxes.length);
+        for (var s = 0; s < taxes.length; s++) {
+            var sorted = table.taxes[s].clone();
+            Arrays.parallelSort(sorted);
+            var percentiles = new Money[PERCENTILES.length];
+            for (var p = 0; p < PERCENTILES.length; p++) {
+                percentiles[p] = sorted.length == 0 ? Money.ZERO :
+                        Money.ofUnits(sorted[(int) ((PERCENTILES[p] * (long) sorted.length + 999) / 1000) - 1]);
+            }
+            var distribution = new Distribution(
+                    sorted.length == 0 ? Money.ZERO : Money.ofUnits(sorted[0]),
+                    percentiles[0], percentiles[1], percentiles[2], percentiles[3],
+                    sorted.length == 0 ? Money.ZERO : Money.ofUnits(sorted[sorted.length - 1]));
+            results.add(new ScenarioResult(taxes[s], aggregates.tax[s].toMoney(), aggregates.baselineTax.toMoney(),
+                    distribution, topChanges(aggregates.byPerson, s, topClients)));
+        }
+        return new Result(table, aggregates.income.toMoney(), Collections.unmodifiableList(results));
+    }
+
+
+    /**
+     * Metoda pomocnicza – wybiera osoby o największej bezwzględnej zmianie podatku w danym scenariuszu.
+     */
+    private static List<ClientImpact> topChanges(HashMap<Person, PersonTotals> byPerson, int scenario, int limit) {
+        if (limit == 0) {
+            return List.of();
+        }
+        var comparator = Comparator.comparing((ClientImpact impact) -> impact.change().toBigDecimal().abs());
+        var top = new PriorityQueue<>(limit, comparator);
+        byPerson.forEach((person, totals) -> {
+            var impact = new ClientImpact(person, totals.baselineTax.toMoney(), totals.tax[scenario].toMoney());
+            if (top.size() < limit) {
+                top.add(impact);
+            } else if (comparator.compare(impact, top.peek()) > 0) {
+                top.poll();
+                top.add(impact);
+            }
+        });
+        var result = new ArrayList<>(top);
+        result.sort(comparator.reversed());
+        return Collections.unmodifiableList(result);
+    }
+
+
+    /**
+     * Klasa reprezentująca wynik symulacji.
+     */
+    public static class Result {
+
+        private final ResultTable table;
+        private final Money totalIncome;
+        private final List<ScenarioResult> scenarios;
+
+        private Result(ResultTable table, Money totalIncome, List<ScenarioResult> scenarios) {
+            this.table = table;
+            this.totalIncome = totalIncome;
+            this.scenarios = scenarios;
+        }
+
+        public ResultTable getTable() {
+            return table;
+        }
+
+        public Money getTotalIncome() {
+            return totalIncome;
+        }
+
+        public List<ScenarioResult> getScenarios() {
+            return scenarios;
+        }
+    }
+
+
+    /**
+     * Rekord reprezentujący wynik jednego scenariusza.
+     *
+     * @param tax              Proponowany podatek.
+     * @param totalTax         Suma podatków wszystkich zbiorów w scenariuszu.
+     * @param totalBaselineTax Suma podatków bazowych wszystkich zbiorów.
+     * @param distribution     Rozkład wartości podatku zbiorów w scenariuszu.
+     * @param topChanges       Osoby o największej bezwzględnej zmianie podatku, w kolejności malejącej zmiany.
+     */
+    public record ScenarioResult(Tax tax, Money totalTax, Money totalBaselineTax, Distribution distribution,
+                                 List<ClientImpact> topChanges) {
+
+        public Money change() {
+            return totalTax.subtract(totalBaselineTax);
+        }
+    }
+
+
+    /**
+     * Rekord reprezentujący rozkład wartości podatku zbiorów (percentyle wyznaczone metodą najbliższej rangi).
+     */
+    public record Distribution(Money min, Money p10, Money median, Money p90, Money p99, Money max) {
+    }
+
+
+    /**
+     * Rekord reprezentujący zmianę sumy podatków osoby w scenariuszu.
+     *
+     * @param person      Osoba.
+     * @param baselineTax Suma podatków bazowych zbiorów osoby.
+     * @param scenarioTax Suma podatków zbiorów osoby w scenariuszu.
+     */
+    public record ClientImpact(Person person, Money baselineTax, Money scenarioTax) {
+
+        public Money change() {
+            return scenarioTax.subtract(baselineTax);
+        }
+    }
+
+
+    /**
+     * Klasa reprezentująca kolumnową tabelę wyników – dochód, podatek bazowy i podatek każdego scenariusza
+     * dla każdego zbioru, w groszach.
+     */
+    public static class ResultTable {
+
+        private final PeriodEntrySet[] periodEntrySets;
+        private final Tax[] scenarios;
+        private final long[] incomes;
+        private final long[] baselineTaxes;
+        private final long[][] taxes;
+
+        private ResultTable(PeriodEntrySet[] periodEntrySets, Tax[] scenarios) {
+            this.periodEntrySets = periodEntrySets;
+            this.scenarios = scenarios;
+            this.incomes = new long[periodEntrySets.length];
+            this.baselineTaxes = new long[periodEntrySets.length];
+            this.taxes = new long[scenarios.length][periodEntrySets.length];
+        }
+
+        public int size() {
+            return periodEntrySets.length;
+        }
+
+        public int getScenarioCount() {
+            return scenarios.length;
+        }
+
+        public PeriodEntrySet getPeriodEntrySet(int row) {
+            return periodEntrySets[row];
+        }
+
+        public Money getIncome(int row) {
+            return Money.ofUnits(incomes[row]);
+        }
+
+        public Money getBaselineTax(int row) {
+            return Money.ofUnits(baselineTaxes[row]);
+        }
+
+        public Money getTax(int scenario, int row) {
+            return Money.ofUnits(taxes[scenario][row]);
+        }
+    }
+
+
+    /**
+     * Zadanie obliczające scenariusze dla fragmentu zbiorów i zwracające ich sumy cząstkowe.
+     */
+    private static class SimulateTask extends RecursiveTask<Aggregates> {
+
+        private final ResultTable table;
+        private final int from;
+        private final int to;
+
+        SimulateTask(ResultTable table, int from, int to) {
+            this.table = table;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Aggregates compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                return computeSequentially();
+            }
+            var mid = (from + to) >>> 1;
+            var left = new SimulateTask(table, from, mid);
+            left.fork();
+            var right = new SimulateTask(table, mid, to).compute();
+            return left.join().merge(right);
+        }
+
+        private Aggregates computeSequentially() {
+            var scenarioCount = table.scenarios.length;
+            var aggregates = new Aggregates(scenarioCount);
+            var count = to - from;
+
+            // Dochód i podatek bazowy każdego zbioru obliczane są raz
+            var incomes = new long[count];
+            var policies = new RoundingPolicy[count]; // Zasady właściciela lub null dla zasad DEFAULT
+            for (var i = 0; i < count; i++) {
+                var set = table.periodEntrySets[from + i];
+                var income = set.getIncomeMoney();
+                var policy = set.getPerson().getRoundingPolicy();
+                var baselineTax = new Money.Accumulator();
+                for (var tax : set.getTaxes()) {
+                    baselineTax.add(tax.calculateTax(income, policy));
+                }
+                incomes[i] = income.getUnits();
+                policies[i] = policy.equals(RoundingPolicy.DEFAULT) ? null : policy;
+                table.baselineTaxes[from + i] = baselineTax.toMoney().getUnits();
+            }
+            System.arraycopy(incomes, 0, table.incomes, from, count);
+
+            var taxes = new long[count];
+            for (var s = 0; s < scenarioCount; s++) {
+                var scenario = table.scenarios[s];
+                scenario.calculateTaxes(incomes, taxes, count);
+                for (var i = 0; i < count; i++) {
+                    if (policies[i] != null) {
+                        taxes[i] = scenario.calculateTax(Money.ofUnits(incomes[i]), policies[i]).getUnits();
+                    }
+                }
+                System.arraycopy(taxes, 0, table.taxes[s], from, count);
+            }
+
+            for (var i = 0; i < count; i++) {
+                var row = from + i;
+                var personTotals = aggregates.byPerson.computeIfAbsent(table.periodEntrySets[row].getPerson(),
+                        _ -> new PersonTotals(scenarioCount));
+                aggregates.income.addUnits(table.incomes[row]);
+                aggregates.baselineTax.addUnits(table.baselineTaxes[row]);
+                personTotals.baselineTax.addUnits(table.baselineTaxes[row]);
+                for (var s = 0; s < scenarioCount; s++) {
+                    aggregates.tax[s].addUnits(table.taxes[s][row]);
+                    personTotals.tax[s].addUnits(table.taxes[s][row]);
+                }
+            }
+            return aggregates;
+        }
+    }
+
+
+    /**
+     * Klasa pomocnicza – sumy cząstkowe fragmentu zbiorów.
+     */
+    private static class Aggregates {
+
+        private final Money.Accumulator income = new Money.Accumulator();
+        private final Money.Accumulator baselineTax = new Money.Accumulator();
+        private final Money.Accumulator[] tax;
+        private final HashMap<Person, PersonTotals> byPerson = new HashMap<>();
+
+        Aggregates(int scenarioCount) {
+            this.tax = accumulators(scenarioCount);
+        }
+
+        Aggregates merge(Aggregates other) {
+            income.add(other.income.toMoney());
+            baselineTax.add(other.baselineTax.toMoney());
+            for (var s = 0; s < tax.length; s++) {
+                tax[s].add(other.tax[s].toMoney());
+            }
+            other.byPerson.forEach((key, value) -> byPerson.merge(key, value, PersonTotals::merge));
+            return this;
+        }
+    }
+
+
+    /**
+     * Klasa pomocnicza – sumy podatków zbiorów jednej osoby.
+     */
+    private static class PersonTotals {
+
+        private final Money.Accumulator baselineTax = new Money.Accumulator();
+        private final Money.Accumulator[] tax;
+
+        PersonTotals(int scenarioCount) {
+            this.tax = accumulators(scenarioCount);
+        }
+
+        PersonTotals merge(PersonTotals other) {
+            baselineTax.add(other.baselineTax.toMoney());
+            for (var s = 0; s < tax.length; s++) {
+                tax[s].add(other.tax[s].toMoney());
+            }
+            return this;
+        }
+    }
+
+    private static Money.Accumulator[] accumulators(int count) {
+        var accumulators = new Money.Accumulator[count];
+        for (var i = 0; i < count; i++) {
+            accumulators[i] = new Money.Accumulator();
+        }
+        return accumulators;
+    }
+}
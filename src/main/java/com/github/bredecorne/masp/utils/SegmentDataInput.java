@@ -0,0 +1,191 @@
+package com.github.bredecorne.masp.utils;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+
+/**
+ * Klasa reprezentująca strumień danych odczytywanych bezpośrednio z segmentu pamięci (np. pliku odwzorowanego
+ * w pamięci), w kolejności bajtów zgodnej z DataOutput. W przeciwieństwie do strumienia pozwala zmienić pozycję
+ * odczytu. Dane pliku odczytywanego blokami (BlockCompression.BlockFile) odczytywane są z kolejnych bloków – blok
+ * dekompresowany jest dopiero przy odczycie danych, które zawiera.
+ */
+final class SegmentDataInput implements DataInput {
+
+    // Atrybuty klasowe
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfChar CHAR = ValueLayout.JAVA_CHAR_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    // Atrybuty wymagane
+    private final BlockCompression.BlockFile file;
+    private final long length;
+    private MemorySegment segment;
+    private long base;
+    private long position;
+
+
+    SegmentDataInput(MemorySegment segment) {
+        this.file = null;
+        this.length = segment.byteSize();
+        this.segment = segment;
+    }
+
+    SegmentDataInput(BlockCompression.BlockFile file) {
+        this.file = file;
+        this.length = file.byteSize();
+        this.segment = MemorySegment.NULL;
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    long length() {
+        return length;
+    }
+
+
+    /**
+     * Ustawia pozycję odczytu.
+     *
+     * @param position Pozycja w bajtach, licząc od początku segmentu.
+     */
+    void seek(long position) throws IOException {
+        if (position < 0 || position > length) {
+            throw new EOFException();
+        }
+        this.position = position;
+    }
+
+    /**
+     * Metoda pomocnicza – przesuwa pozycję odczytu o zadaną liczbę bajtów. Jeżeli odczytywane bajty nie mieszczą się
+     * w bieżącym segmencie, pobiera z pliku segment rozpoczynający się od pozycji odczytu.
+     *
+     * @return Położenie odczytywanych bajtów w bieżącym segmencie.
+     */
+    private long advance(long length) throws IOException {
+        if (length > this.length - position) {
+            throw new EOFException();
+        }
+        if (position < base || length > base + segment.byteSize() - position) {
+            segment = file.window(position, length);
+            base = position;
+        }
+        var start = position - base;
+        position += length;
+        return start;
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+        readFully(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void readFully(byte[] bytes, int offset, int length) throws IOException {
+        var start = advance(length); // Metoda advance może pobrać kolejny segment pliku
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, start, bytes, offset, length);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        var skipped = (int) Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        var start = advance(Byte.BYTES);
+        return segment.get(ValueLayout.JAVA_BYTE, start);
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return Byte.toUnsignedInt(readByte());
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        var start = advance(Short.BYTES);
+        return segment.get(SHORT, start);
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return Short.toUnsignedInt(readShort());
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        var start = advance(Character.BYTES);
+        return segment.get(CHAR, start);
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        var start = advance(Integer.BYTES);
+        return segment.get(INT, start);
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        var start = advance(Long.BYTES);
+        return segment.get(LONG, start);
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * Odczytuje wiersz zakończony znakiem \n, \r, parą \r\n lub końcem segmentu – każdy bajt zamieniany jest
+     * na jeden znak, zgodnie z DataInput.readLine().
+     *
+     * @return Wiersz bez znaków końca wiersza lub wartość null, jeżeli odczyt rozpoczęto na końcu segmentu.
+     */
+    @Override
+    public String readLine() throws IOException {
+        if (position == length) {
+            return null;
+        }
+        var line = new StringBuilder();
+        while (position < length) {
+            var c = (char) readUnsignedByte();
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\r') {
+                if (position < length && readByte() != '\n') {
+                    position--;
+                }
+                break;
+            }
+            line.append(c);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.bredecorne.masp.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+
+/**
+ * Klasa reprezentująca etapowe uruchamianie aplikacji.
+ * <p>
+ * Etapy wykonywane są po wyświetleniu okna aplikacji – każdy etap rozpoczyna się dopiero po pomyślnym zakończeniu
+ * etapów, od których zależy, a etapy niezależne od siebie wykonywane są równolegle. Zależności mogą wskazywać
+ * wyłącznie etapy dodane wcześniej, dzięki czemu nie mogą tworzyć cyklu. Niepowodzenie etapu pomija etapy od niego
+ * zależne i kończy całe uruchamianie wyjątkiem.
+ * </p>
+ * <p>
+ * Postęp zgłaszany jest łącznie dla wszystkich etapów – każdy etap odpowiada STAGE_STEPS jednostkom postępu.
+ * </p>
+ */
+public final class StartupPipeline {
+
+    // Atrybuty klasowe
+    public static final long STAGE_STEPS = 1000;
+
+    // Atrybuty wymagane
+    private final List<Stage> stages = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+    private boolean started;
+
+
+    /**
+     * Dodaje etap wykonywany w całości przez zadanego wykonawcę (np. w wątku modelu).
+     *
+     * @param name         Unikalna nazwa etapu.
+     * @param executor     Wykonawca etapu.
+     * @param action       Działanie etapu.
+     * @param dependencies Nazwy etapów, które muszą zakończyć się przed rozpoczęciem etapu.
+     * @return Bieżący obiekt.
+     */
+    public StartupPipeline stage(String name, Executor executor, Runnable action, String... dependencies) {
+        if (executor == null || action == null) {
+            throw new IllegalArgumentException();
+        }
+        return stage(name, _ -> CompletableFuture.runAsync(action, executor), dependencies);
+    }
+
+
+    /**
+     * Dodaje etap wykonywany asynchronicznie, zgłaszający własny postęp (np. Repository.deserializeAsync).
+     *
+     * @param name         Unikalna nazwa etapu.
+     * @param action       Funkcja rozpoczynająca etap – otrzymuje obserwatora postępu etapu i zwraca zadanie
+     *                     ukończone po zakończeniu etapu.
+     * @param dependencies Nazwy etapów, które muszą zakończyć się przed rozpoczęciem etapu.
+     * @return Bieżący obiekt.
+     */
+    public StartupPipeline stage(String name, Function<Repository.ProgressListener, CompletableFuture<Void>> action,
+                                 String... dependencies) {
+        if (name == null || action == null || dependencies == null || indices.containsKey(name) || started) {
+            throw new IllegalArgumentException();
+        }
+        var required = new int[dependencies.length];
+        for (var i = 0; i < dependencies.length; i++) {
+            var index = indices.get(dependencies[i]);
+            if (index == null) {
+                throw new IllegalArgumentException("Nieznany etap: " + dependencies[i]);
+            }
+            required[i] = index;
+        }
+        indices.put(name, stages.size());
+        stages.add(new Stage(name, action, required));
+        return this;
+    }
+
+
+    /**
+     * Rozpoczyna wykonywanie etapów. Metoda może zostać wywołana tylko raz.
+     *
+     * @param listener Obserwator rozpoczęcia etapów i łącznego postępu lub wartość null. Wywoływany jest w wątkach
+     *                 wykonujących etapy.
+     * @return Zadanie ukończone po zakończeniu wszystkich etapów.
+     */
+    public CompletableFuture<Void> start(Listener listener) {
+        if (started) {
+            throw new IllegalStateException("Uruchamianie zostało już rozpoczęte");
+        }
+        started = true;
+        var progress = new AtomicLongArray(stages.size());
+        var total = stages.size() * STAGE_STEPS;
+        var tasks = new ArrayList<CompletableFuture<Void>>(stages.size());
+        for (var i = 0; i < stages.size(); i++) {
+            var stage = stages.get(i);
+            var index = i;
+            var required = new CompletableFuture<?>[stage.dependencies().length];
+            for (var j = 0; j < required.length; j++) {
+                required[j] = tasks.get(stage.dependencies()[j]);
+            }
+            tasks.add(CompletableFuture.allOf(required).thenCompose(_ -> {
+                if (listener != null) {
+                    listener.stageStarted(stage.name());
+                }
+                return stage.action().apply((done, stageTotal) -> {
+                    var steps = stageTotal <= 0 ? STAGE_STEPS : Math.min(STAGE_STEPS, done * STAGE_STEPS / stageTotal);
+                    report(listener, progress, index, steps, total);
+                });
+            }).thenRun(() -> report(listener, progress, index, STAGE_STEPS, total)));
+        }
+        return CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Metoda pomocnicza – zapisuje postęp etapu i zgłasza łączny postęp wszystkich etapów.
+     */
+    private static void report(Listener listener, AtomicLongArray progress, int index, long steps, long total) {
+        progress.set(index, steps);
+        if (listener != null) {
+            var done = 0L;
+            for (var i = 0; i < progress.length(); i++) {
+                done += progress.get(i);
+            }
+            listener.progress(done, total);
+        }
+    }
+
+
+    /**
+     * Interfejs obserwatora uruchamiania aplikacji.
+     */
+    public interface Listener extends Repository.ProgressListener {
+
+        /**
+         * Wywoływana przed rozpoczęciem etapu.
+         *
+         * @param name Nazwa etapu.
+         */
+        void stageStarted(String name);
+    }
+
+
+    /**
+     * Rekord reprezentujący etap uruchamiania wraz z numerami etapów, od których zależy.
+     */
+    private record Stage(String name, Function<Repository.ProgressListener, CompletableFuture<Void>> action,
+                         int[] dependencies) {
+    }
+}
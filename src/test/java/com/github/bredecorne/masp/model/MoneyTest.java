@@ -0,0 +1,88 @@
+package com.github.bredecorne.masp.model;
+
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.taxes.ProgressiveTax;
+import com.github.bredecorne.masp.model.taxes.UniformTax;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void addsAndMultipliesAmountsWithExplicitRounding() {
+        var amount = Money.of(new BigDecimal("10.05"));
+        var rate = Money.Factor.of(new BigDecimal("0.19"));
+
+        assertAll(
+                () -> assertTrue(amount.isCompact()),
+                () -> assertEquals(1005, amount.getUnits()),
+                () -> assertEquals(Money.of(new BigDecimal("1.91")), amount.multiply(rate)),
+                () -> assertEquals(Money.of(new BigDecimal("-1.91")), amount.negate().multiply(rate)),
+                () -> assertEquals(Money.of(new BigDecimal("20.10")), amount.add(amount)),
+                () -> assertEquals(Money.ZERO, amount.subtract(amount))
+        );
+    }
+
+    @Test
+    void fallsBackToBigDecimalOnOverflowAndOnFractionsOfAGrosz() {
+        var max = Money.ofUnits(Long.MAX_VALUE);
+        var sum = max.add(Money.ofUnits(1));
+        var fraction = Money.of(new BigDecimal("0.001"));
+
+        assertAll(
+                () -> assertFalse(sum.isCompact()),
+                () -> assertEquals(0, new BigDecimal("92233720368547758.08").compareTo(sum.toBigDecimal())),
+                () -> assertFalse(fraction.isCompact()),
+                () -> assertEquals(0, new BigDecimal("0.001").compareTo(fraction.toBigDecimal())),
+                () -> assertThrows(ArithmeticException.class, fraction::getUnits)
+        );
+    }
+
+    @Test
+    void calculatesTaxesOnGroszeIdenticallyToTheRoundedBigDecimalPath() {
+        Money.setCrossCheckEnabled(true);
+        var uniformTax = new UniformTax(new BigDecimal("0.19"));
+        var progressiveTax = new ProgressiveTax(new TreeMap<>(Map.of(
+                BigDecimal.ZERO, new BigDecimal("0.12"),
+                new BigDecimal("30000"), new BigDecimal("0.32"),
+                new BigDecimal("120000.50"), new BigDecimal("0.325")
+        )));
+        var random = new Random(42);
+
+        for (var i = 0; i < 10_000; i++) {
+            var income = Money.ofUnits(random.nextLong() % 100_000_000_000L);
+            var expectedUniform = uniformTax.calculateTax(income.toBigDecimal())
+                    .setScale(Money.SCALE, Money.ROUNDING_MODE);
+            var expectedProgressive = progressiveTax.calculateTax(income.toBigDecimal())
+                    .setScale(Money.SCALE, Money.ROUNDING_MODE);
+
+            assertEquals(0, expectedUniform.compareTo(uniformTax.calculateTax(income).toBigDecimal()));
+            assertEquals(0, expectedProgressive.compareTo(progressiveTax.calculateTax(income).toBigDecimal()));
+        }
+    }
+
+    @Test
+    void calculatesLedgerTaxAndFeeOnGrosze() {
+        Money.setCrossCheckEnabled(true);
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.now(), LocalDate.now(), person);
+        var tax = new UniformTax(new BigDecimal("0.19"));
+        periodEntrySet.addEntry(LocalDate.now(), new BigDecimal("1000.33"));
+        periodEntrySet.addEntry(LocalDate.now(), new BigDecimal("-200.10"));
+
+        assertAll(
+                () -> assertEquals(Money.of(new BigDecimal("800.23")), periodEntrySet.getIncomeMoney()),
+                () -> assertEquals(new BigDecimal("152.04"), periodEntrySet.getTax(tax)),
+                () -> assertEquals(new BigDecimal("648.19"), periodEntrySet.getAfterTaxIncome(tax)),
+                () -> assertEquals(new BigDecimal("583.37"), periodEntrySet.getFee(tax))
+        );
+    }
+}
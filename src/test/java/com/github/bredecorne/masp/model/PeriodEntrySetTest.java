@@ -5,8 +5,14 @@ import com.github.bredecorne.masp.model.persons.NaturalPerson;
 import com.github.bredecorne.masp.model.taxes.UniformTax;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -63,4 +69,212 @@ class PeriodEntrySetTest {
                 () -> assertEquals(0, expectedAfterTaxIncome.compareTo(afterTaxIncome))
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void keepsRunningTotalsEntryCountAndEntryDateRangeUpToDate() {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, BigDecimal.ZERO, false,
+                BigDecimal.ZERO, false);
+        var dateFrom = LocalDate.of(2024, 1, 1);
+        var periodEntrySet = new PeriodEntrySet(dateFrom, dateFrom.plusMonths(12), person);
+
+        assertAll(
+                () -> assertEquals(0, periodEntrySet.getEntryCount()),
+                () -> assertNull(periodEntrySet.getFirstEntryDate()),
+                () -> assertNull(periodEntrySet.getLastEntryDate()),
+                () -> assertEquals(0, BigDecimal.ZERO.compareTo(periodEntrySet.getIncome()))
+        );
+
+        periodEntrySet.addEntry(dateFrom.plusDays(40), new BigDecimal("250.50"));
+        periodEntrySet.addEntry(dateFrom.plusDays(3), new BigDecimal("-100.25"), "Materiały biurowe");
+        periodEntrySet.addEntry(dateFrom.plusDays(90), new BigDecimal("49.50"));
+
+        assertAll(
+                () -> assertEquals(3, periodEntrySet.getEntryCount()),
+                () -> assertEquals(dateFrom.plusDays(3), periodEntrySet.getFirstEntryDate()),
+                () -> assertEquals(dateFrom.plusDays(90), periodEntrySet.getLastEntryDate()),
+                () -> assertEquals(0, new BigDecimal("300").compareTo(periodEntrySet.getRevenue())),
+                () -> assertEquals(0, new BigDecimal("-100.25").compareTo(periodEntrySet.getExpenses())),
+                () -> assertEquals(0, new BigDecimal("199.75").compareTo(periodEntrySet.getIncome()))
+        );
+    }
+
+    @Test
+    void calculatesTotalsForSubPeriodsWithinTheSet() {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, BigDecimal.ZERO, false,
+                BigDecimal.ZERO, false);
+        var january = LocalDate.of(2024, 1, 1);
+        var february = LocalDate.of(2024, 2, 1);
+        var periodEntrySet = new PeriodEntrySet(january, LocalDate.of(2024, 12, 31), person);
+        periodEntrySet.addEntry(february.plusDays(5), new BigDecimal("300"));
+        periodEntrySet.addEntry(january, new BigDecimal("100.10"));
+        periodEntrySet.addEntry(january.plusDays(30), new BigDecimal("-40"));
+        periodEntrySet.addEntry(february, new BigDecimal("-15.05"));
+
+        assertAll(
+                () -> assertEquals(0, new BigDecimal("100.10").compareTo(
+                        periodEntrySet.getRevenue(january, january.plusDays(30)))),
+                () -> assertEquals(0, new BigDecimal("-40").compareTo(
+                        periodEntrySet.getExpenses(january, january.plusDays(30)))),
+                () -> assertEquals(0, new BigDecimal("284.95").compareTo(
+                        periodEntrySet.getIncome(february, february.plusDays(28)))),
+                () -> assertEquals(0, BigDecimal.ZERO.compareTo(
+                        periodEntrySet.getIncome(LocalDate.of(2024, 6, 1), LocalDate.of(2024, 6, 30)))),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> periodEntrySet.getIncome(february, january))
+        );
+
+        periodEntrySet.addEntry(january.plusDays(10), new BigDecimal("50"));
+
+        assertEquals(0, new BigDecimal("110.10").compareTo(
+                periodEntrySet.getIncome(january, january.plusDays(30))));
+    }
+
+    @Test
+    void reusesCachedTaxResultsUntilTheSetOrTheFeeRateChanges() {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.now(), LocalDate.now(), person);
+        var tax = new UniformTax(new BigDecimal("0.2"));
+        periodEntrySet.addEntry(LocalDate.now(), new BigDecimal("1000"));
+        TaxResultCache.resetStatistics();
+
+        var firstTax = periodEntrySet.getTax(tax);
+        var firstFee = periodEntrySet.getFee(tax);
+        var versionBeforeEntry = periodEntrySet.getVersion();
+        periodEntrySet.addEntry(LocalDate.now(), new BigDecimal("1000"));
+        var secondTax = periodEntrySet.getTax(tax);
+        person.setFeeRate(new BigDecimal("0.5"));
+        var secondFee = periodEntrySet.getFee(tax);
+
+        assertAll(
+                () -> assertEquals(0, new BigDecimal("200").compareTo(firstTax)),
+                () -> assertEquals(0, new BigDecimal("720").compareTo(firstFee)),
+                () -> assertTrue(periodEntrySet.getVersion() > versionBeforeEntry),
+                () -> assertEquals(0, new BigDecimal("400").compareTo(secondTax)),
+                () -> assertEquals(0, new BigDecimal("800").compareTo(secondFee)),
+                () -> assertEquals(1, TaxResultCache.getHitCount()),
+                () -> assertEquals(3, TaxResultCache.getMissCount())
+        );
+    }
+
+    @Test
+    void readsConsistentSnapshotsWhileEntriesAreAppendedConcurrently() throws InterruptedException {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, BigDecimal.ZERO, false,
+                BigDecimal.ZERO, false);
+        var dateFrom = LocalDate.of(2024, 1, 1);
+        var periodEntrySet = new PeriodEntrySet(dateFrom, dateFrom.plusYears(1), person);
+        var writer = new Thread(() -> {
+            for (var i = 0; i < 100_000; i++) {
+                periodEntrySet.addEntry(dateFrom.plusDays(i % 365), BigDecimal.valueOf(i % 2 == 0 ? 3 : -1));
+            }
+        });
+
+        writer.start();
+        var inconsistentSnapshots = 0;
+        do {
+            var snapshot = periodEntrySet.getSnapshot();
+            var sums = new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO};
+            var count = new int[1];
+            snapshot.forEachEntry((_, value, _) -> {
+                count[0]++;
+                sums[value.signum() > 0 ? 0 : 1] = sums[value.signum() > 0 ? 0 : 1].add(value);
+            });
+            if (count[0] != snapshot.getEntryCount() || sums[0].compareTo(snapshot.getRevenue()) != 0 ||
+                    sums[1].compareTo(snapshot.getExpenses()) != 0) {
+                inconsistentSnapshots++;
+            }
+        } while (writer.isAlive());
+        writer.join();
+        var inconsistentSnapshotCount = inconsistentSnapshots;
+
+        assertAll(
+                () -> assertEquals(0, inconsistentSnapshotCount),
+                () -> assertEquals(100_000, periodEntrySet.getEntryCount()),
+                () -> assertEquals(0, new BigDecimal("100000").compareTo(periodEntrySet.getIncome()))
+        );
+    }
+
+    @Test
+    void restoresAllSegmentsOfTheLedgerAfterJavaSerializationAndAcceptsFurtherEntries() throws Exception {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, BigDecimal.ZERO, false,
+                BigDecimal.ZERO, false);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+        for (var i = 0; i < 2_500; i++) {
+            periodEntrySet.addEntry(LocalDate.of(2024, 1, 1).plusDays(i % 366), BigDecimal.ONE, "Wpis " + i);
+        }
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(periodEntrySet);
+        }
+
+        PeriodEntrySet read;
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (PeriodEntrySet) in.readObject();
+        }
+        var justifications = new ArrayList<String>();
+        read.getSnapshot().forEachEntry(2_498, 2_500, (_, _, justification) -> justifications.add(justification));
+        read.addEntry(LocalDate.of(2024, 6, 1), BigDecimal.TEN);
+
+        assertAll(
+                () -> assertEquals(List.of("Wpis 2498", "Wpis 2499"), justifications),
+                () -> assertEquals(2_501, read.getEntryCount()),
+                () -> assertEquals(0, new BigDecimal("2510").compareTo(read.getIncome()))
+        );
+    }
+
+    @Test
+    void storesEntriesInColumnsAndScansThemWithACursorKeepingExactValuesAndEarlierSnapshotsIntact() throws Exception {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, BigDecimal.ZERO, false,
+                BigDecimal.ZERO, false);
+        var dateFrom = LocalDate.of(2024, 1, 1);
+        var periodEntrySet = new PeriodEntrySet(dateFrom, LocalDate.of(2024, 12, 31), person);
+        var values = List.of(new BigDecimal("1000"), new BigDecimal("1.000"), new BigDecimal("0.005"),
+                new BigDecimal("1E+2"), new BigDecimal("-12.5"), new BigDecimal("123456789012345678901.25"));
+        for (var i = 0; i < values.size(); i++) {
+            periodEntrySet.addEntry(dateFrom.plusDays(i), values.get(i), i % 2 == 0 ? "Faktura" : null);
+        }
+        var early = periodEntrySet.getSnapshot();
+        for (var i = 0; i < 1_500; i++) {
+            periodEntrySet.addEntry(dateFrom.plusDays(i % 366), BigDecimal.ONE, "Faktura");
+        }
+
+        var scanned = new ArrayList<BigDecimal>();
+        var justifications = new ArrayList<String>();
+        var cursor = early.cursor();
+        while (cursor.next()) {
+            scanned.add(cursor.getValue());
+            justifications.add(cursor.getJustification());
+        }
+        var late = periodEntrySet.getSnapshot().cursor(1_504, 1_506);
+        late.next();
+        var exact = early.cursor(5, 6);
+        exact.next();
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(periodEntrySet);
+        }
+        PeriodEntrySet read;
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (PeriodEntrySet) in.readObject();
+        }
+        var readValues = new ArrayList<BigDecimal>();
+        read.getSnapshot().forEachEntry(0, values.size(), (_, value, _) -> readValues.add(value));
+
+        assertAll(
+                () -> assertEquals(values, scanned),
+                () -> assertEquals(List.of("Faktura", "null", "Faktura", "null", "Faktura", "null"),
+                        justifications.stream().map(String::valueOf).toList()),
+                () -> assertEquals(6, early.getEntryCount()),
+                () -> assertEquals(values, readValues),
+                () -> assertEquals(1_504, late.getIndex()),
+                () -> assertEquals(dateFrom.plusDays(1_498 % 366).toEpochDay(), late.getEpochDay()),
+                () -> assertEquals(100, late.getUnits()),
+                () -> assertEquals("Faktura", late.getJustification()),
+                () -> assertFalse(exact.isCompact()),
+                () -> assertThrows(ArithmeticException.class, exact::getUnits),
+                () -> assertEquals(Money.of(values.get(5)), exact.getMoney()),
+                () -> assertThrows(IllegalArgumentException.class, () -> early.cursor(0, 7)),
+                () -> assertThrows(IllegalStateException.class, () -> early.cursor().getValue())
+        );
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.bredecorne.masp.model;
+
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.taxes.ProgressiveTax;
+import com.github.bredecorne.masp.model.taxes.UniformTax;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoundingPolicyTest {
+
+    @Test
+    void roundsTaxAfterTaxIncomeAndFeeOfAPeriodEntrySetAccordingToThePolicyOfTheOwnersCountry() {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.100"), false,
+                BigDecimal.ZERO, false);
+        person.addAddress(new Address(Country.DE, "Berlin", "Lange Straße", "3"));
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), person);
+        periodEntrySet.addEntry(LocalDate.of(2024, 1, 2), new BigDecimal("1000.50"));
+        var tax = new UniformTax(new BigDecimal("0.19"));
+
+        var defaultTax = periodEntrySet.getTax(tax);
+        var defaultFee = periodEntrySet.getFee(tax);
+        RoundingPolicy.setPolicy(Country.DE, new RoundingPolicy(0, RoundingMode.HALF_EVEN));
+        try {
+            var germanTax = periodEntrySet.getTax(tax);
+            var germanAfterTaxIncome = periodEntrySet.getAfterTaxIncome(tax);
+            var germanFee = periodEntrySet.getFee(tax);
+
+            assertAll(
+                    () -> assertEquals(new BigDecimal("190.10"), defaultTax),
+                    () -> assertEquals(new BigDecimal("729.36"), defaultFee),
+                    () -> assertEquals(new BigDecimal("190"), germanTax),
+                    () -> assertEquals(new BigDecimal("810"), germanAfterTaxIncome),
+                    () -> assertEquals(new BigDecimal("729"), germanFee),
+                    () -> assertEquals(new BigDecimal("0.1"), person.getFeeRate()),
+                    () -> assertEquals(RoundingPolicy.DEFAULT, RoundingPolicy.of(Country.PL))
+            );
+        } finally {
+            RoundingPolicy.setPolicy(Country.DE, null);
+        }
+    }
+
+    @Test
+    void roundsTaxesAndFeesOnGroszeIdenticallyToTheBigDecimalPathForEveryPolicy() {
+        var uniformTax = new UniformTax(new BigDecimal("0.19"));
+        var progressiveTax = new ProgressiveTax(new TreeMap<>(Map.of(
+                BigDecimal.ZERO, new BigDecimal("0.12"),
+                new BigDecimal("30000"), new BigDecimal("0.32"),
+                new BigDecimal("120000.50"), new BigDecimal("0.325")
+        )));
+        var feeFactor = new BigDecimal("0.875");
+        var random = new Random(7);
+
+        for (var mode : RoundingMode.values()) {
+            if (mode == RoundingMode.UNNECESSARY) {
+                continue;
+            }
+            for (var scale : new int[]{0, 1, 2, 3, 5}) {
+                var policy = new RoundingPolicy(scale, mode);
+                for (var i = 0; i < 1_000; i++) {
+                    var income = Money.ofUnits(random.nextLong() % 100_000_000_000L);
+                    var amount = income.toBigDecimal();
+
+                    assertEquals(0, policy.round(uniformTax.calculateTax(amount))
+                            .compareTo(uniformTax.calculateTax(income, policy).toBigDecimal()));
+                    assertEquals(0, policy.round(progressiveTax.calculateTax(amount))
+                            .compareTo(progressiveTax.calculateTax(income, policy).toBigDecimal()));
+                    assertEquals(0, policy.round(amount)
+                            .compareTo(policy.round(income).toBigDecimal()));
+                    assertEquals(0, policy.multiply(amount, feeFactor)
+                            .compareTo(policy.multiply(income, Money.Factor.of(feeFactor)).toBigDecimal()));
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidPoliciesAndRatesWithTooManyDecimalPlaces() {
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new RoundingPolicy(-1, RoundingMode.HALF_UP)),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new RoundingPolicy(2, RoundingMode.UNNECESSARY)),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> RoundingPolicy.normalizeRate(new BigDecimal("0.00000000001"))),
+                () -> assertEquals(new BigDecimal("100"), RoundingPolicy.normalizeRate(new BigDecimal("1E+2")))
+        );
+    }
+}
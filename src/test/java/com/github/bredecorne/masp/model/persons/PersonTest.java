@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.HashSet;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 class PersonTest {
@@ -121,4 +122,56 @@ class PersonTest {
                 person.getAddresses().stream().toList().getFirst()
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void findsOverlappingSetsGapsAndSetsCoveringADateAndKeepsTheIndexUpToDateWhenASetIsMoved() {
+        var person = new NaturalPerson("Jan Kowalski", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var newPerson = new NaturalPerson("Anna Nowak", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var january = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), person);
+        var march = new PeriodEntrySet(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31), person);
+        var firstQuarter = new PeriodEntrySet(LocalDate.of(2024, 1, 15), LocalDate.of(2024, 3, 15), person);
+        var index = person.getPeriodEntrySetIndex();
+
+        var overlaps = index.getOverlaps();
+        var covering = index.getCovering(LocalDate.of(2024, 1, 20));
+        person.replacePeriodEntrySet(firstQuarter, newPerson);
+        var gaps = index.getGaps();
+
+        assertAll(
+                () -> assertEquals(2, overlaps.size()),
+                () -> assertTrue(overlaps.contains(new PeriodEntrySetIndex.Overlap(january, firstQuarter))),
+                () -> assertTrue(overlaps.contains(new PeriodEntrySetIndex.Overlap(firstQuarter, march))),
+                () -> assertEquals(List.of(january, firstQuarter), covering),
+                () -> assertEquals(2, index.size()),
+                () -> assertEquals(List.of(new PeriodEntrySetIndex.Gap(LocalDate.of(2024, 2, 1),
+                        LocalDate.of(2024, 2, 29))), gaps),
+                () -> assertEquals(List.of(firstQuarter),
+                        newPerson.getPeriodEntrySetIndex().getCovering(LocalDate.of(2024, 2, 1)))
+        );
+    }
+
+    @Test
+    void rejectsAnOverlappingPeriodEntrySetInStrictModeWithoutChangingTheAssociations() {
+        var person = new NaturalPerson("Jan Kowalski", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var otherPerson = new NaturalPerson("Anna Nowak", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), person);
+        var otherSet = new PeriodEntrySet(LocalDate.of(2024, 1, 10), LocalDate.of(2024, 2, 10), otherPerson);
+        person.setStrictPeriods(true);
+
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new PeriodEntrySet(LocalDate.of(2024, 1, 31), LocalDate.of(2024, 2, 29), person)),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> otherPerson.replacePeriodEntrySet(otherSet, person)),
+                () -> assertEquals(otherPerson, otherSet.getPerson()),
+                () -> assertTrue(otherPerson.getPeriodEntrySets().contains(otherSet)),
+                () -> assertDoesNotThrow(
+                        () -> new PeriodEntrySet(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29), person)),
+                () -> assertEquals(2, person.getPeriodEntrySetIndex().size())
+        );
+    }
+}
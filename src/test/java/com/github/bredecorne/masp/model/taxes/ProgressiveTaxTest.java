@@ -1,8 +1,11 @@
 package com.github.bredecorne.masp.model.taxes;
 
 import com.sun.source.tree.VariableTree;
+import com.github.bredecorne.masp.model.Money;
 import org.junit.jupiter.api.Test;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.ValueLayout;
 import java.math.BigDecimal;
 import java.util.Map;
 import java.util.TreeMap;
@@ -25,4 +28,78 @@ class ProgressiveTaxTest {
 
         assertEquals(0, expectedIncomeAfterTax.compareTo(progressiveTax.calculateTax(income)));
     }
-}
\ No newline at end of file
+
+    @Test
+    void calculatesTheSameTaxWithTheSameScaleFromTheCompiledTableAsByWalkingTheBrackets() {
+        var scale = new TreeMap<>(Map.of(
+                BigDecimal.ZERO, new BigDecimal("0.12"),
+                new BigDecimal("30000"), new BigDecimal("0.175"),
+                new BigDecimal("120000.50"), new BigDecimal("0.32"),
+                new BigDecimal("1000000"), new BigDecimal("0.04")
+        ));
+        var progressiveTax = new ProgressiveTax(scale);
+
+        for (var units = -50_000L; units <= 5_000_000L; units += 7_919L) {
+            for (var incomeScale = 0; incomeScale <= 3; incomeScale++) {
+                var income = BigDecimal.valueOf(units * 37, incomeScale);
+                var expected = progressiveTax.calculateTaxByBrackets(income);
+                assertEquals(expected, progressiveTax.calculateTax(income));
+                if (incomeScale <= Money.SCALE) {
+                    assertEquals(Money.of(expected.setScale(Money.SCALE, Money.ROUNDING_MODE)),
+                            progressiveTax.calculateTax(Money.of(income)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void calculatesTaxesForIncomesReadFromAMemorySegmentTheSameWayAsForEachIncomeAlone() {
+        var progressiveTax = new ProgressiveTax(new TreeMap<>(Map.of(
+                BigDecimal.ZERO, new BigDecimal("0.12"),
+                new BigDecimal("30000"), new BigDecimal("0.32")
+        )));
+        var count = 10_000;
+        try (var arena = Arena.ofConfined()) {
+            var incomes = arena.allocate((long) count * Long.BYTES);
+            var taxes = arena.allocate((long) count * Long.BYTES);
+            for (var i = 0; i < count; i++) {
+                incomes.setAtIndex(ValueLayout.JAVA_LONG, i, (i - 100L) * 1_234_567L);
+            }
+
+            progressiveTax.calculateTaxes(incomes, taxes);
+
+            for (var i = 0; i < count; i++) {
+                var income = Money.ofUnits(incomes.getAtIndex(ValueLayout.JAVA_LONG, i));
+                assertEquals(progressiveTax.calculateTax(income).getUnits(),
+                        taxes.getAtIndex(ValueLayout.JAVA_LONG, i));
+            }
+        }
+    }
+
+    @Test
+    void findsTheSmallestGrossIncomeThatLeavesTheRequestedAmountAfterTaxInEveryBracket() {
+        var progressiveTax = new ProgressiveTax(new TreeMap<>(Map.of(
+                BigDecimal.ZERO, new BigDecimal("0.12"),
+                new BigDecimal("30000"), new BigDecimal("0.20"),
+                new BigDecimal("120000"), new BigDecimal("0.04")
+        )));
+        var excessiveTax = new ProgressiveTax(new TreeMap<>(Map.of(
+                BigDecimal.ZERO, new BigDecimal("0.7"),
+                new BigDecimal("1000"), new BigDecimal("0.4")
+        )));
+
+        assertAll(
+                () -> assertEquals(Money.ofUnits(30000_00),
+                        progressiveTax.calculateGrossIncome(Money.ofUnits(26400_00))),
+                () -> assertEquals(Money.ofUnits(-100_00),
+                        progressiveTax.calculateGrossIncome(Money.ofUnits(-100_00))),
+                () -> assertThrows(IllegalStateException.class,
+                        () -> excessiveTax.calculateGrossIncome(Money.ofUnits(1)))
+        );
+        for (var afterTaxIncome = -1_000_00L; afterTaxIncome < 500_000_00L; afterTaxIncome += 99_991) {
+            var gross = progressiveTax.calculateGrossIncome(Money.ofUnits(afterTaxIncome)).getUnits();
+            assertTrue(gross - progressiveTax.calculateTax(Money.ofUnits(gross)).getUnits() >= afterTaxIncome);
+            assertTrue(gross - 1 - progressiveTax.calculateTax(Money.ofUnits(gross - 1)).getUnits() < afterTaxIncome);
+        }
+    }
+}
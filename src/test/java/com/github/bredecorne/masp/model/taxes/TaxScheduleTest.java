@@ -0,0 +1,84 @@
+package com.github.bredecorne.masp.model.taxes;
+
+import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.Country;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.Status;
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.persons.NaturalPerson;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaxScheduleTest {
+
+    @Test
+    void resolvesTheTaxValidOnAGivenDayForACountryAndTaxpayerCategory() {
+        var schedule = new TaxSchedule();
+        var tax2023 = new UniformTax(new BigDecimal("0.19"));
+        var tax2024 = new UniformTax(new BigDecimal("0.09"));
+        schedule.addTax(Country.PL, TaxpayerCategory.LEGAL_PERSON, tax2023,
+                LocalDate.of(2023, 1, 1), LocalDate.of(2023, 12, 31));
+        schedule.addTax(Country.PL, TaxpayerCategory.LEGAL_PERSON, tax2024, LocalDate.of(2024, 1, 1), null);
+
+        assertAll(
+                () -> assertNull(schedule.getTax(Country.PL, TaxpayerCategory.LEGAL_PERSON, LocalDate.of(2022, 12, 31))),
+                () -> assertEquals(tax2023,
+                        schedule.getTax(Country.PL, TaxpayerCategory.LEGAL_PERSON, LocalDate.of(2023, 12, 31))),
+                () -> assertEquals(tax2024,
+                        schedule.getTax(Country.PL, TaxpayerCategory.LEGAL_PERSON, LocalDate.of(2050, 1, 1))),
+                () -> assertNull(schedule.getTax(Country.DE, TaxpayerCategory.LEGAL_PERSON, LocalDate.of(2024, 1, 1))),
+                () -> assertNull(schedule.getTax(Country.PL, TaxpayerCategory.LEGAL_PERSON_REDUCED_TAX,
+                        LocalDate.of(2024, 1, 1))),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> schedule.addTax(Country.PL, TaxpayerCategory.LEGAL_PERSON, tax2024,
+                                LocalDate.of(2022, 6, 1), LocalDate.of(2023, 1, 1))),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> schedule.addTax(Country.PL, TaxpayerCategory.LEGAL_PERSON, tax2024,
+                                LocalDate.of(2030, 1, 1), null)),
+                () -> assertEquals(2, schedule.getVersions(Country.PL, TaxpayerCategory.LEGAL_PERSON).size())
+        );
+    }
+
+    @Test
+    void assignsTheApplicableTaxesToPeriodEntrySetsByOwnerCategoryCountryAndPeriodStart() {
+        var schedule = new TaxSchedule();
+        var uniformTax = new UniformTax(new BigDecimal("0.19"));
+        var scaleTax = new UniformTax(new BigDecimal("0.12"));
+        var czechTax = new UniformTax(new BigDecimal("0.15"));
+        schedule.addTax(Country.PL, TaxpayerCategory.NATURAL_PERSON_UNIFORM_TAX, uniformTax,
+                LocalDate.of(2024, 1, 1), null);
+        schedule.addTax(Country.PL, TaxpayerCategory.NATURAL_PERSON, scaleTax, LocalDate.of(2024, 1, 1), null);
+        schedule.addTax(Country.CZ, TaxpayerCategory.NATURAL_PERSON_UNIFORM_TAX, czechTax,
+                LocalDate.of(2024, 1, 1), null);
+        var person = new NaturalPerson("Jan Kowalski", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, true);
+        person.addAddress(new Address(Country.PL, "Warszawa", "Prosta", "51"));
+        person.addAddress(new Address(Country.CZ, "Praha", "Dlouhá", "12"));
+        var legalPerson = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        legalPerson.addAddress(new Address(Country.PL, "Kraków", "Długa", "7"));
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), person);
+        var earlierPeriodEntrySet = new PeriodEntrySet(LocalDate.of(2023, 12, 1), LocalDate.of(2023, 12, 31),
+                person);
+        var legalPeriodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31),
+                legalPerson);
+        var periodEntrySets = List.of(periodEntrySet, earlierPeriodEntrySet, legalPeriodEntrySet);
+
+        var assigned = schedule.assignTaxes(periodEntrySets);
+        var assignedAgain = schedule.assignTaxes(periodEntrySets);
+
+        assertAll(
+                () -> assertEquals(2, assigned),
+                () -> assertEquals(0, assignedAgain),
+                () -> assertEquals(Set.of(uniformTax, czechTax), periodEntrySet.getTaxes()),
+                () -> assertTrue(earlierPeriodEntrySet.getTaxes().isEmpty()),
+                () -> assertTrue(legalPeriodEntrySet.getTaxes().isEmpty())
+        );
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.bredecorne.masp.model.taxes;
 
+import com.github.bredecorne.masp.model.Money;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
@@ -19,4 +20,40 @@ class UniformTaxTest {
         assertEquals(0, expectedTax.compareTo(uniformTax.calculateTax(income)));
     }
 
-}
\ No newline at end of file
+    @Test
+    void calculatesTaxesForABatchOfIncomesInGroszeTheSameWayAsForEachIncomeAlone() {
+        var uniformTax = new UniformTax(new BigDecimal("0.185"));
+        var incomes = new long[]{0, 1, 3, -3, 250, 10_000_01, -99_999, Long.MAX_VALUE / 1000, 7};
+        var taxes = new long[incomes.length];
+
+        uniformTax.calculateTaxes(incomes, taxes, incomes.length - 1);
+
+        for (var i = 0; i < incomes.length - 1; i++) {
+            assertEquals(uniformTax.calculateTax(Money.ofUnits(incomes[i])).getUnits(), taxes[i]);
+        }
+        assertEquals(0, taxes[incomes.length - 1]);
+        assertThrows(IllegalArgumentException.class,
+                () -> uniformTax.calculateTaxes(incomes, new long[1], incomes.length));
+    }
+
+    @Test
+    void findsTheSmallestGrossIncomeThatLeavesTheRequestedAmountAfterTax() {
+        var uniformTax = new UniformTax(new BigDecimal("0.19"));
+        var afterTaxIncomes = new long[]{0, 1, 81_00, 81_01, -40_50, 123_456_789};
+        var grossIncomes = new long[afterTaxIncomes.length];
+
+        uniformTax.calculateGrossIncomes(afterTaxIncomes, grossIncomes, afterTaxIncomes.length);
+
+        assertAll(
+                () -> assertEquals(Money.ofUnits(100_00), uniformTax.calculateGrossIncome(Money.ofUnits(81_00))),
+                () -> assertEquals(Money.ofUnits(-50_00), uniformTax.calculateGrossIncome(Money.ofUnits(-40_50))),
+                () -> assertThrows(IllegalStateException.class,
+                        () -> new UniformTax(BigDecimal.ONE).calculateGrossIncome(Money.ofUnits(1)))
+        );
+        for (var i = 0; i < afterTaxIncomes.length; i++) {
+            var gross = grossIncomes[i];
+            assertTrue(gross - uniformTax.calculateTax(Money.ofUnits(gross)).getUnits() >= afterTaxIncomes[i]);
+            assertTrue(gross - 1 - uniformTax.calculateTax(Money.ofUnits(gross - 1)).getUnits() < afterTaxIncomes[i]);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.bredecorne.masp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockCompressionTest {
+
+    @Test
+    void inflatesOnlyTheBlocksCoveringTheReadFragmentAndKeepsThemForLaterReads() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[]{1, 2, 3});
+        var compression = new BlockCompression.DeflatingOutputStream(bytes, Deflater.BEST_SPEED);
+        var out = new DataOutputStream(compression);
+        var count = 7 * BlockCompression.BLOCK_SIZE / 2 / Long.BYTES;
+        out.writeByte(0); // Wartości zapisywane są od położenia 4 – jedna z nich przypada na granicę bloków
+        for (var i = 0; i < count; i++) {
+            out.writeLong(i);
+        }
+        out.flush();
+        compression.finish();
+        var file = BlockCompression.open(MemorySegment.ofArray(bytes.toByteArray()), 3);
+        var boundary = BlockCompression.BLOCK_SIZE / Long.BYTES - 1;
+
+        var header = file.asSlice(0, 3).toArray(ValueLayout.JAVA_BYTE);
+        var inflatedByHeader = file.getInflatedBlocks();
+        var in = new SegmentDataInput(file);
+        in.seek(4 + (long) Long.BYTES * boundary);
+        var acrossBoundary = in.readLong();
+        var inflatedByRead = file.getInflatedBlocks();
+        var slice = new SegmentDataInput(file.asSlice(4 + (long) Long.BYTES * boundary, 2 * Long.BYTES));
+        var first = slice.readLong();
+        var second = slice.readLong();
+        var inflatedBySlice = file.getInflatedBlocks();
+        var last = new SegmentDataInput(file.asSlice(file.byteSize() - Long.BYTES, Long.BYTES)).readLong();
+        var inflatedByLast = file.getInflatedBlocks();
+        var whole = file.inflate(Arena.ofAuto());
+
+        assertAll(
+                () -> assertArrayEquals(new byte[]{1, 2, 3}, header),
+                () -> assertEquals(0, inflatedByHeader),
+                () -> assertEquals(4 + (long) Long.BYTES * count, file.byteSize()),
+                () -> assertEquals(boundary, acrossBoundary),
+                () -> assertEquals(2, inflatedByRead),
+                () -> assertEquals(boundary, first),
+                () -> assertEquals(boundary + 1, second),
+                () -> assertEquals(2, inflatedBySlice),
+                () -> assertEquals(count - 1, last),
+                () -> assertEquals(3, inflatedByLast),
+                () -> assertEquals(file.byteSize(), whole.byteSize()),
+                () -> assertEquals(41, new SegmentDataInput(whole.asSlice(4 + 41 * Long.BYTES)).readLong()),
+                () -> assertSame(whole, BlockCompression.BlockFile.of(whole).inflate(Arena.ofAuto())),
+                () -> assertThrows(IndexOutOfBoundsException.class, () -> file.asSlice(file.byteSize() - 1, 2))
+        );
+    }
+}
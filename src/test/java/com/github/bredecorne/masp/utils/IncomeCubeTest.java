@@ -0,0 +1,149 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.Country;
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.Status;
+import com.github.bredecorne.masp.model.TaxOffice;
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.utils.IncomeCube.Bucket;
+import com.github.bredecorne.masp.utils.IncomeCube.Granularity;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncomeCubeTest {
+
+    @Test
+    void aggregatesExistingAndNewEntriesByCalendarBucketPersonTaxOfficeAndCountry() {
+        var taxOffice = new TaxOffice("Urząd Skarbowy Warszawa-Wola");
+        var address = new Address(Country.PL, "Warszawa", "Prosta", "51");
+        address.setTaxOffice(taxOffice);
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var otherPerson = new LegalPerson("Jan sp. z o.o.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        person.addAddress(address);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+        var otherPeriodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31),
+                otherPerson);
+        periodEntrySet.addEntry(LocalDate.of(2024, 1, 15), new BigDecimal("1000"));
+        periodEntrySet.addEntry(LocalDate.of(2024, 2, 15), new BigDecimal("-200"));
+
+        try (var cube = IncomeCube.create(List.of(periodEntrySet, otherPeriodEntrySet))) {
+            periodEntrySet.addEntry(LocalDate.of(2024, 4, 1), new BigDecimal("500.50"));
+            otherPeriodEntrySet.addEntry(LocalDate.of(2024, 1, 20), new BigDecimal("300"));
+
+            var months = cube.getTotals(person, Granularity.MONTH);
+            var quarters = cube.getTotals(person, Granularity.QUARTER);
+            var firstQuarter = Bucket.of(2024, 1, Granularity.QUARTER);
+
+            assertAll(
+                    () -> assertEquals(3, months.size()),
+                    () -> assertEquals(Money.of(new BigDecimal("1000")),
+                            months.get(Bucket.of(2024, 1, Granularity.MONTH)).revenue()),
+                    () -> assertEquals(Money.of(new BigDecimal("800")), quarters.get(firstQuarter).income()),
+                    () -> assertEquals(Money.of(new BigDecimal("500.50")),
+                            quarters.get(Bucket.of(2024, 4, Granularity.QUARTER)).income()),
+                    () -> assertEquals(Money.of(new BigDecimal("1600.50")),
+                            cube.getTotals(Granularity.YEAR).get(Bucket.of(2024, 1, Granularity.YEAR)).income()),
+                    () -> assertEquals(quarters, cube.getTotals(taxOffice, Granularity.QUARTER)),
+                    () -> assertEquals(quarters, cube.getTotals(Country.PL, Granularity.QUARTER)),
+                    () -> assertTrue(cube.getTotals(Country.DE, Granularity.QUARTER).isEmpty()),
+                    () -> assertEquals(Money.of(new BigDecimal("300")),
+                            cube.drillDownByPerson(firstQuarter).get(otherPerson).income()),
+                    () -> assertEquals(Money.of(new BigDecimal("-200")),
+                            cube.drillDownByTaxOffice(firstQuarter).get(taxOffice).expenses())
+            );
+        }
+    }
+
+    @Test
+    void movesTotalsToTheNewPersonWhenThePeriodEntrySetChangesOwnerAndStopsUpdatingAfterClose() {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var newPerson = new LegalPerson("Jan sp. z o.o.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+        periodEntrySet.addEntry(LocalDate.of(2024, 3, 1), new BigDecimal("1000"));
+        periodEntrySet.addEntry(LocalDate.of(2024, 3, 2), new BigDecimal("-250"));
+        var year = Bucket.of(2024, 1, Granularity.YEAR);
+
+        var cube = IncomeCube.create(List.of(periodEntrySet));
+        periodEntrySet.setPerson(newPerson);
+        var previousPersonCell = cube.getTotals(person, Granularity.YEAR).get(year);
+        var newPersonCell = cube.getTotals(newPerson, Granularity.YEAR).get(year);
+        cube.close();
+        periodEntrySet.addEntry(LocalDate.of(2024, 3, 3), new BigDecimal("100"));
+
+        assertAll(
+                () -> assertEquals(0, previousPersonCell.revenue().signum()),
+                () -> assertEquals(0, previousPersonCell.expenses().signum()),
+                () -> assertEquals(Money.of(new BigDecimal("1000")), newPersonCell.revenue()),
+                () -> assertEquals(Money.of(new BigDecimal("-250")), newPersonCell.expenses()),
+                () -> assertEquals(Money.of(new BigDecimal("750")),
+                        cube.getTotals(Granularity.YEAR).get(year).income())
+        );
+    }
+
+    @Test
+    void doesNotCountTwiceAnEntryWhoseNotificationArrivesAfterTheCubeReadItsSnapshot() {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+        periodEntrySet.addEntry(LocalDate.of(2024, 5, 1), new BigDecimal("1000"));
+        var year = Bucket.of(2024, 1, Granularity.YEAR);
+
+        try (var cube = IncomeCube.create(List.of(periodEntrySet))) {
+            // Opóźnione powiadomienie o wpisie dodanym między rejestracją kostki a odczytem obrazu
+            cube.entryAdded(periodEntrySet, 0, LocalDate.of(2024, 5, 1), Money.of(new BigDecimal("1000")));
+            var afterLateNotification = cube.getTotals(Granularity.YEAR).get(year).income();
+            periodEntrySet.addEntry(LocalDate.of(2024, 6, 1), new BigDecimal("-400"));
+
+            assertAll(
+                    () -> assertEquals(Money.of(new BigDecimal("1000")), afterLateNotification),
+                    () -> assertEquals(Money.of(new BigDecimal("600")),
+                            cube.getTotals(person, Granularity.YEAR).get(year).income())
+            );
+        }
+    }
+
+    @Test
+    void movesOnlyTheCountedEntriesOfASetThatWasNotSeededWhenItChangesOwner() {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var newPerson = new LegalPerson("Jan sp. z o.o.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var seeded = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+        seeded.addEntry(LocalDate.of(2024, 1, 10), new BigDecimal("100"));
+        var unseeded = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+        unseeded.addEntry(LocalDate.of(2024, 2, 10), new BigDecimal("1000"));
+        var moved = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+        moved.addEntry(LocalDate.of(2024, 3, 10), new BigDecimal("5000"));
+        var year = Bucket.of(2024, 1, Granularity.YEAR);
+
+        try (var cube = IncomeCube.create(List.of(seeded))) {
+            unseeded.addEntries(new LocalDate[]{LocalDate.of(2024, 4, 1), LocalDate.of(2024, 4, 2)},
+                    new BigDecimal[]{new BigDecimal("20"), new BigDecimal("-5")}, null, 2);
+            unseeded.setPerson(newPerson);
+            moved.setPerson(newPerson); // Zbiór bez wpisów ujętych w kostce
+            unseeded.addEntry(LocalDate.of(2024, 5, 1), new BigDecimal("7"));
+
+            assertAll(
+                    () -> assertEquals(Money.of(new BigDecimal("100")),
+                            cube.getTotals(person, Granularity.YEAR).get(year).income()),
+                    () -> assertEquals(Money.of(new BigDecimal("22")),
+                            cube.getTotals(newPerson, Granularity.YEAR).get(year).income()),
+                    () -> assertEquals(Money.of(new BigDecimal("-5")),
+                            cube.getTotals(newPerson, Granularity.YEAR).get(year).expenses()),
+                    () -> assertEquals(Money.of(new BigDecimal("122")),
+                            cube.getTotals(Granularity.YEAR).get(year).income())
+            );
+        }
+    }
+}
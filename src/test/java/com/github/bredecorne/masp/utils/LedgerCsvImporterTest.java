@@ -0,0 +1,73 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.Status;
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.persons.NaturalPerson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerCsvImporterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void importsValidRowsIntoAPeriodEntrySetAndReportsInvalidRowsWithoutAborting() throws IOException {
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, BigDecimal.ZERO, false,
+                BigDecimal.ZERO, false);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+        var file = directory.resolve("wyciag.csv");
+        var content = new StringBuilder("data;kwota;opis\n");
+        for (var i = 0; i < 1000; i++) {
+            content.append("2024-05-10;100,50;\"Faktura; nr ").append(i).append("\"\n");
+        }
+        content.append("2024-13-01;10;Zła data\n");
+        content.append("2024-05-11;abc;Zła kwota\n");
+        content.append("2025-01-01;10;Poza okresem\n");
+        content.append("2024-06-01;-500\n");
+        Files.writeString(file, content);
+
+        var result = new LedgerCsvImporter(';', true, 64, 4, 100).importInto(file, periodEntrySet);
+
+        assertAll(
+                () -> assertEquals(1001, result.importedRows()),
+                () -> assertEquals(3, result.rejectedRows()),
+                () -> assertEquals(1002, result.errors().getFirst().lineNumber()),
+                () -> assertEquals(1001, periodEntrySet.getEntryCount()),
+                () -> assertEquals(0, new BigDecimal("100000").compareTo(periodEntrySet.getIncome()))
+        );
+    }
+
+    @Test
+    void routesRowsToThePeriodEntrySetOfThePersonCoveringTheRowDate() throws IOException {
+        var person = new NaturalPerson("Monika Bogdan", Status.ACTIVE, BigDecimal.ZERO, false,
+                BigDecimal.ZERO, false);
+        var firstHalf = new PeriodEntrySet(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 6, 30), person);
+        var secondHalf = new PeriodEntrySet(LocalDate.of(2023, 7, 1), LocalDate.of(2023, 12, 31), person);
+        var file = directory.resolve("wyciagi.csv");
+        Files.writeString(file, """
+                Monika Bogdan;2023-02-01;10
+                Monika Bogdan;2023-08-01;20
+                Monika Bogdan;2023-09-01;-5;Zakupy
+                Nieznana Osoba;2023-02-01;10
+                """);
+
+        var result = new LedgerCsvImporter(';', false).importRouted(file);
+
+        assertAll(
+                () -> assertEquals(3, result.importedRows()),
+                () -> assertEquals(1, result.rejectedRows()),
+                () -> assertEquals(0, BigDecimal.TEN.compareTo(firstHalf.getIncome())),
+                () -> assertEquals(0, new BigDecimal("15").compareTo(secondHalf.getIncome()))
+        );
+    }
+}
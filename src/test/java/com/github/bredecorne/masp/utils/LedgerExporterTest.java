@@ -0,0 +1,111 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.*;
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.persons.NaturalPerson;
+import com.github.bredecorne.masp.model.persons.Person;
+import com.github.bredecorne.masp.model.taxes.Tax;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerExporterTest {
+
+    @TempDir
+    Path directory;
+
+    private static void createModel() {
+        Person.setPersons(new HashSet<>());
+        Tax.setTaxes(new HashSet<>());
+        AccountManager.setAccountManagers(new HashSet<>());
+        Address.setAddresses(new HashSet<>());
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+        TaxOffice.setTaxOffices(new HashSet<>());
+        var taxOffice = new TaxOffice("Urząd Skarbowy Poznań-Wilda");
+        var address = new Address(Country.PL, "Poznań", "Warszawska", "12", "3A", taxOffice);
+        var company = new LegalPerson("Agata S.A.", Status.ACTIVE, BigDecimal.ZERO, false, BigDecimal.ZERO, false);
+        company.addAddress(address);
+        var person = new NaturalPerson("Jan Kowalski", Status.ACTIVE, BigDecimal.ZERO, false, BigDecimal.ZERO,
+                false);
+        var second = new PeriodEntrySet(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29), company);
+        var first = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), company);
+        first.addEntry(LocalDate.of(2024, 1, 5), new BigDecimal("100.50"), "Faktura; nr \"1\"");
+        second.addEntry(LocalDate.of(2024, 2, 5), new BigDecimal("-20"));
+        var ledger = new PeriodEntrySet(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31), person);
+        for (var i = 0; i < 5_000; i++) {
+            ledger.addEntry(LocalDate.of(2024, 3, 1 + i % 31), new BigDecimal(i + 1), "Wpis " + i);
+        }
+    }
+
+    @Test
+    void exportsEveryEntryAsACsvRowWithDerivedColumnsInPersonAndPeriodOrder() throws IOException {
+        createModel();
+        var file = directory.resolve("ksiega.csv");
+
+        var result = new LedgerExporter(LedgerExporter.Format.CSV, ';', 256, 4).export(file);
+        var lines = Files.readAllLines(file);
+
+        assertAll(
+                () -> assertEquals(2, result.persons()),
+                () -> assertEquals(3, result.periodEntrySets()),
+                () -> assertEquals(5_002, result.rows()),
+                () -> assertEquals(Files.size(file), result.bytes()),
+                () -> assertEquals(5_003, lines.size()),
+                () -> assertEquals("person;taxOffices;abbreviation;dateFrom;dateTo;date;value;justification",
+                        lines.get(0)),
+                () -> assertEquals("Agata S.A.;Urząd Skarbowy Poznań-Wilda;Agata S.A. - 2024-01-01 TO: 2024-01-31;"
+                        + "2024-01-01;2024-01-31;2024-01-05;100.50;\"Faktura; nr \"\"1\"\"\"", lines.get(1)),
+                () -> assertEquals("Agata S.A.;Urząd Skarbowy Poznań-Wilda;Agata S.A. - 2024-02-01 TO: 2024-02-29;"
+                        + "2024-02-01;2024-02-29;2024-02-05;-20;", lines.get(2)),
+                () -> assertEquals("Jan Kowalski;;Jan Kowalski - 2024-03-01 TO: 2024-03-31;2024-03-01;2024-03-31;"
+                        + "2024-03-01;1;Wpis 0", lines.get(3)),
+                () -> assertTrue(lines.getLast().endsWith(";5000;Wpis 4999"))
+        );
+    }
+
+    @Test
+    void exportsJsonLinesAndStreamsEntriesNotYetReadFromTheRepository() throws IOException {
+        createModel();
+        var repository = directory.resolve("repository.data");
+        Repository.serialize(repository);
+        Repository.deserialize(repository);
+        var file = directory.resolve("ksiega.jsonl");
+
+        var result = new LedgerExporter(LedgerExporter.Format.JSON_LINES, ';', 1024, 2).export(file);
+        var lines = Files.readAllLines(file);
+        var loaded = PeriodEntrySet.getPeriodEntrySets().stream().filter(PeriodEntrySet::isLoaded).count();
+
+        assertAll(
+                () -> assertEquals(5_002, result.rows()),
+                () -> assertEquals(5_002, lines.size()),
+                () -> assertEquals(0, loaded),
+                () -> assertEquals("{\"person\":\"Agata S.A.\",\"taxOffices\":[\"Urząd Skarbowy Poznań-Wilda\"],"
+                        + "\"abbreviation\":\"Agata S.A. - 2024-01-01 TO: 2024-01-31\",\"dateFrom\":\"2024-01-01\","
+                        + "\"dateTo\":\"2024-01-31\",\"date\":\"2024-01-05\",\"value\":100.50,"
+                        + "\"justification\":\"Faktura; nr \\\"1\\\"\"}", lines.getFirst()),
+                () -> assertTrue(lines.get(1).endsWith("\"value\":-20,\"justification\":null}")),
+                () -> assertEquals(List.of(), lines.stream().filter(line -> !line.startsWith("{")).toList())
+        );
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new LedgerExporter(null, ';')),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new LedgerExporter(LedgerExporter.Format.CSV, '"')),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new LedgerExporter(LedgerExporter.Format.CSV, ';', 0, 1))
+        );
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.AccountManager;
+import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.Country;
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.RoundingPolicy;
+import com.github.bredecorne.masp.model.Status;
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.taxes.UniformTax;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortfolioCalculatorTest {
+
+    @Test
+    void calculatesTaxesAndFeesForEverySetAndAggregatesThemPerPersonAndAccountManager() {
+        var tax = new UniformTax(new BigDecimal("0.19"));
+        var accountManager = new AccountManager("Kamil Krzysztof", Status.ACTIVE);
+        var person = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var periodEntrySets = new ArrayList<PeriodEntrySet>();
+        for (var i = 0; i < 1000; i++) {
+            var dateFrom = LocalDate.of(2000, 1, 1).plusMonths(i);
+            var periodEntrySet = new PeriodEntrySet(dateFrom, dateFrom.plusMonths(1).minusDays(1), person);
+            periodEntrySet.addEntry(dateFrom, new BigDecimal("1000"));
+            periodEntrySet.addEntry(dateFrom, new BigDecimal("-100"));
+            periodEntrySet.addTax(tax);
+            if (i < 10) {
+                accountManager.addPeriodEntrySet(periodEntrySet);
+            }
+            periodEntrySets.add(periodEntrySet);
+        }
+
+        var result = new PortfolioCalculator(new ForkJoinPool(4)).calculate(periodEntrySets);
+        var personTotals = result.byPerson().get(person);
+        var managerTotals = result.byAccountManager().get(accountManager);
+
+        assertAll(
+                () -> assertEquals(1000, result.table().size()),
+                () -> assertEquals(periodEntrySets.get(500), result.table().getPeriodEntrySet(500)),
+                () -> assertEquals(Money.of(periodEntrySets.get(500).getTax(tax)), result.table().getTaxValue(500)),
+                () -> assertEquals(Money.of(periodEntrySets.get(500).getFee(tax)), result.table().getFee(500)),
+                () -> assertEquals(1000, personTotals.periodEntrySets()),
+                () -> assertEquals(Money.of(new BigDecimal("900000")), personTotals.income()),
+                () -> assertEquals(Money.of(new BigDecimal("171000")), personTotals.tax()),
+                () -> assertEquals(Money.of(new BigDecimal("729000")), personTotals.afterTaxIncome()),
+                () -> assertEquals(Money.of(new BigDecimal("656100")), personTotals.fee()),
+                () -> assertEquals(10, managerTotals.rows()),
+                () -> assertEquals(Money.of(new BigDecimal("7290")), managerTotals.afterTaxIncome())
+        );
+    }
+
+    @Test
+    void leavesTheFeeEmptyForAPersonWithoutAFeeRateAndRoundsByTheOwnersPolicy() {
+        var tax = new UniformTax(new BigDecimal("0.19"));
+        var withoutFee = new LegalPerson("Bez prowizji Sp. z o.o.", Status.ACTIVE, null, false,
+                BigDecimal.ZERO, false);
+        var german = new LegalPerson("Agata GmbH", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        german.addAddress(new Address(Country.DE, "Berlin", "Lange Straße", "3"));
+        var first = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), withoutFee);
+        var second = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), german);
+        for (var periodEntrySet : List.of(first, second)) {
+            periodEntrySet.addEntry(LocalDate.of(2024, 1, 2), new BigDecimal("1000.50"));
+            periodEntrySet.addTax(tax);
+        }
+
+        RoundingPolicy.setPolicy(Country.DE, new RoundingPolicy(0, RoundingMode.HALF_EVEN));
+        try {
+            var result = new PortfolioCalculator(new ForkJoinPool(2)).calculate(List.of(first, second));
+            var row = result.table().getPeriodEntrySet(0) == first ? 0 : 1;
+
+            assertAll(
+                    () -> assertNull(result.table().getFee(row)),
+                    () -> assertThrows(IllegalStateException.class, () -> first.getFee(tax)),
+                    () -> assertEquals(Money.of(new BigDecimal("190")), result.table().getTaxValue(1 - row)),
+                    () -> assertEquals(Money.of(second.getFee(tax)), result.table().getFee(1 - row)),
+                    () -> assertEquals(Money.of(new BigDecimal("729")), result.byPerson().get(german).fee()),
+                    () -> assertEquals(Money.of(new BigDecimal("729")), result.total().fee())
+            );
+        } finally {
+            RoundingPolicy.setPolicy(Country.DE, null);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.*;
+import com.github.bredecorne.masp.model.persons.NaturalPerson;
+import com.github.bredecorne.masp.model.persons.Person;
+import com.github.bredecorne.masp.model.taxes.Tax;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepositoryJournalTest {
+
+    private static void clearExtents() {
+        Person.setPersons(new HashSet<>());
+        Tax.setTaxes(new HashSet<>());
+        AccountManager.setAccountManagers(new HashSet<>());
+        Address.setAddresses(new HashSet<>());
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+        TaxOffice.setTaxOffices(new HashSet<>());
+    }
+
+    private static void createModel() {
+        clearExtents();
+        var wilda = new TaxOffice("Urząd Skarbowy Poznań-Wilda");
+        new TaxOffice("Urząd Skarbowy Poznań-Jeżyce");
+        var address = new Address(Country.PL, "Poznań", "Warszawska", "12", "3A", wilda);
+        var person = new NaturalPerson("Jan Kowalski", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        person.addAddress(address);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 5, 1), LocalDate.of(2024, 5, 31), person);
+        periodEntrySet.addEntry(LocalDate.of(2024, 5, 2), new BigDecimal("1000"), "Faktura 1/05");
+    }
+
+    private static TaxOffice findTaxOffice(String suffix) {
+        return TaxOffice.getTaxOffices().stream().filter(taxOffice -> taxOffice.getName().endsWith(suffix))
+                .findFirst().orElseThrow();
+    }
+
+    private static PeriodEntrySet findPeriodEntrySet() {
+        return PeriodEntrySet.getPeriodEntrySets().iterator().next();
+    }
+
+    private static List<String> entries(PeriodEntrySet periodEntrySet) {
+        var entries = new ArrayList<String>();
+        periodEntrySet.getSnapshot().forEachEntry((date, value, justification) ->
+                entries.add(date + " " + value + " " + justification));
+        return entries;
+    }
+
+    private static void deleteFiles(Path path) throws IOException {
+        for (var suffix : List.of("", ".journal", ".journal.fold", ".tmp")) {
+            Files.deleteIfExists(path.resolveSibling(path.getFileName() + suffix));
+        }
+    }
+
+    @Test
+    void savesOnlyTheChangesAndReplaysThemOnTopOfTheSnapshot() throws IOException {
+        createModel();
+        var path = Files.createTempFile("repository", ".data");
+        var journalPath = path.resolveSibling(path.getFileName() + ".journal");
+        try {
+            var journal = RepositoryJournal.create(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD);
+            var snapshotSize = Files.size(path);
+            var journalSize = Files.size(journalPath);
+            findPeriodEntrySet().addEntry(LocalDate.of(2024, 5, 20), new BigDecimal("-250.75"), "Zakup");
+            var address = Address.getAddresses().iterator().next();
+            findTaxOffice("Wilda").removeAddress(address);
+            findTaxOffice("Jeżyce").addAddress(address);
+            journal.save();
+            var savedSnapshotSize = Files.size(path);
+            var savedJournalSize = Files.size(journalPath);
+            findPeriodEntrySet().addEntry(LocalDate.of(2024, 5, 21), new BigDecimal("1")); // Niezatwierdzony
+            journal.close();
+
+            clearExtents();
+            var reopened = RepositoryJournal.open(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD);
+            reopened.close();
+            var readAddress = Address.getAddresses().iterator().next();
+
+            assertAll(
+                    () -> assertEquals(snapshotSize, savedSnapshotSize),
+                    () -> assertTrue(savedJournalSize - journalSize < 64),
+                    () -> assertEquals(List.of("2024-05-02 1000 Faktura 1/05", "2024-05-20 -250.75 Zakup"),
+                            entries(findPeriodEntrySet())),
+                    () -> assertEquals(0, new BigDecimal("749.25").compareTo(findPeriodEntrySet().getIncome())),
+                    () -> assertEquals("Urząd Skarbowy Poznań-Jeżyce", readAddress.getTaxOffice().getName()),
+                    () -> assertTrue(findTaxOffice("Jeżyce").getAddresses().contains(readAddress)),
+                    () -> assertTrue(findTaxOffice("Wilda").getAddresses().isEmpty())
+            );
+        } finally {
+            deleteFiles(path);
+        }
+    }
+
+    @Test
+    void foldsTheJournalIntoANewSnapshotInTheBackgroundWithoutReplayingItTwice() throws IOException {
+        createModel();
+        var path = Files.createTempFile("repository", ".data");
+        var foldPath = path.resolveSibling(path.getFileName() + ".journal.fold");
+        try {
+            var journal = RepositoryJournal.create(path, 1, 1);
+            var generation = journal.getGeneration();
+            findPeriodEntrySet().addEntry(LocalDate.of(2024, 5, 10), new BigDecimal("500"));
+            var address = Address.getAddresses().iterator().next();
+            findTaxOffice("Jeżyce").addAddress(address);
+            journal.save(); // Przekroczenie progu – dziennik scalany jest w tle
+            findPeriodEntrySet().addEntry(LocalDate.of(2024, 5, 11), new BigDecimal("-100"));
+            journal.save();
+            journal.close();
+            var snapshotGeneration = RepositoryJournal.readGeneration(path, RepositoryFormat.MAGIC);
+            var foldExists = Files.exists(foldPath);
+
+            clearExtents();
+            RepositoryJournal.open(path, 1, 1).close();
+            var readAddress = Address.getAddresses().iterator().next();
+
+            assertAll(
+                    () -> assertTrue(snapshotGeneration > generation),
+                    () -> assertFalse(foldExists),
+                    () -> assertEquals(List.of("2024-05-02 1000 Faktura 1/05", "2024-05-10 500 null",
+                            "2024-05-11 -100 null"), entries(findPeriodEntrySet())),
+                    () -> assertEquals("Urząd Skarbowy Poznań-Jeżyce", readAddress.getTaxOffice().getName()),
+                    () -> assertTrue(findTaxOffice("Wilda").getAddresses().contains(readAddress)),
+                    () -> assertTrue(findTaxOffice("Jeżyce").getAddresses().contains(readAddress))
+            );
+        } finally {
+            deleteFiles(path);
+        }
+    }
+
+    @Test
+    void ignoresATornRecordAtTheEndOfTheJournal() throws IOException {
+        createModel();
+        var path = Files.createTempFile("repository", ".data");
+        var journalPath = path.resolveSibling(path.getFileName() + ".journal");
+        try {
+            var journal = RepositoryJournal.create(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD);
+            findPeriodEntrySet().addEntry(LocalDate.of(2024, 5, 3), new BigDecimal("7"));
+            journal.save();
+            journal.close();
+            var validSize = Files.size(journalPath);
+            Files.write(journalPath, new byte[]{20, 1, 2, 3}, StandardOpenOption.APPEND);
+
+            clearExtents();
+            var reopened = RepositoryJournal.open(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD);
+            var truncatedSize = Files.size(journalPath);
+            findPeriodEntrySet().addEntry(LocalDate.of(2024, 5, 4), new BigDecimal("8"));
+            reopened.save();
+            reopened.close();
+            clearExtents();
+            RepositoryJournal.open(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD).close();
+
+            assertAll(
+                    () -> assertEquals(validSize, truncatedSize),
+                    () -> assertEquals(3, findPeriodEntrySet().getEntryCount())
+            );
+        } finally {
+            deleteFiles(path);
+        }
+    }
+
+    @Test
+    void writesAWholeSnapshotWhenANewObjectIsCreated() throws IOException {
+        createModel();
+        var path = Files.createTempFile("repository", ".data");
+        try {
+            var journal = RepositoryJournal.create(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD);
+            var generation = journal.getGeneration();
+            new TaxOffice("Urząd Skarbowy Poznań-Grunwald");
+            journal.save();
+            var savedGeneration = journal.getGeneration();
+            journal.close();
+
+            clearExtents();
+            RepositoryJournal.open(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD).close();
+
+            assertAll(
+                    () -> assertEquals(generation + 1, savedGeneration),
+                    () -> assertEquals(3, TaxOffice.getTaxOffices().size())
+            );
+        } finally {
+            deleteFiles(path);
+        }
+    }
+
+    @Test
+    void writesAWholeSnapshotWhenAChangeCannotBeJournaled() throws IOException {
+        createModel();
+        var path = Files.createTempFile("repository", ".data");
+        try {
+            var journal = RepositoryJournal.create(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD);
+            var generation = journal.getGeneration();
+            journal.save(); // Brak zmian – zapisywany jest wyłącznie dziennik
+            var unchangedGeneration = journal.getGeneration();
+            var person = Person.getPersons().iterator().next();
+            var address = new ArrayList<>(Address.getAddresses()).getFirst();
+            person.setStatus(Status.INACTIVE);
+            person.removeAddress(address);
+            journal.save();
+            var savedGeneration = journal.getGeneration();
+            journal.close();
+
+            clearExtents();
+            RepositoryJournal.open(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD).close();
+            var readPerson = Person.getPersons().iterator().next();
+
+            assertAll(
+                    () -> assertEquals(generation, unchangedGeneration),
+                    () -> assertEquals(generation + 1, savedGeneration),
+                    () -> assertEquals(Status.INACTIVE, readPerson.getStatus()),
+                    () -> assertTrue(readPerson.getAddresses().isEmpty())
+            );
+        } finally {
+            deleteFiles(path);
+        }
+    }
+
+    @Test
+    void writesTheCapturedModelInTheBackgroundAndKeepsLaterChangesForTheNextSave() throws IOException {
+        createModel();
+        var path = Files.createTempFile("repository", ".data");
+        try {
+            var journal = RepositoryJournal.attach(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD);
+            var progress = new ArrayList<long[]>();
+            var task = journal.prepareSave((done, total) -> progress.add(new long[]{done, total}));
+            findPeriodEntrySet().addEntry(LocalDate.of(2024, 5, 6), new BigDecimal("300"), "Po utrwaleniu");
+            CompletableFuture.runAsync(() -> {
+                try {
+                    task.run();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }).join();
+            var written = RepositoryFormat.decode(path, null);
+            journal.save();
+            journal.close();
+
+            clearExtents();
+            RepositoryJournal.open(path, 1, RepositoryJournal.DEFAULT_COMPACTION_THRESHOLD).close();
+            var last = progress.getLast();
+
+            assertAll(
+                    () -> assertEquals(1, written.periodEntrySets().length),
+                    () -> assertEquals(2, written.taxOfficeNames().length),
+                    () -> assertEquals(last[1], last[0]),
+                    () -> assertEquals(List.of("2024-05-02 1000 Faktura 1/05", "2024-05-06 300 Po utrwaleniu"),
+                            entries(findPeriodEntrySet()))
+            );
+        } finally {
+            deleteFiles(path);
+        }
+    }
+
+    @Test
+    void savesAndLoadsTheDefaultRepositoryAsynchronously() throws IOException {
+        createModel();
+        var progress = new ArrayList<Long>();
+        Repository.serializeAsync(null).join();
+        clearExtents();
+        Repository.deserializeAsync(Runnable::run, (done, total) -> progress.add(total - done)).join();
+        Repository.closeJournal();
+
+        assertAll(
+                () -> assertEquals(0, progress.getLast().longValue()),
+                () -> assertEquals(2, TaxOffice.getTaxOffices().size()),
+                () -> assertEquals(List.of("2024-05-02 1000 Faktura 1/05"), entries(findPeriodEntrySet())),
+                () -> assertEquals("Urząd Skarbowy Poznań-Wilda",
+                        Address.getAddresses().iterator().next().getTaxOffice().getName())
+        );
+    }
+}
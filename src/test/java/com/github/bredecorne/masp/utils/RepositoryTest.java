@@ -2,12 +2,25 @@ package com.github.bredecorne.masp.utils;
 
 import com.github.bredecorne.masp.model.*;
 import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.persons.NaturalPerson;
 import com.github.bredecorne.masp.model.persons.Person;
+import com.github.bredecorne.masp.model.taxes.ProgressiveTax;
+import com.github.bredecorne.masp.model.taxes.Tax;
+import com.github.bredecorne.masp.model.taxes.UniformTax;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -52,4 +65,374 @@ class RepositoryTest {
                         TaxOffice.getTaxOffices().stream().toList().getFirst().getName())
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void writesAndReadsTheWholeGraphWithLinksEntriesAndTaxesInTheBinaryFormat() throws IOException {
+        Person.setPersons(new HashSet<>());
+        Tax.setTaxes(new HashSet<>());
+        AccountManager.setAccountManagers(new HashSet<>());
+        Address.setAddresses(new HashSet<>());
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+        TaxOffice.setTaxOffices(new HashSet<>());
+        var taxOffice = new TaxOffice("Urząd Skarbowy Poznań-Wilda");
+        var address = new Address(Country.PL, "Poznań", "Warszawska", "12", "3A", taxOffice);
+        var otherAddress = new Address(Country.CZ, "Praha", "Dlouhá", "7");
+        var naturalPerson = new NaturalPerson("Jan Kowalski", Status.ACTIVE, new BigDecimal("0.15"), true,
+                new BigDecimal("0.05"), true);
+        naturalPerson.addAddress(address);
+        naturalPerson.addAddress(otherAddress);
+        naturalPerson.setStrictPeriods(true);
+        var legalPerson = new LegalPerson("Agata S.A.", Status.INACTIVE, null, false, new BigDecimal("120"), false);
+        legalPerson.addAddress(address);
+        var uniformTax = new UniformTax(new BigDecimal("0.19"));
+        var progressiveTax = new ProgressiveTax(new TreeMap<>(Map.of(
+                BigDecimal.ZERO, new BigDecimal("0.12"),
+                new BigDecimal("120000"), new BigDecimal("0.2")
+        )));
+        var accountManager = new AccountManager("John Doe", Status.ACTIVE);
+        var january = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), naturalPerson);
+        january.addEntry(LocalDate.of(2024, 1, 5), new BigDecimal("1000.50"), "Faktura 1/2024");
+        january.addEntry(LocalDate.of(2024, 1, 2), new BigDecimal("-123456789012345678901234.5"));
+        january.addTax(uniformTax);
+        january.addTax(progressiveTax);
+        accountManager.addPeriodEntrySet(january);
+        var february = new PeriodEntrySet(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29), legalPerson);
+        february.addEntry(LocalDate.of(2024, 2, 29), new BigDecimal("99"));
+        Tax.setTaxes(new HashSet<>(Set.of(uniformTax))); // Podatek progresywny jest wyłącznie powiązany
+        var file = Files.createTempFile("repository", ".data");
+
+        try {
+            Repository.serialize(file);
+            Person.setPersons(new HashSet<>());
+            Tax.setTaxes(new HashSet<>());
+            AccountManager.setAccountManagers(new HashSet<>());
+            Address.setAddresses(new HashSet<>());
+            PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+            TaxOffice.setTaxOffices(new HashSet<>());
+            Repository.deserialize(file);
+        } finally {
+            Files.delete(file);
+        }
+
+        var persons = Person.getPersons();
+        var readNaturalPerson = (NaturalPerson) persons.stream()
+                .filter(person -> person instanceof NaturalPerson).findFirst().orElseThrow();
+        var readLegalPerson = (LegalPerson) persons.stream()
+                .filter(person -> person instanceof LegalPerson).findFirst().orElseThrow();
+        var readJanuary = readNaturalPerson.getPeriodEntrySets().iterator().next();
+        var readAddress = readLegalPerson.getAddresses().iterator().next();
+        var readProgressiveTax = readJanuary.getTaxes().stream()
+                .filter(tax -> tax instanceof ProgressiveTax).findFirst().orElseThrow();
+        var entries = new ArrayList<String>();
+        readJanuary.getSnapshot().forEachEntry((date, value, justification) ->
+                entries.add(date + " " + value + " " + justification));
+
+        assertAll(
+                () -> assertEquals(2, persons.size()),
+                () -> assertEquals(2, Address.getAddresses().size()),
+                () -> assertEquals(1, Tax.getTaxes().size()),
+                () -> assertEquals(2, PeriodEntrySet.getPeriodEntrySets().size()),
+                () -> assertTrue(readNaturalPerson.isPreferential()),
+                () -> assertEquals(new BigDecimal("0.05"), readNaturalPerson.getDiscountRate()),
+                () -> assertTrue(readNaturalPerson.isUniformTax()),
+                () -> assertTrue(readNaturalPerson.isStrictPeriods()),
+                () -> assertEquals(new BigDecimal("0.15"), readNaturalPerson.getFeeRate()),
+                () -> assertNull(readLegalPerson.getFeeRate()),
+                () -> assertEquals(new BigDecimal("120"), readLegalPerson.getLoyaltyPoints()),
+                () -> assertEquals(Status.INACTIVE, readLegalPerson.getStatus()),
+                () -> assertEquals(2, readNaturalPerson.getAddresses().size()),
+                () -> assertEquals(2, readAddress.getPersons().size()),
+                () -> assertEquals("3A", readAddress.getApartmentNumber()),
+                () -> assertEquals("Urząd Skarbowy Poznań-Wilda", readAddress.getTaxOffice().getName()),
+                () -> assertTrue(readAddress.getTaxOffice().getAddresses().contains(readAddress)),
+                () -> assertEquals(List.of("2024-01-05 1000.50 Faktura 1/2024",
+                        "2024-01-02 -123456789012345678901234.5 null"), entries),
+                () -> assertEquals(LocalDate.of(2024, 1, 31), readJanuary.getDateTo()),
+                () -> assertEquals(2, readJanuary.getTaxes().size()),
+                () -> assertEquals(0, january.getTax(progressiveTax).compareTo(readJanuary.getTax(readProgressiveTax))),
+                () -> assertEquals(readJanuary, readJanuary.getAccountManager()
+                        .findPeriodEntrySet(readJanuary.getAbbreviation())),
+                () -> assertEquals("John Doe", readJanuary.getAccountManager().getName())
+        );
+    }
+
+    @Test
+    void readsEntriesOnlyWhenFirstUsedAndCopiesUnreadEntriesWhenSavedAgain() throws IOException {
+        Person.setPersons(new HashSet<>());
+        Tax.setTaxes(new HashSet<>());
+        AccountManager.setAccountManagers(new HashSet<>());
+        Address.setAddresses(new HashSet<>());
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+        TaxOffice.setTaxOffices(new HashSet<>());
+        var person = new NaturalPerson("Jan Kowalski", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31), person);
+        for (var day = 1; day <= 31; day++) {
+            periodEntrySet.addEntry(LocalDate.of(2024, 3, day), new BigDecimal(day * 100), "Faktura " + day);
+        }
+        periodEntrySet.addEntry(LocalDate.of(2024, 3, 15), new BigDecimal("-496"));
+        var empty = new PeriodEntrySet(LocalDate.of(2024, 4, 1), LocalDate.of(2024, 4, 30), person);
+        var file = Files.createTempFile("repository", ".data");
+
+        try {
+            Repository.serialize(file);
+            Repository.deserialize(file);
+            var lazy = PeriodEntrySet.getPeriodEntrySets().stream()
+                    .filter(set -> set.getDateFrom().getMonthValue() == 3).findFirst().orElseThrow();
+            var readEmpty = PeriodEntrySet.getPeriodEntrySets().stream()
+                    .filter(set -> set.getDateFrom().getMonthValue() == 4).findFirst().orElseThrow();
+            var loadedBeforeUse = lazy.isLoaded();
+            Repository.serialize(file); // Wpisy nieodczytane kopiowane są z odwzorowanego pliku
+            var loadedAfterSave = lazy.isLoaded();
+            Repository.deserialize(file);
+            var reread = PeriodEntrySet.getPeriodEntrySets().stream()
+                    .filter(set -> set.getDateFrom().getMonthValue() == 3).findFirst().orElseThrow();
+
+            assertAll(
+                    () -> assertFalse(loadedBeforeUse),
+                    () -> assertFalse(loadedAfterSave),
+                    () -> assertTrue(readEmpty.isLoaded()),
+                    () -> assertEquals(0, readEmpty.getEntryCount()),
+                    () -> assertFalse(reread.isLoaded()),
+                    () -> assertEquals(32, reread.getEntryCount()),
+                    () -> assertTrue(reread.isLoaded()),
+                    () -> assertEquals(0, periodEntrySet.getRevenue().compareTo(reread.getRevenue())),
+                    () -> assertEquals(0, periodEntrySet.getExpenses().compareTo(reread.getExpenses())),
+                    () -> assertEquals(LocalDate.of(2024, 3, 31), reread.getLastEntryDate()),
+                    () -> assertEquals(32, lazy.getEntryCount())
+            );
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void readsTheWholeFileIntoMemoryWhenMappingIsDisabledSoTheFileCanBeReplacedBeforeEntriesAreUsed()
+            throws IOException {
+        Person.setPersons(new HashSet<>());
+        Tax.setTaxes(new HashSet<>());
+        AccountManager.setAccountManagers(new HashSet<>());
+        Address.setAddresses(new HashSet<>());
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+        TaxOffice.setTaxOffices(new HashSet<>());
+        var person = new NaturalPerson("Jan Kowalski", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31), person);
+        for (var day = 1; day <= 31; day++) {
+            periodEntrySet.addEntry(LocalDate.of(2024, 3, day), new BigDecimal(day * 100), "Faktura " + day);
+        }
+        var file = Files.createTempFile("repository", ".data");
+        var memoryMapping = Repository.isMemoryMapping();
+
+        try {
+            Repository.serialize(file);
+            Repository.setMemoryMapping(false);
+            Repository.deserialize(file);
+            var read = PeriodEntrySet.getPeriodEntrySets().iterator().next();
+            Files.write(file, new byte[]{0}); // Zawartość pliku nie jest już potrzebna do odczytu wpisów
+            var loadedBeforeUse = read.isLoaded();
+
+            assertAll(
+                    () -> assertFalse(loadedBeforeUse),
+                    () -> assertEquals(31, read.getEntryCount()),
+                    () -> assertEquals(0, periodEntrySet.getRevenue().compareTo(read.getRevenue()))
+            );
+        } finally {
+            Repository.setMemoryMapping(memoryMapping);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void compressesTheRepositoryInIndependentBlocksAndReadsItBack() throws IOException {
+        Person.setPersons(new HashSet<>());
+        Tax.setTaxes(new HashSet<>());
+        AccountManager.setAccountManagers(new HashSet<>());
+        Address.setAddresses(new HashSet<>());
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+        TaxOffice.setTaxOffices(new HashSet<>());
+        var taxOffice = new TaxOffice("Urząd Skarbowy Poznań-Wilda");
+        for (var i = 0; i < 200; i++) {
+            taxOffice.addAddress(new Address(Country.PL, "Poznań", "Warszawska", String.valueOf(i)));
+        }
+        var person = new NaturalPerson("Jan Kowalski", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+        for (var i = 0; i < 100_000; i++) {
+            periodEntrySet.addEntry(LocalDate.of(2024, 1, 1).plusDays(i % 366), new BigDecimal(i % 1000 + 1),
+                    "Faktura sprzedaży");
+        }
+        var plain = Files.createTempFile("repository", ".data");
+        var compressed = Files.createTempFile("repository", ".data");
+
+        try {
+            Repository.serialize(plain);
+            Repository.setCompressionLevel(Deflater.BEST_SPEED);
+            Repository.serialize(compressed);
+            Repository.setCompressionLevel(0);
+            Repository.deserialize(compressed);
+            var read = PeriodEntrySet.getPeriodEntrySets().iterator().next();
+
+            assertAll(
+                    () -> assertTrue(Files.size(plain) > BlockCompression.BLOCK_SIZE),
+                    () -> assertTrue(Files.size(compressed) * 4 < Files.size(plain)),
+                    () -> assertEquals(200, Address.getAddresses().size()),
+                    () -> assertEquals(200, TaxOffice.getTaxOffices().iterator().next().getAddresses().size()),
+                    () -> assertFalse(read.isLoaded()),
+                    () -> assertEquals(100_000, read.getEntryCount()),
+                    () -> assertEquals(0, periodEntrySet.getRevenue().compareTo(read.getRevenue())),
+                    () -> assertThrows(IllegalArgumentException.class, () -> Repository.setCompressionLevel(10))
+            );
+        } finally {
+            Repository.setCompressionLevel(0);
+            Files.delete(plain);
+            Files.delete(compressed);
+        }
+    }
+
+    @Test
+    void leavesLedgersOfACompressedFileUnloadedAndCopiesTheirUnreadEntriesWhenSavedAgain() throws IOException {
+        Person.setPersons(new HashSet<>());
+        Tax.setTaxes(new HashSet<>());
+        AccountManager.setAccountManagers(new HashSet<>());
+        Address.setAddresses(new HashSet<>());
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+        TaxOffice.setTaxOffices(new HashSet<>());
+        var revenues = new TreeMap<String, BigDecimal>();
+        for (var i = 0; i < 4; i++) {
+            var person = new NaturalPerson("Klient " + i, Status.ACTIVE, new BigDecimal("0.1"), false,
+                    BigDecimal.ZERO, false);
+            var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), person);
+            for (var j = 0; j < 100_000; j++) {
+                periodEntrySet.addEntry(LocalDate.of(2024, 1, 1).plusDays(j % 366), new BigDecimal(j + i + 1),
+                        "Faktura " + j);
+            }
+            revenues.put(person.getName(), periodEntrySet.getRevenue());
+        }
+        var compressed = Files.createTempFile("repository", ".data");
+        var resaved = Files.createTempFile("repository", ".data");
+
+        try {
+            Repository.setCompressionLevel(Deflater.BEST_SPEED);
+            Repository.serialize(compressed);
+            Repository.setCompressionLevel(0);
+            Repository.deserialize(compressed);
+            var loadedAfterRead = PeriodEntrySet.getPeriodEntrySets().stream().filter(PeriodEntrySet::isLoaded)
+                    .count();
+            var first = PeriodEntrySet.getPeriodEntrySets().stream()
+                    .filter(set -> set.getPerson().getName().equals("Klient 0")).findFirst().orElseThrow();
+            var firstRevenue = first.getRevenue();
+            var loadedAfterUse = PeriodEntrySet.getPeriodEntrySets().stream().filter(PeriodEntrySet::isLoaded)
+                    .count();
+            Repository.serialize(resaved); // Wpisy nieodczytanych zbiorów kopiowane są z bloków pliku skompresowanego
+            Repository.deserialize(resaved);
+            var resavedRevenues = new TreeMap<String, BigDecimal>();
+            for (var periodEntrySet : PeriodEntrySet.getPeriodEntrySets()) {
+                resavedRevenues.put(periodEntrySet.getPerson().getName(), periodEntrySet.getRevenue());
+            }
+
+            assertAll(
+                    () -> assertTrue(Files.size(resaved) > 4L * BlockCompression.BLOCK_SIZE),
+                    () -> assertEquals(0, loadedAfterRead),
+                    () -> assertEquals(0, revenues.get("Klient 0").compareTo(firstRevenue)),
+                    () -> assertEquals(1, loadedAfterUse),
+                    () -> assertEquals(revenues.keySet(), resavedRevenues.keySet()),
+                    () -> assertTrue(revenues.keySet().stream().allMatch(name ->
+                            revenues.get(name).compareTo(resavedRevenues.get(name)) == 0))
+            );
+        } finally {
+            Repository.setCompressionLevel(0);
+            Files.delete(compressed);
+            Files.delete(resaved);
+        }
+    }
+
+    @Test
+    void savesEachExtentToItsOwnFileAndReadsTheLedgerShardsOnFirstUse() throws IOException {
+        Person.setPersons(new HashSet<>());
+        Tax.setTaxes(new HashSet<>());
+        AccountManager.setAccountManagers(new HashSet<>());
+        Address.setAddresses(new HashSet<>());
+        PeriodEntrySet.setPeriodEntrySets(new HashSet<>());
+        TaxOffice.setTaxOffices(new HashSet<>());
+        var taxOffice = new TaxOffice("Urząd Skarbowy Poznań-Wilda");
+        var address = new Address(Country.PL, "Poznań", "Warszawska", "12", "3A", taxOffice);
+        for (var i = 0; i < 6; i++) {
+            var person = new NaturalPerson("Klient " + i, Status.ACTIVE, new BigDecimal("0.1"), false,
+                    BigDecimal.ZERO, false);
+            person.addAddress(address);
+            var periodEntrySet = new PeriodEntrySet(LocalDate.of(2024, 5, 1), LocalDate.of(2024, 5, 31), person);
+            for (var j = 0; j <= i; j++) {
+                periodEntrySet.addEntry(LocalDate.of(2024, 5, 1 + j), new BigDecimal(100 * i + j + 1));
+            }
+        }
+        var directory = Files.createTempDirectory("repository");
+
+        try {
+            Repository.serializeSharded(directory, 3);
+            var files = list(directory);
+            var generationFiles = list(directory.resolve("generation-1"));
+            Repository.deserializeSharded(directory);
+            var sets = new ArrayList<>(PeriodEntrySet.getPeriodEntrySets());
+            var loadedAfterRead = sets.stream().filter(PeriodEntrySet::isLoaded).count();
+            var first = sets.stream().filter(set -> set.getPerson().getName().equals("Klient 5")).findFirst()
+                    .orElseThrow();
+            var firstEntryCount = first.getEntryCount();
+            first.addEntry(LocalDate.of(2024, 5, 31), new BigDecimal("-1"));
+            var loadedAfterChange = sets.stream().filter(PeriodEntrySet::isLoaded).count();
+
+            Repository.serializeSharded(directory, 2); // Zbiory nieodczytane kopiowane są z poprzedniego pokolenia
+            var resavedFiles = list(directory);
+            var resavedGenerationFiles = list(directory.resolve("generation-2")).size();
+
+            // Przerwany zapis kolejnego pokolenia nie narusza pokolenia wskazanego w katalogu
+            var interrupted = Files.createDirectory(directory.resolve("generation-3"));
+            Files.write(interrupted.resolve("persons.shard"), new byte[]{1, 2, 3});
+            Repository.deserializeSharded(directory);
+            var revenues = new TreeMap<String, BigDecimal>();
+            var entryCount = 0;
+            for (var periodEntrySet : PeriodEntrySet.getPeriodEntrySets()) {
+                revenues.put(periodEntrySet.getPerson().getName(), periodEntrySet.getRevenue());
+                entryCount += periodEntrySet.getEntryCount();
+            }
+            var totalEntries = entryCount;
+
+            assertAll(
+                    () -> assertEquals(List.of("generation-1", "repository.shard"), files),
+                    () -> assertEquals(List.of("account-managers.shard", "addresses.shard", "entries-0.shard",
+                            "entries-1.shard", "entries-2.shard", "links.shard", "period-entry-sets.shard",
+                            "persons.shard", "tax-offices.shard", "taxes.shard"), generationFiles),
+                    () -> assertEquals(0, loadedAfterRead),
+                    () -> assertEquals(6, firstEntryCount),
+                    () -> assertEquals(1, loadedAfterChange),
+                    () -> assertEquals(List.of("generation-2", "repository.shard"), resavedFiles),
+                    () -> assertEquals(9, resavedGenerationFiles),
+                    () -> assertEquals(22, totalEntries),
+                    () -> assertEquals(0, new BigDecimal("3021").compareTo(revenues.get("Klient 5"))),
+                    () -> assertEquals(0, new BigDecimal("1").compareTo(revenues.get("Klient 0"))),
+                    () -> assertEquals(6, Person.getPersons().size()),
+                    () -> assertEquals(6, Address.getAddresses().iterator().next().getPersons().size()),
+                    () -> assertEquals(1, TaxOffice.getTaxOffices().iterator().next().getAddresses().size()),
+                    () -> assertThrows(IllegalArgumentException.class,
+                            () -> Repository.serializeSharded(directory, 0))
+            );
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            for (var name : list(path)) {
+                delete(path.resolve(name));
+            }
+        }
+        Files.delete(path);
+    }
+
+    private static List<String> list(Path directory) throws IOException {
+        try (var paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+}
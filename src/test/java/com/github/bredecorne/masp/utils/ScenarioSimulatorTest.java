@@ -0,0 +1,106 @@
+package com.github.bredecorne.masp.utils;
+
+import com.github.bredecorne.masp.model.Address;
+import com.github.bredecorne.masp.model.Country;
+import com.github.bredecorne.masp.model.Money;
+import com.github.bredecorne.masp.model.PeriodEntrySet;
+import com.github.bredecorne.masp.model.RoundingPolicy;
+import com.github.bredecorne.masp.model.Status;
+import com.github.bredecorne.masp.model.persons.LegalPerson;
+import com.github.bredecorne.masp.model.taxes.ProgressiveTax;
+import com.github.bredecorne.masp.model.taxes.UniformTax;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScenarioSimulatorTest {
+
+    @Test
+    void evaluatesEveryScenarioAgainstEverySetAndReportsTotalsDistributionAndTopClientChanges() {
+        var currentTax = new UniformTax(new BigDecimal("0.19"));
+        var flatScenario = new UniformTax(new BigDecimal("0.15"));
+        var progressiveScenario = new ProgressiveTax(new TreeMap<>(Map.of(
+                BigDecimal.ZERO, new BigDecimal("0.10"),
+                new BigDecimal("5000"), new BigDecimal("0.30")
+        )));
+        var smallClient = new LegalPerson("Mała sp. z o.o.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var largeClient = new LegalPerson("Duża S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var periodEntrySets = new ArrayList<PeriodEntrySet>();
+        for (var i = 0; i < 3000; i++) {
+            var dateFrom = LocalDate.of(2000, 1, 1).plusMonths(i);
+            var person = i < 2000 ? smallClient : largeClient;
+            var periodEntrySet = new PeriodEntrySet(dateFrom, dateFrom.plusMonths(1).minusDays(1), person);
+            periodEntrySet.addEntry(dateFrom, new BigDecimal(i < 2000 ? "1000" : "10000"));
+            periodEntrySet.addTax(currentTax);
+            periodEntrySets.add(periodEntrySet);
+        }
+
+        var result = new ScenarioSimulator(new ForkJoinPool(4))
+                .simulate(List.of(flatScenario, progressiveScenario), periodEntrySets, 1);
+        var flat = result.getScenarios().get(0);
+        var progressive = result.getScenarios().get(1);
+
+        assertAll(
+                () -> assertEquals(Money.of(new BigDecimal("12000000")), result.getTotalIncome()),
+                () -> assertEquals(Money.of(new BigDecimal("2280000")), flat.totalBaselineTax()),
+                () -> assertEquals(Money.of(new BigDecimal("1800000")), flat.totalTax()),
+                () -> assertEquals(Money.of(new BigDecimal("-480000")), flat.change()),
+                () -> assertEquals(Money.of(new BigDecimal("150")), flat.distribution().median()),
+                () -> assertEquals(Money.of(new BigDecimal("1500")), flat.distribution().max()),
+                () -> assertEquals(Money.of(new BigDecimal("100")), progressive.distribution().min()),
+                () -> assertEquals(Money.of(new BigDecimal("2000")), progressive.distribution().p90()),
+                () -> assertEquals(Money.of(periodEntrySets.get(2500).getTax(progressiveScenario)),
+                        result.getTable().getTax(1, 2500)),
+                () -> assertEquals(1, progressive.topChanges().size()),
+                () -> assertEquals(smallClient, progressive.topChanges().getFirst().person()),
+                () -> assertEquals(Money.of(new BigDecimal("-180000")), progressive.topChanges().getFirst().change())
+        );
+    }
+
+    @Test
+    void roundsBaselineAndScenarioTaxesByThePolicyOfTheOwnersCountry() {
+        var currentTax = new UniformTax(new BigDecimal("0.19"));
+        var scenario = new UniformTax(new BigDecimal("0.15"));
+        var polish = new LegalPerson("Agata S.A.", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        var german = new LegalPerson("Agata GmbH", Status.ACTIVE, new BigDecimal("0.1"), false,
+                BigDecimal.ZERO, false);
+        german.addAddress(new Address(Country.DE, "Berlin", "Lange Straße", "3"));
+        var first = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), polish);
+        var second = new PeriodEntrySet(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), german);
+        for (var periodEntrySet : List.of(first, second)) {
+            periodEntrySet.addEntry(LocalDate.of(2024, 1, 2), new BigDecimal("1000.50"));
+            periodEntrySet.addTax(currentTax);
+        }
+
+        RoundingPolicy.setPolicy(Country.DE, new RoundingPolicy(0, RoundingMode.HALF_EVEN));
+        try {
+            var result = new ScenarioSimulator(new ForkJoinPool(2))
+                    .simulate(List.of(scenario), List.of(first, second), 1);
+            var totals = result.getScenarios().getFirst();
+
+            assertAll(
+                    () -> assertEquals(Money.of(new BigDecimal("190")), result.getTable().getBaselineTax(1)),
+                    () -> assertEquals(Money.of(second.getTax(currentTax)), result.getTable().getBaselineTax(1)),
+                    () -> assertEquals(Money.of(new BigDecimal("150")), result.getTable().getTax(0, 1)),
+                    () -> assertEquals(Money.of(second.getTax(scenario)), result.getTable().getTax(0, 1)),
+                    () -> assertEquals(Money.of(new BigDecimal("150.08")), result.getTable().getTax(0, 0)),
+                    () -> assertEquals(Money.of(new BigDecimal("380.10")), totals.totalBaselineTax()),
+                    () -> assertEquals(Money.of(new BigDecimal("300.08")), totals.totalTax())
+            );
+        } finally {
+            RoundingPolicy.setPolicy(Country.DE, null);
+        }
+    }
+}
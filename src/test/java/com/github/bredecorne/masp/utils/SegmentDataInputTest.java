@@ -0,0 +1,38 @@
+package com.github.bredecorne.masp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentDataInputTest {
+
+    @Test
+    void readsValuesWrittenByDataOutputIncludingModifiedUtf8StringsAndLines() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(42);
+        out.writeUTF("Urząd Skarbowy Poznań-Wilda");
+        out.writeLong(-7);
+        out.writeBytes("pierwszy\r\ndrugi\rtrzeci\n\nostatni");
+        var in = new SegmentDataInput(MemorySegment.ofArray(bytes.toByteArray()));
+
+        assertAll(
+                () -> assertEquals(42, in.readInt()),
+                () -> assertEquals("Urząd Skarbowy Poznań-Wilda", in.readUTF()),
+                () -> assertEquals(-7, in.readLong()),
+                () -> assertEquals("pierwszy", in.readLine()),
+                () -> assertEquals("drugi", in.readLine()),
+                () -> assertEquals("trzeci", in.readLine()),
+                () -> assertEquals("", in.readLine()),
+                () -> assertEquals("ostatni", in.readLine()),
+                () -> assertNull(in.readLine()),
+                () -> assertThrows(EOFException.class, in::readUTF)
+        );
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.bredecorne.masp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupPipelineTest {
+
+    @Test
+    void runsEachStageAfterItsDependenciesAndReportsTheTotalProgress() {
+        var order = Collections.synchronizedList(new ArrayList<String>());
+        var started = Collections.synchronizedList(new ArrayList<String>());
+        var progress = Collections.synchronizedList(new ArrayList<long[]>());
+        var background = Executors.newFixedThreadPool(2);
+        try {
+            var pipeline = new StartupPipeline()
+                    .stage("model", stageProgress -> CompletableFuture.runAsync(() -> {
+                        stageProgress.progress(1, 2);
+                        order.add("model");
+                    }, background))
+                    .stage("taxes", background, () -> order.add("taxes"))
+                    .stage("view", Runnable::run, () -> order.add("view"), "model", "taxes");
+
+            pipeline.start(new StartupPipeline.Listener() {
+                @Override
+                public void stageStarted(String name) {
+                    started.add(name);
+                }
+
+                @Override
+                public void progress(long done, long total) {
+                    progress.add(new long[]{done, total});
+                }
+            }).join();
+            var last = progress.getLast();
+
+            assertAll(
+                    () -> assertEquals(3, order.size()),
+                    () -> assertEquals("view", order.getLast()),
+                    () -> assertEquals("view", started.getLast()),
+                    () -> assertTrue(progress.stream().anyMatch(step ->
+                            step[0] % StartupPipeline.STAGE_STEPS == StartupPipeline.STAGE_STEPS / 2)),
+                    () -> assertEquals(3 * StartupPipeline.STAGE_STEPS, last[1]),
+                    () -> assertEquals(last[1], last[0])
+            );
+        } finally {
+            background.shutdown();
+        }
+    }
+
+    @Test
+    void runsIndependentStagesConcurrentlyAndSkipsTheDependentsOfAFailedStage() throws InterruptedException {
+        var background = Executors.newFixedThreadPool(2);
+        var bothRunning = new CountDownLatch(2);
+        var order = Collections.synchronizedList(new ArrayList<String>());
+        try {
+            Runnable meet = () -> {
+                bothRunning.countDown();
+                try {
+                    bothRunning.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            var task = new StartupPipeline()
+                    .stage("addresses", background, meet)
+                    .stage("persons", background, () -> {
+                        meet.run();
+                        throw new IllegalStateException("Uszkodzone dane");
+                    })
+                    .stage("ledgers", Runnable::run, () -> order.add("ledgers"), "persons")
+                    .stage("view", Runnable::run, () -> order.add("view"), "addresses")
+                    .start(null);
+            var exception = assertThrows(CompletionException.class, task::join);
+            var finished = bothRunning.await(0, TimeUnit.SECONDS);
+
+            assertAll(
+                    () -> assertTrue(finished),
+                    () -> assertTrue(exception.getCause() instanceof IllegalStateException),
+                    () -> assertEquals(List.of("view"), order)
+            );
+        } finally {
+            background.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsUnknownAndDuplicateStagesAndASecondStart() {
+        var pipeline = new StartupPipeline().stage("model", Runnable::run, () -> {
+        });
+        pipeline.start(null).join();
+
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new StartupPipeline().stage("view", Runnable::run, () -> {
+                        }, "model")),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new StartupPipeline().stage("model", Runnable::run, () -> {
+                        }).stage("model", Runnable::run, () -> {
+                        })),
+                () -> assertThrows(IllegalStateException.class, () -> pipeline.start(null))
+        );
+    }
+}